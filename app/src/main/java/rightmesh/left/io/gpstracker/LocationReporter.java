@@ -0,0 +1,499 @@
+package rightmesh.left.io.gpstracker;
+
+import android.content.Context;
+import android.location.Location;
+import android.util.Log;
+
+import androidx.annotation.VisibleForTesting;
+import androidx.lifecycle.MutableLiveData;
+
+import io.left.rightmesh.util.Logger;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.CheckReturnValue;
+
+import rightmesh.left.io.gpstracker.core.codec.LocationFix;
+import rightmesh.left.io.gpstracker.core.codec.MetricsCodec;
+import rightmesh.left.io.gpstracker.core.geofence.Geofence;
+import rightmesh.left.io.gpstracker.core.geofence.GeofenceEngine;
+import rightmesh.left.io.gpstracker.core.geofence.GeofenceParser;
+import rightmesh.left.io.gpstracker.core.metrics.Counter;
+import rightmesh.left.io.gpstracker.core.metrics.Histogram;
+import rightmesh.left.io.gpstracker.core.metrics.MetricsRegistry;
+import rightmesh.left.io.gpstracker.core.metrics.MetricsReporter;
+import rightmesh.left.io.gpstracker.core.metrics.MetricsSnapshot;
+import rightmesh.left.io.gpstracker.core.transport.TransportException;
+import rightmesh.left.io.gpstracker.core.uplink.FrameJournal;
+import rightmesh.left.io.gpstracker.core.uplink.LocationUplink;
+import rightmesh.left.io.gpstracker.core.uplink.SuperPeerSelector;
+import rightmesh.left.io.gpstracker.core.uplink.UplinkStatus;
+import rightmesh.left.io.gpstracker.core.uplink.UplinkStatusPublisher;
+import rightmesh.left.io.gpstracker.utils.LocationSmoother;
+
+/**
+ * Reports the device locations to the SuperPeer: owns the RightMesh connection, the uplink
+ * pipeline and its journal, and exposes their state to the UI. Lives as long as the
+ * {@link TrackingService} that created it, not as long as an activity.
+ */
+public class LocationReporter {
+
+    private static final String TAG = LocationReporter.class.getCanonicalName();
+
+    private static final String JOURNAL_FILE_NAME = "uplink.journal";
+
+    // Holds the latest metrics snapshot.
+    private static final String METRICS_FILE_NAME = "metrics.txt";
+
+    // If present, only enters and exits of the geofences listed there are sent.
+    private static final String GEOFENCE_FILE_NAME = "geofences.txt";
+
+    // A fix is sent at least this often even if the SuperPeer could predict it, or if it is too
+    // coarse for the smoother.
+    private static final long TRAJECTORY_MAX_SILENCE_MS = 60000;
+
+    // A frame not acknowledged by the SuperPeer is sent this many times before it is journaled
+    // to be replayed.
+    private static final int UPLINK_ACK_MAX_ATTEMPTS = 3;
+
+    // Stored batches the backlog may send at once after a reconnect, before its rate applies.
+    private static final int UPLINK_BACKFILL_BURST = 8;
+
+    // The uplink status shown on screen is refreshed at most this often.
+    private static final long STATUS_REFRESH_INTERVAL_MS = 250;
+
+    // Uplink stage timings are logged once per this many frames.
+    private static final int STATS_LOG_INTERVAL = 30;
+
+    private final Context context;
+
+    private RightMeshConnector rightMeshConnector;
+
+    // Runs the uplink pipeline off the main thread.
+    private final ScheduledExecutorService uplinkExecutor;
+    private final LocationUplink locationUplink;
+    private final UplinkStatusPublisher uplinkStatusPublisher;
+    private final MetricsRegistry metrics = new MetricsRegistry();
+    // Null if METRICS_SNAPSHOT_INTERVAL_MS is 0.
+    private final MetricsReporter metricsReporter;
+    private final Counter locationResultsMetric = metrics.counter("location.results");
+    private final Counter locationFixesMetric = metrics.counter("location.fixes");
+    private final Histogram locationIntervalMetric = metrics.histogram("location.interval.ms");
+    private final Histogram locationAgeMetric = metrics.histogram("location.age.ms");
+    // When the tracker last delivered locations, 0 before the first; main thread only.
+    private long lastLocationsNanos;
+    // Reused for every fix handed to the uplink, which copies it; main thread only.
+    private final LocationFix fix = new LocationFix();
+    // Null if LOCATION_MAX_ACCURACY_M is 0; main thread only.
+    private final LocationSmoother locationSmoother;
+    // Keeps batches that could not be sent; only touched on the uplink executor.
+    private FrameJournal frameJournal;
+    // Frames handled since the stage timings were last logged; uplink executor only.
+    private int framesSinceStatsLog;
+    // Whether the cold start timings were logged; uplink executor only.
+    private boolean startupLogged;
+
+    public MutableLiveData<String> liveDataNotificationText = new MutableLiveData<>();
+    public MutableLiveData<UplinkStatus> liveDataUplinkStatus = new MutableLiveData<>();
+    public MutableLiveData<Boolean> liveDataLocationAvailable = new MutableLiveData<>();
+
+    /**
+     * Constructor {@link LocationReporter}. Sets up location batching unless
+     * {@code UPLINK_BATCH_MAX_FIXES} is 1.
+     *
+     * @param context application context
+     */
+    public LocationReporter(Context context) {
+        this.context = context;
+        uplinkExecutor = Executors.newSingleThreadScheduledExecutor();
+        locationUplink = new LocationUplink(buildSuperPeerSelector(), uplinkExecutor)
+                .setQueueCapacity(BuildConfig.UPLINK_QUEUE_CAPACITY)
+                .setBatchLimits(BuildConfig.UPLINK_BATCH_MAX_FIXES,
+                        BuildConfig.UPLINK_BATCH_MAX_AGE_MS)
+                .setSimplification(BuildConfig.UPLINK_SIMPLIFY_TOLERANCE_M,
+                        TRAJECTORY_MAX_SILENCE_MS)
+                .setWarmStart(BuildConfig.MESH_WARM_START_MAX_HOLD_MS)
+                .setDeliveryTracking(BuildConfig.UPLINK_ACK_WINDOW,
+                        BuildConfig.UPLINK_ACK_TIMEOUT_MS, UPLINK_ACK_MAX_ATTEMPTS)
+                .setLaneLimits(LocationUplink.LANE_BACKFILL, 1,
+                        BuildConfig.UPLINK_BACKFILL_FRAMES_PER_S, UPLINK_BACKFILL_BURST)
+                .setCompression(BuildConfig.UPLINK_COMPRESSION_LEVEL)
+                .setRelayAggregation(BuildConfig.UPLINK_RELAY_MAX_FRAMES,
+                        BuildConfig.UPLINK_BATCH_MAX_AGE_MS)
+                .setMetrics(metrics)
+                .setOnUplinkListener(new LocationUplink.OnUplinkListener() {
+                    @Override
+                    public void onFrameSent(int fixCount) {
+                        uplinkStatusPublisher.requestPublish();
+                        logStartup();
+                        logUplinkStats();
+                    }
+
+                    @Override
+                    public void onFrameNotSent(int fixCount, int backlog) {
+                        Logger.log(TAG, "Failed to send " + fixCount + " locations, backlog: "
+                                + backlog + " batches");
+                        uplinkStatusPublisher.requestPublish();
+                        logUplinkStats();
+                    }
+                });
+        uplinkStatusPublisher = new UplinkStatusPublisher(locationUplink, uplinkExecutor,
+                STATUS_REFRESH_INTERVAL_MS, liveDataUplinkStatus::postValue);
+        locationUplink.start();
+        metricsReporter = BuildConfig.METRICS_SNAPSHOT_INTERVAL_MS > 0
+                ? new MetricsReporter(metrics, uplinkExecutor,
+                BuildConfig.METRICS_SNAPSHOT_INTERVAL_MS, this::reportMetrics) : null;
+        locationSmoother = BuildConfig.LOCATION_MAX_ACCURACY_M > 0
+                ? new LocationSmoother(BuildConfig.LOCATION_MAX_ACCURACY_M,
+                TRAJECTORY_MAX_SILENCE_MS) : null;
+    }
+
+    /**
+     * Spreads the devices over the comma-separated {@code SUPER_PEER_IDS}.
+     *
+     * @return selector of the SuperPeer each frame is sent to
+     */
+    private static SuperPeerSelector buildSuperPeerSelector() {
+        return new SuperPeerSelector(parseSuperPeerIds(BuildConfig.SUPER_PEER_IDS));
+    }
+
+    /**
+     * Split a comma-separated list of SuperPeer ids, skipping blanks around and between them.
+     *
+     * @param ids comma-separated ids
+     * @return ids in the given order
+     * @throws IllegalArgumentException the list holds no id
+     */
+    @VisibleForTesting(otherwise = VisibleForTesting.PRIVATE)
+    static List<String> parseSuperPeerIds(String ids) {
+        List<String> result = new ArrayList<>();
+        for (String id : ids.split(",")) {
+            String trimmed = id.trim();
+            if (!trimmed.isEmpty()) {
+                result.add(trimmed);
+            }
+        }
+        if (result.isEmpty()) {
+            throw new IllegalArgumentException("No SuperPeer id in \"" + ids + "\"");
+        }
+        return result;
+    }
+
+    /**
+     * Opens the journal of unsent frames, loads the geofences, connects to RightMesh and starts
+     * reporting metrics every {@code METRICS_SNAPSHOT_INTERVAL_MS}.
+     */
+    public void start() {
+        uplinkExecutor.execute(this::openFrameJournal);
+        uplinkExecutor.execute(this::loadGeofences);
+        initRightMeshConnector();
+        if (metricsReporter != null) {
+            metricsReporter.start();
+        }
+    }
+
+    /**
+     * Init {@link RightMeshConnector}.
+     */
+    private void initRightMeshConnector() {
+        setRightMeshConnector(buildRightMeshConnector());
+        rightMeshConnector.setReconnectExecutor(uplinkExecutor);
+        rightMeshConnector.setOnConnectSuccessListener(meshId -> {
+            setNotificationText(context.getString(R.string.fetching_location));
+        });
+        rightMeshConnector.connect(context, BuildConfig.SUPER_PEER_URL);
+    }
+
+    /**
+     * Build RightmeshConnector (to mock easier).
+     *
+     * @return new {@link RightMeshConnector}
+     */
+    @VisibleForTesting(otherwise = VisibleForTesting.PRIVATE)
+    @CheckReturnValue
+    RightMeshConnector buildRightMeshConnector() {
+        return new RightMeshConnector(BuildConfig.MESH_PORT, BuildConfig.MESH_ROUTE_TTL_MS);
+    }
+
+    /**
+     * Sends a single location, see {@link #sendLocationsToSuperPeer(List)}.
+     *
+     * @param location location that will be sent over RightMesh to the SuperPeer
+     */
+    public void sendLocationToSuperPeer(Location location) {
+        if (location == null) {
+            Log.d(TAG, "location is null");
+            return;
+        }
+        sendLocationsToSuperPeer(Collections.singletonList(location));
+    }
+
+    /**
+     * Smooths the locations, dropping those too far off the track or less accurate than
+     * {@code LOCATION_MAX_ACCURACY_M}, except one such coarse location as a heartbeat once none
+     * passed for a while, and hands the estimates to the uplink executor. It queues each
+     * in the current batch unless the super peer can predict it from the previous one within
+     * {@code UPLINK_SIMPLIFY_TOLERANCE_M}. If batching is disabled, each location is sent on its
+     * own. If the uplink falls more than {@code UPLINK_QUEUE_CAPACITY} fixes behind, the oldest
+     * waiting fixes are dropped.
+     *
+     * @param locations locations in chronological order, e.g. every fix of a batched
+     *                  {@code LocationResult}
+     */
+    public void sendLocationsToSuperPeer(List<Location> locations) {
+        if (locations == null || locations.isEmpty()) {
+            Log.d(TAG, "no location");
+            return;
+        }
+
+        setNotificationText(context.getString(R.string.sending_your_gps_to_app_superpeer));
+        recordArrival(locations.size());
+
+        for (int i = 0; i < locations.size(); i++) {
+            Location location = locations.get(i);
+            locationAgeMetric.record(System.currentTimeMillis() - location.getTime());
+            if (locationSmoother != null && !locationSmoother.smooth(location, fix)) {
+                continue;
+            }
+            if (!locationUplink.offer(locationSmoother != null ? fix : toLocationFix(location))) {
+                Logger.log(TAG, "Uplink behind, dropped " + locationUplink.getDroppedCount()
+                        + " locations so far");
+            }
+        }
+        // However many fixes arrive, the status is refreshed at a bounded rate.
+        uplinkStatusPublisher.requestPublish();
+    }
+
+    /**
+     * Counts the locations delivered by the tracker and the time since the previous delivery.
+     *
+     * @param count number of locations delivered at once
+     */
+    private void recordArrival(int count) {
+        long now = System.nanoTime();
+        if (lastLocationsNanos != 0) {
+            locationIntervalMetric.record(TimeUnit.NANOSECONDS.toMillis(now - lastLocationsNanos));
+        }
+        lastLocationsNanos = now;
+        locationResultsMetric.increment();
+        locationFixesMetric.add(count);
+    }
+
+    /**
+     * Shows whether the tracker can currently get fixes.
+     *
+     * @param available false if no location provider is available
+     */
+    public void setLocationAvailable(boolean available) {
+        setNotificationText(context.getString(available
+                ? R.string.sending_your_gps_to_app_superpeer : R.string.location_is_unavailable));
+        liveDataLocationAvailable.setValue(available);
+    }
+
+    /**
+     * Updates the notification text only if it changed, so observers do not redraw it for every
+     * location.
+     *
+     * @param text text to show
+     */
+    private void setNotificationText(String text) {
+        String current = liveDataNotificationText.getValue();
+        if (text == null ? current != null : !text.equals(current)) {
+            liveDataNotificationText.setValue(text);
+        }
+    }
+
+    /**
+     * Logs how long the cold start took to connect and to deliver the first fix, once. Runs on
+     * the uplink executor.
+     */
+    private void logStartup() {
+        if (startupLogged) {
+            return;
+        }
+        startupLogged = true;
+        Logger.log(TAG, "Uplink " + locationUplink.getStartupTrace());
+    }
+
+    /**
+     * Logs how long each uplink stage takes every {@link #STATS_LOG_INTERVAL} frames. Runs on
+     * the uplink executor.
+     */
+    private void logUplinkStats() {
+        if (++framesSinceStatsLog < STATS_LOG_INTERVAL) {
+            return;
+        }
+        framesSinceStatsLog = 0;
+        Logger.log(TAG, "Uplink " + locationUplink.getQueueTimer()
+                + ", " + locationUplink.getEncodeTimer()
+                + ", " + locationUplink.getCompressTimer()
+                + ", " + locationUplink.getSendTimer()
+                + ", " + locationUplink.getDeliveryTimer()
+                + ", dropped: " + locationUplink.getDroppedCount()
+                + ", " + locationUplink.getStartupTrace());
+    }
+
+    /**
+     * Writes a metrics snapshot to {@link #METRICS_FILE_NAME} and sends it to the SuperPeer as a
+     * {@link MetricsCodec} frame, without journaling it if the mesh is unavailable. Runs on the
+     * uplink executor.
+     *
+     * @param snapshot values of every metric
+     */
+    private void reportMetrics(MetricsSnapshot snapshot) {
+        writeMetrics(snapshot);
+        try {
+            rightMeshConnector.send(locationUplink.getSuperPeers().select(),
+                    MetricsCodec.encode(snapshot));
+        } catch (TransportException e) {
+            Logger.log(TAG, "Failed to send metrics: " + e.getMessage());
+        }
+    }
+
+    private void writeMetrics(MetricsSnapshot snapshot) {
+        File filesDir = context.getFilesDir();
+        if (filesDir == null) {
+            return;
+        }
+        try {
+            // try-with-resources needs API 19.
+            Writer writer = new OutputStreamWriter(
+                    new FileOutputStream(new File(filesDir, METRICS_FILE_NAME)), "UTF-8");
+            try {
+                snapshot.writeTo(writer);
+            } finally {
+                writer.close();
+            }
+        } catch (IOException e) {
+            Logger.log(TAG, "Failed to write metrics: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Opens the journal of unsent batches left by a previous run. Runs on the uplink executor.
+     */
+    private void openFrameJournal() {
+        File filesDir = context.getFilesDir();
+        if (filesDir == null) {
+            return;
+        }
+        try {
+            frameJournal = FrameJournal.open(new File(filesDir, JOURNAL_FILE_NAME),
+                    BuildConfig.UPLINK_JOURNAL_MAX_BYTES);
+            locationUplink.setJournal(frameJournal);
+        } catch (IOException e) {
+            Logger.log(TAG, "Failed to open uplink journal, unsent batches will be lost: "
+                    + e.getMessage());
+        }
+    }
+
+    /**
+     * Switches the uplink to geofence transitions if the app files directory holds a
+     * {@link #GEOFENCE_FILE_NAME} list, see {@link GeofenceParser}. Runs on the uplink executor.
+     */
+    private void loadGeofences() {
+        File filesDir = context.getFilesDir();
+        if (filesDir == null) {
+            return;
+        }
+        File file = new File(filesDir, GEOFENCE_FILE_NAME);
+        if (!file.isFile()) {
+            return;
+        }
+        try {
+            List<Geofence> fences = readGeofences(file);
+            locationUplink.setGeofences(new GeofenceEngine(fences));
+            Logger.log(TAG, "Sending transitions of " + fences.size() + " geofences only");
+        } catch (IOException | IllegalArgumentException e) {
+            Logger.log(TAG, "Failed to load geofences, sending every location: "
+                    + e.getMessage());
+        }
+    }
+
+    private static List<Geofence> readGeofences(File file) throws IOException {
+        // try-with-resources needs API 19.
+        Reader reader = new InputStreamReader(new FileInputStream(file), "UTF-8");
+        try {
+            return GeofenceParser.parse(reader);
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Copies the fields the wire format carries into the reused {@link LocationFix}.
+     *
+     * @param location location reported by the tracker
+     * @return the reused fix
+     */
+    private LocationFix toLocationFix(Location location) {
+        fix.set(location.getLatitude(), location.getLongitude())
+                .setTime(location.getTime());
+        if (location.hasAccuracy()) {
+            fix.setAccuracy(location.getAccuracy());
+        }
+        if (location.hasSpeed()) {
+            fix.setSpeed(location.getSpeed());
+        }
+        if (location.hasBearing()) {
+            fix.setBearing(location.getBearing());
+        }
+        return fix;
+    }
+
+    /**
+     * Setter of {@link RightMeshConnector}, which also becomes the uplink transport.
+     *
+     * @param rightMeshConnector {@link RightMeshConnector}
+     */
+    public void setRightMeshConnector(RightMeshConnector rightMeshConnector) {
+        this.rightMeshConnector = rightMeshConnector;
+        locationUplink.setTransport(rightMeshConnector);
+    }
+
+    /**
+     * Sends what is still queued and the final metrics, then closes the RightMesh connection and
+     * the journal.
+     */
+    public void stop() {
+        // Queued after the fixes still waiting for the uplink executor.
+        locationUplink.stop();
+        if (metricsReporter != null) {
+            metricsReporter.stop();
+            uplinkExecutor.execute(metricsReporter::report);
+        }
+        // Queued after the last batch so it still goes out before the connection closes.
+        uplinkExecutor.execute(rightMeshConnector::stop);
+        uplinkExecutor.execute(this::closeFrameJournal);
+        uplinkExecutor.shutdown();
+    }
+
+    /**
+     * Closes the journal, keeping its backlog for the next run. Runs on the uplink executor.
+     */
+    private void closeFrameJournal() {
+        if (frameJournal == null) {
+            return;
+        }
+        locationUplink.setJournal(null);
+        try {
+            frameJournal.close();
+        } catch (IOException e) {
+            Logger.log(TAG, "Failed to close uplink journal: " + e.getMessage());
+        }
+        frameJournal = null;
+    }
+}
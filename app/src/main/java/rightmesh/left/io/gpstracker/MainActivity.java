@@ -2,11 +2,8 @@ package rightmesh.left.io.gpstracker;
 
 import static android.Manifest.permission.ACCESS_COARSE_LOCATION;
 import static android.Manifest.permission.ACCESS_FINE_LOCATION;
-import static android.widget.Toast.LENGTH_SHORT;
 
-import android.location.Location;
 import android.os.Bundle;
-import android.util.Log;
 import android.widget.TextView;
 import android.widget.Toast;
 
@@ -14,31 +11,29 @@ import androidx.annotation.NonNull;
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.lifecycle.ViewModelProviders;
 
-import com.google.android.gms.location.LocationAvailability;
-import com.google.android.gms.location.LocationCallback;
-import com.google.android.gms.location.LocationRequest;
-import com.google.android.gms.location.LocationResult;
-
 import io.left.rightmesh.util.Logger;
+
+import rightmesh.left.io.gpstracker.core.uplink.UplinkStatus;
 import rightmesh.left.io.gpstracker.utils.LocationTracker;
 import rightmesh.left.io.gpstracker.utils.PermissionUtil;
 
 /**
- * An activity that listens to GPS updates and reports them back to the RightMesh SuperPeer.
+ * An activity that starts tracking once the location permissions are granted and shows the state
+ * of the {@link TrackingService}, which reports the GPS updates to the RightMesh SuperPeer.
  */
 public class MainActivity extends AppCompatActivity {
     static final String TAG = MainActivity.class.getCanonicalName();
 
     TextView tvNotification;
 
-    LocationTracker locationUtil;
+    TextView tvUplinkStatus;
 
     private PermissionUtil permissionUtil;
 
     MainViewModel viewModel;
 
     /**
-     * Initializes references to androidMeshManager and sets up the GPS location listeners.
+     * Binds the views to the tracking state and asks for the location permissions.
      *
      * @param savedInstanceState data that can be used for instance recreation. Null if no state.
      */
@@ -48,53 +43,49 @@ public class MainActivity extends AppCompatActivity {
         setContentView(R.layout.activity_main);
 
         tvNotification = findViewById(R.id.tv_notification);
+        tvUplinkStatus = findViewById(R.id.tv_uplink_status);
 
-        initViewModel(savedInstanceState);
+        viewModel = ViewModelProviders.of(this).get(MainViewModel.class);
         observeViewModel();
 
         Logger.log(TAG, "ON CREATE");
 
-        locationUtil = new LocationTracker(this, getLifecycle())
-                .setInterval(1000)
-                .setFastestInterval(500)
-                .setPriority(LocationRequest.PRIORITY_HIGH_ACCURACY);
-
         askPermission();
+        permissionUtil.check();
     }
 
     /**
-     * Init viewmodel.
-     *
-     * @param savedInstanceState savedInstanceState – If the activity is being re-initialized after
-     *                           previously being shut down then this Bundle contains the data it
-     *                           most recently supplied in
+     * Binding data from the tracking service to UI, once the view model is bound to it.
      */
-    private void initViewModel(Bundle savedInstanceState) {
-        viewModel = ViewModelProviders.of(this).get(MainViewModel.class);
-        if (savedInstanceState == null) {
-            viewModel.init();
-        }
+    private void observeViewModel() {
+        viewModel.liveDataLocationReporter.observe(this, locationReporter -> {
+            if (locationReporter != null) {
+                observeLocationReporter(locationReporter);
+            }
+        });
     }
 
-    /**
-     * Binding data from viewmodel to UI.
-     */
-    private void observeViewModel() {
-        viewModel.liveDataNotificationText.observe(this, notificationText -> {
+    private void observeLocationReporter(LocationReporter locationReporter) {
+        locationReporter.liveDataNotificationText.observe(this, notificationText -> {
             tvNotification.setText(notificationText);
         });
-        viewModel.liveDataMsgToast.observe(this, msg -> {
-            Toast.makeText(
-                    getApplicationContext(),
-                    msg,
-                    LENGTH_SHORT
-            ).show();
-        });
-        viewModel.liveDataPeerChangeEvent.observe(this, rightMeshEvent -> {
-            permissionUtil.check();
+        // Posted at a bounded rate, whatever the location sampling rate.
+        locationReporter.liveDataUplinkStatus.observe(this, this::showUplinkStatus);
+        locationReporter.liveDataLocationAvailable.observe(this, available -> {
+            if (!available && !LocationTracker.isLocationProviderAvailable(
+                    getApplicationContext())) {
+                LocationTracker.showDialogEnableGps(this);
+            }
         });
     }
 
+    private void showUplinkStatus(UplinkStatus status) {
+        tvUplinkStatus.setText(getString(R.string.uplink_status,
+                status.getSentFixes(), status.getQueuedFixes(), status.getBacklogFrames(),
+                status.getFailedFrames(), status.getReplayedFrames(),
+                status.getDroppedFixes(), status.getLastSendMillis()));
+    }
+
     /**
      * Ask ACCESS_FINE_LOCATION, ACCESS_COARSE_LOCATION. If granted, request update location.
      */
@@ -105,13 +96,7 @@ public class MainActivity extends AppCompatActivity {
                 .callback(new PermissionUtil.PermissionCallback() {
                     @Override
                     public void onAllGranted() {
-                        registerLocationListener();
-                        locationUtil.getLastLocation(
-                                location -> {
-                                    viewModel.sendLocationToSuperPeer(location);
-                                }, e -> {
-                                    Log.e(TAG, e.toString());
-                                });
+                        viewModel.startTracking();
                     }
 
                     @Override
@@ -137,34 +122,4 @@ public class MainActivity extends AppCompatActivity {
                                            int[] grantResults) {
         permissionUtil.handleResult(requestCode, permissions, grantResults);
     }
-
-    /**
-     * Spins on permissions checks and does not progress to registering
-     * a LocationListener unless the user allows.
-     * Then registers the listener (we only care about location change here).
-     */
-    void registerLocationListener() {
-        locationUtil.requestLocationUpdate(new LocationCallback() {
-            @Override
-            public void onLocationAvailability(LocationAvailability locationAvailability) {
-                if (locationAvailability.isLocationAvailable()) {
-                    tvNotification.setText(getString(R.string.sending_your_gps_to_app_superpeer));
-                } else {
-                    tvNotification.setText(getString(R.string.location_is_unavailable));
-                    if (!locationUtil.isLocationProviderAvailable(getApplicationContext())) {
-                        locationUtil.showDialogEnableGps();
-                    }
-                }
-            }
-
-            @Override
-            public void onLocationResult(LocationResult locationResult) {
-                Log.d(TAG, "Get Location");
-                Location location = locationResult.getLastLocation();
-                if (location != null) {
-                    viewModel.sendLocationToSuperPeer(location);
-                }
-            }
-        });
-    }
 }
@@ -1,122 +1,114 @@
 package rightmesh.left.io.gpstracker;
 
 import android.app.Application;
-import android.location.Location;
-import android.util.Log;
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.Intent;
+import android.content.ServiceConnection;
+import android.os.IBinder;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.VisibleForTesting;
+import androidx.core.content.ContextCompat;
 import androidx.lifecycle.AndroidViewModel;
 import androidx.lifecycle.MutableLiveData;
-
-import io.left.rightmesh.id.MeshId;
-import io.left.rightmesh.mesh.MeshManager;
-import io.left.rightmesh.util.Logger;
-import io.left.rightmesh.util.RightMeshException;
-
-import java.nio.ByteBuffer;
+import androidx.lifecycle.Observer;
 
 import javax.annotation.CheckReturnValue;
 
+/**
+ * Binds the UI to the {@link TrackingService}. The binding uses the application context, so it
+ * survives configuration changes and only ends once the activity is finished for good, or the
+ * service stops tracking.
+ */
 public class MainViewModel extends AndroidViewModel {
 
-    private static final String TAG = MainViewModel.class.getCanonicalName();
-
-    private static final int DOUBLE_NUM_BYTES = Double.SIZE / Byte.SIZE;
-
-    private RightMeshConnector rightMeshConnector;
+    private boolean bound;
 
-    public MutableLiveData<String> liveDataNotificationText = new MutableLiveData<>();
-    public MutableLiveData<String> liveDataMsgToast = new MutableLiveData<>();
-    public MutableLiveData<MeshManager.RightMeshEvent>
-            liveDataPeerChangeEvent = new MutableLiveData<>();
+    // Null unless connected to the service.
+    private TrackingService trackingService;
 
-    public MainViewModel(@NonNull Application application) {
-        super(application);
-    }
+    // Null until the service is bound, or once it is gone.
+    public MutableLiveData<LocationReporter> liveDataLocationReporter = new MutableLiveData<>();
 
-    public void init() {
-        initRightMeshConnector();
-    }
+    // Unbinds once the service stops tracking, or it would be kept alive by the binding.
+    private final Observer<Boolean> trackingObserver = tracking -> {
+        if (Boolean.FALSE.equals(tracking)) {
+            unbind();
+        }
+    };
+
+    private final ServiceConnection serviceConnection = new ServiceConnection() {
+        @Override
+        public void onServiceConnected(ComponentName name, IBinder service) {
+            trackingService = ((TrackingService.LocalBinder) service).getService();
+            liveDataLocationReporter.setValue(trackingService.getLocationReporter());
+            trackingService.liveDataTracking.observeForever(trackingObserver);
+        }
 
-    /**
-     * Init {@link RightMeshConnector}.
-     */
-    private void initRightMeshConnector() {
-        rightMeshConnector = buildRightMeshConnector();
-        rightMeshConnector.setOnConnectSuccessListener(meshId ->
-                liveDataNotificationText.setValue(
-                        getApplication().getString(R.string.fetching_location))
-        );
-        rightMeshConnector.setOnPeerChangedListener(event -> {
-            /**
-             * If the mesh state change is a SUCCESS bind to our MESH_PORT.
-             * Registers a listener on PEER_CHANGED event to register our LocationListener;
-             * we assume at this point the Mesh service is available and running.
-             * Finally we send our current location to our SuperPeer.
-             */
-            liveDataPeerChangeEvent.postValue(event); //postValue to UI thread
-        });
-        rightMeshConnector.connect(getApplication(), BuildConfig.SUPER_PEER_URL);
-    }
+        @Override
+        public void onServiceDisconnected(ComponentName name) {
+            stopObservingService();
+            liveDataLocationReporter.setValue(null);
+        }
+    };
 
     /**
-     * Build RightmeshConnector (to mock easier).
+     * Constructor {@link MainViewModel}.
      *
-     * @return new {@link RightMeshConnector}
+     * @param application the application
      */
-    @VisibleForTesting(otherwise = VisibleForTesting.PRIVATE)
-    @CheckReturnValue
-    RightMeshConnector buildRightMeshConnector() {
-        return new RightMeshConnector(BuildConfig.MESH_PORT);
+    public MainViewModel(@NonNull Application application) {
+        super(application);
     }
 
     /**
-     * Fills a buffer with just lat and long double values, and sends
-     * to the super peer assuming it runs on the same mesh port as us.
-     *
-     * @param location location that will be sent over RightMesh to the SuperPeer
+     * Starts the {@link TrackingService} in the foreground, where it keeps running once the
+     * activity is gone, and binds to it. Call once the location permissions are granted, or to
+     * start again after tracking was stopped.
      */
-    public void sendLocationToSuperPeer(Location location) {
-        if (location == null) {
-            Log.d(TAG, "location is null");
+    public void startTracking() {
+        if (bound) {
             return;
         }
-
-        liveDataNotificationText.setValue(getApplication()
-                .getString(R.string.sending_your_gps_to_app_superpeer));
-
-        ByteBuffer buffer = ByteBuffer.allocate(DOUBLE_NUM_BYTES + DOUBLE_NUM_BYTES);
-        buffer.putDouble(location.getLatitude());
-        buffer.putDouble(location.getLongitude());
-        try {
-            // TODO: fill in with your local SuperPeer MeshId
-            MeshId hardcodedSuperPeerId = MeshId.fromString(BuildConfig.SUPER_PEER_ID);
-            int dataId = rightMeshConnector.sendDataReliable(hardcodedSuperPeerId,
-                    buffer.array());
-            Logger.log(TAG, "Sent to dataID: " + dataId);
-        } catch (RightMeshException e) {
-            Logger.log(TAG, "Failed to send location: " + location.toString());
-        }
-        liveDataMsgToast.setValue("Sent lat: "
-                + location.getLatitude()
-                + ", long: "
-                + location.getLongitude()
-                + " to SuperPeer");
+        Intent intent = buildTrackingServiceIntent();
+        ContextCompat.startForegroundService(getApplication(), intent);
+        bound = getApplication().bindService(intent, serviceConnection,
+                Context.BIND_AUTO_CREATE);
     }
 
     /**
-     * Setter of {@link RightMeshConnector}.
+     * Build the intent starting the {@link TrackingService} (to mock easier).
      *
-     * @param rightMeshConnector {@link RightMeshConnector}
+     * @return new {@link Intent}
      */
-    public void setRightMeshConnector(RightMeshConnector rightMeshConnector) {
-        this.rightMeshConnector = rightMeshConnector;
+    @VisibleForTesting(otherwise = VisibleForTesting.PRIVATE)
+    @CheckReturnValue
+    Intent buildTrackingServiceIntent() {
+        return new Intent(getApplication(), TrackingService.class);
     }
 
     @Override
     protected void onCleared() {
         super.onCleared();
-        rightMeshConnector.stop();
+        // The started service keeps tracking.
+        unbind();
+    }
+
+    private void unbind() {
+        if (!bound) {
+            return;
+        }
+        stopObservingService();
+        getApplication().unbindService(serviceConnection);
+        bound = false;
+        liveDataLocationReporter.setValue(null);
+    }
+
+    private void stopObservingService() {
+        if (trackingService != null) {
+            trackingService.liveDataTracking.removeObserver(trackingObserver);
+            trackingService = null;
+        }
     }
 }
@@ -13,6 +13,17 @@ import io.left.rightmesh.mesh.MeshStateListener;
 import io.left.rightmesh.util.Logger;
 import io.left.rightmesh.util.RightMeshException;
 
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import rightmesh.left.io.gpstracker.core.transport.Backoff;
+import rightmesh.left.io.gpstracker.core.transport.MeshTransport;
+import rightmesh.left.io.gpstracker.core.transport.TransportException;
+
 /**
  * To communicate with the RightMesh service and redirect to RightMesh wallet activity.
  *
@@ -21,11 +32,42 @@ import io.left.rightmesh.util.RightMeshException;
  *
  * Always call {@link RightMeshConnector#stop()} if not interest in keeping connection with
  * RightMesh service anymore.
+ *
+ * It is also the {@link MeshTransport} of the uplink, which addresses peers by the string form of
+ * their {@link MeshId}.
+ *
+ * Next hops looked up for {@link #sendDataReliable(MeshId, byte[])} are cached until a peer
+ * changes, a send fails or the route TTL expires, saving a round trip to the mesh service per
+ * send.
+ *
+ * With a reconnect executor set, the connection to the RightMesh service is resumed
+ * automatically with exponential backoff after it fails or disconnects. A connection disabled
+ * on purpose, or closed by {@link #stop()}, is left alone.
  */
-public class RightMeshConnector implements MeshStateListener {
+public class RightMeshConnector implements MeshStateListener, MeshTransport {
     private static final String TAG = RightMeshConnector.class.getCanonicalName();
 
+    static final long DEFAULT_ROUTE_TTL_MS = 30000;
+
+    static final long RECONNECT_INITIAL_DELAY_MS = 1000;
+    static final long RECONNECT_MAX_DELAY_MS = 60000;
+
     private final int meshPort;
+    private final long routeTtlMillis;
+
+    // Next hop and expiry time per target, guarded by itself.
+    private final Map<MeshId, Route> routes = new HashMap<>();
+    // Parsed transport peer ids, kept for the lifetime of the connection; guarded by itself.
+    private final Map<String, MeshId> meshIds = new HashMap<>();
+
+    // Delays between reconnect attempts; guarded by this.
+    private final Backoff reconnectBackoff =
+            new Backoff(RECONNECT_INITIAL_DELAY_MS, RECONNECT_MAX_DELAY_MS);
+    // Null to leave reconnecting to the caller.
+    private ScheduledExecutorService reconnectExecutor;
+    // Pending reconnect attempt; guarded by this.
+    private Future<?> reconnectTask;
+    private volatile boolean stopped;
 
     // Interface object for the RightMesh library.
     private AndroidMeshManager androidMeshManager;
@@ -36,6 +78,8 @@ public class RightMeshConnector implements MeshStateListener {
     private OnPeerChangedListener peerchangedListener;
     //listener for my MeshId receiving event
     private OnConnectSuccessListener connectSuccessListener;
+    //listener for the uplink
+    private OnTransportEventListener transportListener;
 
     /**
      * Data Receive Listener.
@@ -58,13 +102,37 @@ public class RightMeshConnector implements MeshStateListener {
         void onConnectSucess(MeshId meshId);
     }
 
+    /**
+     * Cached next hop towards a target.
+     */
+    private static class Route {
+        final MeshId nextHop;
+        final long expiresAtMillis;
+
+        Route(MeshId nextHop, long expiresAtMillis) {
+            this.nextHop = nextHop;
+            this.expiresAtMillis = expiresAtMillis;
+        }
+    }
+
     /**
      * Constructor {@link RightMeshConnector}.
      *
      * @param meshPort Rightmesh Port
      */
     public RightMeshConnector(int meshPort) {
+        this(meshPort, DEFAULT_ROUTE_TTL_MS);
+    }
+
+    /**
+     * Constructor {@link RightMeshConnector}.
+     *
+     * @param meshPort       Rightmesh Port
+     * @param routeTtlMillis how long a next hop is reused before it is looked up again
+     */
+    public RightMeshConnector(int meshPort, long routeTtlMillis) {
         this.meshPort = meshPort;
+        this.routeTtlMillis = routeTtlMillis;
     }
 
     /**
@@ -86,6 +154,19 @@ public class RightMeshConnector implements MeshStateListener {
      */
     @Override
     public void meshStateChanged(MeshId meshId, int state) {
+        invalidateRoutes();
+        if (state == FAILURE) {
+            scheduleReconnect();
+        } else {
+            // Up again, or disabled on purpose: nothing to resume.
+            cancelReconnect();
+        }
+        String localId = meshId != null ? meshId.toString() : null;
+        if (state == RESUME && transportListener != null) {
+            transportListener.onStateChanged(localId, true);
+        } else if (state != SUCCESS && transportListener != null) {
+            transportListener.onStateChanged(localId, false);
+        }
         if (state == SUCCESS) {
             try {
                 // Attempt to bind to a port.
@@ -101,12 +182,32 @@ public class RightMeshConnector implements MeshStateListener {
                     if (dataReceiveListener != null) {
                         dataReceiveListener.onDataReceive(event);
                     }
+                    if (transportListener != null
+                            && event instanceof MeshManager.DataReceivedEvent) {
+                        MeshManager.DataReceivedEvent dataEvent =
+                                (MeshManager.DataReceivedEvent) event;
+                        transportListener.onDataReceived(dataEvent.peerUuid.toString(),
+                                dataEvent.data);
+                    }
                 });
                 androidMeshManager.on(PEER_CHANGED, event -> {
+                    // Any topology change may move the best next hop.
+                    invalidateRoutes();
                     if (peerchangedListener != null) {
                         peerchangedListener.onPeerChange(event);
                     }
+                    if (transportListener != null
+                            && event instanceof MeshManager.PeerChangedEvent) {
+                        MeshManager.PeerChangedEvent peerEvent =
+                                (MeshManager.PeerChangedEvent) event;
+                        transportListener.onPeerChanged(peerEvent.peerUuid.toString(),
+                                toTransportPeerState(peerEvent.state));
+                    }
                 });
+
+                if (transportListener != null) {
+                    transportListener.onStateChanged(localId, true);
+                }
             } catch (RightMeshException.RightMeshServiceDisconnectedException sde) {
                 Log.e(TAG, "Service disconnected while binding, with message: "
                         + sde.getMessage());
@@ -116,6 +217,16 @@ public class RightMeshConnector implements MeshStateListener {
         }
     }
 
+    /**
+     * Resume the RightMesh connection automatically after it fails or disconnects, waiting
+     * longer after each failed attempt.
+     *
+     * @param executor executor running the reconnect attempts, owned by the caller
+     */
+    public void setReconnectExecutor(ScheduledExecutorService executor) {
+        this.reconnectExecutor = executor;
+    }
+
     /**
      * Set listener for data receive event.
      *
@@ -143,6 +254,16 @@ public class RightMeshConnector implements MeshStateListener {
         this.connectSuccessListener = listener;
     }
 
+    /**
+     * Set listener for the {@link MeshTransport} events.
+     *
+     * @param listener a callback
+     */
+    @Override
+    public void setOnTransportEventListener(OnTransportEventListener listener) {
+        this.transportListener = listener;
+    }
+
     /**
      * Navigate to Rightmesh Wallet app.
      *
@@ -153,7 +274,7 @@ public class RightMeshConnector implements MeshStateListener {
     }
 
     /**
-     * Send data to target device.
+     * Send data to target device through its cached next hop.
      *
      * @param targetMeshId Target meshId.
      * @param payload      data need to send.
@@ -163,14 +284,153 @@ public class RightMeshConnector implements MeshStateListener {
      */
     public int sendDataReliable(MeshId targetMeshId, byte[] payload) throws RightMeshException,
             RightMeshException.RightMeshServiceDisconnectedException {
-        return androidMeshManager.sendDataReliable(androidMeshManager.getNextHopPeer(targetMeshId),
-                meshPort, payload);
+        try {
+            return androidMeshManager.sendDataReliable(getNextHopPeer(targetMeshId),
+                    meshPort, payload);
+        } catch (RightMeshException.RightMeshServiceDisconnectedException e) {
+            invalidateRoute(targetMeshId);
+            scheduleReconnect();
+            throw e;
+        } catch (RightMeshException e) {
+            // The cached hop may be gone: look it up again on the next send.
+            invalidateRoute(targetMeshId);
+            throw e;
+        }
+    }
+
+    /**
+     * Send data to a peer identified by the string form of its {@link MeshId}.
+     *
+     * @param peerId  Target peer id.
+     * @param payload data need to send.
+     * @return Data Id
+     * @throws TransportException RightMesh did not accept the payload.
+     */
+    @Override
+    public int send(String peerId, byte[] payload) throws TransportException {
+        try {
+            return sendDataReliable(getMeshId(peerId), payload);
+        } catch (RightMeshException e) {
+            throw new TransportException("Failed to send to " + peerId, e);
+        }
+    }
+
+    private MeshId getMeshId(String peerId) {
+        synchronized (meshIds) {
+            MeshId meshId = meshIds.get(peerId);
+            if (meshId == null) {
+                meshId = MeshId.fromString(peerId);
+                meshIds.put(peerId, meshId);
+            }
+            return meshId;
+        }
+    }
+
+    private static int toTransportPeerState(int state) {
+        switch (state) {
+            case MeshManager.ADDED:
+                return PEER_ADDED;
+            case MeshManager.REMOVED:
+                return PEER_REMOVED;
+            default:
+                return PEER_UPDATED;
+        }
+    }
+
+    /**
+     * Get the next hop towards a target, asking the mesh service only if no live route is cached.
+     *
+     * @param targetMeshId Target meshId.
+     * @return next hop peer
+     * @throws RightMeshException Can't find next hop.
+     */
+    private MeshId getNextHopPeer(MeshId targetMeshId) throws RightMeshException {
+        long nowMillis = nowMillis();
+        synchronized (routes) {
+            Route route = routes.get(targetMeshId);
+            if (route != null && nowMillis < route.expiresAtMillis) {
+                return route.nextHop;
+            }
+        }
+        MeshId nextHop = androidMeshManager.getNextHopPeer(targetMeshId);
+        if (nextHop != null) {
+            synchronized (routes) {
+                routes.put(targetMeshId, new Route(nextHop, nowMillis + routeTtlMillis));
+            }
+        }
+        return nextHop;
+    }
+
+    private void invalidateRoute(MeshId targetMeshId) {
+        synchronized (routes) {
+            routes.remove(targetMeshId);
+        }
+    }
+
+    private void invalidateRoutes() {
+        synchronized (routes) {
+            routes.clear();
+        }
+    }
+
+    /**
+     * Schedule a reconnect attempt after the next backoff delay, unless one is pending.
+     */
+    private synchronized void scheduleReconnect() {
+        if (reconnectExecutor == null || stopped || reconnectTask != null) {
+            return;
+        }
+        long delayMillis = reconnectBackoff.nextDelayMillis();
+        Logger.log(TAG, "Reconnecting to RightMesh in " + delayMillis + " ms, attempt "
+                + reconnectBackoff.getAttempts());
+        try {
+            reconnectTask = reconnectExecutor.schedule(this::reconnect, delayMillis,
+                    TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // Shutting down.
+        }
+    }
+
+    /**
+     * Ask the RightMesh service to resume; the outcome arrives in
+     * {@link #meshStateChanged(MeshId, int)}.
+     */
+    private void reconnect() {
+        synchronized (this) {
+            reconnectTask = null;
+            if (stopped) {
+                return;
+            }
+        }
+        try {
+            androidMeshManager.resume();
+        } catch (RightMeshException e) {
+            Log.e(TAG, "Failed to resume RightMesh: " + e.getMessage());
+            scheduleReconnect();
+        }
+    }
+
+    /**
+     * Cancel any pending attempt; the next outage starts over from the initial delay.
+     */
+    private synchronized void cancelReconnect() {
+        reconnectBackoff.reset();
+        if (reconnectTask != null) {
+            reconnectTask.cancel(false);
+            reconnectTask = null;
+        }
+    }
+
+    private static long nowMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime());
     }
 
     /**
-     * Close RightMesh connection.
+     * Close RightMesh connection and stop reconnecting.
      */
     public void stop() {
+        stopped = true;
+        cancelReconnect();
         try {
             androidMeshManager.stop();
         } catch (RightMeshException.RightMeshServiceDisconnectedException e) {
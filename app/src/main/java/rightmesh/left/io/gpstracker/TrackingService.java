@@ -0,0 +1,226 @@
+package rightmesh.left.io.gpstracker;
+
+import android.app.Notification;
+import android.app.NotificationChannel;
+import android.app.NotificationManager;
+import android.app.PendingIntent;
+import android.content.Context;
+import android.content.Intent;
+import android.location.Location;
+import android.os.Binder;
+import android.os.Build;
+import android.os.IBinder;
+import android.util.Log;
+
+import androidx.core.app.NotificationCompat;
+import androidx.lifecycle.LifecycleService;
+import androidx.lifecycle.MutableLiveData;
+
+import com.google.android.gms.location.LocationAvailability;
+import com.google.android.gms.location.LocationCallback;
+import com.google.android.gms.location.LocationResult;
+
+import io.left.rightmesh.util.Logger;
+
+import java.util.List;
+
+import rightmesh.left.io.gpstracker.utils.AdaptiveLocationScheduler;
+import rightmesh.left.io.gpstracker.utils.LocationTracker;
+
+/**
+ * Foreground service that tracks the device and reports its locations to the SuperPeer.
+ *
+ * <p>It owns the {@link LocationTracker} and the {@link LocationReporter}, and with it the
+ * RightMesh connection and the uplink queue, so rotating, backgrounding or closing the activity
+ * neither stops tracking nor reconnects to the mesh. Activities bind to it to show its state.
+ * Start it once the location permissions are granted; it runs until stopped from its
+ * notification, which bound activities learn from {@link #liveDataTracking} so they unbind and
+ * let it be destroyed.
+ */
+public class TrackingService extends LifecycleService {
+    static final String TAG = TrackingService.class.getCanonicalName();
+
+    static final String ACTION_STOP = "rightmesh.left.io.gpstracker.action.STOP_TRACKING";
+
+    private static final int NOTIFICATION_ID = 1;
+    private static final String NOTIFICATION_CHANNEL_ID = "tracking";
+
+    private final IBinder binder = new LocalBinder();
+
+    private LocationReporter locationReporter;
+
+    private LocationTracker locationTracker;
+
+    private AdaptiveLocationScheduler locationScheduler;
+
+    private boolean tracking;
+
+    // False once tracking was stopped from the notification.
+    public MutableLiveData<Boolean> liveDataTracking = new MutableLiveData<>();
+
+    /**
+     * Gives activities in this process direct access to the service.
+     */
+    public class LocalBinder extends Binder {
+        public TrackingService getService() {
+            return TrackingService.this;
+        }
+    }
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        Logger.log(TAG, "ON CREATE");
+        startReporter();
+        // Observes the service lifecycle: updates are removed when the service is destroyed.
+        locationTracker = new LocationTracker(this, getLifecycle())
+                .setInterval(AdaptiveLocationScheduler.MOVING_INTERVAL)
+                .setFastestInterval(AdaptiveLocationScheduler.MOVING_FASTEST_INTERVAL)
+                .setPriority(AdaptiveLocationScheduler.MOVING_PRIORITY)
+                .setMaxWaitTime(BuildConfig.LOCATION_MAX_WAIT_MS);
+        locationScheduler = new AdaptiveLocationScheduler(locationTracker);
+    }
+
+    /**
+     * Moves the service to the foreground and starts tracking, or stops it on
+     * {@link #ACTION_STOP}.
+     *
+     * @param intent  intent the service was started with, null if restarted by the system
+     * @param flags   start flags
+     * @param startId start request id
+     * @return {@link #START_STICKY}, so the system restarts tracking after killing the process
+     */
+    @Override
+    public int onStartCommand(Intent intent, int flags, int startId) {
+        super.onStartCommand(intent, flags, startId);
+        if (intent != null && ACTION_STOP.equals(intent.getAction())) {
+            stopTracking();
+            stopForeground(true);
+            stopSelf();
+            return START_NOT_STICKY;
+        }
+        startForeground(NOTIFICATION_ID, buildNotification());
+        if (locationReporter == null) {
+            // Started again before the stopped instance was destroyed.
+            startReporter();
+        }
+        startTracking();
+        return START_STICKY;
+    }
+
+    @Override
+    public IBinder onBind(Intent intent) {
+        super.onBind(intent);
+        return binder;
+    }
+
+    @Override
+    public void onDestroy() {
+        Logger.log(TAG, "ON DESTROY");
+        // Location updates are removed by the tracker as the lifecycle reaches ON_DESTROY.
+        super.onDestroy();
+        stopTracking();
+    }
+
+    /**
+     * The reporter sending this device's locations.
+     *
+     * @return reporter, null once tracking was stopped
+     */
+    public LocationReporter getLocationReporter() {
+        return locationReporter;
+    }
+
+    private void startReporter() {
+        locationReporter = new LocationReporter(getApplicationContext());
+        locationReporter.start();
+    }
+
+    /**
+     * Requests location updates and sends the last known location, once per service instance.
+     */
+    private void startTracking() {
+        if (tracking) {
+            return;
+        }
+        tracking = true;
+        liveDataTracking.setValue(true);
+        locationTracker.requestLocationUpdate(new LocationCallback() {
+            @Override
+            public void onLocationAvailability(LocationAvailability locationAvailability) {
+                if (!tracking) {
+                    return;
+                }
+                locationReporter.setLocationAvailable(
+                        locationAvailability.isLocationAvailable());
+            }
+
+            @Override
+            public void onLocationResult(LocationResult locationResult) {
+                if (!tracking) {
+                    return;
+                }
+                Log.d(TAG, "Get Location");
+                // With a max wait time, one result carries every fix taken since the last one.
+                List<Location> locations = locationResult.getLocations();
+                for (int i = 0; i < locations.size(); i++) {
+                    locationScheduler.onLocation(locations.get(i));
+                }
+                locationReporter.sendLocationsToSuperPeer(locations);
+            }
+        });
+        locationTracker.getLastLocation(
+                location -> {
+                    if (tracking) {
+                        locationReporter.sendLocationToSuperPeer(location);
+                    }
+                }, e -> {
+                    Log.e(TAG, e.toString());
+                });
+    }
+
+    /**
+     * Removes location updates and stops the reporter, which sends what is still queued and
+     * leaves the mesh. Bound view models are told to unbind, so the service can be destroyed.
+     */
+    private void stopTracking() {
+        if (locationReporter == null) {
+            return;
+        }
+        tracking = false;
+        locationTracker.removeLocationUpdate();
+        locationReporter.stop();
+        locationReporter = null;
+        liveDataTracking.setValue(false);
+    }
+
+    /**
+     * Build the ongoing notification a foreground service must show, which opens the activity
+     * and can stop tracking.
+     *
+     * @return notification
+     */
+    private Notification buildNotification() {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            NotificationManager notificationManager =
+                    (NotificationManager) getSystemService(Context.NOTIFICATION_SERVICE);
+            notificationManager.createNotificationChannel(new NotificationChannel(
+                    NOTIFICATION_CHANNEL_ID,
+                    getString(R.string.tracking_notification_channel),
+                    NotificationManager.IMPORTANCE_LOW));
+        }
+        PendingIntent openActivity = PendingIntent.getActivity(this, 0,
+                new Intent(this, MainActivity.class), 0);
+        PendingIntent stopTracking = PendingIntent.getService(this, 0,
+                new Intent(this, TrackingService.class).setAction(ACTION_STOP), 0);
+        return new NotificationCompat.Builder(this, NOTIFICATION_CHANNEL_ID)
+                .setContentTitle(getString(R.string.tracking_notification_title))
+                .setContentText(getString(R.string.sending_your_gps_to_app_superpeer))
+                .setSmallIcon(R.mipmap.ic_launcher)
+                .setOngoing(true)
+                .setPriority(NotificationCompat.PRIORITY_LOW)
+                .setContentIntent(openActivity)
+                .addAction(0, getString(R.string.stop_tracking), stopTracking)
+                .build();
+    }
+}
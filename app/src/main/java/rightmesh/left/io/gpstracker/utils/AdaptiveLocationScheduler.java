@@ -0,0 +1,85 @@
+package rightmesh.left.io.gpstracker.utils;
+
+import android.location.Location;
+
+import androidx.annotation.RestrictTo;
+import androidx.annotation.VisibleForTesting;
+
+import com.google.android.gms.location.LocationRequest;
+
+import rightmesh.left.io.gpstracker.core.sampling.MotionDetector;
+import rightmesh.left.io.gpstracker.core.sampling.MotionDetector.Motion;
+
+/**
+ * Adapts the {@link LocationTracker} request to how the device moves.
+ *
+ * <p>While moving, fixes are requested at a high rate with high accuracy. Once the device has
+ * stayed in place for a while, the request backs off to long, balanced-power intervals, and it
+ * ramps back up as soon as a fix shows movement again.
+ */
+public class AdaptiveLocationScheduler {
+    public static final int MOVING_INTERVAL = 1000;
+    public static final int MOVING_FASTEST_INTERVAL = 500;
+    public static final int MOVING_PRIORITY = LocationRequest.PRIORITY_HIGH_ACCURACY;
+
+    static final int STATIONARY_INTERVAL = 30000;
+    static final int STATIONARY_FASTEST_INTERVAL = 15000;
+    static final int STATIONARY_PRIORITY = LocationRequest.PRIORITY_BALANCED_POWER_ACCURACY;
+
+    private static final double STILL_RADIUS_METERS = 20;
+    private static final float MOVING_SPEED_METERS_PER_SECOND = 1.0f;
+    private static final long STILL_DWELL_MILLIS = 60000;
+
+    private final LocationTracker locationTracker;
+    private final MotionDetector motionDetector;
+
+    /**
+     * Constructor {@link AdaptiveLocationScheduler}.
+     *
+     * @param locationTracker tracker whose request is adapted, configured with the moving profile
+     */
+    public AdaptiveLocationScheduler(LocationTracker locationTracker) {
+        this(locationTracker, new MotionDetector(STILL_RADIUS_METERS,
+                MOVING_SPEED_METERS_PER_SECOND, STILL_DWELL_MILLIS));
+    }
+
+    /**
+     * Constructor to avoid dependency (only using for testing purpose).
+     *
+     * @param locationTracker mock LocationTracker
+     * @param motionDetector  motion detector
+     */
+    @VisibleForTesting
+    @RestrictTo(RestrictTo.Scope.TESTS)
+    public AdaptiveLocationScheduler(LocationTracker locationTracker,
+                                     MotionDetector motionDetector) {
+        this.locationTracker = locationTracker;
+        this.motionDetector = motionDetector;
+    }
+
+    /**
+     * Feed a fix from the tracker, re-issuing the request if the motion state changed.
+     *
+     * @param location latest fix
+     */
+    public void onLocation(Location location) {
+        Motion previous = motionDetector.getMotion();
+        Motion current = motionDetector.onFix(location.getLatitude(),
+                location.getLongitude(),
+                location.hasAccuracy() ? location.getAccuracy() : 0f,
+                location.hasSpeed() ? location.getSpeed() : 0f,
+                location.getTime());
+        if (current == previous) {
+            return;
+        }
+        if (current == Motion.MOVING) {
+            locationTracker.updateLocationRequest(MOVING_INTERVAL,
+                    MOVING_FASTEST_INTERVAL,
+                    MOVING_PRIORITY);
+        } else {
+            locationTracker.updateLocationRequest(STATIONARY_INTERVAL,
+                    STATIONARY_FASTEST_INTERVAL,
+                    STATIONARY_PRIORITY);
+        }
+    }
+}
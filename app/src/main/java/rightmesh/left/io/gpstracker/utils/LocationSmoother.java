@@ -0,0 +1,116 @@
+package rightmesh.left.io.gpstracker.utils;
+
+import android.location.Location;
+
+import androidx.annotation.RestrictTo;
+import androidx.annotation.VisibleForTesting;
+
+import rightmesh.left.io.gpstracker.core.codec.LocationFix;
+import rightmesh.left.io.gpstracker.core.filter.PositionKalmanFilter;
+
+/**
+ * Smooths the fixes of the {@link LocationTracker} before they are uplinked.
+ *
+ * <p>Fixes less accurate than the limit, and jumps the recent track cannot explain, are dropped.
+ * Every other fix is replaced by the filtered estimate, with the estimated accuracy, speed and
+ * bearing. Runs on the location callback: no allocation and constant time per fix.
+ *
+ * <p>A stationary device asks for balanced-power fixes, which are often less accurate than the
+ * limit. So that such a device still reports where it is, a fix too coarse for the filter is
+ * passed on as a heartbeat once no fix passed for the heartbeat interval. A heartbeat leaves the
+ * filter untouched and goes out as it came: with its own accuracy, worse than the limit or
+ * missing, and without speed or bearing.
+ */
+public class LocationSmoother {
+    // Jumps beyond three standard deviations of the predicted position are outliers.
+    private static final double GATE_SIGMAS = 3;
+    // Typical acceleration of a walker or a vehicle in traffic.
+    private static final double ACCELERATION_NOISE = 2;
+    // Ten rejected fixes in a row means the track really moved, e.g. out of a tunnel.
+    private static final int MAX_CONSECUTIVE_REJECTIONS = 10;
+
+    private final PositionKalmanFilter filter;
+    private final float maxAccuracyMeters;
+    private final long heartbeatIntervalMillis;
+
+    // Time of the last fix passed on, smoothed or as a heartbeat.
+    private long lastPassedMillis;
+    private boolean passedAny;
+    private long heartbeatCount;
+
+    /**
+     * Constructor {@link LocationSmoother}.
+     *
+     * @param maxAccuracyMeters       fixes with a worse accuracy are dropped, except heartbeats
+     * @param heartbeatIntervalMillis time without a fix passed on before a coarse fix is
+     */
+    public LocationSmoother(float maxAccuracyMeters, long heartbeatIntervalMillis) {
+        this(new PositionKalmanFilter(maxAccuracyMeters, GATE_SIGMAS, ACCELERATION_NOISE,
+                MAX_CONSECUTIVE_REJECTIONS), maxAccuracyMeters, heartbeatIntervalMillis);
+    }
+
+    /**
+     * Constructor to avoid dependency (only using for testing purpose).
+     *
+     * @param filter                  filter
+     * @param maxAccuracyMeters       accuracy limit the filter was built with
+     * @param heartbeatIntervalMillis time without a fix passed on before a coarse fix is
+     */
+    @VisibleForTesting
+    @RestrictTo(RestrictTo.Scope.TESTS)
+    public LocationSmoother(PositionKalmanFilter filter, float maxAccuracyMeters,
+                            long heartbeatIntervalMillis) {
+        this.filter = filter;
+        this.maxAccuracyMeters = maxAccuracyMeters;
+        this.heartbeatIntervalMillis = heartbeatIntervalMillis;
+    }
+
+    /**
+     * Feed a fix from the tracker and write the smoothed estimate.
+     *
+     * @param location latest fix
+     * @param out      reusable fix that receives the estimate
+     * @return false if the fix was dropped and {@code out} is unchanged
+     */
+    public boolean smooth(Location location, LocationFix out) {
+        float accuracy = location.hasAccuracy() ? location.getAccuracy() : 0f;
+        long time = location.getTime();
+        if (filter.update(location.getLatitude(), location.getLongitude(), accuracy, time)) {
+            out.set(filter.getLatitude(), filter.getLongitude())
+                    .setTime(time)
+                    .setAccuracy(filter.getAccuracy())
+                    .setSpeed(filter.getSpeed())
+                    .setBearing(filter.getBearing());
+        } else if ((!(accuracy > 0) || accuracy > maxAccuracyMeters)
+                && (!passedAny || time - lastPassedMillis >= heartbeatIntervalMillis)) {
+            out.set(location.getLatitude(), location.getLongitude()).setTime(time);
+            if (accuracy > 0) {
+                out.setAccuracy(accuracy);
+            }
+            heartbeatCount++;
+        } else {
+            return false;
+        }
+        lastPassedMillis = time;
+        passedAny = true;
+        return true;
+    }
+
+    /**
+     * Number of fixes dropped so far.
+     *
+     * @return dropped fix count
+     */
+    public long getDroppedCount() {
+        return filter.getRejectedCount() - heartbeatCount;
+    }
+
+    /**
+     * Number of coarse fixes passed on as heartbeats so far.
+     *
+     * @return heartbeat count
+     */
+    public long getHeartbeatCount() {
+        return heartbeatCount;
+    }
+}
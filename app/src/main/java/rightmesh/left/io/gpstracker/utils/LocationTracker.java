@@ -27,41 +27,39 @@ import com.google.android.gms.tasks.OnSuccessListener;
  */
 public class LocationTracker implements LifecycleObserver {
     private FusedLocationProviderClient fusedLocationProviderClient;
-    Activity activity;
 
     private int interval = 1000;
     private int fastestInterval = 500;
     private int priority = LocationRequest.PRIORITY_HIGH_ACCURACY;
+    private int maxWaitTime;
 
     private LocationCallback locationCallback;
 
     /**
      * LocationTracker contructor.
      *
-     * @param activity  current activity
-     * @param lifecycle get by getLifecycle() in Activity, Fragment.
-     *                  Used to observe lifecycle of Activity or Fragment
+     * @param context   current activity or service
+     * @param lifecycle get by getLifecycle() in Activity, Fragment or LifecycleService.
+     *                  Used to observe lifecycle of its owner
      */
-    public LocationTracker(Activity activity, Lifecycle lifecycle) {
-        this.activity = activity;
+    public LocationTracker(Context context, Lifecycle lifecycle) {
         lifecycle.addObserver(this);
         this.fusedLocationProviderClient = LocationServices
-                .getFusedLocationProviderClient(activity);
+                .getFusedLocationProviderClient(context);
     }
 
     /**
      * Constructor to avoid dependency (only using for testing purpose).
      *
-     * @param activity                    mock activity
+     * @param context                     mock context
      * @param lifecycle                   mock Lifecycle
      * @param fusedLocationProviderClient mock FusedLocationProviderClient
      */
     @VisibleForTesting
     @RestrictTo(RestrictTo.Scope.TESTS)
-    public LocationTracker(Activity activity,
+    public LocationTracker(Context context,
                            Lifecycle lifecycle,
                            FusedLocationProviderClient fusedLocationProviderClient) {
-        this.activity = activity;
         lifecycle.addObserver(this);
         this.fusedLocationProviderClient = fusedLocationProviderClient;
     }
@@ -116,6 +114,20 @@ public class LocationTracker implements LifecycleObserver {
         return this;
     }
 
+    /**
+     * Set up batched delivery: fixes are still taken at the requested interval, but may be
+     * delivered together up to this long after they were taken, so the device can sleep in
+     * between. Read every fix of {@code LocationResult.getLocations()}, not only the last one.
+     * Has no effect below twice the interval.
+     *
+     * @param maxWaitTime in milliseconds, 0 to deliver every fix as soon as it is available
+     * @return {@link LocationTracker}
+     */
+    public LocationTracker setMaxWaitTime(int maxWaitTime) {
+        this.maxWaitTime = maxWaitTime;
+        return this;
+    }
+
     /**
      * Request location update.
      *
@@ -124,20 +136,46 @@ public class LocationTracker implements LifecycleObserver {
     @SuppressLint("MissingPermission")
     public void requestLocationUpdate(LocationCallback locationCallback) {
         this.locationCallback = locationCallback;
-        LocationRequest locationRequest = new LocationRequest()
-                .setInterval(interval)
-                .setFastestInterval(fastestInterval)
-                .setPriority(priority);
-
-        fusedLocationProviderClient.requestLocationUpdates(locationRequest,
+        fusedLocationProviderClient.requestLocationUpdates(buildLocationRequest(),
                 locationCallback,
                 null);
     }
 
+    /**
+     * Change the request settings at runtime. If updates were requested, the request is
+     * re-issued for the same callback, which replaces the previous one.
+     *
+     * @param interval        in milliseconds
+     * @param fastestInterval the fastest interval in milliseconds
+     * @param priority        one of the LocationRequest.PRIORITY_* values
+     */
+    @SuppressLint("MissingPermission")
+    public void updateLocationRequest(int interval, int fastestInterval, int priority) {
+        setInterval(interval).setFastestInterval(fastestInterval).setPriority(priority);
+        if (locationCallback != null) {
+            fusedLocationProviderClient.requestLocationUpdates(buildLocationRequest(),
+                    locationCallback,
+                    null);
+        }
+    }
+
+    /**
+     * Build a {@link LocationRequest} from the current settings.
+     *
+     * @return new {@link LocationRequest}
+     */
+    private LocationRequest buildLocationRequest() {
+        return new LocationRequest()
+                .setInterval(interval)
+                .setFastestInterval(fastestInterval)
+                .setPriority(priority)
+                .setMaxWaitTime(maxWaitTime);
+    }
+
     /**
      * Remove location update.
      */
-    private void removeLocationUpdate() {
+    public void removeLocationUpdate() {
         if (fusedLocationProviderClient != null && locationCallback != null) {
             fusedLocationProviderClient.removeLocationUpdates(locationCallback);
 
@@ -161,12 +199,11 @@ public class LocationTracker implements LifecycleObserver {
     }
 
     /**
-     * Automatically trigger in {@link Activity#onDestroy()} or {@link Fragment#onDestroy()}.
+     * Automatically trigger in {@link Activity#onDestroy()}, {@link Fragment#onDestroy()} or
+     * {@link androidx.lifecycle.LifecycleService#onDestroy()}.
      */
     @OnLifecycleEvent(Lifecycle.Event.ON_DESTROY)
     public void destroy() {
-        //enable GC to clean object
-        activity = null;
         removeLocationUpdate();
     }
 
@@ -176,7 +213,7 @@ public class LocationTracker implements LifecycleObserver {
      * @param context Application context
      * @return True:= available, False:= unavailable
      */
-    public boolean isLocationProviderAvailable(Context context) {
+    public static boolean isLocationProviderAvailable(Context context) {
         LocationManager lm = (LocationManager)
                 context.getSystemService(Context.LOCATION_SERVICE);
         return lm.isProviderEnabled(LocationManager.GPS_PROVIDER)
@@ -185,8 +222,10 @@ public class LocationTracker implements LifecycleObserver {
 
     /**
      * Show Dialog to ask for turn GPS.
+     *
+     * @param activity activity showing the dialog
      */
-    public void showDialogEnableGps() {
+    public static void showDialogEnableGps(Activity activity) {
         AlertDialog.Builder builder = new AlertDialog.Builder(activity);
         builder.setTitle("GPS is not found");  // GPS not found
         builder.setMessage("Turn on GPS?"); // Want to enable?
@@ -0,0 +1,75 @@
+package rightmesh.left.io.gpstracker;
+
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import android.location.Location;
+
+import com.google.android.gms.location.LocationRequest;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import rightmesh.left.io.gpstracker.core.sampling.MotionDetector;
+import rightmesh.left.io.gpstracker.utils.AdaptiveLocationScheduler;
+import rightmesh.left.io.gpstracker.utils.LocationTracker;
+
+@RunWith(MockitoJUnitRunner.class)
+public class AdaptiveLocationSchedulerTest {
+    private static final long DWELL_MILLIS = 60000;
+
+    @Mock
+    private LocationTracker locationTracker;
+
+    @Mock
+    private Location location;
+
+    private AdaptiveLocationScheduler underTest;
+
+    /**
+     * Set underTest before each test case.
+     */
+    @Before
+    public void setUp() {
+        underTest = new AdaptiveLocationScheduler(locationTracker,
+                new MotionDetector(20, 1.0f, DWELL_MILLIS));
+        when(location.getLatitude()).thenReturn(49.282729);
+        when(location.getLongitude()).thenReturn(-123.120738);
+    }
+
+    @Test
+    public void onLocation_backsOffWhenStationary() {
+        when(location.getTime()).thenReturn(0L);
+        underTest.onLocation(location);
+        verify(locationTracker, never()).updateLocationRequest(anyInt(), anyInt(), anyInt());
+
+        when(location.getTime()).thenReturn(DWELL_MILLIS);
+        underTest.onLocation(location);
+
+        verify(locationTracker).updateLocationRequest(anyInt(), anyInt(),
+                eq(LocationRequest.PRIORITY_BALANCED_POWER_ACCURACY));
+    }
+
+    @Test
+    public void onLocation_rampsUpWhenMovingAgain() {
+        when(location.getTime()).thenReturn(0L);
+        underTest.onLocation(location);
+        when(location.getTime()).thenReturn(DWELL_MILLIS);
+        underTest.onLocation(location);
+
+        when(location.hasSpeed()).thenReturn(true);
+        when(location.getSpeed()).thenReturn(3f);
+        underTest.onLocation(location);
+
+        verify(locationTracker).updateLocationRequest(
+                AdaptiveLocationScheduler.MOVING_INTERVAL,
+                AdaptiveLocationScheduler.MOVING_FASTEST_INTERVAL,
+                AdaptiveLocationScheduler.MOVING_PRIORITY);
+    }
+}
@@ -0,0 +1,217 @@
+package rightmesh.left.io.gpstracker;
+
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.any;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import android.app.Application;
+import android.location.Location;
+
+import androidx.arch.core.executor.testing.InstantTaskExecutorRule;
+
+import io.left.rightmesh.id.MeshId;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
+import org.mockito.CheckReturnValue;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import rightmesh.left.io.gpstracker.core.codec.DeliveryCodec;
+import rightmesh.left.io.gpstracker.core.codec.LocationCodec;
+import rightmesh.left.io.gpstracker.core.codec.LocationFix;
+import rightmesh.left.io.gpstracker.core.transport.MeshTransport;
+import rightmesh.left.io.gpstracker.core.transport.TransportException;
+
+@RunWith(MockitoJUnitRunner.class)
+public class LocationReporterTest {
+    // Batches are sent from the uplink executor, not from the calling thread.
+    private static final long SEND_TIMEOUT_MS = 1000;
+
+    // Executes each task synchronously using Architecture Components.
+    //Using for testing Android ViewModel
+    @Rule
+    public InstantTaskExecutorRule rule = new InstantTaskExecutorRule();
+
+    @Mock
+    private Application application;
+
+    @Mock
+    private RightMeshConnector rightMeshConnector;
+
+    /**
+     * {@link ArgumentCaptor} is a powerful Mockito API to capture argument values and use them to
+     * perform further actions or assertions on them.
+     */
+    @Captor
+    private ArgumentCaptor<RightMeshConnector.OnConnectSuccessListener> onConnectSuccessCaptor;
+    @Captor
+    private ArgumentCaptor<MeshTransport.OnTransportEventListener> transportListenerCaptor;
+
+    private LocationReporter spyLocationReporter;
+
+    /**
+     * Set up spyLocationReporter before each test.
+     */
+    @Before
+    public void setUp() {
+        LocationReporter underTest = new LocationReporter(application);
+        underTest.setRightMeshConnector(rightMeshConnector);
+
+        spyLocationReporter = spy(underTest);
+    }
+
+    /**
+     * Report the RightMesh port as bound to the uplink, which holds fixes until then.
+     */
+    private void bindMeshPort() {
+        verify(rightMeshConnector).setOnTransportEventListener(transportListenerCaptor.capture());
+        transportListenerCaptor.getValue().onStateChanged("device", true);
+    }
+
+    @Test
+    public void start_isCall() {
+        doReturn(rightMeshConnector).when(spyLocationReporter).buildRightMeshConnector();
+        when(application.getString(R.string.fetching_location)).thenReturn("fetching location");
+
+        spyLocationReporter.start();
+
+        MeshId meshId = Mockito.mock(MeshId.class);
+
+        // Callback is captured and invoked with stubbed MeshId
+        verify(rightMeshConnector).setOnConnectSuccessListener(onConnectSuccessCaptor.capture());
+        onConnectSuccessCaptor.getValue().onConnectSucess(meshId);
+
+        Assert.assertEquals(spyLocationReporter.liveDataNotificationText.getValue(),
+                application.getString(R.string.fetching_location));
+        verify(rightMeshConnector).connect(any(), eq(BuildConfig.SUPER_PEER_URL));
+    }
+
+    @Test
+    public void setLocationAvailable_showsUnavailableLocation() {
+        when(application.getString(R.string.location_is_unavailable))
+                .thenReturn("location is unavailable");
+
+        spyLocationReporter.setLocationAvailable(false);
+
+        Assert.assertEquals("location is unavailable",
+                spyLocationReporter.liveDataNotificationText.getValue());
+        Assert.assertEquals(false, spyLocationReporter.liveDataLocationAvailable.getValue());
+    }
+
+    @Test
+    public void sendLocationToSuperPeer_nonNullLocation() throws TransportException {
+        doReturn("Sending GPS").when(application)
+                .getString(R.string.sending_your_gps_to_app_superpeer);
+
+        bindMeshPort();
+
+        // Fill a whole batch so it is flushed without waiting for the age limit. Fixes are far
+        // apart so none of them is dropped as predictable.
+        for (int i = 0; i < BuildConfig.UPLINK_BATCH_MAX_FIXES; i++) {
+            spyLocationReporter.sendLocationToSuperPeer(mockLocation(i));
+        }
+
+        Assert.assertEquals(spyLocationReporter.liveDataNotificationText.getValue(),
+                application.getString(R.string.sending_your_gps_to_app_superpeer));
+        verify(rightMeshConnector, timeout(SEND_TIMEOUT_MS))
+                .send(eq(BuildConfig.SUPER_PEER_IDS), any());
+    }
+
+    @Test
+    public void sendLocationsToSuperPeer_wholeResultIsBatched() throws TransportException {
+        List<Location> locations = new ArrayList<>();
+        for (int i = 0; i < BuildConfig.UPLINK_BATCH_MAX_FIXES; i++) {
+            locations.add(mockLocation(i));
+        }
+        bindMeshPort();
+
+        spyLocationReporter.sendLocationsToSuperPeer(locations);
+
+        verify(rightMeshConnector, timeout(SEND_TIMEOUT_MS))
+                .send(eq(BuildConfig.SUPER_PEER_IDS), any());
+    }
+
+    @Test
+    public void sendLocationsToSuperPeer_sendsOnlyHeartbeatOfInaccurateLocations()
+            throws TransportException {
+        List<Location> locations = new ArrayList<>();
+        for (int i = 0; i < BuildConfig.UPLINK_BATCH_MAX_FIXES; i++) {
+            Location location = mockLocation(i);
+            when(location.getAccuracy()).thenReturn(BuildConfig.LOCATION_MAX_ACCURACY_M + 1);
+            // Close together: only the first goes on, as a heartbeat.
+            when(location.getTime()).thenReturn(i * 1000L);
+            locations.add(location);
+        }
+
+        spyLocationReporter.sendLocationsToSuperPeer(locations);
+        bindMeshPort();
+
+        // Held fixes go out once the port is bound: only the heartbeat, in one frame.
+        ArgumentCaptor<byte[]> payload = ArgumentCaptor.forClass(byte[].class);
+        verify(rightMeshConnector, Mockito.after(SEND_TIMEOUT_MS).times(1))
+                .send(eq(BuildConfig.SUPER_PEER_IDS), payload.capture());
+        byte[] frame = payload.getValue();
+        List<LocationFix> fixes = LocationCodec.decode(
+                DeliveryCodec.isSequenced(frame) ? DeliveryCodec.unwrap(frame) : frame);
+        Assert.assertEquals(1, fixes.size());
+        Assert.assertEquals(BuildConfig.LOCATION_MAX_ACCURACY_M + 1, fixes.get(0).getAccuracy(),
+                0.1);
+    }
+
+    @Test
+    public void sendLocationToSuperPeer_holdsEarlyLocationUntilPortIsBound()
+            throws TransportException {
+        spyLocationReporter.sendLocationToSuperPeer(mockLocation(0));
+
+        verify(rightMeshConnector, Mockito.after(SEND_TIMEOUT_MS).never())
+                .send(eq(BuildConfig.SUPER_PEER_IDS), any());
+
+        bindMeshPort();
+
+        // Sent right away, without waiting for a full batch.
+        verify(rightMeshConnector, timeout(SEND_TIMEOUT_MS))
+                .send(eq(BuildConfig.SUPER_PEER_IDS), any());
+    }
+
+    @Test
+    public void parseSuperPeerIds_trimsAndSkipsEmptyIds() {
+        Assert.assertEquals(Arrays.asList("0xa", "0xb"),
+                LocationReporter.parseSuperPeerIds(" 0xa,, 0xb ,"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void parseSuperPeerIds_failsWithoutId() {
+        LocationReporter.parseSuperPeerIds(" , ");
+    }
+
+    /**
+     * Accurate location a minute after the previous one, so the smoother accepts it even though
+     * it is a kilometre away.
+     *
+     * @param i index of the location in the track
+     * @return mocked location
+     */
+    private static Location mockLocation(int i) {
+        Location location = Mockito.mock(Location.class);
+        when(location.getLatitude()).thenReturn(i * 0.01);
+        when(location.hasAccuracy()).thenReturn(true);
+        when(location.getAccuracy()).thenReturn(5f);
+        when(location.getTime()).thenReturn(i * 60000L);
+        return location;
+    }
+}
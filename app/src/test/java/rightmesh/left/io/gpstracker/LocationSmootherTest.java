@@ -0,0 +1,106 @@
+package rightmesh.left.io.gpstracker;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.when;
+
+import android.location.Location;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import rightmesh.left.io.gpstracker.core.codec.LocationFix;
+import rightmesh.left.io.gpstracker.utils.LocationSmoother;
+
+@RunWith(MockitoJUnitRunner.class)
+public class LocationSmootherTest {
+    private static final long HEARTBEAT_INTERVAL_MS = 60000;
+    private static final long START_MS = 1546300800000L;
+
+    @Mock
+    private Location location;
+
+    private final LocationFix fix = new LocationFix();
+
+    private LocationSmoother underTest;
+
+    /**
+     * Set underTest before each test case.
+     */
+    @Before
+    public void setUp() {
+        underTest = new LocationSmoother(50, HEARTBEAT_INTERVAL_MS);
+        when(location.getLatitude()).thenReturn(49.282729);
+        when(location.getLongitude()).thenReturn(-123.120738);
+        when(location.getTime()).thenReturn(START_MS);
+    }
+
+    @Test
+    public void smooth_writesEstimate() {
+        when(location.hasAccuracy()).thenReturn(true);
+        when(location.getAccuracy()).thenReturn(5f);
+
+        assertTrue(underTest.smooth(location, fix));
+
+        assertEquals(49.282729, fix.getLatitude(), 1e-6);
+        assertEquals(START_MS, fix.getTimeMillis());
+        assertEquals(5, fix.getAccuracy(), 0.01);
+        assertTrue(fix.hasSpeed());
+    }
+
+    @Test
+    public void smooth_dropsInaccurateLocation() {
+        when(location.hasAccuracy()).thenReturn(true);
+        when(location.getAccuracy()).thenReturn(5f);
+        underTest.smooth(location, fix);
+        when(location.getAccuracy()).thenReturn(100f);
+        when(location.getTime()).thenReturn(START_MS + 1000);
+        fix.set(1, 2);
+
+        assertFalse(underTest.smooth(location, fix));
+
+        assertEquals(1, fix.getLatitude(), 0);
+        assertEquals(1, underTest.getDroppedCount());
+    }
+
+    @Test
+    public void smooth_passesStationaryBalancedPowerFixesAsHeartbeats() {
+        // Balanced power accuracy, as requested while stationary.
+        when(location.hasAccuracy()).thenReturn(true);
+        when(location.getAccuracy()).thenReturn(100f);
+
+        assertTrue(underTest.smooth(location, fix));
+        assertEquals(49.282729, fix.getLatitude(), 1e-6);
+        assertEquals(100, fix.getAccuracy(), 0);
+        assertFalse(fix.hasSpeed());
+
+        when(location.getTime()).thenReturn(START_MS + HEARTBEAT_INTERVAL_MS / 2);
+        assertFalse(underTest.smooth(location, fix));
+        when(location.getTime()).thenReturn(START_MS + HEARTBEAT_INTERVAL_MS);
+        assertTrue(underTest.smooth(location, fix));
+        assertEquals(START_MS + HEARTBEAT_INTERVAL_MS, fix.getTimeMillis());
+        assertEquals(2, underTest.getHeartbeatCount());
+        assertEquals(1, underTest.getDroppedCount());
+
+        // The heartbeats did not feed the filter: the next accurate fix starts the track.
+        when(location.getAccuracy()).thenReturn(5f);
+        when(location.getLatitude()).thenReturn(49.3);
+        assertTrue(underTest.smooth(location, fix));
+        assertEquals(49.3, fix.getLatitude(), 1e-6);
+        assertEquals(5, fix.getAccuracy(), 0.01);
+    }
+
+    @Test
+    public void smooth_passesLocationWithoutAccuracyAsHeartbeat() {
+        when(location.hasAccuracy()).thenReturn(false);
+
+        assertTrue(underTest.smooth(location, fix));
+
+        assertFalse(fix.hasAccuracy());
+        assertEquals(1, underTest.getHeartbeatCount());
+    }
+}
@@ -1,6 +1,8 @@
 package rightmesh.left.io.gpstracker;
 
+import static org.junit.Assert.assertEquals;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.verify;
 
@@ -9,10 +11,14 @@ import android.app.Activity;
 import androidx.lifecycle.Lifecycle;
 
 import com.google.android.gms.location.FusedLocationProviderClient;
+import com.google.android.gms.location.LocationCallback;
+import com.google.android.gms.location.LocationRequest;
 
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
 import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.junit.MockitoJUnitRunner;
@@ -25,6 +31,9 @@ public class LocationTrackerTest {
     @Mock
     private FusedLocationProviderClient fusedLocationProviderClient;
 
+    @Captor
+    private ArgumentCaptor<LocationRequest> locationRequestCaptor;
+
     private LocationTracker spyLocationTracker;
 
     /**
@@ -48,4 +57,16 @@ public class LocationTrackerTest {
         verify(fusedLocationProviderClient).requestLocationUpdates(any(), any(), any());
         verify(spyLocationTracker).requestLocationUpdate(any());
     }
+
+    @Test
+    public void requestLocationUpdate_withMaxWaitTime() {
+        LocationCallback locationCallback = new LocationCallback();
+        spyLocationTracker.setInterval(1000).setMaxWaitTime(10000);
+
+        spyLocationTracker.requestLocationUpdate(locationCallback);
+
+        verify(fusedLocationProviderClient).requestLocationUpdates(
+                locationRequestCaptor.capture(), eq(locationCallback), any());
+        assertEquals(10000, locationRequestCaptor.getValue().getMaxWaitTime());
+    }
 }
@@ -1,20 +1,22 @@
 package rightmesh.left.io.gpstracker;
 
+import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
-import static org.mockito.Mockito.any;
+import static org.mockito.Mockito.CALLS_REAL_METHODS;
 import static org.mockito.Mockito.doReturn;
-import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
 
 import android.app.Application;
-import android.location.Location;
+import android.content.Context;
+import android.content.Intent;
+import android.content.ServiceConnection;
 
 import androidx.arch.core.executor.testing.InstantTaskExecutorRule;
-
-import io.left.rightmesh.id.MeshId;
-import io.left.rightmesh.mesh.MeshManager;
-import io.left.rightmesh.util.RightMeshException;
+import androidx.lifecycle.MutableLiveData;
 
 import org.junit.Assert;
 import org.junit.Before;
@@ -23,9 +25,7 @@ import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.ArgumentCaptor;
 import org.mockito.Captor;
-import org.mockito.CheckReturnValue;
 import org.mockito.Mock;
-import org.mockito.Mockito;
 import org.mockito.junit.MockitoJUnitRunner;
 
 @RunWith(MockitoJUnitRunner.class)
@@ -39,63 +39,76 @@ public class MainViewModelTest {
     private Application application;
 
     @Mock
-    private RightMeshConnector rightMeshConnector;
+    private Intent intent;
+
+    @Mock
+    private TrackingService trackingService;
+
+    @Mock
+    private TrackingService.LocalBinder binder;
+
+    @Mock
+    private LocationReporter locationReporter;
 
-    /**
-     * {@link ArgumentCaptor} is a powerful Mockito API to capture argument values and use them to
-     * perform further actions or assertions on them.
-     */
-    @Captor
-    private ArgumentCaptor<RightMeshConnector.OnConnectSuccessListener> onConnectSuccessCaptor;
     @Captor
-    private ArgumentCaptor<RightMeshConnector.OnPeerChangedListener> onPeerChangedCaptor;
+    private ArgumentCaptor<ServiceConnection> serviceConnectionCaptor;
 
     private MainViewModel spyMainViewModel;
 
     /**
-     * Set up spyMianViewModel before each test.
+     * Set up spyMainViewModel before each test.
      */
     @Before
     public void setUp() {
-        MainViewModel underTest = new MainViewModel(application);
-        underTest.setRightMeshConnector(rightMeshConnector);
-
-        spyMainViewModel = spy(underTest);
+        // Built by Mockito, so callbacks the view model registers call back into the spy.
+        spyMainViewModel = mock(MainViewModel.class, withSettings().useConstructor(application)
+                .defaultAnswer(CALLS_REAL_METHODS));
+        doReturn(intent).when(spyMainViewModel).buildTrackingServiceIntent();
+        // Field initializers do not run for mocks.
+        trackingService.liveDataTracking = new MutableLiveData<>();
     }
 
     @Test
-    public void init_isCall() {
-        doReturn(rightMeshConnector).when(spyMainViewModel).buildRightMeshConnector();
-        when(application.getString(R.string.fetching_location)).thenReturn("fetching location");
+    public void startTracking_bindsOnceToTrackingService() {
+        when(application.bindService(eq(intent), any(), eq(Context.BIND_AUTO_CREATE)))
+                .thenReturn(true);
+        when(binder.getService()).thenReturn(trackingService);
+        when(trackingService.getLocationReporter()).thenReturn(locationReporter);
 
-        spyMainViewModel.init();
+        spyMainViewModel.startTracking();
+        spyMainViewModel.startTracking();
 
-        MeshId meshId = Mockito.mock(MeshId.class);
-        MeshManager.RightMeshEvent rmEvent =
-                Mockito.mock(MeshManager.RightMeshEvent.class);
+        verify(application).bindService(eq(intent), serviceConnectionCaptor.capture(),
+                eq(Context.BIND_AUTO_CREATE));
+        serviceConnectionCaptor.getValue().onServiceConnected(null, binder);
+        Assert.assertEquals(locationReporter,
+                spyMainViewModel.liveDataLocationReporter.getValue());
 
-        // Callback is captured and invoked with stubbed MeshId
-        verify(rightMeshConnector).setOnConnectSuccessListener(onConnectSuccessCaptor.capture());
-        onConnectSuccessCaptor.getValue().onConnectSucess(meshId);
+        spyMainViewModel.onCleared();
 
-        verify(rightMeshConnector).setOnPeerChangedListener(onPeerChangedCaptor.capture());
-        onPeerChangedCaptor.getValue().onPeerChange(rmEvent);
-
-        Assert.assertEquals(spyMainViewModel.liveDataNotificationText.getValue(),
-                application.getString(R.string.fetching_location));
-        Assert.assertEquals(spyMainViewModel.liveDataPeerChangeEvent.getValue(), rmEvent);
-        verify(rightMeshConnector).connect(any(), eq(BuildConfig.SUPER_PEER_URL));
+        verify(application).unbindService(serviceConnectionCaptor.getValue());
     }
 
     @Test
-    public void sendLocationToSuperPeer_nonNullLocation() throws RightMeshException {
-        doReturn("Sending GPS").when(application)
-                .getString(R.string.sending_your_gps_to_app_superpeer);
-
-        spyMainViewModel.sendLocationToSuperPeer(Mockito.mock(Location.class));
-
-        Assert.assertEquals(spyMainViewModel.liveDataNotificationText.getValue(),
-                application.getString(R.string.sending_your_gps_to_app_superpeer));
-        verify(rightMeshConnector).sendDataReliable(any(), any());
+    public void startTracking_unbindsOnceServiceStopsAndStartsAgain() {
+        when(application.bindService(eq(intent), any(), eq(Context.BIND_AUTO_CREATE)))
+                .thenReturn(true);
+        when(binder.getService()).thenReturn(trackingService);
+        when(trackingService.getLocationReporter()).thenReturn(locationReporter);
+        spyMainViewModel.startTracking();
+        verify(application).bindService(eq(intent), serviceConnectionCaptor.capture(),
+                eq(Context.BIND_AUTO_CREATE));
+        serviceConnectionCaptor.getValue().onServiceConnected(null, binder);
+
+        trackingService.liveDataTracking.setValue(false);
+
+        verify(application).unbindService(serviceConnectionCaptor.getValue());
+        Assert.assertNull(spyMainViewModel.liveDataLocationReporter.getValue());
+        Assert.assertFalse(trackingService.liveDataTracking.hasActiveObservers());
+
+        spyMainViewModel.startTracking();
+
+        verify(application, times(2)).bindService(eq(intent), any(),
+                eq(Context.BIND_AUTO_CREATE));
     }
 }
@@ -1,27 +1,43 @@
 package rightmesh.left.io.gpstracker;
 
+import static org.junit.Assert.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
 import androidx.arch.core.executor.testing.InstantTaskExecutorRule;
 
 import io.left.rightmesh.android.AndroidMeshManager;
 import io.left.rightmesh.id.MeshId;
+import io.left.rightmesh.mesh.MeshManager;
 import io.left.rightmesh.mesh.MeshStateListener;
 import io.left.rightmesh.util.RightMeshException;
 
 import java.nio.charset.Charset;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.junit.MockitoJUnitRunner;
 
+import rightmesh.left.io.gpstracker.core.transport.MeshTransport;
+import rightmesh.left.io.gpstracker.core.transport.TransportException;
+
 @RunWith(MockitoJUnitRunner.class)
 public class RightMeshConnectorTest {
     private static final int MESH_PORT = 5001;
@@ -36,6 +52,14 @@ public class RightMeshConnectorTest {
     private RightMeshConnector.OnConnectSuccessListener onConnectSuccessListener;
     @Mock
     private MeshId meshId;
+    @Mock
+    private MeshId nextHop;
+    @Mock
+    private MeshTransport.OnTransportEventListener transportEventListener;
+    @Mock
+    private ScheduledExecutorService reconnectExecutor;
+    @Mock
+    private ScheduledFuture<Object> reconnectFuture;
 
     private RightMeshConnector spyRightMeshConnector;
 
@@ -91,4 +115,142 @@ public class RightMeshConnectorTest {
         verify(spyRightMeshConnector).sendDataReliable(any(),
                 eq(payload.getBytes(Charset.forName("UTF-8"))));
     }
-}
\ No newline at end of file
+
+    @Test
+    public void sendDataReliable_reusesNextHop() throws RightMeshException {
+        when(androidMeshManager.getNextHopPeer(meshId)).thenReturn(nextHop);
+
+        spyRightMeshConnector.sendDataReliable(meshId, new byte[1]);
+        spyRightMeshConnector.sendDataReliable(meshId, new byte[1]);
+
+        verify(androidMeshManager).getNextHopPeer(meshId);
+        verify(androidMeshManager, times(2)).sendDataReliable(eq(nextHop), eq(MESH_PORT), any());
+    }
+
+    @Test
+    public void sendDataReliable_peerChangeInvalidatesNextHop() throws RightMeshException {
+        when(androidMeshManager.getNextHopPeer(meshId)).thenReturn(nextHop);
+        ArgumentCaptor<MeshManager.RightMeshEventListener> peerChangedHandler =
+                ArgumentCaptor.forClass(MeshManager.RightMeshEventListener.class);
+        spyRightMeshConnector.meshStateChanged(meshId, MeshStateListener.SUCCESS);
+        verify(androidMeshManager).on(eq(MeshManager.PEER_CHANGED), peerChangedHandler.capture());
+
+        spyRightMeshConnector.sendDataReliable(meshId, new byte[1]);
+        peerChangedHandler.getValue().onEvent(new MeshManager.PeerChangedEvent());
+        spyRightMeshConnector.sendDataReliable(meshId, new byte[1]);
+
+        verify(androidMeshManager, times(2)).getNextHopPeer(meshId);
+    }
+
+    @Test
+    public void sendDataReliable_expiredNextHopIsLookedUpAgain() throws RightMeshException {
+        RightMeshConnector underTest = new RightMeshConnector(MESH_PORT, 0);
+        underTest.setAndroidMeshManager(androidMeshManager);
+        when(androidMeshManager.getNextHopPeer(meshId)).thenReturn(nextHop);
+
+        underTest.sendDataReliable(meshId, new byte[1]);
+        underTest.sendDataReliable(meshId, new byte[1]);
+
+        verify(androidMeshManager, times(2)).getNextHopPeer(meshId);
+    }
+
+    @Test
+    public void sendDataReliable_failureInvalidatesNextHop() throws RightMeshException {
+        when(androidMeshManager.getNextHopPeer(meshId)).thenReturn(nextHop);
+        doThrow(new RightMeshException("unreachable")).when(androidMeshManager)
+                .sendDataReliable(eq(nextHop), anyInt(), any());
+
+        try {
+            spyRightMeshConnector.sendDataReliable(meshId, new byte[1]);
+        } catch (RightMeshException expected) {
+            // Next send must not reuse the failed hop.
+        }
+        try {
+            spyRightMeshConnector.sendDataReliable(meshId, new byte[1]);
+        } catch (RightMeshException expected) {
+            // Still unreachable.
+        }
+
+        verify(androidMeshManager, times(2)).getNextHopPeer(meshId);
+    }
+
+    @Test
+    public void meshStateChanged_notifiesTransportListener() {
+        spyRightMeshConnector.setOnTransportEventListener(transportEventListener);
+
+        spyRightMeshConnector.meshStateChanged(meshId, MeshStateListener.SUCCESS);
+        spyRightMeshConnector.meshStateChanged(meshId, MeshStateListener.DISABLED);
+
+        verify(transportEventListener).onStateChanged(meshId.toString(), true);
+        verify(transportEventListener).onStateChanged(meshId.toString(), false);
+    }
+
+    @Test(expected = TransportException.class)
+    public void send_wrapsRightMeshFailure() throws RightMeshException, TransportException {
+        doThrow(new RightMeshException("unreachable")).when(androidMeshManager)
+                .sendDataReliable(any(), anyInt(), any());
+
+        spyRightMeshConnector.send("0x656284abf20af4192d86f2f6f3e7ce04e5718302", new byte[1]);
+    }
+
+    @Test
+    public void meshStateChanged_failureResumesWithGrowingBackoff() throws RightMeshException {
+        spyRightMeshConnector.setReconnectExecutor(reconnectExecutor);
+        final ArgumentCaptor<Runnable> reconnect = ArgumentCaptor.forClass(Runnable.class);
+        final ArgumentCaptor<Long> delay = ArgumentCaptor.forClass(Long.class);
+        doThrow(new RightMeshException("service unavailable")).when(androidMeshManager).resume();
+        doReturn(reconnectFuture).when(reconnectExecutor)
+                .schedule(any(Runnable.class), anyLong(), eq(TimeUnit.MILLISECONDS));
+
+        spyRightMeshConnector.meshStateChanged(meshId, MeshStateListener.FAILURE);
+        // Already scheduled.
+        spyRightMeshConnector.meshStateChanged(meshId, MeshStateListener.FAILURE);
+        verify(reconnectExecutor).schedule(reconnect.capture(), anyLong(),
+                eq(TimeUnit.MILLISECONDS));
+        reconnect.getValue().run();
+
+        verify(androidMeshManager).resume();
+        verify(reconnectExecutor, times(2)).schedule(any(Runnable.class), delay.capture(),
+                eq(TimeUnit.MILLISECONDS));
+        List<Long> delays = delay.getAllValues();
+        assertTrue(delays.get(0) <= RightMeshConnector.RECONNECT_INITIAL_DELAY_MS);
+        assertTrue(delays.get(1) >= RightMeshConnector.RECONNECT_INITIAL_DELAY_MS);
+    }
+
+    @Test
+    public void meshStateChanged_disabledCancelsReconnect() {
+        spyRightMeshConnector.setReconnectExecutor(reconnectExecutor);
+        doReturn(reconnectFuture).when(reconnectExecutor)
+                .schedule(any(Runnable.class), anyLong(), eq(TimeUnit.MILLISECONDS));
+
+        spyRightMeshConnector.meshStateChanged(meshId, MeshStateListener.FAILURE);
+        spyRightMeshConnector.meshStateChanged(meshId, MeshStateListener.DISABLED);
+        spyRightMeshConnector.meshStateChanged(meshId, MeshStateListener.DISABLED);
+
+        verify(reconnectExecutor).schedule(any(Runnable.class), anyLong(),
+                eq(TimeUnit.MILLISECONDS));
+        verify(reconnectFuture).cancel(false);
+    }
+
+    @Test
+    public void stop_cancelsPendingReconnect() throws RightMeshException {
+        spyRightMeshConnector.setReconnectExecutor(reconnectExecutor);
+        doReturn(reconnectFuture).when(reconnectExecutor)
+                .schedule(any(Runnable.class), anyLong(), eq(TimeUnit.MILLISECONDS));
+        spyRightMeshConnector.meshStateChanged(meshId, MeshStateListener.FAILURE);
+
+        spyRightMeshConnector.stop();
+
+        verify(reconnectFuture).cancel(false);
+    }
+
+    @Test
+    public void stop_preventsReconnect() throws RightMeshException {
+        spyRightMeshConnector.setReconnectExecutor(reconnectExecutor);
+
+        spyRightMeshConnector.stop();
+        spyRightMeshConnector.meshStateChanged(meshId, MeshStateListener.FAILURE);
+
+        verify(reconnectExecutor, never()).schedule(any(Runnable.class), anyLong(), any());
+    }
+}
@@ -0,0 +1,55 @@
+package rightmesh.left.io.gpstracker.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import rightmesh.left.io.gpstracker.core.codec.LocationFix;
+import rightmesh.left.io.gpstracker.core.uplink.LocationBatcher;
+
+/**
+ * Adding one fix to a {@link LocationBatcher}, including the encode of every full batch.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BatcherBenchmark {
+    private LocationFix[] fixes;
+    private LocationBatcher batcher;
+    private int lastFrameSize;
+    private long nowMillis;
+
+    /**
+     * Build a batcher that only flushes when full.
+     */
+    @Setup
+    public void setUp() {
+        fixes = TrackFixtures.walk(TrackFixtures.BATCH_SIZE);
+        batcher = new LocationBatcher(TrackFixtures.BATCH_SIZE, Long.MAX_VALUE,
+                (frame, fixCount) -> lastFrameSize = frame.remaining());
+    }
+
+    /**
+     * Add the next fix of the track.
+     *
+     * @return size of the last flushed frame
+     */
+    @Benchmark
+    public int add() {
+        batcher.add(fixes[(int) (nowMillis % fixes.length)], nowMillis);
+        nowMillis++;
+        return lastFrameSize;
+    }
+}
@@ -0,0 +1,97 @@
+package rightmesh.left.io.gpstracker.benchmark;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import rightmesh.left.io.gpstracker.core.codec.BatchFrame;
+import rightmesh.left.io.gpstracker.core.codec.LocationCodec;
+import rightmesh.left.io.gpstracker.core.codec.LocationFix;
+
+/**
+ * Encoding and decoding one batch worth of fixes with each payload format. Every operation
+ * covers {@link TrackFixtures#BATCH_SIZE} fixes, so the scores compare directly.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CodecBenchmark {
+    private LocationFix[] fixes;
+    private double[] latitudes;
+    private double[] longitudes;
+    private ByteBuffer encodeBuffer;
+    private byte[] deltaFrame;
+
+    /**
+     * Build the fixes and a frame to decode.
+     */
+    @Setup
+    public void setUp() {
+        fixes = TrackFixtures.walk(TrackFixtures.BATCH_SIZE);
+        latitudes = new double[fixes.length];
+        longitudes = new double[fixes.length];
+        for (int i = 0; i < fixes.length; i++) {
+            latitudes[i] = fixes[i].getLatitude();
+            longitudes[i] = fixes[i].getLongitude();
+        }
+        encodeBuffer = ByteBuffer.allocate(LocationCodec.maxEncodedSize(fixes.length));
+        deltaFrame = LocationCodec.encode(fixes, fixes.length);
+    }
+
+    /**
+     * The original payload: one 16-byte lat/long buffer per fix.
+     *
+     * @param blackhole consumes the payloads
+     */
+    @Benchmark
+    public void legacyByteBuffer(Blackhole blackhole) {
+        for (int i = 0; i < latitudes.length; i++) {
+            ByteBuffer buffer = ByteBuffer.allocate(BatchFrame.LEGACY_FRAME_SIZE);
+            buffer.putDouble(latitudes[i]);
+            buffer.putDouble(longitudes[i]);
+            blackhole.consume(buffer.array());
+        }
+    }
+
+    @Benchmark
+    public byte[] rawDoublesFrame() {
+        return BatchFrame.encode(latitudes, longitudes, latitudes.length);
+    }
+
+    @Benchmark
+    public byte[] deltaFrame() {
+        return LocationCodec.encode(fixes, fixes.length);
+    }
+
+    /**
+     * Delta frame written into a reused buffer, as {@code LocationBatcher} does.
+     *
+     * @return encoded size
+     */
+    @Benchmark
+    public int deltaFrameIntoBuffer() {
+        encodeBuffer.clear();
+        LocationCodec.encode(fixes, fixes.length, encodeBuffer);
+        return encodeBuffer.position();
+    }
+
+    @Benchmark
+    public List<LocationFix> decodeDeltaFrame() {
+        return LocationCodec.decode(deltaFrame);
+    }
+}
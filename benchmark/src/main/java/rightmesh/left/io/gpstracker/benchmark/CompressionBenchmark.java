@@ -0,0 +1,110 @@
+package rightmesh.left.io.gpstracker.benchmark;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import rightmesh.left.io.gpstracker.core.codec.FrameCompressor;
+import rightmesh.left.io.gpstracker.core.codec.LocationCodec;
+
+/**
+ * CPU cost of compressing one delta batch against the bytes it saves, per DEFLATE level and
+ * dictionary, to pick {@code UPLINK_COMPRESSION_LEVEL} for a device class. Besides ops/s, the
+ * {@code frameBytes} and {@code sentBytes} counters report the bytes going in and out of the
+ * compressor; their ratio is the size of a sent batch relative to the uncompressed one.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CompressionBenchmark {
+    @Param({"10", "50"})
+    public int batchMaxFixes;
+
+    @Param({"1", "6", "9"})
+    public int level;
+
+    @Param({"0", "1"})
+    public byte dictionaryId;
+
+    private ByteBuffer frame;
+    private byte[] compressedFrame;
+    private FrameCompressor compressor;
+
+    /**
+     * Bytes in and out of the compressor, reported next to the score.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Bytes {
+        public long frameBytes;
+        public long sentBytes;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            frameBytes = 0;
+            sentBytes = 0;
+        }
+    }
+
+    /**
+     * Encode a noisy batch and compress it once for the decompression benchmark.
+     */
+    @Setup
+    public void setUp() {
+        frame = ByteBuffer.wrap(LocationCodec.encode(TrackFixtures.noisyWalk(batchMaxFixes),
+                batchMaxFixes));
+        compressor = new FrameCompressor(level, dictionaryId);
+        // A duplicate: a batch that does not shrink is returned as it is, and read here.
+        ByteBuffer compressed = compressor.compress(frame.duplicate());
+        compressedFrame = new byte[compressed.remaining()];
+        compressed.get(compressedFrame);
+    }
+
+    @TearDown
+    public void tearDown() {
+        compressor.close();
+    }
+
+    /**
+     * Compression as the uplink runs it on every batch, falling back to the batch itself when it
+     * does not shrink.
+     *
+     * @param bytes counts the bytes in and out
+     * @return compressed size
+     */
+    @Benchmark
+    public int compress(Bytes bytes) {
+        int sent = compressor.compress(frame).remaining();
+        bytes.frameBytes += frame.remaining();
+        bytes.sentBytes += sent;
+        return sent;
+    }
+
+    /**
+     * Decompression as the SuperPeer runs it, or a copy when the batch was sent as it is.
+     *
+     * @return restored batch
+     */
+    @Benchmark
+    public byte[] decompress() {
+        return FrameCompressor.isCompressed(compressedFrame)
+                ? FrameCompressor.decompress(compressedFrame) : compressedFrame.clone();
+    }
+}
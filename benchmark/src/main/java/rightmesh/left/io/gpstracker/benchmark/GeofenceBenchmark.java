@@ -0,0 +1,81 @@
+package rightmesh.left.io.gpstracker.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import rightmesh.left.io.gpstracker.core.codec.LocationFix;
+import rightmesh.left.io.gpstracker.core.geofence.CircleGeofence;
+import rightmesh.left.io.gpstracker.core.geofence.Geofence;
+import rightmesh.left.io.gpstracker.core.geofence.GeofenceEngine;
+import rightmesh.left.io.gpstracker.core.geofence.PolygonGeofence;
+
+/**
+ * Evaluating one fix of a walk against geofences scattered around it.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GeofenceBenchmark {
+    private static final int WALK_LENGTH = 1024;
+
+    @Param({"100", "1000"})
+    public int fenceCount;
+
+    private final LocationFix[] walk = TrackFixtures.walk(WALK_LENGTH);
+
+    private GeofenceEngine engine;
+    private int next;
+    private int transitions;
+    private final GeofenceEngine.OnTransitionListener counter =
+            (fence, transition, fix) -> transitions++;
+
+    /**
+     * Scatter circles and triangles over a 20 km square around the walk.
+     */
+    @Setup
+    public void setUp() {
+        Random random = new Random(1);
+        List<Geofence> fences = new ArrayList<>();
+        for (int id = 0; id < fenceCount; id++) {
+            double latitude = 49.2 + random.nextDouble() * 0.2;
+            double longitude = -123.2 + random.nextDouble() * 0.2;
+            if (id % 2 == 0) {
+                fences.add(new CircleGeofence(id, latitude, longitude, 200));
+            } else {
+                fences.add(new PolygonGeofence(id,
+                        new double[]{latitude, latitude, latitude + 0.004},
+                        new double[]{longitude, longitude + 0.004, longitude}));
+            }
+        }
+        engine = new GeofenceEngine(fences);
+    }
+
+    /**
+     * Evaluate the next fix of the walk.
+     *
+     * @return transitions seen so far
+     */
+    @Benchmark
+    public int evaluate() {
+        engine.evaluate(walk[next], counter);
+        next = (next + 1) % WALK_LENGTH;
+        return transitions;
+    }
+}
@@ -0,0 +1,71 @@
+package rightmesh.left.io.gpstracker.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import rightmesh.left.io.gpstracker.core.codec.LocationFix;
+import rightmesh.left.io.gpstracker.core.metrics.StageTimer;
+import rightmesh.left.io.gpstracker.core.uplink.FixQueue;
+import rightmesh.left.io.gpstracker.core.uplink.UplinkWorker;
+
+/**
+ * Handing one fix through the uplink queue, without the thread switch.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class QueueBenchmark {
+    private static final int QUEUE_CAPACITY = 256;
+
+    private final LocationFix fix = TrackFixtures.walk(1)[0];
+    private final LocationFix out = new LocationFix();
+
+    private FixQueue queue;
+    private UplinkWorker worker;
+    private double lastLatitude;
+
+    /**
+     * Build a queue and a worker that drains on the calling thread.
+     */
+    @Setup
+    public void setUp() {
+        queue = new FixQueue(QUEUE_CAPACITY);
+        worker = new UplinkWorker(Runnable::run, QUEUE_CAPACITY,
+                queued -> lastLatitude = queued.getLatitude(), new StageTimer("queue"));
+    }
+
+    /**
+     * Offer and poll one fix.
+     *
+     * @return enqueue time of the polled fix
+     */
+    @Benchmark
+    public long fixQueueOfferPoll() {
+        queue.offer(fix, 0);
+        return queue.poll(out);
+    }
+
+    /**
+     * Offer one fix to a worker, which drains it inline, timing the queue wait.
+     *
+     * @return latitude seen by the consumer
+     */
+    @Benchmark
+    public double uplinkWorkerOffer() {
+        worker.offer(fix);
+        return lastLatitude;
+    }
+}
@@ -0,0 +1,103 @@
+package rightmesh.left.io.gpstracker.benchmark;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import rightmesh.left.io.gpstracker.core.codec.LocationFix;
+import rightmesh.left.io.gpstracker.core.transport.MeshTransport;
+import rightmesh.left.io.gpstracker.core.uplink.LocationUplink;
+
+/**
+ * The whole uplink from the location callback to the transport, against a stub transport that
+ * accepts every frame. Every operation offers {@link TrackFixtures#BATCH_SIZE} fixes and waits
+ * until the uplink executor has sent them, either one legacy payload per fix or one batch.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SendPathBenchmark {
+    private static final String SUPER_PEER_ID = "superpeer";
+
+    @Param({"1", "10"})
+    public int batchMaxFixes;
+
+    private final Runnable barrier = () -> { };
+
+    private LocationFix[] fixes;
+    private ScheduledExecutorService executor;
+    private LocationUplink uplink;
+    private StubTransport transport;
+
+    /**
+     * Stub transport that only counts what it is given.
+     */
+    static class StubTransport implements MeshTransport {
+        volatile int frames;
+        volatile long bytes;
+
+        @Override
+        public int send(String peerId, byte[] payload) {
+            frames++;
+            bytes += payload.length;
+            return frames;
+        }
+
+        @Override
+        public void setOnTransportEventListener(OnTransportEventListener listener) {
+            // The stub never changes state.
+        }
+    }
+
+    /**
+     * Start an uplink on its own executor.
+     */
+    @Setup
+    public void setUp() {
+        fixes = TrackFixtures.walk(TrackFixtures.BATCH_SIZE);
+        executor = Executors.newSingleThreadScheduledExecutor();
+        transport = new StubTransport();
+        uplink = new LocationUplink(SUPER_PEER_ID, executor)
+                .setBatchLimits(batchMaxFixes, TimeUnit.HOURS.toMillis(1));
+        uplink.setTransport(transport);
+        uplink.start();
+    }
+
+    @TearDown
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Offer one batch worth of fixes and wait for the executor to process them.
+     *
+     * @return frames sent so far
+     * @throws ExecutionException   the executor failed
+     * @throws InterruptedException interrupted while waiting
+     */
+    @Benchmark
+    public int offerBatch() throws ExecutionException, InterruptedException {
+        for (LocationFix fix : fixes) {
+            uplink.offer(fix);
+        }
+        executor.submit(barrier).get();
+        return transport.frames;
+    }
+}
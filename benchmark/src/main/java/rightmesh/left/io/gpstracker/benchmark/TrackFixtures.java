@@ -0,0 +1,59 @@
+package rightmesh.left.io.gpstracker.benchmark;
+
+import java.util.Random;
+
+import rightmesh.left.io.gpstracker.core.codec.LocationFix;
+
+/**
+ * Location fixes shared by the benchmarks.
+ */
+final class TrackFixtures {
+    // Fixes per batch, the default UPLINK_BATCH_MAX_FIXES of the app.
+    static final int BATCH_SIZE = 10;
+
+    private TrackFixtures() {
+    }
+
+    /**
+     * A walk of one fix per second with every optional field set, as the fused provider
+     * reports it.
+     *
+     * @param count number of fixes
+     * @return fixes in chronological order
+     */
+    static LocationFix[] walk(int count) {
+        LocationFix[] fixes = new LocationFix[count];
+        for (int i = 0; i < count; i++) {
+            fixes[i] = new LocationFix()
+                    .set(49.282729 + i * 0.00001, -123.120738 + i * 0.000012)
+                    .setTime(1546300800000L + i * 1000L)
+                    .setAccuracy(4.5f)
+                    .setSpeed(1.4f)
+                    .setBearing(45f);
+        }
+        return fixes;
+    }
+
+    /**
+     * The same walk with a few metres of GPS noise and varying accuracy, speed and bearing, which
+     * compresses closer to a real track than the perfectly regular {@link #walk(int)}.
+     *
+     * @param count number of fixes
+     * @return fixes in chronological order, the same on every call
+     */
+    static LocationFix[] noisyWalk(int count) {
+        Random random = new Random(count);
+        LocationFix[] fixes = walk(count);
+        for (LocationFix fix : fixes) {
+            // set() clears the optional fields, the time included.
+            long timeMillis = fix.getTimeMillis();
+            fix.set(fix.getLatitude() + random.nextGaussian() * 0.00002,
+                    fix.getLongitude() + random.nextGaussian() * 0.00003)
+                    .setTime(timeMillis)
+                    .setAccuracy(3 + random.nextInt(8))
+                    .setSpeed(1.2f + random.nextFloat() * 0.4f)
+                    .setBearing(40 + random.nextInt(10));
+        }
+        return fixes;
+    }
+}
@@ -0,0 +1,114 @@
+package rightmesh.left.io.gpstracker.core.codec;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Frames of several devices merged into one by a device relaying them toward the SuperPeer.
+ *
+ * <p>Version 8 frames are {@link BatchFrame#MAGIC}, {@link #VERSION_AGGREGATE}, a varint entry
+ * count, then for every entry:
+ * <ul>
+ *     <li>the sender's peer id as a varint length and UTF-8 bytes, empty for the peer sending
+ *     the aggregate itself,</li>
+ *     <li>the {@link DeliveryCodec} sequence number the sender gave the frame, as a varint,</li>
+ *     <li>the frame as a varint length and the bytes the sender encoded, of any version.</li>
+ * </ul>
+ */
+public final class AggregateCodec {
+    public static final byte VERSION_AGGREGATE = 8;
+
+    // Charset constants need API 19.
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final int HEADER_SIZE = 2 + VarInts.MAX_VARINT32_SIZE;
+
+    private AggregateCodec() {
+    }
+
+    /**
+     * Encode entries into a new frame.
+     *
+     * @param entries frames to merge, in the order they should be handled
+     * @return encoded frame
+     */
+    public static byte[] encode(List<RelayedFrame> entries) {
+        int size = HEADER_SIZE;
+        byte[][] senders = new byte[entries.size()][];
+        for (int i = 0; i < entries.size(); i++) {
+            senders[i] = entries.get(i).getSenderId().getBytes(UTF_8);
+            size += 2 * VarInts.MAX_VARINT32_SIZE + VarInts.MAX_VARINT_SIZE + senders[i].length
+                    + entries.get(i).getFrame().length;
+        }
+        ByteBuffer out = ByteBuffer.allocate(size);
+        out.put(BatchFrame.MAGIC);
+        out.put(VERSION_AGGREGATE);
+        VarInts.writeUnsigned(out, entries.size());
+        for (int i = 0; i < entries.size(); i++) {
+            RelayedFrame entry = entries.get(i);
+            VarInts.writeUnsigned(out, senders[i].length);
+            out.put(senders[i]);
+            VarInts.writeUnsigned(out, entry.getSequence());
+            VarInts.writeUnsigned(out, entry.getFrame().length);
+            out.put(entry.getFrame());
+        }
+        byte[] frame = new byte[out.position()];
+        System.arraycopy(out.array(), 0, frame, 0, frame.length);
+        return frame;
+    }
+
+    /**
+     * Check whether a payload is an aggregate frame.
+     *
+     * @param payload received payload
+     * @return true if the payload starts with an aggregate frame header
+     */
+    public static boolean isAggregate(byte[] payload) {
+        return BatchFrame.isBatchFrame(payload) && payload[1] == VERSION_AGGREGATE;
+    }
+
+    /**
+     * Decode an aggregate frame.
+     *
+     * @param payload aggregate frame
+     * @return entries in the order they were merged
+     * @throws IllegalArgumentException the payload is malformed or not an aggregate frame
+     */
+    public static List<RelayedFrame> decode(byte[] payload) {
+        if (!isAggregate(payload)) {
+            throw new IllegalArgumentException("Not an aggregate frame");
+        }
+        ByteBuffer in = ByteBuffer.wrap(payload, 2, payload.length - 2);
+        int count = readLength(in);
+        List<RelayedFrame> entries = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            byte[] sender = new byte[readLength(in)];
+            in.get(sender);
+            long sequence = VarInts.readUnsigned(in);
+            byte[] frame = new byte[readLength(in)];
+            in.get(frame);
+            entries.add(new RelayedFrame(new String(sender, UTF_8), sequence, frame));
+        }
+        if (in.hasRemaining()) {
+            throw new IllegalArgumentException(in.remaining() + " trailing bytes in frame");
+        }
+        return entries;
+    }
+
+    /**
+     * Read a count or length, which cannot exceed the bytes left.
+     *
+     * @param in source buffer
+     * @return count
+     * @throws IllegalArgumentException the count exceeds the frame size
+     */
+    private static int readLength(ByteBuffer in) {
+        long length = VarInts.readUnsigned(in);
+        if (length < 0 || length > in.remaining()) {
+            throw new IllegalArgumentException("Length " + length + " exceeds frame size");
+        }
+        return (int) length;
+    }
+}
@@ -0,0 +1,89 @@
+package rightmesh.left.io.gpstracker.core.codec;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Wire layout of a batch of location fixes sent to the SuperPeer in a single message.
+ *
+ * <p>Every frame starts with {@link #MAGIC} and a version byte. The magic byte lets the SuperPeer
+ * tell frames apart from the legacy 16-byte lat/long payload: a big-endian latitude double never
+ * starts with {@code 0x47}. Version 1 frames, handled here, follow with the fix count and a
+ * big-endian lat/long double pair per fix. Later versions are handled by {@link LocationCodec}.
+ */
+public final class BatchFrame {
+    public static final byte MAGIC = 0x47;
+
+    public static final byte VERSION_RAW_DOUBLES = 1;
+
+    public static final int HEADER_SIZE = 3;
+
+    public static final int FIX_SIZE = 2 * Double.SIZE / Byte.SIZE;
+
+    public static final int LEGACY_FRAME_SIZE = FIX_SIZE;
+
+    public static final int MAX_FIXES = 0xFF;
+
+    private BatchFrame() {
+    }
+
+    /**
+     * Encode the first {@code count} fixes into a new frame.
+     *
+     * @param latitudes  latitudes in degrees
+     * @param longitudes longitudes in degrees, same order as {@code latitudes}
+     * @param count      number of fixes to encode, at most {@link #MAX_FIXES}
+     * @return encoded frame
+     */
+    public static byte[] encode(double[] latitudes, double[] longitudes, int count) {
+        if (count < 0 || count > MAX_FIXES) {
+            throw new IllegalArgumentException("Invalid fix count: " + count);
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + count * FIX_SIZE);
+        buffer.put(MAGIC);
+        buffer.put(VERSION_RAW_DOUBLES);
+        buffer.put((byte) count);
+        for (int i = 0; i < count; i++) {
+            buffer.putDouble(latitudes[i]);
+            buffer.putDouble(longitudes[i]);
+        }
+        return buffer.array();
+    }
+
+    /**
+     * Decode a frame into the given arrays.
+     *
+     * @param frame      encoded frame
+     * @param latitudes  receives latitudes, must hold at least {@link #MAX_FIXES} values
+     * @param longitudes receives longitudes, must hold at least {@link #MAX_FIXES} values
+     * @return number of decoded fixes
+     * @throws IllegalArgumentException the frame is malformed
+     */
+    public static int decode(byte[] frame, double[] latitudes, double[] longitudes) {
+        if (!isBatchFrame(frame)) {
+            throw new IllegalArgumentException("Not a batch frame");
+        }
+        if (frame[1] != VERSION_RAW_DOUBLES) {
+            throw new IllegalArgumentException("Unsupported frame version: " + frame[1]);
+        }
+        int count = frame[2] & 0xFF;
+        if (frame.length != HEADER_SIZE + count * FIX_SIZE) {
+            throw new IllegalArgumentException("Truncated frame of " + frame.length + " bytes");
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(frame, HEADER_SIZE, count * FIX_SIZE);
+        for (int i = 0; i < count; i++) {
+            latitudes[i] = buffer.getDouble();
+            longitudes[i] = buffer.getDouble();
+        }
+        return count;
+    }
+
+    /**
+     * Check whether a payload is a batch frame rather than a legacy lat/long payload.
+     *
+     * @param payload received payload
+     * @return true if the payload starts with a batch frame header
+     */
+    public static boolean isBatchFrame(byte[] payload) {
+        return payload != null && payload.length >= HEADER_SIZE && payload[0] == MAGIC;
+    }
+}
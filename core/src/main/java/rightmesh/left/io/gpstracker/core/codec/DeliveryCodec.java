@@ -0,0 +1,134 @@
+package rightmesh.left.io.gpstracker.core.codec;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Envelope that numbers the frames a device sends, and the acknowledgement the SuperPeer sends
+ * back for them, so a device knows which frames actually arrived.
+ *
+ * <p>Version 5 frames are {@link BatchFrame#MAGIC}, {@link #VERSION_SEQUENCED}, the sequence
+ * number as a varint, then any other frame unchanged. Version 6 acknowledgements are
+ * {@link BatchFrame#MAGIC}, {@link #VERSION_ACK}, a varint count, then that many sequence
+ * numbers as varints.
+ */
+public final class DeliveryCodec {
+    public static final byte VERSION_SEQUENCED = 5;
+
+    public static final byte VERSION_ACK = 6;
+
+    private DeliveryCodec() {
+    }
+
+    /**
+     * Number a frame.
+     *
+     * @param sequence non-negative sequence number
+     * @param frame    encoded frame
+     * @return new sequenced frame
+     */
+    public static byte[] wrap(long sequence, byte[] frame) {
+        ByteBuffer out = ByteBuffer.allocate(2 + VarInts.MAX_VARINT_SIZE + frame.length);
+        out.put(BatchFrame.MAGIC);
+        out.put(VERSION_SEQUENCED);
+        VarInts.writeUnsigned(out, sequence);
+        out.put(frame);
+        return Arrays.copyOf(out.array(), out.position());
+    }
+
+    /**
+     * Check whether a payload is a sequenced frame.
+     *
+     * @param payload received payload
+     * @return true if the payload starts with a sequenced frame header
+     */
+    public static boolean isSequenced(byte[] payload) {
+        return BatchFrame.isBatchFrame(payload) && payload[1] == VERSION_SEQUENCED;
+    }
+
+    /**
+     * Read the sequence number of a sequenced frame.
+     *
+     * @param payload sequenced frame
+     * @return sequence number
+     * @throws IllegalArgumentException the payload is malformed or not a sequenced frame
+     */
+    public static long getSequence(byte[] payload) {
+        return VarInts.readUnsigned(sequencedBody(payload));
+    }
+
+    /**
+     * Extract the frame a sequenced frame carries.
+     *
+     * @param payload sequenced frame
+     * @return new array holding the inner frame
+     * @throws IllegalArgumentException the payload is malformed or not a sequenced frame
+     */
+    public static byte[] unwrap(byte[] payload) {
+        ByteBuffer in = sequencedBody(payload);
+        VarInts.readUnsigned(in);
+        return Arrays.copyOfRange(payload, in.position(), payload.length);
+    }
+
+    /**
+     * Encode the acknowledgement of the first {@code count} sequence numbers.
+     *
+     * @param sequences received sequence numbers
+     * @param count     number of sequence numbers
+     * @return new acknowledgement frame
+     */
+    public static byte[] encodeAck(long[] sequences, int count) {
+        ByteBuffer out = ByteBuffer.allocate(
+                2 + VarInts.MAX_VARINT32_SIZE + count * VarInts.MAX_VARINT_SIZE);
+        out.put(BatchFrame.MAGIC);
+        out.put(VERSION_ACK);
+        VarInts.writeUnsigned(out, count);
+        for (int i = 0; i < count; i++) {
+            VarInts.writeUnsigned(out, sequences[i]);
+        }
+        return Arrays.copyOf(out.array(), out.position());
+    }
+
+    /**
+     * Check whether a payload is an acknowledgement.
+     *
+     * @param payload received payload
+     * @return true if the payload starts with an acknowledgement header
+     */
+    public static boolean isAck(byte[] payload) {
+        return BatchFrame.isBatchFrame(payload) && payload[1] == VERSION_ACK;
+    }
+
+    /**
+     * Decode an acknowledgement.
+     *
+     * @param payload acknowledgement frame
+     * @return acknowledged sequence numbers in the order they were sent
+     * @throws IllegalArgumentException the payload is malformed or not an acknowledgement
+     */
+    public static long[] decodeAck(byte[] payload) {
+        if (!isAck(payload)) {
+            throw new IllegalArgumentException("Not an acknowledgement");
+        }
+        ByteBuffer in = ByteBuffer.wrap(payload, 2, payload.length - 2);
+        long count = VarInts.readUnsigned(in);
+        if (count < 0 || count > in.remaining()) {
+            throw new IllegalArgumentException("Ack count " + count + " exceeds frame size");
+        }
+        long[] sequences = new long[(int) count];
+        for (int i = 0; i < sequences.length; i++) {
+            sequences[i] = VarInts.readUnsigned(in);
+        }
+        if (in.hasRemaining()) {
+            throw new IllegalArgumentException(in.remaining() + " trailing bytes in frame");
+        }
+        return sequences;
+    }
+
+    private static ByteBuffer sequencedBody(byte[] payload) {
+        if (!isSequenced(payload)) {
+            throw new IllegalArgumentException("Not a sequenced frame");
+        }
+        return ByteBuffer.wrap(payload, 2, payload.length - 2);
+    }
+}
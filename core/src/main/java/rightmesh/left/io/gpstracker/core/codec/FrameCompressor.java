@@ -0,0 +1,193 @@
+package rightmesh.left.io.gpstracker.core.codec;
+
+import java.nio.ByteBuffer;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Optional DEFLATE stage for frames, mostly {@link LocationCodec} batches.
+ *
+ * <p>Version 7 frames are {@link BatchFrame#MAGIC}, {@link #VERSION_DEFLATED}, a dictionary id,
+ * the size of the original frame as a varint, then the original frame as raw DEFLATE data. The
+ * version byte tells the SuperPeer to inflate the frame first, so devices that do not compress
+ * keep working unchanged. With {@link #TRACK_DICTIONARY}, both ends preset the compressor with
+ * typical batch bytes, which is what makes frames of a few dozen bytes worth compressing.
+ *
+ * <p>A frame is only compressed if that makes it smaller. One instance reuses its
+ * {@link Deflater} and output buffer and is not thread-safe; call {@link #close()} once done.
+ */
+public final class FrameCompressor {
+    public static final byte VERSION_DEFLATED = 7;
+
+    public static final byte NO_DICTIONARY = 0;
+
+    public static final byte TRACK_DICTIONARY = 1;
+
+    // Larger frames are rejected rather than inflated.
+    public static final int MAX_INFLATED_SIZE = 1 << 16;
+
+    private static final int HEADER_SIZE = 3 + VarInts.MAX_VARINT32_SIZE;
+
+    // Fixes of each sample track in the dictionary.
+    private static final int DICTIONARY_FIXES = 32;
+
+    private static final byte[] TRACK_DICTIONARY_BYTES = buildTrackDictionary();
+
+    private final Deflater deflater;
+    private final byte dictionaryId;
+    private ByteBuffer out = ByteBuffer.allocate(HEADER_SIZE);
+
+    /**
+     * Constructor {@link FrameCompressor}.
+     *
+     * @param level        DEFLATE level, from {@link Deflater#BEST_SPEED} to
+     *                     {@link Deflater#BEST_COMPRESSION}
+     * @param dictionaryId {@link #TRACK_DICTIONARY} or {@link #NO_DICTIONARY}
+     */
+    public FrameCompressor(int level, byte dictionaryId) {
+        if (level < Deflater.BEST_SPEED || level > Deflater.BEST_COMPRESSION) {
+            throw new IllegalArgumentException("Invalid level: " + level);
+        }
+        dictionary(dictionaryId);
+        deflater = new Deflater(level, true);
+        this.dictionaryId = dictionaryId;
+    }
+
+    /**
+     * Compress a frame if that makes it smaller.
+     *
+     * @param frame buffer holding the frame between position and limit, backed by an array
+     * @return a reused buffer holding the compressed frame between position and limit, or
+     *         {@code frame} itself if compressing does not pay off
+     */
+    public ByteBuffer compress(ByteBuffer frame) {
+        int length = frame.remaining();
+        if (out.capacity() < HEADER_SIZE + length) {
+            out = ByteBuffer.allocate(HEADER_SIZE + length);
+        }
+        out.clear();
+        out.put(BatchFrame.MAGIC);
+        out.put(VERSION_DEFLATED);
+        out.put(dictionaryId);
+        VarInts.writeUnsigned(out, length);
+
+        deflater.reset();
+        byte[] dictionary = dictionary(dictionaryId);
+        if (dictionary != null) {
+            deflater.setDictionary(dictionary);
+        }
+        deflater.setInput(frame.array(), frame.arrayOffset() + frame.position(), length);
+        deflater.finish();
+        // Only room for a result smaller than the frame: anything longer is not finished.
+        int room = length - 1 - out.position();
+        int written = room > 0 ? deflater.deflate(out.array(), out.position(), room) : 0;
+        if (!deflater.finished()) {
+            return frame;
+        }
+        out.position(out.position() + written);
+        out.flip();
+        return out;
+    }
+
+    /**
+     * Release the native compressor. The instance cannot be used afterwards.
+     */
+    public void close() {
+        deflater.end();
+    }
+
+    /**
+     * Check whether a payload is a compressed frame.
+     *
+     * @param payload received payload
+     * @return true if the payload starts with a compressed frame header
+     */
+    public static boolean isCompressed(byte[] payload) {
+        return BatchFrame.isBatchFrame(payload) && payload[1] == VERSION_DEFLATED;
+    }
+
+    /**
+     * Restore the frame a compressed frame carries.
+     *
+     * @param payload compressed frame
+     * @return new array holding the original frame
+     * @throws IllegalArgumentException the payload is malformed, uses an unknown dictionary or
+     *                                  is not a compressed frame
+     */
+    public static byte[] decompress(byte[] payload) {
+        if (!isCompressed(payload)) {
+            throw new IllegalArgumentException("Not a compressed frame");
+        }
+        ByteBuffer in = ByteBuffer.wrap(payload, 2, payload.length - 2);
+        byte[] dictionary = dictionary(in.get());
+        long length = VarInts.readUnsigned(in);
+        if (length < 0 || length > MAX_INFLATED_SIZE) {
+            throw new IllegalArgumentException("Invalid frame size: " + length);
+        }
+        byte[] frame = new byte[(int) length];
+        Inflater inflater = new Inflater(true);
+        try {
+            if (dictionary != null) {
+                inflater.setDictionary(dictionary);
+            }
+            inflater.setInput(payload, in.position(), in.remaining());
+            int inflated = inflater.inflate(frame);
+            if (inflated != frame.length) {
+                throw new IllegalArgumentException("Truncated frame: " + inflated + " of "
+                        + length + " bytes");
+            }
+        } catch (DataFormatException e) {
+            throw new IllegalArgumentException("Corrupt compressed frame", e);
+        } finally {
+            inflater.end();
+        }
+        return frame;
+    }
+
+    /**
+     * Look up the preset bytes of a dictionary id.
+     *
+     * @param dictionaryId dictionary id
+     * @return dictionary bytes, null for {@link #NO_DICTIONARY}
+     * @throws IllegalArgumentException the id is unknown
+     */
+    private static byte[] dictionary(byte dictionaryId) {
+        switch (dictionaryId) {
+            case NO_DICTIONARY:
+                return null;
+            case TRACK_DICTIONARY:
+                return TRACK_DICTIONARY_BYTES;
+            default:
+                throw new IllegalArgumentException("Unknown dictionary: " + dictionaryId);
+        }
+    }
+
+    /**
+     * Build the track dictionary: a batch of a device standing still, then of a device walking
+     * at 1 Hz with every optional field set. Both ends build the same bytes, so it must never
+     * change; add a dictionary id instead.
+     *
+     * @return dictionary bytes
+     */
+    private static byte[] buildTrackDictionary() {
+        LocationFix[] still = new LocationFix[DICTIONARY_FIXES];
+        LocationFix[] walking = new LocationFix[DICTIONARY_FIXES];
+        for (int i = 0; i < DICTIONARY_FIXES; i++) {
+            still[i] = new LocationFix().setE6(49000000, -123000000)
+                    .setTime(i * 1000L)
+                    .setAccuracy(10);
+            walking[i] = new LocationFix().setE6(49000000 + i * 10, -123000000 + i * 12)
+                    .setTime(i * 1000L)
+                    .setAccuracy(5)
+                    .setSpeed(1.5f)
+                    .setBearing(45);
+        }
+        byte[] stillFrame = LocationCodec.encode(still, DICTIONARY_FIXES);
+        byte[] walkingFrame = LocationCodec.encode(walking, DICTIONARY_FIXES);
+        byte[] bytes = new byte[stillFrame.length + walkingFrame.length];
+        System.arraycopy(stillFrame, 0, bytes, 0, stillFrame.length);
+        System.arraycopy(walkingFrame, 0, bytes, stillFrame.length, walkingFrame.length);
+        return bytes;
+    }
+}
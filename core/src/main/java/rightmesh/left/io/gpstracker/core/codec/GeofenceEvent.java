@@ -0,0 +1,44 @@
+package rightmesh.left.io.gpstracker.core.codec;
+
+/**
+ * A device entered or left a geofence, as carried by a {@link GeofenceEventCodec} frame.
+ */
+public final class GeofenceEvent {
+    public static final int ENTER = 1;
+    public static final int EXIT = 2;
+
+    private final int fenceId;
+    private final int transition;
+    private final LocationFix fix;
+
+    /**
+     * Constructor {@link GeofenceEvent}.
+     *
+     * @param fenceId    id of the geofence
+     * @param transition {@link #ENTER} or {@link #EXIT}
+     * @param fix        fix that triggered the transition, not copied
+     */
+    public GeofenceEvent(int fenceId, int transition, LocationFix fix) {
+        this.fenceId = fenceId;
+        this.transition = transition;
+        this.fix = fix;
+    }
+
+    public int getFenceId() {
+        return fenceId;
+    }
+
+    public int getTransition() {
+        return transition;
+    }
+
+    public LocationFix getFix() {
+        return fix;
+    }
+
+    @Override
+    public String toString() {
+        return "GeofenceEvent{fence=" + fenceId + (transition == ENTER ? ", enter, " : ", exit, ")
+                + fix + '}';
+    }
+}
@@ -0,0 +1,100 @@
+package rightmesh.left.io.gpstracker.core.codec;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Encoding of the geofence transitions caused by one fix.
+ *
+ * <p>Version 3 frames are {@link BatchFrame#MAGIC}, {@link #VERSION_GEOFENCE_EVENTS}, the fix
+ * as in a {@link LocationCodec} frame (written against zero), a varint event count, then for
+ * every event a varint fence id and a transition byte. One enter or exit costs about 20 bytes.
+ */
+public final class GeofenceEventCodec {
+    public static final byte VERSION_GEOFENCE_EVENTS = 3;
+
+    private static final int EVENT_SIZE = VarInts.MAX_VARINT32_SIZE + 1;
+
+    private GeofenceEventCodec() {
+    }
+
+    /**
+     * Upper bound of the encoded frame size.
+     *
+     * @param count number of events
+     * @return maximum number of bytes {@link #encode(LocationFix, int[], int[], int, ByteBuffer)}
+     *         writes
+     */
+    public static int maxEncodedSize(int count) {
+        return 2 + LocationCodec.MAX_FIX_SIZE + VarInts.MAX_VARINT32_SIZE + count * EVENT_SIZE;
+    }
+
+    /**
+     * Encode the first {@code count} transitions of a fix at the current position of
+     * {@code out}.
+     *
+     * @param fix         fix that triggered the transitions
+     * @param fenceIds    non-negative fence ids
+     * @param transitions {@link GeofenceEvent#ENTER} or {@link GeofenceEvent#EXIT}, same order as
+     *                    {@code fenceIds}
+     * @param count       number of transitions
+     * @param out         destination with at least {@link #maxEncodedSize(int)} bytes remaining
+     */
+    public static void encode(LocationFix fix, int[] fenceIds, int[] transitions, int count,
+                              ByteBuffer out) {
+        out.put(BatchFrame.MAGIC);
+        out.put(VERSION_GEOFENCE_EVENTS);
+        LocationCodec.writeFix(out, fix, 0, 0, 0);
+        VarInts.writeUnsigned(out, count);
+        for (int i = 0; i < count; i++) {
+            VarInts.writeUnsigned(out, fenceIds[i]);
+            out.put((byte) transitions[i]);
+        }
+    }
+
+    /**
+     * Check whether a payload is a geofence event frame.
+     *
+     * @param payload received payload
+     * @return true if the payload starts with an event frame header
+     */
+    public static boolean isEventFrame(byte[] payload) {
+        return BatchFrame.isBatchFrame(payload) && payload[1] == VERSION_GEOFENCE_EVENTS;
+    }
+
+    /**
+     * Decode an event frame.
+     *
+     * @param payload event frame
+     * @return events in the order they were sent, sharing one fix
+     * @throws IllegalArgumentException the payload is malformed or not an event frame
+     */
+    public static List<GeofenceEvent> decode(byte[] payload) {
+        if (!isEventFrame(payload)) {
+            throw new IllegalArgumentException("Not a geofence event frame");
+        }
+        ByteBuffer in = ByteBuffer.wrap(payload, 2, payload.length - 2);
+        LocationFix fix = LocationCodec.readFix(in, 0, 0, 0);
+        long count = VarInts.readUnsigned(in);
+        if (count < 0 || count > in.remaining() / 2) {
+            throw new IllegalArgumentException("Event count " + count + " exceeds frame size");
+        }
+        List<GeofenceEvent> events = new ArrayList<>((int) count);
+        for (int i = 0; i < count; i++) {
+            long fenceId = VarInts.readUnsigned(in);
+            if (fenceId < 0 || fenceId > Integer.MAX_VALUE || !in.hasRemaining()) {
+                throw new IllegalArgumentException("Malformed event " + i);
+            }
+            int transition = in.get();
+            if (transition != GeofenceEvent.ENTER && transition != GeofenceEvent.EXIT) {
+                throw new IllegalArgumentException("Unknown transition: " + transition);
+            }
+            events.add(new GeofenceEvent((int) fenceId, transition, fix));
+        }
+        if (in.hasRemaining()) {
+            throw new IllegalArgumentException(in.remaining() + " trailing bytes in frame");
+        }
+        return events;
+    }
+}
@@ -0,0 +1,227 @@
+package rightmesh.left.io.gpstracker.core.codec;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compact, versioned encoding of location batches shared by the app and the SuperPeer.
+ *
+ * <p>Version 2 frames are {@link BatchFrame#MAGIC}, {@link #VERSION_DELTA}, a varint fix count,
+ * then for every fix:
+ * <ul>
+ *     <li>a field byte flagging which optional fields follow,</li>
+ *     <li>latitude and longitude in microdegrees as zig-zag varint deltas against the previous
+ *     fix of the frame (the first fix against zero),</li>
+ *     <li>time in milliseconds as a zig-zag varint delta against the previous timed fix,</li>
+ *     <li>accuracy in decimetres, speed in cm/s and bearing in tenths of a degree as unsigned
+ *     varints.</li>
+ * </ul>
+ * A fix taken a second after the previous one and a few metres away costs about 8 bytes.
+ *
+ * <p>{@link #decode(byte[])} also accepts version 1 {@link BatchFrame}s and the legacy 16-byte
+ * lat/long payload, so a SuperPeer can serve old and new senders alike. Geofence transitions are
+ * sent as {@link GeofenceEventCodec} frames instead.
+ */
+public final class LocationCodec {
+    public static final byte VERSION_DELTA = 2;
+
+    private static final int HEADER_SIZE = 2 + VarInts.MAX_VARINT32_SIZE;
+
+    // Field byte, lat, lon, time, accuracy, speed, bearing.
+    static final int MAX_FIX_SIZE = 1 + 5 * VarInts.MAX_VARINT32_SIZE + VarInts.MAX_VARINT_SIZE;
+
+    private static final float DECIMETRES_PER_METRE = 10f;
+    private static final float CENTIMETRES_PER_METRE = 100f;
+    private static final float TENTHS_PER_DEGREE = 10f;
+    private static final int BEARING_TENTHS_PER_TURN = 3600;
+
+    private LocationCodec() {
+    }
+
+    /**
+     * Upper bound of the encoded frame size.
+     *
+     * @param count number of fixes
+     * @return maximum number of bytes {@link #encode(LocationFix[], int, ByteBuffer)} writes
+     */
+    public static int maxEncodedSize(int count) {
+        return HEADER_SIZE + count * MAX_FIX_SIZE;
+    }
+
+    /**
+     * Encode the first {@code count} fixes into a new frame.
+     *
+     * @param fixes fixes in chronological order
+     * @param count number of fixes to encode
+     * @return encoded frame
+     */
+    public static byte[] encode(LocationFix[] fixes, int count) {
+        ByteBuffer buffer = ByteBuffer.allocate(maxEncodedSize(count));
+        encode(fixes, count, buffer);
+        byte[] frame = new byte[buffer.position()];
+        System.arraycopy(buffer.array(), 0, frame, 0, frame.length);
+        return frame;
+    }
+
+    /**
+     * Encode the first {@code count} fixes at the current position of {@code out}.
+     *
+     * @param fixes fixes in chronological order
+     * @param count number of fixes to encode
+     * @param out   destination with at least {@link #maxEncodedSize(int)} bytes remaining
+     */
+    public static void encode(LocationFix[] fixes, int count, ByteBuffer out) {
+        out.put(BatchFrame.MAGIC);
+        out.put(VERSION_DELTA);
+        VarInts.writeUnsigned(out, count);
+
+        int previousLatitude = 0;
+        int previousLongitude = 0;
+        long previousTime = 0;
+        for (int i = 0; i < count; i++) {
+            LocationFix fix = fixes[i];
+            writeFix(out, fix, previousLatitude, previousLongitude, previousTime);
+            previousLatitude = fix.getLatitudeE6();
+            previousLongitude = fix.getLongitudeE6();
+            if (fix.hasTime()) {
+                previousTime = fix.getTimeMillis();
+            }
+        }
+    }
+
+    /**
+     * Write one fix as in a version 2 frame.
+     *
+     * @param out               destination with at least {@link #MAX_FIX_SIZE} bytes remaining
+     * @param fix               fix to write
+     * @param previousLatitude  latitude the fix is written against, in microdegrees
+     * @param previousLongitude longitude the fix is written against, in microdegrees
+     * @param previousTime      time the fix is written against, in milliseconds
+     */
+    static void writeFix(ByteBuffer out, LocationFix fix, int previousLatitude,
+                         int previousLongitude, long previousTime) {
+        out.put((byte) fix.getFields());
+        VarInts.writeSigned(out, (long) fix.getLatitudeE6() - previousLatitude);
+        VarInts.writeSigned(out, (long) fix.getLongitudeE6() - previousLongitude);
+        if (fix.hasTime()) {
+            VarInts.writeSigned(out, fix.getTimeMillis() - previousTime);
+        }
+        if (fix.hasAccuracy()) {
+            VarInts.writeUnsigned(out, quantize(fix.getAccuracy(), DECIMETRES_PER_METRE));
+        }
+        if (fix.hasSpeed()) {
+            VarInts.writeUnsigned(out, quantize(fix.getSpeed(), CENTIMETRES_PER_METRE));
+        }
+        if (fix.hasBearing()) {
+            long tenths = quantize(fix.getBearing(), TENTHS_PER_DEGREE);
+            VarInts.writeUnsigned(out, tenths % BEARING_TENTHS_PER_TURN);
+        }
+    }
+
+    /**
+     * Read one fix written by {@link #writeFix(ByteBuffer, LocationFix, int, int, long)}.
+     *
+     * @param in                source positioned at the fix
+     * @param previousLatitude  latitude the fix was written against, in microdegrees
+     * @param previousLongitude longitude the fix was written against, in microdegrees
+     * @param previousTime      time the fix was written against, in milliseconds
+     * @return decoded fix
+     * @throws IllegalArgumentException the fix is truncated or has unknown fields
+     */
+    static LocationFix readFix(ByteBuffer in, int previousLatitude, int previousLongitude,
+                               long previousTime) {
+        if (!in.hasRemaining()) {
+            throw new IllegalArgumentException("Truncated frame");
+        }
+        int fields = in.get();
+        if ((fields & ~LocationFix.ALL_FIELDS) != 0) {
+            throw new IllegalArgumentException("Unknown fields: " + fields);
+        }
+        int latitude = previousLatitude + (int) VarInts.readSigned(in);
+        int longitude = previousLongitude + (int) VarInts.readSigned(in);
+        LocationFix fix = new LocationFix().setE6(latitude, longitude);
+        if ((fields & LocationFix.FIELD_TIME) != 0) {
+            fix.setTime(previousTime + VarInts.readSigned(in));
+        }
+        if ((fields & LocationFix.FIELD_ACCURACY) != 0) {
+            fix.setAccuracy(VarInts.readUnsigned(in) / DECIMETRES_PER_METRE);
+        }
+        if ((fields & LocationFix.FIELD_SPEED) != 0) {
+            fix.setSpeed(VarInts.readUnsigned(in) / CENTIMETRES_PER_METRE);
+        }
+        if ((fields & LocationFix.FIELD_BEARING) != 0) {
+            fix.setBearing(VarInts.readUnsigned(in) / TENTHS_PER_DEGREE);
+        }
+        return fix;
+    }
+
+    /**
+     * Decode any payload sent by a GPSTracker device.
+     *
+     * @param payload legacy lat/long payload, version 1 or version 2 frame
+     * @return decoded fixes in the order they were sent
+     * @throws IllegalArgumentException the payload is malformed or of an unknown version
+     */
+    public static List<LocationFix> decode(byte[] payload) {
+        if (!BatchFrame.isBatchFrame(payload)) {
+            return decodeLegacy(payload);
+        }
+        if (payload[1] == BatchFrame.VERSION_RAW_DOUBLES) {
+            return decodeRawDoubles(payload);
+        }
+        if (payload[1] != VERSION_DELTA) {
+            throw new IllegalArgumentException("Unsupported frame version: " + payload[1]);
+        }
+
+        ByteBuffer in = ByteBuffer.wrap(payload, 2, payload.length - 2);
+        long count = VarInts.readUnsigned(in);
+        if (count > in.remaining() / 3) {
+            // Every fix takes at least a field byte and two one-byte deltas.
+            throw new IllegalArgumentException("Fix count " + count + " exceeds frame size");
+        }
+        List<LocationFix> fixes = new ArrayList<>((int) count);
+        int latitude = 0;
+        int longitude = 0;
+        long time = 0;
+        for (int i = 0; i < count; i++) {
+            LocationFix fix = readFix(in, latitude, longitude, time);
+            latitude = fix.getLatitudeE6();
+            longitude = fix.getLongitudeE6();
+            if (fix.hasTime()) {
+                time = fix.getTimeMillis();
+            }
+            fixes.add(fix);
+        }
+        if (in.hasRemaining()) {
+            throw new IllegalArgumentException(in.remaining() + " trailing bytes in frame");
+        }
+        return fixes;
+    }
+
+    private static List<LocationFix> decodeLegacy(byte[] payload) {
+        if (payload == null || payload.length != BatchFrame.LEGACY_FRAME_SIZE) {
+            throw new IllegalArgumentException("Unknown payload format");
+        }
+        ByteBuffer in = ByteBuffer.wrap(payload);
+        List<LocationFix> fixes = new ArrayList<>(1);
+        fixes.add(new LocationFix().set(in.getDouble(), in.getDouble()));
+        return fixes;
+    }
+
+    private static List<LocationFix> decodeRawDoubles(byte[] payload) {
+        double[] latitudes = new double[BatchFrame.MAX_FIXES];
+        double[] longitudes = new double[BatchFrame.MAX_FIXES];
+        int count = BatchFrame.decode(payload, latitudes, longitudes);
+        List<LocationFix> fixes = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            fixes.add(new LocationFix().set(latitudes[i], longitudes[i]));
+        }
+        return fixes;
+    }
+
+    private static long quantize(float value, float scale) {
+        // Negative and NaN values carry no information for these fields; send them as zero.
+        return value > 0 ? Math.round(value * scale) : 0;
+    }
+}
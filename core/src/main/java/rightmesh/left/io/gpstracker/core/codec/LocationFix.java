@@ -0,0 +1,210 @@
+package rightmesh.left.io.gpstracker.core.codec;
+
+/**
+ * A single location fix in the fixed-point form used on the wire.
+ *
+ * <p>Coordinates are held as microdegrees (about 11 cm at the equator). Time, accuracy, speed
+ * and bearing are optional. Instances are mutable so they can be reused between fixes.
+ */
+public final class LocationFix {
+    public static final double MICRODEGREES_PER_DEGREE = 1e6;
+
+    static final int FIELD_TIME = 1;
+    static final int FIELD_ACCURACY = 1 << 1;
+    static final int FIELD_SPEED = 1 << 2;
+    static final int FIELD_BEARING = 1 << 3;
+    static final int ALL_FIELDS = FIELD_TIME | FIELD_ACCURACY | FIELD_SPEED | FIELD_BEARING;
+
+    private int latitudeE6;
+    private int longitudeE6;
+    private long timeMillis;
+    private float accuracy;
+    private float speed;
+    private float bearing;
+    private int fields;
+
+    /**
+     * Set the coordinates and clear every optional field.
+     *
+     * @param latitude  latitude in degrees
+     * @param longitude longitude in degrees
+     * @return this fix
+     */
+    public LocationFix set(double latitude, double longitude) {
+        return setE6(toMicrodegrees(latitude), toMicrodegrees(longitude));
+    }
+
+    /**
+     * Set the coordinates in microdegrees and clear every optional field.
+     *
+     * @param latitudeE6  latitude in microdegrees
+     * @param longitudeE6 longitude in microdegrees
+     * @return this fix
+     */
+    public LocationFix setE6(int latitudeE6, int longitudeE6) {
+        this.latitudeE6 = latitudeE6;
+        this.longitudeE6 = longitudeE6;
+        this.fields = 0;
+        return this;
+    }
+
+    /**
+     * Set the fix time.
+     *
+     * @param timeMillis UTC time in milliseconds since epoch
+     * @return this fix
+     */
+    public LocationFix setTime(long timeMillis) {
+        this.timeMillis = timeMillis;
+        fields |= FIELD_TIME;
+        return this;
+    }
+
+    /**
+     * Set the horizontal accuracy.
+     *
+     * @param accuracy accuracy radius in metres
+     * @return this fix
+     */
+    public LocationFix setAccuracy(float accuracy) {
+        this.accuracy = accuracy;
+        fields |= FIELD_ACCURACY;
+        return this;
+    }
+
+    /**
+     * Set the ground speed.
+     *
+     * @param speed speed in metres per second
+     * @return this fix
+     */
+    public LocationFix setSpeed(float speed) {
+        this.speed = speed;
+        fields |= FIELD_SPEED;
+        return this;
+    }
+
+    /**
+     * Set the bearing.
+     *
+     * @param bearing bearing in degrees east of true north
+     * @return this fix
+     */
+    public LocationFix setBearing(float bearing) {
+        this.bearing = bearing;
+        fields |= FIELD_BEARING;
+        return this;
+    }
+
+    /**
+     * Copy every field of another fix into this one.
+     *
+     * @param other fix to copy
+     * @return this fix
+     */
+    public LocationFix copyFrom(LocationFix other) {
+        latitudeE6 = other.latitudeE6;
+        longitudeE6 = other.longitudeE6;
+        timeMillis = other.timeMillis;
+        accuracy = other.accuracy;
+        speed = other.speed;
+        bearing = other.bearing;
+        fields = other.fields;
+        return this;
+    }
+
+    public int getLatitudeE6() {
+        return latitudeE6;
+    }
+
+    public int getLongitudeE6() {
+        return longitudeE6;
+    }
+
+    public double getLatitude() {
+        return latitudeE6 / MICRODEGREES_PER_DEGREE;
+    }
+
+    public double getLongitude() {
+        return longitudeE6 / MICRODEGREES_PER_DEGREE;
+    }
+
+    public long getTimeMillis() {
+        return timeMillis;
+    }
+
+    public float getAccuracy() {
+        return accuracy;
+    }
+
+    public float getSpeed() {
+        return speed;
+    }
+
+    public float getBearing() {
+        return bearing;
+    }
+
+    public boolean hasTime() {
+        return (fields & FIELD_TIME) != 0;
+    }
+
+    public boolean hasAccuracy() {
+        return (fields & FIELD_ACCURACY) != 0;
+    }
+
+    public boolean hasSpeed() {
+        return (fields & FIELD_SPEED) != 0;
+    }
+
+    public boolean hasBearing() {
+        return (fields & FIELD_BEARING) != 0;
+    }
+
+    int getFields() {
+        return fields;
+    }
+
+    /**
+     * Convert degrees to the fixed-point wire representation.
+     *
+     * @param degrees coordinate in degrees
+     * @return coordinate in microdegrees, rounded to nearest
+     */
+    public static int toMicrodegrees(double degrees) {
+        return (int) Math.round(degrees * MICRODEGREES_PER_DEGREE);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof LocationFix)) {
+            return false;
+        }
+        LocationFix other = (LocationFix) o;
+        return latitudeE6 == other.latitudeE6
+                && longitudeE6 == other.longitudeE6
+                && fields == other.fields
+                && (!hasTime() || timeMillis == other.timeMillis)
+                && (!hasAccuracy() || Float.compare(accuracy, other.accuracy) == 0)
+                && (!hasSpeed() || Float.compare(speed, other.speed) == 0)
+                && (!hasBearing() || Float.compare(bearing, other.bearing) == 0);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * (31 * latitudeE6 + longitudeE6) + fields;
+    }
+
+    @Override
+    public String toString() {
+        return "LocationFix{lat=" + getLatitude() + ", lon=" + getLongitude()
+                + (hasTime() ? ", time=" + timeMillis : "")
+                + (hasAccuracy() ? ", accuracy=" + accuracy : "")
+                + (hasSpeed() ? ", speed=" + speed : "")
+                + (hasBearing() ? ", bearing=" + bearing : "")
+                + '}';
+    }
+}
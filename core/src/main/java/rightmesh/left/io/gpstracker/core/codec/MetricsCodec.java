@@ -0,0 +1,148 @@
+package rightmesh.left.io.gpstracker.core.codec;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import rightmesh.left.io.gpstracker.core.metrics.MetricsSnapshot;
+
+/**
+ * Encoding of a {@link MetricsSnapshot} a device reports to the SuperPeer.
+ *
+ * <p>Version 4 frames are {@link BatchFrame#MAGIC}, {@link #VERSION_METRICS}, the snapshot time
+ * in milliseconds as a varint, then a varint count of values followed by each value's name and
+ * signed varint value, then a varint count of distributions followed by each distribution's
+ * name and its count, mean, p50, p90, p99 and max as varints. Names are a varint length and
+ * UTF-8 bytes. A snapshot of the uplink metrics takes a few hundred bytes.
+ */
+public final class MetricsCodec {
+    public static final byte VERSION_METRICS = 4;
+
+    // Charset constants need API 19.
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final int DISTRIBUTION_FIELDS = 6;
+
+    private MetricsCodec() {
+    }
+
+    /**
+     * Encode a snapshot.
+     *
+     * @param snapshot snapshot to encode
+     * @return new frame
+     */
+    public static byte[] encode(MetricsSnapshot snapshot) {
+        Map<String, Long> values = snapshot.getValues();
+        Map<String, MetricsSnapshot.Distribution> distributions = snapshot.getDistributions();
+        int size = 2 + VarInts.MAX_VARINT_SIZE + 2 * VarInts.MAX_VARINT32_SIZE
+                + values.size() * VarInts.MAX_VARINT_SIZE
+                + distributions.size() * DISTRIBUTION_FIELDS * VarInts.MAX_VARINT_SIZE;
+        for (String name : values.keySet()) {
+            size += maxNameSize(name);
+        }
+        for (String name : distributions.keySet()) {
+            size += maxNameSize(name);
+        }
+        ByteBuffer out = ByteBuffer.allocate(size);
+        out.put(BatchFrame.MAGIC);
+        out.put(VERSION_METRICS);
+        VarInts.writeUnsigned(out, snapshot.getTimeMillis());
+        VarInts.writeUnsigned(out, values.size());
+        for (Map.Entry<String, Long> entry : values.entrySet()) {
+            writeName(out, entry.getKey());
+            VarInts.writeSigned(out, entry.getValue());
+        }
+        VarInts.writeUnsigned(out, distributions.size());
+        for (Map.Entry<String, MetricsSnapshot.Distribution> entry : distributions.entrySet()) {
+            writeName(out, entry.getKey());
+            MetricsSnapshot.Distribution distribution = entry.getValue();
+            VarInts.writeUnsigned(out, distribution.getCount());
+            VarInts.writeUnsigned(out, distribution.getMean());
+            VarInts.writeUnsigned(out, distribution.getP50());
+            VarInts.writeUnsigned(out, distribution.getP90());
+            VarInts.writeUnsigned(out, distribution.getP99());
+            VarInts.writeUnsigned(out, distribution.getMax());
+        }
+        return Arrays.copyOf(out.array(), out.position());
+    }
+
+    /**
+     * Check whether a payload is a metrics frame.
+     *
+     * @param payload received payload
+     * @return true if the payload starts with a metrics frame header
+     */
+    public static boolean isMetricsFrame(byte[] payload) {
+        return BatchFrame.isBatchFrame(payload) && payload[1] == VERSION_METRICS;
+    }
+
+    /**
+     * Decode a metrics frame.
+     *
+     * @param payload metrics frame
+     * @return snapshot with the metrics in the order they were sent
+     * @throws IllegalArgumentException the payload is malformed or not a metrics frame
+     */
+    public static MetricsSnapshot decode(byte[] payload) {
+        if (!isMetricsFrame(payload)) {
+            throw new IllegalArgumentException("Not a metrics frame");
+        }
+        ByteBuffer in = ByteBuffer.wrap(payload, 2, payload.length - 2);
+        final long timeMillis = VarInts.readUnsigned(in);
+        int valueCount = readCount(in);
+        Map<String, Long> values = new LinkedHashMap<>();
+        for (int i = 0; i < valueCount; i++) {
+            values.put(readName(in), VarInts.readSigned(in));
+        }
+        int distributionCount = readCount(in);
+        Map<String, MetricsSnapshot.Distribution> distributions = new LinkedHashMap<>();
+        for (int i = 0; i < distributionCount; i++) {
+            String name = readName(in);
+            distributions.put(name, new MetricsSnapshot.Distribution(
+                    VarInts.readUnsigned(in), VarInts.readUnsigned(in), VarInts.readUnsigned(in),
+                    VarInts.readUnsigned(in), VarInts.readUnsigned(in),
+                    VarInts.readUnsigned(in)));
+        }
+        if (in.hasRemaining()) {
+            throw new IllegalArgumentException(in.remaining() + " trailing bytes in frame");
+        }
+        return new MetricsSnapshot(timeMillis, values, distributions);
+    }
+
+    private static int maxNameSize(String name) {
+        // UTF-8 takes at most 3 bytes per UTF-16 unit.
+        return VarInts.MAX_VARINT32_SIZE + 3 * name.length();
+    }
+
+    private static void writeName(ByteBuffer out, String name) {
+        byte[] bytes = name.getBytes(UTF_8);
+        VarInts.writeUnsigned(out, bytes.length);
+        out.put(bytes);
+    }
+
+    private static String readName(ByteBuffer in) {
+        int length = readCount(in);
+        byte[] bytes = new byte[length];
+        in.get(bytes);
+        return new String(bytes, UTF_8);
+    }
+
+    /**
+     * Read a count or length, which cannot exceed the bytes left since every entry takes at
+     * least one byte.
+     *
+     * @param in source buffer
+     * @return count
+     * @throws IllegalArgumentException the count exceeds the frame size
+     */
+    private static int readCount(ByteBuffer in) {
+        long count = VarInts.readUnsigned(in);
+        if (count < 0 || count > in.remaining()) {
+            throw new IllegalArgumentException("Count " + count + " exceeds frame size");
+        }
+        return (int) count;
+    }
+}
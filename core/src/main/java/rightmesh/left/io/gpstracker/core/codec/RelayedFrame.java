@@ -0,0 +1,40 @@
+package rightmesh.left.io.gpstracker.core.codec;
+
+/**
+ * A frame one device forwards for another inside an {@link AggregateCodec} frame.
+ */
+public final class RelayedFrame {
+    private final String senderId;
+    private final long sequence;
+    private final byte[] frame;
+
+    /**
+     * Constructor {@link RelayedFrame}.
+     *
+     * @param senderId peer that produced the frame, empty for the peer sending the aggregate
+     * @param sequence {@link DeliveryCodec} sequence number the sender gave the frame
+     * @param frame    frame as the sender encoded it, not copied
+     */
+    public RelayedFrame(String senderId, long sequence, byte[] frame) {
+        this.senderId = senderId;
+        this.sequence = sequence;
+        this.frame = frame;
+    }
+
+    public String getSenderId() {
+        return senderId;
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    public byte[] getFrame() {
+        return frame;
+    }
+
+    @Override
+    public String toString() {
+        return "RelayedFrame{" + senderId + "#" + sequence + ", " + frame.length + " bytes}";
+    }
+}
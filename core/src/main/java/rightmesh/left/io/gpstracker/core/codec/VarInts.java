@@ -0,0 +1,96 @@
+package rightmesh.left.io.gpstracker.core.codec;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+
+/**
+ * LEB128 variable-length integers with zig-zag encoding for signed values.
+ *
+ * <p>Small magnitudes take one byte, which is what makes per-fix deltas cheap.
+ */
+public final class VarInts {
+    public static final int MAX_VARINT_SIZE = 10;
+
+    public static final int MAX_VARINT32_SIZE = 5;
+
+    private VarInts() {
+    }
+
+    /**
+     * Write an unsigned variable-length integer.
+     *
+     * @param out   destination buffer
+     * @param value value, treated as unsigned
+     */
+    public static void writeUnsigned(ByteBuffer out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.put((byte) value);
+    }
+
+    /**
+     * Write a signed variable-length integer using zig-zag encoding.
+     *
+     * @param out   destination buffer
+     * @param value signed value
+     */
+    public static void writeSigned(ByteBuffer out, long value) {
+        writeUnsigned(out, zigZagEncode(value));
+    }
+
+    /**
+     * Read an unsigned variable-length integer.
+     *
+     * @param in source buffer
+     * @return decoded value
+     * @throws IllegalArgumentException the varint is longer than {@link #MAX_VARINT_SIZE} bytes
+     *                                  or truncated
+     */
+    public static long readUnsigned(ByteBuffer in) {
+        long result = 0;
+        try {
+            for (int shift = 0; shift < MAX_VARINT_SIZE * 7; shift += 7) {
+                byte b = in.get();
+                result |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return result;
+                }
+            }
+        } catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException("Truncated varint", e);
+        }
+        throw new IllegalArgumentException("Malformed varint");
+    }
+
+    /**
+     * Read a zig-zag encoded signed variable-length integer.
+     *
+     * @param in source buffer
+     * @return decoded value
+     */
+    public static long readSigned(ByteBuffer in) {
+        return zigZagDecode(readUnsigned(in));
+    }
+
+    /**
+     * Map a signed value to an unsigned one so small magnitudes stay small.
+     *
+     * @param value signed value
+     * @return zig-zag encoded value
+     */
+    public static long zigZagEncode(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    /**
+     * Inverse of {@link #zigZagEncode(long)}.
+     *
+     * @param value zig-zag encoded value
+     * @return signed value
+     */
+    public static long zigZagDecode(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+}
@@ -0,0 +1,102 @@
+package rightmesh.left.io.gpstracker.core.filter;
+
+import rightmesh.left.io.gpstracker.core.codec.LocationFix;
+import rightmesh.left.io.gpstracker.core.geo.GeoMath;
+
+/**
+ * Streaming trajectory simplification by dead reckoning.
+ *
+ * <p>The SuperPeer predicts where a device is from the last fix it received: moved along that
+ * fix's bearing at its speed for the elapsed time, or standing still if the fix has no speed or
+ * bearing. This filter runs the same prediction on the device and only forwards a fix when the
+ * prediction is off by more than the tolerance, so fixes the SuperPeer could reconstruct are
+ * never sent. A fix is also forwarded when none was for {@code maxSilenceMillis}, so the
+ * SuperPeer can tell a well-predicted device from a silent one.
+ *
+ * <p>Constant memory and no allocation per fix.
+ */
+public class DeadReckoningFilter {
+    private final double toleranceMeters;
+    private final long maxSilenceMillis;
+
+    private final LocationFix reference = new LocationFix();
+    private boolean hasReference;
+    private long suppressedCount;
+
+    /**
+     * Constructor {@link DeadReckoningFilter}.
+     *
+     * @param toleranceMeters  largest prediction error that does not need a fix to be sent
+     * @param maxSilenceMillis longest time between two forwarded fixes
+     */
+    public DeadReckoningFilter(double toleranceMeters, long maxSilenceMillis) {
+        this.toleranceMeters = toleranceMeters;
+        this.maxSilenceMillis = maxSilenceMillis;
+    }
+
+    /**
+     * Decide whether a fix must be forwarded, and if so use it as the new prediction reference.
+     *
+     * @param fix latest fix
+     * @return true if the fix should be sent to the SuperPeer
+     */
+    public boolean accept(LocationFix fix) {
+        if (!hasReference || !fix.hasTime() || !reference.hasTime()) {
+            return forward(fix);
+        }
+        long elapsedMillis = fix.getTimeMillis() - reference.getTimeMillis();
+        if (elapsedMillis < 0 || elapsedMillis >= maxSilenceMillis) {
+            return forward(fix);
+        }
+        if (predictionError(fix, elapsedMillis) > toleranceMeters) {
+            return forward(fix);
+        }
+        suppressedCount++;
+        return false;
+    }
+
+    /**
+     * Forget the reference so the next fix is always forwarded, e.g. after the SuperPeer lost
+     * track of this device.
+     */
+    public void reset() {
+        hasReference = false;
+    }
+
+    /**
+     * Number of fixes suppressed since construction.
+     *
+     * @return suppressed fix count
+     */
+    public long getSuppressedCount() {
+        return suppressedCount;
+    }
+
+    private boolean forward(LocationFix fix) {
+        reference.copyFrom(fix);
+        hasReference = true;
+        return true;
+    }
+
+    /**
+     * Distance between the fix and the position predicted from the reference.
+     *
+     * @param fix           latest fix
+     * @param elapsedMillis time since the reference fix
+     * @return prediction error in metres
+     */
+    private double predictionError(LocationFix fix, long elapsedMillis) {
+        double latitude = reference.getLatitude();
+        double longitude = reference.getLongitude();
+        if (reference.hasSpeed() && reference.hasBearing()) {
+            double distance = reference.getSpeed() * elapsedMillis / 1000.0;
+            double bearing = Math.toRadians(reference.getBearing());
+            double northRadians = distance * Math.cos(bearing) / GeoMath.EARTH_RADIUS_METERS;
+            double eastRadians = distance * Math.sin(bearing)
+                    / (GeoMath.EARTH_RADIUS_METERS * Math.cos(Math.toRadians(latitude)));
+            latitude += Math.toDegrees(northRadians);
+            longitude += Math.toDegrees(eastRadians);
+        }
+        return GeoMath.distanceMeters(latitude, longitude, fix.getLatitude(), fix.getLongitude());
+    }
+}
@@ -0,0 +1,182 @@
+package rightmesh.left.io.gpstracker.core.filter;
+
+import rightmesh.left.io.gpstracker.core.geo.GeoMath;
+
+/**
+ * Smooths a stream of fixes with a constant-velocity Kalman filter and rejects outliers.
+ *
+ * <p>The state is the position and velocity along north and east. Both axes see the same
+ * measurement noise, the fix accuracy, so they share one 2x2 covariance. Between fixes the
+ * position moves with the velocity and the uncertainty grows with the acceleration noise.
+ *
+ * <p>A fix is rejected if its accuracy is worse than the limit, or if it lies further from the
+ * predicted position than the gate allows given both uncertainties, like a multipath jump. After
+ * too many rejections in a row the filter restarts from the next fix, so a real jump (e.g. out of
+ * a tunnel) is not rejected forever.
+ *
+ * <p>Constant memory and no allocation per fix.
+ */
+public class PositionKalmanFilter {
+    private static final double METERS_PER_DEGREE =
+            Math.toRadians(1) * GeoMath.EARTH_RADIUS_METERS;
+    private static final double MILLIS_PER_SECOND = 1000.0;
+    // Speed uncertainty of a fresh track, about a brisk run.
+    private static final double INITIAL_SPEED_VARIANCE = 5 * 5;
+
+    private final float maxAccuracyMeters;
+    private final double gateSigmas;
+    private final double accelerationVariance;
+    private final int maxConsecutiveRejections;
+
+    private boolean initialized;
+    private double latitude;
+    private double longitude;
+    private double velocityNorth;
+    private double velocityEast;
+    private long timeMillis;
+    // Shared covariance of each axis: position variance, position-velocity, velocity variance.
+    private double positionVariance;
+    private double covariance;
+    private double velocityVariance;
+
+    private int consecutiveRejections;
+    private long rejectedCount;
+
+    /**
+     * Constructor {@link PositionKalmanFilter}.
+     *
+     * @param maxAccuracyMeters        fixes with a worse accuracy are rejected
+     * @param gateSigmas               fixes further from the prediction than this many standard
+     *                                 deviations are rejected
+     * @param accelerationNoise        typical unmodelled acceleration in metres per second squared
+     * @param maxConsecutiveRejections after this many rejected fixes in a row the filter restarts
+     */
+    public PositionKalmanFilter(float maxAccuracyMeters, double gateSigmas,
+                                double accelerationNoise, int maxConsecutiveRejections) {
+        this.maxAccuracyMeters = maxAccuracyMeters;
+        this.gateSigmas = gateSigmas;
+        this.accelerationVariance = accelerationNoise * accelerationNoise;
+        this.maxConsecutiveRejections = maxConsecutiveRejections;
+    }
+
+    /**
+     * Feed a fix and update the estimate unless the fix is rejected.
+     *
+     * @param fixLatitude    latitude in degrees
+     * @param fixLongitude   longitude in degrees
+     * @param accuracyMeters horizontal accuracy, 0 or negative if unknown
+     * @param fixTimeMillis  fix time in milliseconds
+     * @return true if the estimate was updated from this fix
+     */
+    public boolean update(double fixLatitude, double fixLongitude, float accuracyMeters,
+                          long fixTimeMillis) {
+        if (!(accuracyMeters > 0) || accuracyMeters > maxAccuracyMeters) {
+            // Without an accuracy the fix cannot be weighed against the estimate.
+            rejectedCount++;
+            return false;
+        }
+        double measurementVariance = (double) accuracyMeters * accuracyMeters;
+        if (!initialized || consecutiveRejections >= maxConsecutiveRejections) {
+            restart(fixLatitude, fixLongitude, measurementVariance, fixTimeMillis);
+            return true;
+        }
+
+        double dt = Math.max(0, (fixTimeMillis - timeMillis) / MILLIS_PER_SECOND);
+        double metersPerDegreeEast = METERS_PER_DEGREE * Math.cos(Math.toRadians(latitude));
+        double predictedLatitude = latitude + velocityNorth * dt / METERS_PER_DEGREE;
+        double predictedLongitude = longitude + velocityEast * dt / metersPerDegreeEast;
+        double predictedPositionVariance = positionVariance + 2 * dt * covariance
+                + dt * dt * velocityVariance + accelerationVariance * dt * dt * dt * dt / 4;
+        double predictedCovariance = covariance + dt * velocityVariance
+                + accelerationVariance * dt * dt * dt / 2;
+
+        double innovationNorth = (fixLatitude - predictedLatitude) * METERS_PER_DEGREE;
+        double innovationEast = (fixLongitude - predictedLongitude) * metersPerDegreeEast;
+        double innovationVariance = predictedPositionVariance + measurementVariance;
+        if (innovationNorth * innovationNorth + innovationEast * innovationEast
+                > gateSigmas * gateSigmas * innovationVariance) {
+            consecutiveRejections++;
+            rejectedCount++;
+            return false;
+        }
+
+        double positionGain = predictedPositionVariance / innovationVariance;
+        double velocityGain = predictedCovariance / innovationVariance;
+        latitude = predictedLatitude + positionGain * innovationNorth / METERS_PER_DEGREE;
+        longitude = predictedLongitude + positionGain * innovationEast / metersPerDegreeEast;
+        velocityNorth += velocityGain * innovationNorth;
+        velocityEast += velocityGain * innovationEast;
+        positionVariance = (1 - positionGain) * predictedPositionVariance;
+        covariance = (1 - positionGain) * predictedCovariance;
+        velocityVariance += accelerationVariance * dt * dt - velocityGain * predictedCovariance;
+        timeMillis = Math.max(timeMillis, fixTimeMillis);
+        consecutiveRejections = 0;
+        return true;
+    }
+
+    /**
+     * Forget the estimate so the next accepted fix starts a new track.
+     */
+    public void reset() {
+        initialized = false;
+        consecutiveRejections = 0;
+    }
+
+    public double getLatitude() {
+        return latitude;
+    }
+
+    public double getLongitude() {
+        return longitude;
+    }
+
+    public long getTimeMillis() {
+        return timeMillis;
+    }
+
+    /**
+     * Estimated position accuracy.
+     *
+     * @return standard deviation of the position along each axis, in metres
+     */
+    public float getAccuracy() {
+        return (float) Math.sqrt(positionVariance);
+    }
+
+    /**
+     * Estimated ground speed.
+     *
+     * @return speed in metres per second
+     */
+    public float getSpeed() {
+        return (float) Math.hypot(velocityNorth, velocityEast);
+    }
+
+    /**
+     * Estimated direction of travel.
+     *
+     * @return bearing in degrees east of true north, in [0, 360)
+     */
+    public float getBearing() {
+        double bearing = Math.toDegrees(Math.atan2(velocityEast, velocityNorth));
+        return (float) (bearing < 0 ? bearing + 360 : bearing);
+    }
+
+    public long getRejectedCount() {
+        return rejectedCount;
+    }
+
+    private void restart(double fixLatitude, double fixLongitude, double measurementVariance,
+                         long fixTimeMillis) {
+        initialized = true;
+        latitude = fixLatitude;
+        longitude = fixLongitude;
+        velocityNorth = 0;
+        velocityEast = 0;
+        timeMillis = fixTimeMillis;
+        positionVariance = measurementVariance;
+        covariance = 0;
+        velocityVariance = INITIAL_SPEED_VARIANCE;
+        consecutiveRejections = 0;
+    }
+}
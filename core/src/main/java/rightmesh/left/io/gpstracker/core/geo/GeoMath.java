@@ -0,0 +1,31 @@
+package rightmesh.left.io.gpstracker.core.geo;
+
+/**
+ * Distance helpers on a spherical Earth, accurate to about 0.5% which is well below GPS noise.
+ */
+public final class GeoMath {
+    public static final double EARTH_RADIUS_METERS = 6371008.8;
+
+    private GeoMath() {
+    }
+
+    /**
+     * Great-circle distance between two points using the haversine formula.
+     *
+     * @param latitude1  latitude of the first point in degrees
+     * @param longitude1 longitude of the first point in degrees
+     * @param latitude2  latitude of the second point in degrees
+     * @param longitude2 longitude of the second point in degrees
+     * @return distance in metres
+     */
+    public static double distanceMeters(double latitude1, double longitude1,
+                                        double latitude2, double longitude2) {
+        double phi1 = Math.toRadians(latitude1);
+        double phi2 = Math.toRadians(latitude2);
+        double sinHalfDeltaPhi = Math.sin((phi2 - phi1) / 2);
+        double sinHalfDeltaLambda = Math.sin(Math.toRadians(longitude2 - longitude1) / 2);
+        double a = sinHalfDeltaPhi * sinHalfDeltaPhi
+                + Math.cos(phi1) * Math.cos(phi2) * sinHalfDeltaLambda * sinHalfDeltaLambda;
+        return 2 * EARTH_RADIUS_METERS * Math.asin(Math.min(1, Math.sqrt(a)));
+    }
+}
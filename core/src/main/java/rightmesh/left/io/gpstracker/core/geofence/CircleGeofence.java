@@ -0,0 +1,75 @@
+package rightmesh.left.io.gpstracker.core.geofence;
+
+import rightmesh.left.io.gpstracker.core.codec.LocationFix;
+import rightmesh.left.io.gpstracker.core.geo.GeoMath;
+
+/**
+ * Every point within a great-circle distance of a centre.
+ */
+public class CircleGeofence extends Geofence {
+    private final double latitude;
+    private final double longitude;
+    private final double radiusMeters;
+
+    /**
+     * Constructor {@link CircleGeofence}.
+     *
+     * @param id           non-negative id sent with every transition
+     * @param latitude     latitude of the centre in degrees
+     * @param longitude    longitude of the centre in degrees
+     * @param radiusMeters radius in metres
+     */
+    public CircleGeofence(int id, double latitude, double longitude, double radiusMeters) {
+        this(id, latitude, longitude, radiusMeters,
+                Math.toDegrees(radiusMeters / GeoMath.EARTH_RADIUS_METERS));
+    }
+
+    private CircleGeofence(int id, double latitude, double longitude, double radiusMeters,
+                           double deltaLatitude) {
+        super(id, LocationFix.toMicrodegrees(Math.max(-90, latitude - deltaLatitude)),
+                westOf(latitude, longitude, deltaLatitude),
+                LocationFix.toMicrodegrees(Math.min(90, latitude + deltaLatitude)),
+                eastOf(latitude, longitude, deltaLatitude));
+        this.latitude = latitude;
+        this.longitude = longitude;
+        this.radiusMeters = radiusMeters;
+    }
+
+    @Override
+    public boolean contains(LocationFix fix) {
+        return GeoMath.distanceMeters(latitude, longitude, fix.getLatitude(), fix.getLongitude())
+                <= radiusMeters;
+    }
+
+    /**
+     * Longitude span of the circle, widened to every longitude if it covers a pole or crosses
+     * the antimeridian.
+     *
+     * @param latitude      latitude of the centre in degrees
+     * @param deltaLatitude radius in degrees of latitude
+     * @return half the longitude span in degrees, or a negative value for every longitude
+     */
+    private static double deltaLongitude(double latitude, double deltaLatitude) {
+        double farthest = Math.abs(latitude) + deltaLatitude;
+        if (farthest >= 90) {
+            return -1;
+        }
+        return deltaLatitude / Math.cos(Math.toRadians(farthest));
+    }
+
+    private static int westOf(double latitude, double longitude, double deltaLatitude) {
+        double delta = deltaLongitude(latitude, deltaLatitude);
+        if (delta < 0 || longitude - delta < -180 || longitude + delta > 180) {
+            return LocationFix.toMicrodegrees(-180);
+        }
+        return LocationFix.toMicrodegrees(longitude - delta);
+    }
+
+    private static int eastOf(double latitude, double longitude, double deltaLatitude) {
+        double delta = deltaLongitude(latitude, deltaLatitude);
+        if (delta < 0 || longitude - delta < -180 || longitude + delta > 180) {
+            return LocationFix.toMicrodegrees(180);
+        }
+        return LocationFix.toMicrodegrees(longitude + delta);
+    }
+}
@@ -0,0 +1,60 @@
+package rightmesh.left.io.gpstracker.core.geofence;
+
+import rightmesh.left.io.gpstracker.core.codec.LocationFix;
+
+/**
+ * An area a device can enter or leave, with the bounding box used to prefilter it.
+ */
+public abstract class Geofence {
+    private final int id;
+
+    final int southE6;
+    final int westE6;
+    final int northE6;
+    final int eastE6;
+
+    /**
+     * Constructor {@link Geofence}.
+     *
+     * @param id      non-negative id sent with every transition
+     * @param southE6 southern edge of the bounding box in microdegrees
+     * @param westE6  western edge of the bounding box in microdegrees
+     * @param northE6 northern edge of the bounding box in microdegrees
+     * @param eastE6  eastern edge of the bounding box in microdegrees
+     */
+    Geofence(int id, int southE6, int westE6, int northE6, int eastE6) {
+        if (id < 0) {
+            throw new IllegalArgumentException("Negative geofence id: " + id);
+        }
+        this.id = id;
+        this.southE6 = southE6;
+        this.westE6 = westE6;
+        this.northE6 = northE6;
+        this.eastE6 = eastE6;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    /**
+     * Check whether a fix lies in the bounding box, which is cheaper than {@link #contains}.
+     *
+     * @param fix fix to check
+     * @return false if the fix is certainly outside the fence
+     */
+    final boolean mayContain(LocationFix fix) {
+        int latitude = fix.getLatitudeE6();
+        int longitude = fix.getLongitudeE6();
+        return latitude >= southE6 && latitude <= northE6
+                && longitude >= westE6 && longitude <= eastE6;
+    }
+
+    /**
+     * Check whether a fix lies inside the fence.
+     *
+     * @param fix fix to check
+     * @return true if the fix is inside
+     */
+    public abstract boolean contains(LocationFix fix);
+}
@@ -0,0 +1,240 @@
+package rightmesh.left.io.gpstracker.core.geofence;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import rightmesh.left.io.gpstracker.core.codec.GeofenceEvent;
+import rightmesh.left.io.gpstracker.core.codec.LocationFix;
+
+/**
+ * Tracks which of a fixed set of geofences a device is in and reports every enter and exit.
+ *
+ * <p>The fences are spread over a latitude/longitude grid when the engine is built: each cell
+ * lists the fences whose bounding box overlaps it, so a fix is only tested against the few fences
+ * around it and the ones it was in. Fences spanning more than {@link #MAX_CELLS_PER_FENCE} cells
+ * are tested for every fix instead. Evaluating a fix does not allocate. Not thread-safe.
+ */
+public class GeofenceEngine {
+    /** About 1.1 km of latitude. */
+    public static final double DEFAULT_CELL_SIZE_DEGREES = 0.01;
+
+    static final int MAX_CELLS_PER_FENCE = 1024;
+
+    private static final int[] NO_FENCES = new int[0];
+
+    private final Geofence[] fences;
+    private final int cellSizeE6;
+
+    // Sorted cell keys and, at the same index, the fences overlapping that cell.
+    private final long[] cellKeys;
+    private final int[][] cellFences;
+    private final int[] largeFences;
+
+    private final boolean[] inside;
+    // Fences the device is in, in no particular order; the first insideCount are valid.
+    private final int[] insideFences;
+    private int insideCount;
+    // Fences already tested for the current fix are stamped with its evaluation number.
+    private final int[] testedAt;
+    private int evaluation;
+
+    /**
+     * Receives the transitions found by {@link #evaluate(LocationFix, OnTransitionListener)}.
+     */
+    public interface OnTransitionListener {
+        /**
+         * Handle a transition.
+         *
+         * @param fence      fence entered or left
+         * @param transition {@link GeofenceEvent#ENTER} or {@link GeofenceEvent#EXIT}
+         * @param fix        fix being evaluated
+         */
+        void onTransition(Geofence fence, int transition, LocationFix fix);
+    }
+
+    /**
+     * Constructor {@link GeofenceEngine} with {@link #DEFAULT_CELL_SIZE_DEGREES} cells.
+     *
+     * @param fences fences to track
+     */
+    public GeofenceEngine(List<? extends Geofence> fences) {
+        this(fences, DEFAULT_CELL_SIZE_DEGREES);
+    }
+
+    /**
+     * Constructor {@link GeofenceEngine}.
+     *
+     * @param fences          fences to track
+     * @param cellSizeDegrees side of a grid cell in degrees, about the size of a typical fence
+     */
+    public GeofenceEngine(List<? extends Geofence> fences, double cellSizeDegrees) {
+        this.fences = fences.toArray(new Geofence[0]);
+        cellSizeE6 = LocationFix.toMicrodegrees(cellSizeDegrees);
+        if (cellSizeE6 < 1) {
+            throw new IllegalArgumentException("cellSizeDegrees too small: " + cellSizeDegrees);
+        }
+        inside = new boolean[this.fences.length];
+        insideFences = new int[this.fences.length];
+        testedAt = new int[this.fences.length];
+
+        Map<Long, List<Integer>> grid = new HashMap<>();
+        List<Integer> large = new ArrayList<>();
+        for (int f = 0; f < this.fences.length; f++) {
+            Geofence fence = this.fences[f];
+            int fromRow = cellOf(fence.southE6);
+            int toRow = cellOf(fence.northE6);
+            int fromColumn = cellOf(fence.westE6);
+            int toColumn = cellOf(fence.eastE6);
+            if ((long) (toRow - fromRow + 1) * (toColumn - fromColumn + 1) > MAX_CELLS_PER_FENCE) {
+                large.add(f);
+                continue;
+            }
+            for (int row = fromRow; row <= toRow; row++) {
+                for (int column = fromColumn; column <= toColumn; column++) {
+                    Long key = cellKey(row, column);
+                    List<Integer> cell = grid.get(key);
+                    if (cell == null) {
+                        cell = new ArrayList<>();
+                        grid.put(key, cell);
+                    }
+                    cell.add(f);
+                }
+            }
+        }
+        cellKeys = new long[grid.size()];
+        int i = 0;
+        for (Long key : grid.keySet()) {
+            cellKeys[i++] = key;
+        }
+        Arrays.sort(cellKeys);
+        cellFences = new int[cellKeys.length][];
+        for (i = 0; i < cellKeys.length; i++) {
+            cellFences[i] = toArray(grid.get(cellKeys[i]));
+        }
+        largeFences = toArray(large);
+    }
+
+    public int size() {
+        return fences.length;
+    }
+
+    /**
+     * Update the fences the device is in with a new fix and report the changes. Exits from
+     * fences far from the fix are reported first.
+     *
+     * @param fix      latest fix
+     * @param listener receives every transition before this method returns
+     * @return number of transitions
+     */
+    public int evaluate(LocationFix fix, OnTransitionListener listener) {
+        evaluation++;
+        int transitions = 0;
+        int[] nearby = fencesAround(fix);
+        for (int f : nearby) {
+            testedAt[f] = evaluation;
+        }
+        for (int f : largeFences) {
+            testedAt[f] = evaluation;
+        }
+        // Fences left without the fix being anywhere near them any more.
+        for (int i = insideCount - 1; i >= 0; i--) {
+            int f = insideFences[i];
+            if (testedAt[f] != evaluation) {
+                removeInside(i);
+                listener.onTransition(fences[f], GeofenceEvent.EXIT, fix);
+                transitions++;
+            }
+        }
+        transitions += test(nearby, fix, listener);
+        transitions += test(largeFences, fix, listener);
+        return transitions;
+    }
+
+    /**
+     * Forget which fences the device is in, e.g. after the SuperPeer lost its events. The next
+     * fix reports an enter for every fence it is in.
+     */
+    public void reset() {
+        for (int i = 0; i < insideCount; i++) {
+            inside[insideFences[i]] = false;
+        }
+        insideCount = 0;
+    }
+
+    /**
+     * Check whether the device was in a fence at the last fix.
+     *
+     * @param fenceIndex index of the fence in the list given to the constructor
+     * @return true if inside
+     */
+    public boolean isInside(int fenceIndex) {
+        return inside[fenceIndex];
+    }
+
+    private int test(int[] candidates, LocationFix fix, OnTransitionListener listener) {
+        int transitions = 0;
+        for (int f : candidates) {
+            Geofence fence = fences[f];
+            boolean now = fence.mayContain(fix) && fence.contains(fix);
+            if (now == inside[f]) {
+                continue;
+            }
+            if (now) {
+                inside[f] = true;
+                insideFences[insideCount++] = f;
+                listener.onTransition(fence, GeofenceEvent.ENTER, fix);
+            } else {
+                removeInside(indexOfInside(f));
+                listener.onTransition(fence, GeofenceEvent.EXIT, fix);
+            }
+            transitions++;
+        }
+        return transitions;
+    }
+
+    private int[] fencesAround(LocationFix fix) {
+        long key = cellKey(cellOf(fix.getLatitudeE6()), cellOf(fix.getLongitudeE6()));
+        int index = Arrays.binarySearch(cellKeys, key);
+        return index >= 0 ? cellFences[index] : NO_FENCES;
+    }
+
+    private int indexOfInside(int fence) {
+        for (int i = 0; i < insideCount; i++) {
+            if (insideFences[i] == fence) {
+                return i;
+            }
+        }
+        throw new IllegalStateException("Fence " + fence + " not inside");
+    }
+
+    private void removeInside(int index) {
+        inside[insideFences[index]] = false;
+        insideFences[index] = insideFences[--insideCount];
+    }
+
+    /**
+     * Grid row or column of a coordinate, rounding towards negative infinity.
+     *
+     * @param coordinateE6 latitude or longitude in microdegrees
+     * @return row or column
+     */
+    private int cellOf(int coordinateE6) {
+        int cell = coordinateE6 / cellSizeE6;
+        return coordinateE6 % cellSizeE6 < 0 ? cell - 1 : cell;
+    }
+
+    private static long cellKey(int row, int column) {
+        return ((long) row << 32) | (column & 0xffffffffL);
+    }
+
+    private static int[] toArray(List<Integer> values) {
+        int[] array = new int[values.size()];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = values.get(i);
+        }
+        return array;
+    }
+}
@@ -0,0 +1,83 @@
+package rightmesh.left.io.gpstracker.core.geofence;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads geofences from a plain text list, one fence per line:
+ * <pre>
+ * # comment
+ * circle  &lt;id&gt; &lt;lat&gt; &lt;lon&gt; &lt;radius in metres&gt;
+ * polygon &lt;id&gt; &lt;lat&gt;,&lt;lon&gt; &lt;lat&gt;,&lt;lon&gt; &lt;lat&gt;,&lt;lon&gt; ...
+ * </pre>
+ * Coordinates are in degrees; blank lines are ignored.
+ */
+public final class GeofenceParser {
+    private static final String CIRCLE = "circle";
+    private static final String POLYGON = "polygon";
+    private static final String COMMENT = "#";
+
+    private GeofenceParser() {
+    }
+
+    /**
+     * Parse every fence of a list.
+     *
+     * @param reader source of the list, not closed
+     * @return fences in the order they were listed
+     * @throws IOException              the list cannot be read
+     * @throws IllegalArgumentException a line is malformed; the message gives its number
+     */
+    public static List<Geofence> parse(Reader reader) throws IOException {
+        BufferedReader lines = new BufferedReader(reader);
+        List<Geofence> fences = new ArrayList<>();
+        String line;
+        int lineNumber = 0;
+        while ((line = lines.readLine()) != null) {
+            lineNumber++;
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith(COMMENT)) {
+                continue;
+            }
+            try {
+                fences.add(parseLine(line.split("\\s+")));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Line " + lineNumber + ": " + e.getMessage(),
+                        e);
+            }
+        }
+        return fences;
+    }
+
+    private static Geofence parseLine(String[] tokens) {
+        if (tokens.length < 2) {
+            throw new IllegalArgumentException("Missing geofence id");
+        }
+        int id = Integer.parseInt(tokens[1]);
+        if (CIRCLE.equals(tokens[0])) {
+            if (tokens.length != 5) {
+                throw new IllegalArgumentException("Expected: circle <id> <lat> <lon> <radius>");
+            }
+            return new CircleGeofence(id, Double.parseDouble(tokens[2]),
+                    Double.parseDouble(tokens[3]), Double.parseDouble(tokens[4]));
+        }
+        if (POLYGON.equals(tokens[0])) {
+            int vertices = tokens.length - 2;
+            double[] latitudes = new double[vertices];
+            double[] longitudes = new double[vertices];
+            for (int i = 0; i < vertices; i++) {
+                String[] coordinates = tokens[i + 2].split(",");
+                if (coordinates.length != 2) {
+                    throw new IllegalArgumentException("Expected <lat>,<lon>: " + tokens[i + 2]);
+                }
+                latitudes[i] = Double.parseDouble(coordinates[0]);
+                longitudes[i] = Double.parseDouble(coordinates[1]);
+            }
+            return new PolygonGeofence(id, latitudes, longitudes);
+        }
+        throw new IllegalArgumentException("Unknown geofence type: " + tokens[0]);
+    }
+}
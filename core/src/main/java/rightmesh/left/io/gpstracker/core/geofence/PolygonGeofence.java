@@ -0,0 +1,84 @@
+package rightmesh.left.io.gpstracker.core.geofence;
+
+import rightmesh.left.io.gpstracker.core.codec.LocationFix;
+
+/**
+ * A simple polygon with straight edges in latitude/longitude, which is accurate enough for
+ * fences up to a few kilometres across. Must not cross the antimeridian.
+ */
+public class PolygonGeofence extends Geofence {
+    private final int[] latitudesE6;
+    private final int[] longitudesE6;
+
+    /**
+     * Constructor {@link PolygonGeofence}.
+     *
+     * @param id         non-negative id sent with every transition
+     * @param latitudes  latitudes of the vertices in degrees, in order around the polygon
+     * @param longitudes longitudes of the vertices in degrees, same order as {@code latitudes}
+     */
+    public PolygonGeofence(int id, double[] latitudes, double[] longitudes) {
+        this(id, toMicrodegrees(latitudes), toMicrodegrees(longitudes));
+    }
+
+    private PolygonGeofence(int id, int[] latitudesE6, int[] longitudesE6) {
+        super(id, min(latitudesE6), min(longitudesE6), max(latitudesE6), max(longitudesE6));
+        if (latitudesE6.length < 3 || latitudesE6.length != longitudesE6.length) {
+            throw new IllegalArgumentException("A polygon needs 3 or more vertices");
+        }
+        this.latitudesE6 = latitudesE6;
+        this.longitudesE6 = longitudesE6;
+    }
+
+    /**
+     * Even-odd rule: count the edges crossed by a ray going east from the fix.
+     *
+     * @param fix fix to check
+     * @return true if the fix is inside
+     */
+    @Override
+    public boolean contains(LocationFix fix) {
+        long y = fix.getLatitudeE6();
+        long x = fix.getLongitudeE6();
+        boolean inside = false;
+        for (int i = 0, j = latitudesE6.length - 1; i < latitudesE6.length; j = i++) {
+            long yi = latitudesE6[i];
+            long yj = latitudesE6[j];
+            if ((yi > y) != (yj > y)) {
+                long xi = longitudesE6[i];
+                long xj = longitudesE6[j];
+                // x < xi + (y - yi) * (xj - xi) / (yj - yi), without dividing.
+                long lhs = (x - xi) * (yj - yi);
+                long rhs = (y - yi) * (xj - xi);
+                if (yj > yi ? lhs < rhs : lhs > rhs) {
+                    inside = !inside;
+                }
+            }
+        }
+        return inside;
+    }
+
+    private static int[] toMicrodegrees(double[] degrees) {
+        int[] microdegrees = new int[degrees.length];
+        for (int i = 0; i < degrees.length; i++) {
+            microdegrees[i] = LocationFix.toMicrodegrees(degrees[i]);
+        }
+        return microdegrees;
+    }
+
+    private static int min(int[] values) {
+        int min = Integer.MAX_VALUE;
+        for (int value : values) {
+            min = Math.min(min, value);
+        }
+        return min;
+    }
+
+    private static int max(int[] values) {
+        int max = Integer.MIN_VALUE;
+        for (int value : values) {
+            max = Math.max(max, value);
+        }
+        return max;
+    }
+}
@@ -0,0 +1,27 @@
+package rightmesh.left.io.gpstracker.core.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Monotonic count, updated from any thread without locking.
+ */
+public class Counter {
+    private final AtomicLong count = new AtomicLong();
+
+    public void increment() {
+        count.incrementAndGet();
+    }
+
+    /**
+     * Add to the count.
+     *
+     * @param delta non-negative amount, e.g. bytes sent
+     */
+    public void add(long delta) {
+        count.addAndGet(delta);
+    }
+
+    public long get() {
+        return count.get();
+    }
+}
@@ -0,0 +1,14 @@
+package rightmesh.left.io.gpstracker.core.metrics;
+
+/**
+ * Value read when a snapshot is taken, e.g. a queue depth.
+ */
+public interface Gauge {
+    /**
+     * Read the current value. Called on the thread taking the snapshot, so it must be
+     * thread-safe.
+     *
+     * @return current value
+     */
+    long getValue();
+}
@@ -0,0 +1,118 @@
+package rightmesh.left.io.gpstracker.core.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Distribution of non-negative values, e.g. latencies in nanoseconds, recorded from any thread
+ * without locking or allocating.
+ *
+ * <p>As in an HDR histogram, values are counted in buckets of logarithmic size: every power of
+ * two is split into {@value #SUB_BUCKETS} linear sub-buckets, so any percentile is reported
+ * within about 6% of the recorded value over the whole {@code long} range, in a fixed
+ * {@value #BUCKET_COUNT} counters. Values below {@code 2 * SUB_BUCKETS} are exact.
+ *
+ * <p>Reads are not atomic with respect to concurrent writes: a percentile taken while values
+ * are recorded may miss the latest of them.
+ */
+public class Histogram {
+    static final int SUB_BUCKET_BITS = 4;
+    static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    // Exact buckets below 2 * SUB_BUCKETS, then SUB_BUCKETS per power of two up to 2^62.
+    static final int BUCKET_COUNT =
+            2 * SUB_BUCKETS + (Long.SIZE - 2 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong total = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Record one value.
+     *
+     * @param value value to record, negative values count as 0
+     */
+    public void record(long value) {
+        long clamped = Math.max(0, value);
+        buckets.incrementAndGet(bucketIndex(clamped));
+        count.incrementAndGet();
+        total.addAndGet(clamped);
+        long current = max.get();
+        while (clamped > current && !max.compareAndSet(current, clamped)) {
+            current = max.get();
+        }
+    }
+
+    public long getCount() {
+        return count.get();
+    }
+
+    /**
+     * Mean of the recorded values.
+     *
+     * @return mean, 0 if nothing was recorded
+     */
+    public long getMean() {
+        long n = count.get();
+        return n == 0 ? 0 : total.get() / n;
+    }
+
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * Smallest value that the given share of the recorded values does not exceed, rounded up to
+     * the end of its bucket.
+     *
+     * @param percentile between 0 and 100
+     * @return value at the percentile, 0 if nothing was recorded
+     */
+    public long getValueAtPercentile(double percentile) {
+        long n = count.get();
+        if (n == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * n));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += buckets.get(i);
+            if (seen >= rank) {
+                return Math.min(bucketUpperBound(i), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    /**
+     * Bucket a value falls in.
+     *
+     * @param value non-negative value
+     * @return index between 0 and {@link #BUCKET_COUNT} - 1
+     */
+    static int bucketIndex(long value) {
+        if (value < 2 * SUB_BUCKETS) {
+            return (int) value;
+        }
+        // Keep the top SUB_BUCKET_BITS + 1 bits, the highest of which is always set.
+        int shift = Long.SIZE - 1 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return 2 * SUB_BUCKETS + (shift - 1) * SUB_BUCKETS
+                + (int) (value >>> shift) - SUB_BUCKETS;
+    }
+
+    /**
+     * Largest value that falls in a bucket.
+     *
+     * @param index bucket index
+     * @return inclusive upper bound
+     */
+    static long bucketUpperBound(int index) {
+        if (index < 2 * SUB_BUCKETS) {
+            return index;
+        }
+        int offset = index - 2 * SUB_BUCKETS;
+        int shift = offset / SUB_BUCKETS + 1;
+        long subBucket = offset % SUB_BUCKETS + SUB_BUCKETS;
+        return ((subBucket + 1) << shift) - 1;
+    }
+}
@@ -0,0 +1,97 @@
+package rightmesh.left.io.gpstracker.core.metrics;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Named counters, gauges and histograms shared by the pipeline stages.
+ *
+ * <p>Look a metric up once and keep it: lookups may allocate, updating a metric never does.
+ * Names are unique across all kinds of metrics and should carry their unit, e.g.
+ * {@code uplink.send.ns}.
+ */
+public class MetricsRegistry {
+    private final ConcurrentMap<String, Counter> counters = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Gauge> gauges = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Histogram> histograms = new ConcurrentHashMap<>();
+
+    /**
+     * Get or create a counter.
+     *
+     * @param name metric name
+     * @return the counter registered under the name
+     */
+    public Counter counter(String name) {
+        Counter counter = counters.get(name);
+        if (counter == null) {
+            Counter created = new Counter();
+            counter = counters.putIfAbsent(name, created);
+            if (counter == null) {
+                counter = created;
+            }
+        }
+        return counter;
+    }
+
+    /**
+     * Get or create a histogram.
+     *
+     * @param name metric name
+     * @return the histogram registered under the name
+     */
+    public Histogram histogram(String name) {
+        Histogram histogram = histograms.get(name);
+        if (histogram == null) {
+            Histogram created = new Histogram();
+            histogram = histograms.putIfAbsent(name, created);
+            if (histogram == null) {
+                histogram = created;
+            }
+        }
+        return histogram;
+    }
+
+    /**
+     * Register an existing histogram, e.g. the one behind a {@link StageTimer}, replacing any
+     * registered under the same name.
+     *
+     * @param name      metric name
+     * @param histogram histogram to report
+     */
+    public void register(String name, Histogram histogram) {
+        histograms.put(name, histogram);
+    }
+
+    /**
+     * Register a gauge, replacing any registered under the same name.
+     *
+     * @param name  metric name
+     * @param gauge value read with every snapshot
+     */
+    public void gauge(String name, Gauge gauge) {
+        gauges.put(name, gauge);
+    }
+
+    /**
+     * Read every metric. Safe to call while the metrics are updated.
+     *
+     * @param timeMillis wall clock time the snapshot is taken at
+     * @return snapshot with the metrics sorted by name
+     */
+    public MetricsSnapshot snapshot(long timeMillis) {
+        Map<String, Long> values = new TreeMap<>();
+        for (Map.Entry<String, Counter> entry : counters.entrySet()) {
+            values.put(entry.getKey(), entry.getValue().get());
+        }
+        for (Map.Entry<String, Gauge> entry : gauges.entrySet()) {
+            values.put(entry.getKey(), entry.getValue().getValue());
+        }
+        Map<String, MetricsSnapshot.Distribution> distributions = new TreeMap<>();
+        for (Map.Entry<String, Histogram> entry : histograms.entrySet()) {
+            distributions.put(entry.getKey(), new MetricsSnapshot.Distribution(entry.getValue()));
+        }
+        return new MetricsSnapshot(timeMillis, values, distributions);
+    }
+}
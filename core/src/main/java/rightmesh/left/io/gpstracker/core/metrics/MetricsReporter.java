@@ -0,0 +1,73 @@
+package rightmesh.left.io.gpstracker.core.metrics;
+
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Takes a {@link MetricsSnapshot} of a registry at a fixed rate and hands it to a listener, e.g.
+ * to append it to a file or send it to the SuperPeer.
+ */
+public class MetricsReporter {
+    private final MetricsRegistry registry;
+    private final ScheduledExecutorService executor;
+    private final long periodMillis;
+    private final OnSnapshotListener listener;
+
+    private ScheduledFuture<?> task;
+
+    /**
+     * Receives every snapshot, on the reporter executor.
+     */
+    public interface OnSnapshotListener {
+        /**
+         * Handle a snapshot. Must not throw, or no further snapshot is taken.
+         *
+         * @param snapshot values of every metric
+         */
+        void onSnapshot(MetricsSnapshot snapshot);
+    }
+
+    /**
+     * Constructor {@link MetricsReporter}.
+     *
+     * @param registry     metrics to report
+     * @param executor     executor taking the snapshots, owned by the caller
+     * @param periodMillis time between two snapshots
+     * @param listener     a callback
+     */
+    public MetricsReporter(MetricsRegistry registry, ScheduledExecutorService executor,
+                           long periodMillis, OnSnapshotListener listener) {
+        this.registry = registry;
+        this.executor = executor;
+        this.periodMillis = periodMillis;
+        this.listener = listener;
+    }
+
+    /**
+     * Start taking snapshots, the first one period from now.
+     */
+    public synchronized void start() {
+        if (task == null) {
+            task = executor.scheduleAtFixedRate(this::report, periodMillis, periodMillis,
+                    TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Stop taking snapshots. A snapshot in progress still completes.
+     */
+    public synchronized void stop() {
+        if (task != null) {
+            task.cancel(false);
+            task = null;
+        }
+    }
+
+    /**
+     * Take a snapshot and hand it to the listener right away, e.g. before shutting down.
+     */
+    public void report() {
+        listener.onSnapshot(registry.snapshot(System.currentTimeMillis()));
+    }
+}
@@ -0,0 +1,136 @@
+package rightmesh.left.io.gpstracker.core.metrics;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Values of every metric of a {@link MetricsRegistry} at one point in time. Immutable.
+ */
+public class MetricsSnapshot {
+    private final long timeMillis;
+    private final Map<String, Long> values;
+    private final Map<String, Distribution> distributions;
+
+    /**
+     * Summary of a {@link Histogram}. Immutable.
+     */
+    public static class Distribution {
+        private final long count;
+        private final long mean;
+        private final long p50;
+        private final long p90;
+        private final long p99;
+        private final long max;
+
+        /**
+         * Constructor {@link Distribution}.
+         *
+         * @param count number of recorded values
+         * @param mean  mean value
+         * @param p50   median
+         * @param p90   90th percentile
+         * @param p99   99th percentile
+         * @param max   largest value
+         */
+        public Distribution(long count, long mean, long p50, long p90, long p99, long max) {
+            this.count = count;
+            this.mean = mean;
+            this.p50 = p50;
+            this.p90 = p90;
+            this.p99 = p99;
+            this.max = max;
+        }
+
+        Distribution(Histogram histogram) {
+            this(histogram.getCount(), histogram.getMean(),
+                    histogram.getValueAtPercentile(50), histogram.getValueAtPercentile(90),
+                    histogram.getValueAtPercentile(99), histogram.getMax());
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getMean() {
+            return mean;
+        }
+
+        public long getP50() {
+            return p50;
+        }
+
+        public long getP90() {
+            return p90;
+        }
+
+        public long getP99() {
+            return p99;
+        }
+
+        public long getMax() {
+            return max;
+        }
+
+        @Override
+        public String toString() {
+            return "n=" + count + " mean=" + mean + " p50=" + p50 + " p90=" + p90
+                    + " p99=" + p99 + " max=" + max;
+        }
+    }
+
+    /**
+     * Constructor {@link MetricsSnapshot}.
+     *
+     * @param timeMillis    wall clock time the snapshot was taken at
+     * @param values        counter and gauge values by name, in the order to report them
+     * @param distributions histogram summaries by name, in the order to report them
+     */
+    public MetricsSnapshot(long timeMillis, Map<String, Long> values,
+                           Map<String, Distribution> distributions) {
+        this.timeMillis = timeMillis;
+        this.values = Collections.unmodifiableMap(values);
+        this.distributions = Collections.unmodifiableMap(distributions);
+    }
+
+    public long getTimeMillis() {
+        return timeMillis;
+    }
+
+    public Map<String, Long> getValues() {
+        return values;
+    }
+
+    public Map<String, Distribution> getDistributions() {
+        return distributions;
+    }
+
+    /**
+     * Write the snapshot as text, one metric per line after a {@code time} line.
+     *
+     * @param writer destination, not flushed or closed
+     * @throws IOException the writer failed
+     */
+    public void writeTo(Writer writer) throws IOException {
+        writer.write("time " + timeMillis + "\n");
+        for (Map.Entry<String, Long> entry : values.entrySet()) {
+            writer.write(entry.getKey() + " " + entry.getValue() + "\n");
+        }
+        for (Map.Entry<String, Distribution> entry : distributions.entrySet()) {
+            writer.write(entry.getKey() + " " + entry.getValue() + "\n");
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringWriter writer = new StringWriter();
+        try {
+            writeTo(writer);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return writer.toString();
+    }
+}
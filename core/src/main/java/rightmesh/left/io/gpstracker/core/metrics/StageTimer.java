@@ -0,0 +1,71 @@
+package rightmesh.left.io.gpstracker.core.metrics;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Accumulates how long a pipeline stage takes: call count, mean, percentiles, maximum and last
+ * run. Backed by a {@link Histogram} of nanoseconds, so it can be recorded from any thread
+ * without locking and added to a {@link MetricsRegistry}.
+ */
+public class StageTimer {
+    private final String name;
+    private final Histogram histogram = new Histogram();
+    private volatile long lastNanos;
+
+    /**
+     * Constructor {@link StageTimer}.
+     *
+     * @param name stage name used in {@link #toString()}
+     */
+    public StageTimer(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Record one run of the stage.
+     *
+     * @param nanos duration in nanoseconds
+     */
+    public void record(long nanos) {
+        histogram.record(nanos);
+        lastNanos = nanos;
+    }
+
+    public long getCount() {
+        return histogram.getCount();
+    }
+
+    /**
+     * Mean duration of the recorded runs.
+     *
+     * @return mean in nanoseconds, 0 if nothing was recorded
+     */
+    public long getMeanNanos() {
+        return histogram.getMean();
+    }
+
+    public long getMaxNanos() {
+        return histogram.getMax();
+    }
+
+    public long getLastNanos() {
+        return lastNanos;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public Histogram getHistogram() {
+        return histogram;
+    }
+
+    @Override
+    public String toString() {
+        return name + ": n=" + getCount()
+                + " mean=" + TimeUnit.NANOSECONDS.toMicros(getMeanNanos()) + "us"
+                + " p99=" + TimeUnit.NANOSECONDS.toMicros(histogram.getValueAtPercentile(99))
+                + "us"
+                + " max=" + TimeUnit.NANOSECONDS.toMicros(getMaxNanos()) + "us";
+    }
+}
@@ -0,0 +1,86 @@
+package rightmesh.left.io.gpstracker.core.metrics;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Records how long a cold start takes: from starting the uplink to the mesh link coming up for
+ * the first time, and to the first frame the transport accepted. Only the first occurrence of
+ * each milestone counts.
+ */
+public class StartupTrace {
+    private static final long NOT_REACHED = -1;
+
+    private long startNanos = NOT_REACHED;
+    private long connectedNanos = NOT_REACHED;
+    private long firstDeliveryNanos = NOT_REACHED;
+
+    /**
+     * Mark the start of the trace. Later calls are ignored.
+     *
+     * @param nowNanos current {@link System#nanoTime()}
+     */
+    public synchronized void markStarted(long nowNanos) {
+        if (startNanos == NOT_REACHED) {
+            startNanos = nowNanos;
+        }
+    }
+
+    /**
+     * Mark the link coming up. Later calls are ignored.
+     *
+     * @param nowNanos current {@link System#nanoTime()}
+     * @return true if this was the first time
+     */
+    public synchronized boolean markConnected(long nowNanos) {
+        if (startNanos == NOT_REACHED || connectedNanos != NOT_REACHED) {
+            return false;
+        }
+        connectedNanos = nowNanos;
+        return true;
+    }
+
+    /**
+     * Mark the first frame accepted by the transport. Later calls are ignored.
+     *
+     * @param nowNanos current {@link System#nanoTime()}
+     * @return true if this was the first time
+     */
+    public synchronized boolean markFirstDelivery(long nowNanos) {
+        if (startNanos == NOT_REACHED || firstDeliveryNanos != NOT_REACHED) {
+            return false;
+        }
+        firstDeliveryNanos = nowNanos;
+        return true;
+    }
+
+    /**
+     * Time from the start to the link coming up.
+     *
+     * @return duration in milliseconds, -1 if not connected yet
+     */
+    public synchronized long getTimeToConnectedMillis() {
+        return elapsedMillis(connectedNanos);
+    }
+
+    /**
+     * Time from the start to the first frame accepted by the transport.
+     *
+     * @return duration in milliseconds, -1 if nothing was delivered yet
+     */
+    public synchronized long getTimeToFirstDeliveryMillis() {
+        return elapsedMillis(firstDeliveryNanos);
+    }
+
+    private long elapsedMillis(long milestoneNanos) {
+        if (milestoneNanos == NOT_REACHED) {
+            return NOT_REACHED;
+        }
+        return TimeUnit.NANOSECONDS.toMillis(milestoneNanos - startNanos);
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "startup: connected=" + getTimeToConnectedMillis() + "ms"
+                + " firstDelivery=" + getTimeToFirstDeliveryMillis() + "ms";
+    }
+}
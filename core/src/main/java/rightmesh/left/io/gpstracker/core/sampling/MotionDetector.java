@@ -0,0 +1,86 @@
+package rightmesh.left.io.gpstracker.core.sampling;
+
+import rightmesh.left.io.gpstracker.core.geo.GeoMath;
+
+/**
+ * Decides from recent fixes whether the device is moving or standing still.
+ *
+ * <p>The detector keeps an anchor fix. A fix further from the anchor than the still radius (plus
+ * its own accuracy, so GPS jitter is not mistaken for movement) or reporting a speed above the
+ * moving threshold makes the device {@link Motion#MOVING} at once and becomes the new anchor.
+ * The device only becomes {@link Motion#STATIONARY} once every fix stayed near the anchor for
+ * the dwell time, so short stops do not flip the state back and forth.
+ */
+public class MotionDetector {
+    private final double stillRadiusMeters;
+    private final float movingSpeedMetersPerSecond;
+    private final long stillDwellMillis;
+
+    private boolean hasAnchor;
+    private double anchorLatitude;
+    private double anchorLongitude;
+    private long anchorTimeMillis;
+    private Motion motion = Motion.MOVING;
+
+    /**
+     * Motion state of the device.
+     */
+    public enum Motion {
+        MOVING,
+        STATIONARY
+    }
+
+    /**
+     * Constructor {@link MotionDetector}.
+     *
+     * @param stillRadiusMeters          fixes within this distance of the anchor count as still
+     * @param movingSpeedMetersPerSecond a reported speed above this means moving
+     * @param stillDwellMillis           how long fixes must stay still before going stationary
+     */
+    public MotionDetector(double stillRadiusMeters,
+                          float movingSpeedMetersPerSecond,
+                          long stillDwellMillis) {
+        this.stillRadiusMeters = stillRadiusMeters;
+        this.movingSpeedMetersPerSecond = movingSpeedMetersPerSecond;
+        this.stillDwellMillis = stillDwellMillis;
+    }
+
+    /**
+     * Feed a new fix.
+     *
+     * @param latitude       latitude in degrees
+     * @param longitude      longitude in degrees
+     * @param accuracyMeters horizontal accuracy, 0 if unknown
+     * @param speed          ground speed in metres per second, 0 if unknown
+     * @param timeMillis     fix time in milliseconds
+     * @return motion state after this fix
+     */
+    public Motion onFix(double latitude, double longitude, float accuracyMeters, float speed,
+                        long timeMillis) {
+        if (!hasAnchor) {
+            setAnchor(latitude, longitude, timeMillis);
+            return motion;
+        }
+        double distance = GeoMath.distanceMeters(anchorLatitude, anchorLongitude,
+                latitude, longitude);
+        if (speed > movingSpeedMetersPerSecond
+                || distance > stillRadiusMeters + accuracyMeters) {
+            motion = Motion.MOVING;
+            setAnchor(latitude, longitude, timeMillis);
+        } else if (timeMillis - anchorTimeMillis >= stillDwellMillis) {
+            motion = Motion.STATIONARY;
+        }
+        return motion;
+    }
+
+    public Motion getMotion() {
+        return motion;
+    }
+
+    private void setAnchor(double latitude, double longitude, long timeMillis) {
+        hasAnchor = true;
+        anchorLatitude = latitude;
+        anchorLongitude = longitude;
+        anchorTimeMillis = timeMillis;
+    }
+}
@@ -0,0 +1,72 @@
+package rightmesh.left.io.gpstracker.core.transport;
+
+import java.util.Random;
+
+/**
+ * Exponential backoff with jitter for reconnect attempts.
+ *
+ * <p>The n-th delay is drawn uniformly from the upper half of {@code initial * 2^n}, capped at
+ * the maximum, so devices that lost the same SuperPeer do not all retry at the same moment.
+ * Not thread-safe.
+ */
+public class Backoff {
+    private final long initialMillis;
+    private final long maxMillis;
+    private final Random random;
+
+    private int attempts;
+
+    /**
+     * Constructor {@link Backoff}.
+     *
+     * @param initialMillis delay before the first retry
+     * @param maxMillis     longest delay
+     */
+    public Backoff(long initialMillis, long maxMillis) {
+        this(initialMillis, maxMillis, new Random());
+    }
+
+    /**
+     * Constructor {@link Backoff}.
+     *
+     * @param initialMillis delay before the first retry
+     * @param maxMillis     longest delay
+     * @param random        source of the jitter
+     */
+    public Backoff(long initialMillis, long maxMillis, Random random) {
+        if (initialMillis < 1 || maxMillis < initialMillis) {
+            throw new IllegalArgumentException("Invalid delays: " + initialMillis + ", "
+                    + maxMillis);
+        }
+        this.initialMillis = initialMillis;
+        this.maxMillis = maxMillis;
+        this.random = random;
+    }
+
+    /**
+     * Delay before the next attempt, doubling with every attempt up to the maximum.
+     *
+     * @return delay in milliseconds
+     */
+    public long nextDelayMillis() {
+        long ceiling = maxMillis;
+        // Compared by shifting the cap down, so the doubled delay never overflows.
+        if (attempts < Long.SIZE - 1 && initialMillis <= maxMillis >> attempts) {
+            ceiling = initialMillis << attempts;
+        }
+        attempts++;
+        long half = ceiling / 2;
+        return ceiling - half + (long) (random.nextDouble() * (half + 1));
+    }
+
+    /**
+     * Start over from the initial delay, e.g. once connected.
+     */
+    public void reset() {
+        attempts = 0;
+    }
+
+    public int getAttempts() {
+        return attempts;
+    }
+}
@@ -0,0 +1,195 @@
+package rightmesh.left.io.gpstracker.core.transport;
+
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-memory mesh for load tests and benchmarks on a plain JVM.
+ *
+ * <p>Every joined peer gets a {@link LoopbackTransport}. Payloads are delivered after a random
+ * latency between the configured bounds, so they may arrive out of order, and a configurable
+ * share of them is silently lost, as a mesh link may lose them despite accepting them. Peers can
+ * be disconnected and reconnected to exercise backlog handling: sending from or to a
+ * disconnected peer fails, and payloads in flight to it are lost.
+ */
+public class LoopbackNetwork {
+    private final ScheduledExecutorService deliveryExecutor;
+    private final Random random;
+    private final ConcurrentHashMap<String, LoopbackTransport> peers = new ConcurrentHashMap<>();
+    private final AtomicInteger nextDataId = new AtomicInteger();
+
+    private final AtomicLong sentCount = new AtomicLong();
+    private final AtomicLong deliveredCount = new AtomicLong();
+    private final AtomicLong lostCount = new AtomicLong();
+
+    private volatile long minLatencyMillis;
+    private volatile long maxLatencyMillis;
+    private volatile double lossRate;
+
+    /**
+     * Constructor {@link LoopbackNetwork}.
+     *
+     * @param deliveryExecutor delivers payloads and their events
+     * @param seed             seed for latency and loss, for reproducible runs
+     */
+    public LoopbackNetwork(ScheduledExecutorService deliveryExecutor, long seed) {
+        this.deliveryExecutor = deliveryExecutor;
+        this.random = new Random(seed);
+    }
+
+    /**
+     * Set the delivery latency range.
+     *
+     * @param minMillis shortest latency
+     * @param maxMillis longest latency, at least {@code minMillis}
+     * @return this network
+     */
+    public LoopbackNetwork setLatency(long minMillis, long maxMillis) {
+        if (minMillis < 0 || maxMillis < minMillis) {
+            throw new IllegalArgumentException("Invalid latency range: " + minMillis + ".."
+                    + maxMillis);
+        }
+        this.minLatencyMillis = minMillis;
+        this.maxLatencyMillis = maxMillis;
+        return this;
+    }
+
+    /**
+     * Set the share of accepted payloads that never arrive.
+     *
+     * @param lossRate probability between 0 and 1
+     * @return this network
+     */
+    public LoopbackNetwork setLossRate(double lossRate) {
+        if (lossRate < 0 || lossRate > 1) {
+            throw new IllegalArgumentException("Invalid loss rate: " + lossRate);
+        }
+        this.lossRate = lossRate;
+        return this;
+    }
+
+    /**
+     * Add a peer to the network. It stays disconnected until {@link #connect(String)}.
+     *
+     * @param peerId unique peer id
+     * @return the peer's transport
+     */
+    public LoopbackTransport join(String peerId) {
+        LoopbackTransport transport = new LoopbackTransport(this, peerId);
+        if (peers.putIfAbsent(peerId, transport) != null) {
+            throw new IllegalArgumentException("Peer already joined: " + peerId);
+        }
+        return transport;
+    }
+
+    /**
+     * Bring a peer's link up. The peer gets a state change and every connected peer, including
+     * the new one, learns about the other side.
+     *
+     * @param peerId joined peer
+     */
+    public void connect(String peerId) {
+        LoopbackTransport transport = getPeer(peerId);
+        if (transport.isConnected()) {
+            return;
+        }
+        transport.setConnected(true);
+        for (LoopbackTransport other : peers.values()) {
+            if (other != transport && other.isConnected()) {
+                other.firePeerChanged(peerId, MeshTransport.PEER_ADDED);
+                transport.firePeerChanged(other.getPeerId(), MeshTransport.PEER_ADDED);
+            }
+        }
+    }
+
+    /**
+     * Take a peer's link down. Connected peers are told it was removed.
+     *
+     * @param peerId joined peer
+     */
+    public void disconnect(String peerId) {
+        LoopbackTransport transport = getPeer(peerId);
+        if (!transport.isConnected()) {
+            return;
+        }
+        transport.setConnected(false);
+        for (LoopbackTransport other : peers.values()) {
+            if (other.isConnected()) {
+                other.firePeerChanged(peerId, MeshTransport.PEER_REMOVED);
+            }
+        }
+    }
+
+    /**
+     * Number of payloads accepted for delivery.
+     *
+     * @return sent payload count
+     */
+    public long getSentCount() {
+        return sentCount.get();
+    }
+
+    /**
+     * Number of payloads handed to their target.
+     *
+     * @return delivered payload count
+     */
+    public long getDeliveredCount() {
+        return deliveredCount.get();
+    }
+
+    /**
+     * Number of accepted payloads that were lost or whose target disconnected.
+     *
+     * @return lost payload count
+     */
+    public long getLostCount() {
+        return lostCount.get();
+    }
+
+    int send(LoopbackTransport from, String targetId, byte[] payload)
+            throws TransportException {
+        if (!from.isConnected()) {
+            throw new TransportException("Not connected: " + from.getPeerId());
+        }
+        LoopbackTransport target = peers.get(targetId);
+        if (target == null || !target.isConnected()) {
+            throw new TransportException("No route to " + targetId);
+        }
+        int dataId = nextDataId.incrementAndGet();
+        sentCount.incrementAndGet();
+        if (random.nextDouble() < lossRate) {
+            lostCount.incrementAndGet();
+            return dataId;
+        }
+        byte[] copy = payload.clone();
+        String senderId = from.getPeerId();
+        deliveryExecutor.schedule(() -> {
+            if (target.isConnected()) {
+                deliveredCount.incrementAndGet();
+                target.fireDataReceived(senderId, copy);
+            } else {
+                lostCount.incrementAndGet();
+            }
+        }, nextLatencyMillis(), TimeUnit.MILLISECONDS);
+        return dataId;
+    }
+
+    private long nextLatencyMillis() {
+        long min = minLatencyMillis;
+        long spread = maxLatencyMillis - min;
+        return spread == 0 ? min : min + (long) (random.nextDouble() * (spread + 1));
+    }
+
+    private LoopbackTransport getPeer(String peerId) {
+        LoopbackTransport transport = peers.get(peerId);
+        if (transport == null) {
+            throw new IllegalArgumentException("Unknown peer: " + peerId);
+        }
+        return transport;
+    }
+}
@@ -0,0 +1,57 @@
+package rightmesh.left.io.gpstracker.core.transport;
+
+/**
+ * Endpoint of a {@link LoopbackNetwork}, created by {@link LoopbackNetwork#join(String)}.
+ */
+public class LoopbackTransport implements MeshTransport {
+    private final LoopbackNetwork network;
+    private final String peerId;
+
+    private volatile boolean connected;
+    private volatile OnTransportEventListener listener;
+
+    LoopbackTransport(LoopbackNetwork network, String peerId) {
+        this.network = network;
+        this.peerId = peerId;
+    }
+
+    public String getPeerId() {
+        return peerId;
+    }
+
+    public boolean isConnected() {
+        return connected;
+    }
+
+    @Override
+    public int send(String targetId, byte[] payload) throws TransportException {
+        return network.send(this, targetId, payload);
+    }
+
+    @Override
+    public void setOnTransportEventListener(OnTransportEventListener listener) {
+        this.listener = listener;
+    }
+
+    void setConnected(boolean connected) {
+        this.connected = connected;
+        OnTransportEventListener current = listener;
+        if (current != null) {
+            current.onStateChanged(peerId, connected);
+        }
+    }
+
+    void firePeerChanged(String otherId, int state) {
+        OnTransportEventListener current = listener;
+        if (current != null) {
+            current.onPeerChanged(otherId, state);
+        }
+    }
+
+    void fireDataReceived(String senderId, byte[] data) {
+        OnTransportEventListener current = listener;
+        if (current != null) {
+            current.onDataReceived(senderId, data);
+        }
+    }
+}
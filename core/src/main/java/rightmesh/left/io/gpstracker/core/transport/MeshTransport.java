@@ -0,0 +1,59 @@
+package rightmesh.left.io.gpstracker.core.transport;
+
+/**
+ * Send and receive surface of a mesh, so the uplink does not depend on the RightMesh library.
+ *
+ * <p>Peers are identified by the string form of their mesh id. Events may be delivered on any
+ * thread.
+ */
+public interface MeshTransport {
+    int PEER_ADDED = 1;
+    int PEER_REMOVED = 2;
+    int PEER_UPDATED = 3;
+
+    /**
+     * Send a payload to a peer. The mesh takes care of routing and retransmission.
+     *
+     * @param peerId  target peer
+     * @param payload data to send, must not be modified afterwards
+     * @return id the mesh assigned to the payload
+     * @throws TransportException the payload was not accepted
+     */
+    int send(String peerId, byte[] payload) throws TransportException;
+
+    /**
+     * Set the listener for mesh events, replacing any previous one.
+     *
+     * @param listener a callback, or null
+     */
+    void setOnTransportEventListener(OnTransportEventListener listener);
+
+    /**
+     * Mesh events.
+     */
+    interface OnTransportEventListener {
+        /**
+         * The link to the mesh came up or went down.
+         *
+         * @param localId   id of this device, null if unknown
+         * @param connected true once payloads can be sent
+         */
+        void onStateChanged(String localId, boolean connected);
+
+        /**
+         * A peer joined, left or changed.
+         *
+         * @param peerId peer id
+         * @param state  {@link #PEER_ADDED}, {@link #PEER_REMOVED} or {@link #PEER_UPDATED}
+         */
+        void onPeerChanged(String peerId, int state);
+
+        /**
+         * A payload arrived.
+         *
+         * @param peerId sender
+         * @param data   payload
+         */
+        void onDataReceived(String peerId, byte[] data);
+    }
+}
@@ -0,0 +1,27 @@
+package rightmesh.left.io.gpstracker.core.transport;
+
+/**
+ * A {@link MeshTransport} could not accept a payload, e.g. it is disconnected or has no route.
+ */
+public class TransportException extends Exception {
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Constructor {@link TransportException}.
+     *
+     * @param message what went wrong
+     */
+    public TransportException(String message) {
+        super(message);
+    }
+
+    /**
+     * Constructor {@link TransportException}.
+     *
+     * @param message what went wrong
+     * @param cause   error reported by the underlying mesh
+     */
+    public TransportException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,102 @@
+package rightmesh.left.io.gpstracker.core.uplink;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import rightmesh.left.io.gpstracker.core.codec.DeliveryCodec;
+
+/**
+ * Tells a {@link DeliveryCodec} frame sent again from a new one, by sender and sequence number.
+ *
+ * <p>A window of the last {@link #SEQUENCE_WINDOW} sequence numbers is kept per sender. A
+ * sequence number far behind the window means the sender started over, and is taken as new.
+ * Only a bounded number of senders is remembered; the least recently heard is forgotten first.
+ *
+ * <p>Not thread-safe.
+ */
+public class DuplicateFilter {
+    public static final int SEQUENCE_WINDOW = Long.SIZE;
+
+    // Highest sequence number recorded, and a bit per recorded number below it.
+    private final Map<String, long[]> windows;
+
+    /**
+     * Constructor {@link DuplicateFilter}.
+     *
+     * @param maxSenders senders whose window is kept
+     */
+    public DuplicateFilter(final int maxSenders) {
+        if (maxSenders < 1) {
+            throw new IllegalArgumentException("Invalid sender limit: " + maxSenders);
+        }
+        windows = new LinkedHashMap<String, long[]>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, long[]> eldest) {
+                return size() > maxSenders;
+            }
+        };
+    }
+
+    /**
+     * Record a sequence number in the window of its sender.
+     *
+     * @param senderId sender of the frame
+     * @param sequence sequence number of the frame
+     * @return false if the sequence number was recorded before
+     */
+    public boolean accept(String senderId, long sequence) {
+        long[] window = windows.get(senderId);
+        if (window == null) {
+            windows.put(senderId, new long[]{sequence, 1L});
+            return true;
+        }
+        long highest = window[0];
+        if (sequence > highest) {
+            long shift = sequence - highest;
+            window[1] = shift >= SEQUENCE_WINDOW ? 1L : window[1] << shift | 1L;
+            window[0] = sequence;
+            return true;
+        }
+        long offset = highest - sequence;
+        if (offset >= SEQUENCE_WINDOW) {
+            // Too far behind for a retransmission: the sender started over.
+            window[0] = sequence;
+            window[1] = 1L;
+            return true;
+        }
+        long bit = 1L << offset;
+        if ((window[1] & bit) != 0) {
+            return false;
+        }
+        window[1] |= bit;
+        return true;
+    }
+
+    /**
+     * Check whether a sequence number was recorded, without recording it.
+     *
+     * @param senderId sender of the frame
+     * @param sequence sequence number of the frame
+     * @return true if the sequence number is in the window of its sender
+     */
+    public boolean contains(String senderId, long sequence) {
+        long[] window = windows.get(senderId);
+        if (window == null || sequence > window[0] || window[0] - sequence >= SEQUENCE_WINDOW) {
+            return false;
+        }
+        return (window[1] & 1L << (window[0] - sequence)) != 0;
+    }
+
+    /**
+     * Forget a recorded sequence number, so the frame is taken as new when it comes again.
+     *
+     * @param senderId sender of the frame
+     * @param sequence sequence number of the frame
+     */
+    public void remove(String senderId, long sequence) {
+        long[] window = windows.get(senderId);
+        if (window != null && sequence <= window[0] && window[0] - sequence < SEQUENCE_WINDOW) {
+            window[1] &= ~(1L << (window[0] - sequence));
+        }
+    }
+}
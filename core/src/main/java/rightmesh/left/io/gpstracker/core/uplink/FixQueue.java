@@ -0,0 +1,87 @@
+package rightmesh.left.io.gpstracker.core.uplink;
+
+import rightmesh.left.io.gpstracker.core.codec.LocationFix;
+
+/**
+ * Bounded FIFO of location fixes that drops the oldest fix when full.
+ *
+ * <p>Slots are preallocated and fixes are copied in and out, so the queue does not allocate
+ * once constructed. The latest position is worth more than an old one, which is why a full
+ * queue sacrifices its head rather than refusing the new fix.
+ */
+public class FixQueue {
+    public static final long EMPTY = Long.MIN_VALUE;
+
+    private final LocationFix[] fixes;
+    private final long[] enqueueNanos;
+    private int head;
+    private int size;
+    private long droppedCount;
+
+    /**
+     * Constructor {@link FixQueue}.
+     *
+     * @param capacity maximum number of queued fixes
+     */
+    public FixQueue(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be positive: " + capacity);
+        }
+        fixes = new LocationFix[capacity];
+        for (int i = 0; i < capacity; i++) {
+            fixes[i] = new LocationFix();
+        }
+        enqueueNanos = new long[capacity];
+    }
+
+    /**
+     * Append a copy of a fix, dropping the oldest one if the queue is full.
+     *
+     * @param fix      fix to copy
+     * @param nowNanos enqueue time from {@link System#nanoTime()}
+     * @return false if a fix was dropped to make room
+     */
+    public synchronized boolean offer(LocationFix fix, long nowNanos) {
+        boolean dropped = size == fixes.length;
+        if (dropped) {
+            head = (head + 1) % fixes.length;
+            size--;
+            droppedCount++;
+        }
+        int tail = (head + size) % fixes.length;
+        fixes[tail].copyFrom(fix);
+        enqueueNanos[tail] = nowNanos;
+        size++;
+        return !dropped;
+    }
+
+    /**
+     * Remove the oldest fix.
+     *
+     * @param out receives a copy of the oldest fix
+     * @return time the fix was enqueued, or {@link #EMPTY} if the queue is empty
+     */
+    public synchronized long poll(LocationFix out) {
+        if (size == 0) {
+            return EMPTY;
+        }
+        out.copyFrom(fixes[head]);
+        long nanos = enqueueNanos[head];
+        head = (head + 1) % fixes.length;
+        size--;
+        return nanos;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * Number of fixes dropped because the queue was full.
+     *
+     * @return dropped fix count
+     */
+    public synchronized long getDroppedCount() {
+        return droppedCount;
+    }
+}
@@ -0,0 +1,323 @@
+package rightmesh.left.io.gpstracker.core.uplink;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Bounded, append-only journal of unsent frames kept in a memory-mapped file.
+ *
+ * <p>Records are appended at the tail and consumed from the head in order. When the tail
+ * reaches the end of the file the live records are compacted to the start; if they still do
+ * not leave room for the new record, the oldest records are dropped. The journal therefore
+ * never grows beyond the capacity given to {@link #open(File, int)}.
+ *
+ * <p>The head and tail are stored in the file header after every change, so the backlog
+ * survives the process being killed. Compaction is recorded in the header before it moves any
+ * record and is finished by {@link #open(File, int)} if the process died halfway. Not
+ * thread-safe beyond its own methods: consume from one thread only.
+ */
+public class FrameJournal implements FrameQueue, Closeable {
+    private static final int MAGIC = 0x474A524E;
+    private static final int FORMAT_VERSION = 2;
+
+    private static final int MAGIC_OFFSET = 0;
+    private static final int VERSION_OFFSET = 4;
+    private static final int CAPACITY_OFFSET = 8;
+    private static final int COUNT_OFFSET = 12;
+    private static final int HEAD_OFFSET = 16;
+    private static final int TAIL_OFFSET = 20;
+    // Where the records being compacted start, 0 when no compaction is under way.
+    private static final int COMPACT_FROM_OFFSET = 24;
+    private static final int COMPACT_LENGTH_OFFSET = 28;
+    private static final int COMPACT_DONE_OFFSET = 32;
+    static final int HEADER_SIZE = 36;
+
+    static final int RECORD_HEADER_SIZE = Integer.SIZE / Byte.SIZE;
+
+    private static final int COPY_CHUNK_SIZE = 4096;
+
+    private final RandomAccessFile file;
+    private final MappedByteBuffer map;
+    private final int capacity;
+    private final byte[] copyChunk = new byte[COPY_CHUNK_SIZE];
+
+    private int head;
+    private int tail;
+    private int count;
+    private long droppedCount;
+
+    private FrameJournal(RandomAccessFile file, MappedByteBuffer map, int capacity) {
+        this.file = file;
+        this.map = map;
+        this.capacity = capacity;
+    }
+
+    /**
+     * Open a journal, recovering the backlog left by a previous run.
+     *
+     * <p>A file that is missing, of another capacity or inconsistent is reset to empty.
+     *
+     * @param journalFile backing file
+     * @param capacity    bytes available for records, including a 4 byte header per record
+     * @return opened journal
+     * @throws IOException the file cannot be created or mapped
+     */
+    public static FrameJournal open(File journalFile, int capacity) throws IOException {
+        if (capacity <= RECORD_HEADER_SIZE) {
+            throw new IllegalArgumentException("Capacity too small: " + capacity);
+        }
+        RandomAccessFile file = new RandomAccessFile(journalFile, "rw");
+        try {
+            file.setLength(HEADER_SIZE + capacity);
+            MappedByteBuffer map = file.getChannel()
+                    .map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + capacity);
+            FrameJournal journal = new FrameJournal(file, map, capacity);
+            if (!journal.recover()) {
+                journal.reset();
+            }
+            return journal;
+        } catch (IOException e) {
+            file.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Append a frame at the tail, dropping the oldest frames if the journal is full.
+     *
+     * @param frame frame to store
+     * @return false if the frame alone is larger than the journal and was not stored
+     */
+    public boolean append(byte[] frame) {
+        return append(ByteBuffer.wrap(frame));
+    }
+
+    /**
+     * Append the bytes between position and limit of a buffer, without allocating. The buffer
+     * position is left unchanged.
+     *
+     * @param frame buffer holding the frame to store
+     * @return false if the frame alone is larger than the journal and was not stored
+     */
+    public synchronized boolean append(ByteBuffer frame) {
+        int length = frame.remaining();
+        int recordSize = RECORD_HEADER_SIZE + length;
+        if (recordSize > capacity) {
+            return false;
+        }
+        makeRoom(recordSize, Integer.MAX_VALUE);
+        map.putInt(HEADER_SIZE + tail, length);
+        map.position(HEADER_SIZE + tail + RECORD_HEADER_SIZE);
+        int position = frame.position();
+        map.put(frame);
+        frame.position(position);
+        tail += recordSize;
+        count++;
+        writeHeader();
+        return true;
+    }
+
+    /**
+     * Read the oldest frame without removing it.
+     *
+     * @return oldest frame, or null if the journal is empty
+     */
+    @Override
+    public synchronized byte[] peek() {
+        if (count == 0) {
+            return null;
+        }
+        byte[] frame = new byte[map.getInt(HEADER_SIZE + head)];
+        map.position(HEADER_SIZE + head + RECORD_HEADER_SIZE);
+        map.get(frame);
+        return frame;
+    }
+
+    /**
+     * Remove the oldest frame, typically once {@link #peek()} returned it and it was sent.
+     */
+    @Override
+    public synchronized void remove() {
+        if (count > 0) {
+            removeHead();
+            writeHeader();
+        }
+    }
+
+    public synchronized boolean isEmpty() {
+        return count == 0;
+    }
+
+    /**
+     * Number of frames waiting in the journal.
+     *
+     * @return frame count
+     */
+    @Override
+    public synchronized int size() {
+        return count;
+    }
+
+    /**
+     * Number of frames dropped to make room since the journal was opened.
+     *
+     * @return dropped frame count
+     */
+    public synchronized long getDroppedCount() {
+        return droppedCount;
+    }
+
+    /**
+     * Write pending changes to storage and release the file.
+     *
+     * @throws IOException the file cannot be closed
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        map.force();
+        file.close();
+    }
+
+    private void removeHead() {
+        head += RECORD_HEADER_SIZE + map.getInt(HEADER_SIZE + head);
+        count--;
+        if (count == 0) {
+            head = 0;
+            tail = 0;
+        }
+    }
+
+    /**
+     * Drop the oldest frames until a record fits, then compact if it does not fit after the
+     * tail.
+     *
+     * @param recordSize size of the record to append, header included
+     * @param maxChunks  chunks to move before stopping as if the process died, for tests
+     * @return false if the compaction was stopped before it finished
+     */
+    boolean makeRoom(int recordSize, int maxChunks) {
+        boolean dropped = false;
+        while (capacity - (tail - head) < recordSize) {
+            removeHead();
+            droppedCount++;
+            dropped = true;
+        }
+        if (dropped) {
+            // The compaction below is recorded against this header.
+            writeHeader();
+        }
+        return tail + recordSize <= capacity || compact(maxChunks);
+    }
+
+    /**
+     * Move the live records to the start of the data region.
+     *
+     * <p>The move is recorded in the header first, then made in chunks no longer than the gap
+     * before the records, noting the progress after each one. A chunk therefore never
+     * overwrites bytes still to be moved, and a move cut short by the process dying can be
+     * finished from the header alone.
+     *
+     * @param maxChunks chunks to move before stopping as if the process died, for tests
+     * @return false if the move was stopped before it finished
+     */
+    boolean compact(int maxChunks) {
+        map.putInt(COMPACT_LENGTH_OFFSET, tail - head);
+        map.putInt(COMPACT_DONE_OFFSET, 0);
+        // Written last: from here on the header describes the move.
+        map.putInt(COMPACT_FROM_OFFSET, head);
+        return finishCompaction(maxChunks);
+    }
+
+    /**
+     * Finish the move recorded in the header and switch the head and tail over to its result.
+     *
+     * @param maxChunks chunks to move before stopping as if the process died
+     * @return false if the move was stopped before it finished
+     */
+    private boolean finishCompaction(int maxChunks) {
+        int from = map.getInt(COMPACT_FROM_OFFSET);
+        int length = map.getInt(COMPACT_LENGTH_OFFSET);
+        int done = map.getInt(COMPACT_DONE_OFFSET);
+        int chunkSize = Math.min(COPY_CHUNK_SIZE, from);
+        for (int chunks = 0; done < length; chunks++) {
+            if (chunks == maxChunks) {
+                return false;
+            }
+            int chunk = Math.min(chunkSize, length - done);
+            map.position(HEADER_SIZE + from + done);
+            map.get(copyChunk, 0, chunk);
+            map.position(HEADER_SIZE + done);
+            map.put(copyChunk, 0, chunk);
+            done += chunk;
+            map.putInt(COMPACT_DONE_OFFSET, done);
+        }
+        head = 0;
+        tail = length;
+        writeHeader();
+        map.putInt(COMPACT_FROM_OFFSET, 0);
+        return true;
+    }
+
+    /**
+     * Load the header and check that the records it describes are consistent.
+     *
+     * @return true if the existing backlog can be used
+     */
+    private boolean recover() {
+        if (map.getInt(MAGIC_OFFSET) != MAGIC
+                || map.getInt(VERSION_OFFSET) != FORMAT_VERSION
+                || map.getInt(CAPACITY_OFFSET) != capacity) {
+            return false;
+        }
+        count = map.getInt(COUNT_OFFSET);
+        int from = map.getInt(COMPACT_FROM_OFFSET);
+        if (from != 0) {
+            int length = map.getInt(COMPACT_LENGTH_OFFSET);
+            int done = map.getInt(COMPACT_DONE_OFFSET);
+            if (from < 0 || length < 0 || done < 0 || done > length
+                    || length > capacity - from) {
+                return false;
+            }
+            finishCompaction(Integer.MAX_VALUE);
+        }
+        head = map.getInt(HEAD_OFFSET);
+        tail = map.getInt(TAIL_OFFSET);
+        if (count < 0 || head < 0 || head > tail || tail > capacity) {
+            return false;
+        }
+        int position = head;
+        for (int i = 0; i < count; i++) {
+            if (tail - position < RECORD_HEADER_SIZE) {
+                return false;
+            }
+            int length = map.getInt(HEADER_SIZE + position);
+            if (length < 0 || length > tail - position - RECORD_HEADER_SIZE) {
+                return false;
+            }
+            position += RECORD_HEADER_SIZE + length;
+        }
+        return position == tail;
+    }
+
+    private void reset() {
+        head = 0;
+        tail = 0;
+        count = 0;
+        map.putInt(MAGIC_OFFSET, MAGIC);
+        map.putInt(VERSION_OFFSET, FORMAT_VERSION);
+        map.putInt(CAPACITY_OFFSET, capacity);
+        map.putInt(COMPACT_FROM_OFFSET, 0);
+        writeHeader();
+    }
+
+    private void writeHeader() {
+        map.putInt(COUNT_OFFSET, count);
+        map.putInt(HEAD_OFFSET, head);
+        map.putInt(TAIL_OFFSET, tail);
+    }
+}
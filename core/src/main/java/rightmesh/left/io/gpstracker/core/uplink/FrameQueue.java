@@ -0,0 +1,25 @@
+package rightmesh.left.io.gpstracker.core.uplink;
+
+/**
+ * Frames waiting to be sent, consumed oldest first by a {@link LaneScheduler}.
+ */
+public interface FrameQueue {
+    /**
+     * Read the oldest frame without removing it.
+     *
+     * @return oldest frame, or null if the queue is empty
+     */
+    byte[] peek();
+
+    /**
+     * Remove the oldest frame, typically once {@link #peek()} returned it and it was sent.
+     */
+    void remove();
+
+    /**
+     * Number of frames waiting.
+     *
+     * @return frame count
+     */
+    int size();
+}
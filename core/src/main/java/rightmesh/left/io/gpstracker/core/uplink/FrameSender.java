@@ -0,0 +1,14 @@
+package rightmesh.left.io.gpstracker.core.uplink;
+
+/**
+ * Sends an encoded frame to the SuperPeer.
+ */
+public interface FrameSender {
+    /**
+     * Send a frame.
+     *
+     * @param frame encoded frame
+     * @return true if the mesh accepted the frame, false if it should be retried later
+     */
+    boolean send(byte[] frame);
+}
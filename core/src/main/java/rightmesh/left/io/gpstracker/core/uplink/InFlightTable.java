@@ -0,0 +1,206 @@
+package rightmesh.left.io.gpstracker.core.uplink;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Frames handed to the mesh but not acknowledged by the SuperPeer yet, by sequence number.
+ *
+ * <p>At most a window of frames is outstanding, so sends are pipelined without flooding the
+ * mesh. A frame that is not acknowledged in time is retransmitted, and handed back to the
+ * {@link Retransmitter} once it was sent the maximum number of times. Entries are kept in the
+ * order they were last sent, so timeouts are found without scanning the whole window.
+ *
+ * <p>Not thread-safe.
+ */
+public class InFlightTable {
+    public static final int NO_DATA_ID = -1;
+
+    private final int window;
+    private final long timeoutNanos;
+    private final int maxAttempts;
+    private final LinkedHashMap<Long, Entry> entries = new LinkedHashMap<>();
+
+    /**
+     * Decides what becomes of frames that timed out.
+     */
+    public interface Retransmitter {
+        /**
+         * Send a frame again.
+         *
+         * @param sequence sequence number of the frame
+         * @param frame    frame as sent before
+         * @return id the mesh assigned, or {@link #NO_DATA_ID} if the frame was not accepted
+         */
+        int retransmit(long sequence, byte[] frame);
+
+        /**
+         * Take back a frame that was sent the maximum number of times, or that is still in
+         * flight when the table is cleared.
+         *
+         * @param sequence sequence number of the frame
+         * @param frame    frame as sent before
+         */
+        void onDropped(long sequence, byte[] frame);
+    }
+
+    /**
+     * In-flight frame. Mutable, owned by the table.
+     */
+    private static final class Entry {
+        final byte[] frame;
+        final long firstSentNanos;
+        long sentNanos;
+        int dataId;
+        int attempts = 1;
+
+        Entry(byte[] frame, int dataId, long nowNanos) {
+            this.frame = frame;
+            this.dataId = dataId;
+            this.firstSentNanos = nowNanos;
+            this.sentNanos = nowNanos;
+        }
+    }
+
+    /**
+     * Constructor {@link InFlightTable}.
+     *
+     * @param window        most frames outstanding at once
+     * @param timeoutMillis time to wait for an acknowledgement before sending again
+     * @param maxAttempts   times a frame is sent before it is handed back
+     */
+    public InFlightTable(int window, long timeoutMillis, int maxAttempts) {
+        if (window < 1 || timeoutMillis < 1 || maxAttempts < 1) {
+            throw new IllegalArgumentException("Invalid limits: " + window + ", "
+                    + timeoutMillis + ", " + maxAttempts);
+        }
+        this.window = window;
+        this.timeoutNanos = TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        this.maxAttempts = maxAttempts;
+    }
+
+    /**
+     * Check whether another frame may be sent.
+     *
+     * @return false once the window is full
+     */
+    public boolean hasCapacity() {
+        return entries.size() < window;
+    }
+
+    /**
+     * Track a frame the mesh accepted.
+     *
+     * @param sequence unique sequence number of the frame
+     * @param dataId   id the mesh assigned to the frame
+     * @param frame    frame as sent, kept for retransmission and not modified
+     * @param nowNanos current {@link System#nanoTime()}
+     */
+    public void add(long sequence, int dataId, byte[] frame, long nowNanos) {
+        entries.put(sequence, new Entry(frame, dataId, nowNanos));
+    }
+
+    /**
+     * Match an acknowledgement.
+     *
+     * @param sequence acknowledged sequence number
+     * @param nowNanos current {@link System#nanoTime()}
+     * @return time since the frame was first sent in nanoseconds, or -1 if it is not in flight,
+     *         e.g. acknowledged twice or already dropped
+     */
+    public long acknowledge(long sequence, long nowNanos) {
+        Entry entry = entries.remove(sequence);
+        return entry == null ? -1 : nowNanos - entry.firstSentNanos;
+    }
+
+    /**
+     * Retransmit or drop every frame that waited longer than the timeout for its
+     * acknowledgement.
+     *
+     * @param nowNanos      current {@link System#nanoTime()}
+     * @param retransmitter sends the frames again or drops them
+     * @return number of frames that timed out
+     */
+    public int expire(long nowNanos, Retransmitter retransmitter) {
+        int expired = 0;
+        Iterator<Map.Entry<Long, Entry>> iterator = entries.entrySet().iterator();
+        LinkedHashMap<Long, Entry> resent = null;
+        while (iterator.hasNext()) {
+            Map.Entry<Long, Entry> next = iterator.next();
+            Entry entry = next.getValue();
+            if (nowNanos - entry.sentNanos < timeoutNanos) {
+                // Later entries were sent even later.
+                break;
+            }
+            iterator.remove();
+            expired++;
+            if (entry.attempts >= maxAttempts) {
+                retransmitter.onDropped(next.getKey(), entry.frame);
+                continue;
+            }
+            entry.dataId = retransmitter.retransmit(next.getKey(), entry.frame);
+            entry.attempts++;
+            entry.sentNanos = nowNanos;
+            if (resent == null) {
+                resent = new LinkedHashMap<>();
+            }
+            resent.put(next.getKey(), entry);
+        }
+        if (resent != null) {
+            // Back of the line, as if sent for the first time.
+            entries.putAll(resent);
+        }
+        return expired;
+    }
+
+    /**
+     * Hand every frame in flight to {@link Retransmitter#onDropped(long, byte[])}, in the order
+     * they were last sent, and empty the table, e.g. to keep them once the uplink stops.
+     *
+     * @param retransmitter takes the frames back
+     * @return number of frames removed
+     */
+    public int dropAll(Retransmitter retransmitter) {
+        int dropped = entries.size();
+        for (Map.Entry<Long, Entry> next : entries.entrySet()) {
+            retransmitter.onDropped(next.getKey(), next.getValue().frame);
+        }
+        entries.clear();
+        return dropped;
+    }
+
+    /**
+     * Id the mesh assigned to the latest transmission of a frame, e.g. to match it against
+     * events of the mesh itself.
+     *
+     * @param sequence sequence number of the frame
+     * @return data id, or {@link #NO_DATA_ID} if the frame is not in flight or the mesh did not
+     *         accept its latest transmission
+     */
+    public int getDataId(long sequence) {
+        Entry entry = entries.get(sequence);
+        return entry == null ? NO_DATA_ID : entry.dataId;
+    }
+
+    /**
+     * Frame as sent, e.g. to act on its content once it is acknowledged.
+     *
+     * @param sequence sequence number of the frame
+     * @return frame, or null if it is not in flight
+     */
+    public byte[] getFrame(long sequence) {
+        Entry entry = entries.get(sequence);
+        return entry == null ? null : entry.frame;
+    }
+
+    /**
+     * Number of frames waiting for an acknowledgement.
+     *
+     * @return in-flight frame count
+     */
+    public int size() {
+        return entries.size();
+    }
+}
@@ -0,0 +1,295 @@
+package rightmesh.left.io.gpstracker.core.uplink;
+
+/**
+ * Sends frames from several {@link FrameQueue} lanes through one {@link FrameSender}.
+ *
+ * <p>Lanes with weight 0 have strict priority: they are served first, lowest lane first. The
+ * weighted lanes share what is left by deficit round robin, in proportion to their weights and
+ * counted in bytes, so a lane with a deep backlog cannot starve the others. Every lane may also
+ * be limited to a number of frames per second by a token bucket; a lane out of tokens is skipped
+ * until it earns the next one.
+ *
+ * <p>Frames are only removed from their queue once the sender accepted them. A send that fails
+ * stops the pump with the frame still at the head of its lane, see {@link #isBlocked()}.
+ *
+ * <p>Not thread-safe.
+ */
+public class LaneScheduler {
+    public static final int DEFAULT_QUANTUM_BYTES = 512;
+
+    private static final double NANOS_PER_SECOND = 1e9;
+
+    private final Lane[] lanes;
+    private final FrameSender sender;
+    private final int quantumBytes;
+
+    private OnFrameSentListener listener;
+    // Weighted lane the round robin is at.
+    private int cursor;
+    private boolean blocked;
+
+    /**
+     * Reports every frame the sender accepted.
+     */
+    public interface OnFrameSentListener {
+        /**
+         * The sender accepted a frame, which is removed from its lane right after.
+         *
+         * @param lane  lane the frame was taken from
+         * @param frame frame as sent
+         */
+        void onFrameSent(int lane, byte[] frame);
+    }
+
+    private static class Lane {
+        // Null while the lane is unused.
+        FrameQueue queue;
+        int weight;
+        // 0 when the lane is not rate limited.
+        double tokensPerNano;
+        double burst;
+        double tokens;
+        long refillNanos;
+        boolean refilled;
+        // Bytes the lane may still send in the current round.
+        long deficit;
+        boolean credited;
+        // Head of the queue, cached for the current pump.
+        byte[] head;
+    }
+
+    /**
+     * Constructor {@link LaneScheduler}, with every lane unused and unlimited.
+     *
+     * @param laneCount number of lanes
+     * @param sender    sends frames to the SuperPeer
+     */
+    public LaneScheduler(int laneCount, FrameSender sender) {
+        this(laneCount, sender, DEFAULT_QUANTUM_BYTES);
+    }
+
+    /**
+     * Constructor {@link LaneScheduler}, with every lane unused and unlimited.
+     *
+     * @param laneCount    number of lanes
+     * @param sender       sends frames to the SuperPeer
+     * @param quantumBytes bytes a lane of weight 1 may send per round
+     */
+    public LaneScheduler(int laneCount, FrameSender sender, int quantumBytes) {
+        if (laneCount < 1 || quantumBytes < 1) {
+            throw new IllegalArgumentException("Invalid lanes: " + laneCount + ", "
+                    + quantumBytes);
+        }
+        lanes = new Lane[laneCount];
+        for (int i = 0; i < laneCount; i++) {
+            lanes[i] = new Lane();
+        }
+        this.sender = sender;
+        this.quantumBytes = quantumBytes;
+    }
+
+    /**
+     * Set listener for frames sent.
+     *
+     * @param listener a callback
+     * @return this scheduler
+     */
+    public LaneScheduler setOnFrameSentListener(OnFrameSentListener listener) {
+        this.listener = listener;
+        return this;
+    }
+
+    /**
+     * Set the frames a lane sends.
+     *
+     * @param lane  lane index
+     * @param queue frames of the lane, or null to leave the lane unused
+     */
+    public void setQueue(int lane, FrameQueue queue) {
+        lanes[lane].queue = queue;
+        lanes[lane].head = null;
+    }
+
+    /**
+     * Set how a lane shares the sender with the others.
+     *
+     * @param lane               lane index
+     * @param weight             share of a weighted lane, 0 for strict priority
+     * @param maxFramesPerSecond long-term rate of the lane, 0 for no limit
+     * @param burst              frames the lane may send at once after being idle
+     */
+    public void setLimits(int lane, int weight, double maxFramesPerSecond, int burst) {
+        if (weight < 0 || maxFramesPerSecond < 0 || (maxFramesPerSecond > 0 && burst < 1)) {
+            throw new IllegalArgumentException("Invalid limits: " + weight + ", "
+                    + maxFramesPerSecond + ", " + burst);
+        }
+        Lane limited = lanes[lane];
+        limited.weight = weight;
+        limited.tokensPerNano = maxFramesPerSecond / NANOS_PER_SECOND;
+        limited.burst = burst;
+        limited.tokens = burst;
+        limited.refilled = false;
+        limited.deficit = 0;
+    }
+
+    /**
+     * Send frames until every lane is empty or rate limited, a send fails, or enough frames
+     * were sent.
+     *
+     * @param nowNanos  current {@link System#nanoTime()}
+     * @param maxFrames most frames to send in this call
+     * @return number of frames sent
+     */
+    public int pump(long nowNanos, int maxFrames) {
+        blocked = false;
+        for (Lane lane : lanes) {
+            lane.head = null;
+            refill(lane, nowNanos);
+        }
+        int sent = 0;
+        while (sent < maxFrames) {
+            int index = nextLane();
+            if (index < 0) {
+                break;
+            }
+            Lane lane = lanes[index];
+            byte[] frame = head(lane);
+            if (!sender.send(frame)) {
+                blocked = true;
+                break;
+            }
+            if (listener != null) {
+                listener.onFrameSent(index, frame);
+            }
+            lane.queue.remove();
+            lane.head = null;
+            if (lane.tokensPerNano > 0) {
+                lane.tokens--;
+            }
+            if (lane.weight > 0) {
+                lane.deficit -= frame.length;
+            }
+            sent++;
+        }
+        return sent;
+    }
+
+    /**
+     * Whether the last {@link #pump(long, int)} stopped because the sender refused a frame.
+     *
+     * @return true if the sender refused a frame
+     */
+    public boolean isBlocked() {
+        return blocked;
+    }
+
+    /**
+     * Time until a rate limited lane may send again.
+     *
+     * @param nowNanos current {@link System#nanoTime()}
+     * @return 0 if a frame may be sent now, the delay in nanoseconds if every waiting frame is
+     *         held by its rate limit, -1 if no frame is waiting
+     */
+    public long getDelayNanos(long nowNanos) {
+        long delay = -1;
+        for (Lane lane : lanes) {
+            if (lane.queue == null || lane.queue.size() == 0) {
+                continue;
+            }
+            refill(lane, nowNanos);
+            if (lane.tokensPerNano == 0 || lane.tokens >= 1) {
+                return 0;
+            }
+            long wait = (long) Math.ceil((1 - lane.tokens) / lane.tokensPerNano);
+            delay = delay < 0 ? wait : Math.min(delay, wait);
+        }
+        return delay;
+    }
+
+    /**
+     * Number of frames waiting in a lane.
+     *
+     * @param lane lane index
+     * @return frame count, 0 if the lane is unused
+     */
+    public int size(int lane) {
+        FrameQueue queue = lanes[lane].queue;
+        return queue == null ? 0 : queue.size();
+    }
+
+    /**
+     * Number of frames waiting in every lane.
+     *
+     * @return frame count
+     */
+    public int size() {
+        int size = 0;
+        for (int i = 0; i < lanes.length; i++) {
+            size += size(i);
+        }
+        return size;
+    }
+
+    /**
+     * Picks the lane of the next frame: the first strict priority lane that may send, else the
+     * weighted lane the round robin settles on.
+     *
+     * @return lane index, -1 if no lane may send
+     */
+    private int nextLane() {
+        boolean weightedReady = false;
+        for (int i = 0; i < lanes.length; i++) {
+            if (isReady(lanes[i])) {
+                if (lanes[i].weight == 0) {
+                    return i;
+                }
+                weightedReady = true;
+            }
+        }
+        if (!weightedReady) {
+            return -1;
+        }
+        // Ends once a ready lane has been credited enough for its head frame.
+        while (true) {
+            Lane lane = lanes[cursor];
+            if (lane.weight > 0 && isReady(lane)) {
+                if (!lane.credited) {
+                    lane.deficit += (long) quantumBytes * lane.weight;
+                    lane.credited = true;
+                }
+                if (lane.deficit >= head(lane).length) {
+                    return cursor;
+                }
+            } else if (lane.queue == null || lane.queue.size() == 0) {
+                // An idle lane does not save up credit.
+                lane.deficit = 0;
+            }
+            lane.credited = false;
+            cursor = (cursor + 1) % lanes.length;
+        }
+    }
+
+    private boolean isReady(Lane lane) {
+        return lane.queue != null && lane.queue.size() > 0
+                && (lane.tokensPerNano == 0 || lane.tokens >= 1);
+    }
+
+    private byte[] head(Lane lane) {
+        if (lane.head == null) {
+            lane.head = lane.queue.peek();
+        }
+        return lane.head;
+    }
+
+    private static void refill(Lane lane, long nowNanos) {
+        if (lane.tokensPerNano == 0) {
+            return;
+        }
+        if (lane.refilled) {
+            lane.tokens = Math.min(lane.burst,
+                    lane.tokens + (nowNanos - lane.refillNanos) * lane.tokensPerNano);
+        }
+        lane.refillNanos = nowNanos;
+        lane.refilled = true;
+    }
+}
@@ -0,0 +1,138 @@
+package rightmesh.left.io.gpstracker.core.uplink;
+
+import java.nio.ByteBuffer;
+
+import rightmesh.left.io.gpstracker.core.codec.BatchFrame;
+import rightmesh.left.io.gpstracker.core.codec.LocationCodec;
+import rightmesh.left.io.gpstracker.core.codec.LocationFix;
+import rightmesh.left.io.gpstracker.core.metrics.StageTimer;
+
+/**
+ * Collects location fixes and hands them over as a single {@link LocationCodec} frame.
+ *
+ * <p>Fixes are copied into preallocated records and encoded into a reused buffer, so adding
+ * fixes and encoding batches does not allocate.
+ *
+ * <p>A batch is flushed as soon as it holds {@code maxFixes} fixes, or once its oldest fix is
+ * {@code maxAgeMillis} old. The age limit is only checked when a fix is added or when
+ * {@link #flushIfExpired(long)} is called, so callers should poll it periodically.
+ */
+public class LocationBatcher {
+    private final int maxFixes;
+    private final long maxAgeMillis;
+    private final OnBatchReadyListener listener;
+
+    private final LocationFix[] fixes;
+    private final ByteBuffer encodeBuffer;
+    private StageTimer encodeTimer;
+    private int count;
+    private long oldestFixMillis;
+
+    /**
+     * Receives every flushed frame.
+     *
+     * <p>Called while holding the batcher lock so frames are delivered in order. Unless the
+     * batcher is only used from a worker thread, hand the frame over to another thread rather
+     * than sending it inline.
+     */
+    public interface OnBatchReadyListener {
+        /**
+         * Handle a flushed frame.
+         *
+         * @param frame    the frame between position and limit, in a buffer the batcher reuses
+         *                 once this method returns
+         * @param fixCount number of fixes in the frame
+         */
+        void onBatchReady(ByteBuffer frame, int fixCount);
+    }
+
+    /**
+     * Constructor {@link LocationBatcher}.
+     *
+     * @param maxFixes     flush once this many fixes are collected, at most
+     *                     {@link BatchFrame#MAX_FIXES}
+     * @param maxAgeMillis flush once the oldest collected fix is this old
+     * @param listener     receives flushed frames
+     */
+    public LocationBatcher(int maxFixes, long maxAgeMillis, OnBatchReadyListener listener) {
+        if (maxFixes < 1 || maxFixes > BatchFrame.MAX_FIXES) {
+            throw new IllegalArgumentException("maxFixes out of range: " + maxFixes);
+        }
+        this.maxFixes = maxFixes;
+        this.maxAgeMillis = maxAgeMillis;
+        this.listener = listener;
+        this.fixes = new LocationFix[maxFixes];
+        for (int i = 0; i < maxFixes; i++) {
+            fixes[i] = new LocationFix();
+        }
+        this.encodeBuffer = ByteBuffer.allocate(LocationCodec.maxEncodedSize(maxFixes));
+    }
+
+    /**
+     * Record how long encoding each flushed batch takes.
+     *
+     * @param encodeTimer timer, or null to stop timing
+     */
+    public synchronized void setEncodeTimer(StageTimer encodeTimer) {
+        this.encodeTimer = encodeTimer;
+    }
+
+    /**
+     * Add a fix to the current batch, flushing it if a limit is reached.
+     *
+     * @param fix       fix to add, copied so the caller may reuse it
+     * @param nowMillis monotonic time in milliseconds
+     */
+    public synchronized void add(LocationFix fix, long nowMillis) {
+        if (count == 0) {
+            oldestFixMillis = nowMillis;
+        }
+        fixes[count].copyFrom(fix);
+        count++;
+        if (count >= maxFixes || nowMillis - oldestFixMillis >= maxAgeMillis) {
+            flush();
+        }
+    }
+
+    /**
+     * Flush the current batch if its oldest fix reached the age limit.
+     *
+     * @param nowMillis monotonic time in milliseconds, same clock as {@link #add}
+     * @return true if a frame was flushed
+     */
+    public synchronized boolean flushIfExpired(long nowMillis) {
+        if (count > 0 && nowMillis - oldestFixMillis >= maxAgeMillis) {
+            flush();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Flush the current batch regardless of limits. Does nothing if the batch is empty.
+     */
+    public synchronized void flush() {
+        if (count == 0) {
+            return;
+        }
+        long start = System.nanoTime();
+        encodeBuffer.clear();
+        LocationCodec.encode(fixes, count, encodeBuffer);
+        encodeBuffer.flip();
+        if (encodeTimer != null) {
+            encodeTimer.record(System.nanoTime() - start);
+        }
+        int fixCount = count;
+        count = 0;
+        listener.onBatchReady(encodeBuffer, fixCount);
+    }
+
+    /**
+     * Number of fixes waiting in the current batch.
+     *
+     * @return pending fix count
+     */
+    public synchronized int size() {
+        return count;
+    }
+}
@@ -0,0 +1,1137 @@
+package rightmesh.left.io.gpstracker.core.uplink;
+
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import rightmesh.left.io.gpstracker.core.codec.AggregateCodec;
+import rightmesh.left.io.gpstracker.core.codec.BatchFrame;
+import rightmesh.left.io.gpstracker.core.codec.DeliveryCodec;
+import rightmesh.left.io.gpstracker.core.codec.FrameCompressor;
+import rightmesh.left.io.gpstracker.core.codec.GeofenceEventCodec;
+import rightmesh.left.io.gpstracker.core.codec.LocationFix;
+import rightmesh.left.io.gpstracker.core.codec.RelayedFrame;
+import rightmesh.left.io.gpstracker.core.filter.DeadReckoningFilter;
+import rightmesh.left.io.gpstracker.core.geofence.Geofence;
+import rightmesh.left.io.gpstracker.core.geofence.GeofenceEngine;
+import rightmesh.left.io.gpstracker.core.metrics.Counter;
+import rightmesh.left.io.gpstracker.core.metrics.MetricsRegistry;
+import rightmesh.left.io.gpstracker.core.metrics.StageTimer;
+import rightmesh.left.io.gpstracker.core.metrics.StartupTrace;
+import rightmesh.left.io.gpstracker.core.transport.MeshTransport;
+import rightmesh.left.io.gpstracker.core.transport.TransportException;
+
+/**
+ * Location pipeline from the tracker to the SuperPeer: queue, filter, batch, encode and send.
+ *
+ * <p>Fixes are offered from any thread and processed on the given single-threaded executor,
+ * which also polls the batch age limit and retries the frames waiting once the transport reports
+ * that the link is up or a peer appeared. Configure the uplink with its setters, then call
+ * {@link #start()}.
+ *
+ * <p>With several SuperPeers, each frame goes to the one a {@link SuperPeerSelector} picks for
+ * this device; when it leaves the mesh or keeps failing, the backlog is replayed to the next.
+ *
+ * <p>With a warm start, fixes wait in the queue until the link first comes up and then go out
+ * at once, rather than each frame failing and being journaled while the mesh is still starting.
+ *
+ * <p>With geofences set, fixes are only evaluated against them and each fix that enters or leaves
+ * a fence is sent as one {@link GeofenceEventCodec} frame instead.
+ *
+ * <p>With relay aggregation, the device also acts as a SuperPeer for its neighbours: it accepts
+ * their {@link DeliveryCodec} frames, drops duplicates with a {@link RelayAggregator} and
+ * forwards them merged with its own next batch, so a dense cluster sends one stream over the
+ * hops near the SuperPeer instead of one per device. A relayed frame is acknowledged to its
+ * sender once the SuperPeer acknowledged the aggregate, or without delivery tracking once the
+ * transport accepted it, so a frame lost with the relay is sent again by its sender. Once an
+ * aggregate is dropped, the copies sent again are relayed rather than taken as duplicates.
+ *
+ * <p>With compression, every batch that gets smaller through it is sent as a
+ * {@link FrameCompressor} frame.
+ *
+ * <p>Frames leave through a {@link LaneScheduler} with three lanes: geofence events in
+ * {@link #LANE_URGENT} have strict priority, while the newest batches in {@link #LANE_LATEST} and
+ * the journaled backlog in {@link #LANE_BACKFILL} share the rest by weight, so replaying a long
+ * backlog after a reconnect never holds back fresh positions. Only the newest few frames wait in
+ * memory; older ones move to the journal. See {@link #setLaneLimits(int, int, double, int)}.
+ *
+ * <p>With delivery tracking, every frame is numbered and kept in an {@link InFlightTable} until
+ * the SuperPeer acknowledges it. At most a window of frames is in flight; further frames wait in
+ * their lane, and frames not acknowledged in time are sent again, then moved to the journal to
+ * be replayed under a new number. While the mesh is down, no frame in flight times out.
+ *
+ * <p>Stage timings, the queue depth, frames and bytes sent and send failures by cause are kept
+ * in a {@link MetricsRegistry}, see {@link #setMetrics(MetricsRegistry)}.
+ *
+ * <p>In the steady state the pipeline itself only allocates the array handed to
+ * {@link MeshTransport#send(String, byte[])} for each frame it sends: fixes are copied into
+ * preallocated records, encoded into reused buffers and wait in their lane in reused buffers,
+ * and frames moved to the journal are written from there. While the transport reports the mesh
+ * down no send is attempted, so the pipeline does not allocate at all.
+ */
+public class LocationUplink implements MeshTransport.OnTransportEventListener {
+    public static final int DEFAULT_QUEUE_CAPACITY = 256;
+
+    // Lanes of the LaneScheduler, highest priority first.
+    public static final int LANE_URGENT = 0;
+    public static final int LANE_LATEST = 1;
+    public static final int LANE_BACKFILL = 2;
+    public static final int LANE_COUNT = 3;
+    // Frames kept in memory per lane before the oldest move to the journal.
+    public static final int URGENT_CAPACITY = 32;
+    public static final int LATEST_CAPACITY = 4;
+
+    public static final String METRIC_QUEUE_NANOS = "uplink.queue.ns";
+    public static final String METRIC_ENCODE_NANOS = "uplink.encode.ns";
+    public static final String METRIC_COMPRESS_NANOS = "uplink.compress.ns";
+    public static final String METRIC_SEND_NANOS = "uplink.send.ns";
+    public static final String METRIC_DELIVERY_NANOS = "uplink.delivery.ns";
+    public static final String METRIC_ACKED_FRAMES = "uplink.acked.frames";
+    public static final String METRIC_RETRANSMITTED_FRAMES = "uplink.retransmitted.frames";
+    // Frames given up on in flight without a journal to move to.
+    public static final String METRIC_LOST_FRAMES = "uplink.lost.frames";
+    public static final String METRIC_FAILOVERS = "uplink.failovers";
+    public static final String METRIC_RELAYED_FRAMES = "uplink.relayed.frames";
+    public static final String METRIC_RELAY_DUPLICATES = "uplink.relay.duplicates";
+    public static final String METRIC_QUEUE_DEPTH = "uplink.queue.fixes";
+    public static final String METRIC_DROPPED_FIXES = "uplink.dropped.fixes";
+    // Frames pushed out of a full lane without a journal to move to.
+    public static final String METRIC_DROPPED_FRAMES = "uplink.dropped.frames";
+    public static final String METRIC_SENT_FRAMES = "uplink.sent.frames";
+    public static final String METRIC_SENT_BYTES = "uplink.sent.bytes";
+    // Followed by the simple class name of the mesh error, or of the TransportException itself.
+    public static final String METRIC_SEND_FAILURES_PREFIX = "uplink.send.failures.";
+    public static final String METRIC_NO_TRANSPORT = METRIC_SEND_FAILURES_PREFIX + "NoTransport";
+
+    // How many times per batch age limit the pending batch is checked for expiry.
+    private static final int BATCH_AGE_CHECKS = 4;
+    // Frames sent per executor task, so fixes queued meanwhile are not held up by a long backlog.
+    private static final int MAX_FRAMES_PER_PUMP = 32;
+    // Share of the weighted lanes: fresh batches get four times the bytes of the backlog.
+    private static final int DEFAULT_LATEST_WEIGHT = 4;
+    private static final int DEFAULT_BACKFILL_WEIGHT = 1;
+
+    private final SuperPeerSelector superPeers;
+    private final ScheduledExecutorService executor;
+
+    private final StageTimer queueTimer = new StageTimer("queue");
+    private final StageTimer encodeTimer = new StageTimer("encode");
+    private final StageTimer compressTimer = new StageTimer("compress");
+    private final StageTimer sendTimer = new StageTimer("send");
+    // From the first transmission of a frame to its acknowledgement.
+    private final StageTimer deliveryTimer = new StageTimer("delivery");
+    private final StartupTrace startupTrace = new StartupTrace();
+
+    private final AtomicBoolean replayScheduled = new AtomicBoolean();
+    // True while fixes are held until the link comes up.
+    private final AtomicBoolean warmStarting = new AtomicBoolean();
+    // Reused for every legacy payload; executor only.
+    private final ByteBuffer legacyBuffer = ByteBuffer.allocate(BatchFrame.LEGACY_FRAME_SIZE);
+
+    private volatile MeshTransport transport;
+    // Set while the transport reports the mesh down; frames then wait for its next replay.
+    private volatile boolean meshDown;
+    private OnUplinkListener listener;
+
+    private int queueCapacity = DEFAULT_QUEUE_CAPACITY;
+    private int batchMaxFixes = 1;
+    private long batchMaxAgeMillis;
+    private double simplifyToleranceMeters;
+    private long simplifyMaxSilenceMillis;
+    private long warmStartMaxHoldMillis;
+    private int compressionLevel;
+    private int relayMaxFrames;
+    private long relayMaxAgeMillis;
+    private int ackWindow;
+    private long ackTimeoutMillis;
+    private int ackMaxAttempts;
+    private ScheduledFuture<?> warmStartTimeout;
+    private MetricsRegistry metrics = new MetricsRegistry();
+    private Counter sentFramesMetric;
+    private Counter sentBytesMetric;
+    private Counter ackedFramesMetric;
+    private Counter retransmittedFramesMetric;
+    private Counter lostFramesMetric;
+    private Counter droppedFramesMetric;
+    private Counter relayedFramesMetric;
+    private Counter relayDuplicatesMetric;
+    private Counter failoversMetric;
+    private Counter noTransportMetric;
+    // Send failures by class of the cause, filled as causes occur; executor only.
+    private final Map<Class<?>, Counter> sendFailureMetrics = new HashMap<>();
+
+    // Executor only.
+    private final PendingFrameQueue urgentFrames = new PendingFrameQueue(URGENT_CAPACITY);
+    private final PendingFrameQueue latestFrames = new PendingFrameQueue(LATEST_CAPACITY);
+    private final LaneScheduler lanes;
+
+    private UplinkWorker worker;
+    // Null when batching is disabled and every fix is sent on its own.
+    private LocationBatcher batcher;
+    // Null unless neighbours' frames are relayed; executor only.
+    private RelayAggregator relay;
+    // Null unless batches are compressed; executor only.
+    private FrameCompressor compressor;
+    // Null when no fix is predictable enough to drop; executor only.
+    private DeadReckoningFilter trajectoryFilter;
+    // Null until a journal is set; executor only.
+    private FrameJournal journal;
+    // Lane of the frame being offered for the first time, -1 outside of enqueue(), and whether
+    // that frame went out right away; executor only.
+    private int freshLane = -1;
+    private boolean freshFrameSent;
+    // Whether the transport refused a frame in the current pump or the mesh is down, as opposed
+    // to frames held back by the in-flight window or a lane limit; executor only.
+    private boolean sendFailed;
+    // Pending pump once a rate limit allows the next frame; executor only.
+    private ScheduledFuture<?> pumpTimer;
+    // Null unless only geofence transitions are sent; executor only.
+    private GeofenceEngine geofences;
+    private ByteBuffer eventBuffer;
+    private int[] eventFenceIds;
+    private int[] eventTransitions;
+    private int eventCount;
+    private final GeofenceEngine.OnTransitionListener transitionCollector = this::collectEvent;
+    // Null unless deliveries are acknowledged; executor only.
+    private InFlightTable inFlight;
+    private long nextSequence;
+    // SuperPeer the previous frame was sent to, null before the first; executor only.
+    private String lastTargetId;
+    private final InFlightTable.Retransmitter retransmitter = new InFlightTable.Retransmitter() {
+        @Override
+        public int retransmit(long sequence, byte[] frame) {
+            return resendFrame(frame);
+        }
+
+        @Override
+        public void onDropped(long sequence, byte[] frame) {
+            requeue(frame);
+        }
+    };
+    // Frame outcomes reported by getStatus(); executor only.
+    private long sentFixCount;
+    private long sentFrameCount;
+    private long failedFrameCount;
+    private long replayedFrameCount;
+
+    /**
+     * Reports what happened to each frame. Called on the uplink executor.
+     */
+    public interface OnUplinkListener {
+        /**
+         * The transport accepted a frame.
+         *
+         * @param fixCount number of fixes in the frame
+         */
+        void onFrameSent(int fixCount);
+
+        /**
+         * The transport did not accept a frame.
+         *
+         * @param fixCount number of fixes in the frame
+         * @param backlog  frames waiting to be sent, in memory or in the journal
+         */
+        void onFrameNotSent(int fixCount, int backlog);
+    }
+
+    /**
+     * Constructor {@link LocationUplink} sending to a single SuperPeer.
+     *
+     * @param targetId id of the SuperPeer on the transport
+     * @param executor single-threaded executor that runs the pipeline, owned by the caller
+     */
+    public LocationUplink(String targetId, ScheduledExecutorService executor) {
+        this(new SuperPeerSelector(Collections.singletonList(targetId)), executor);
+    }
+
+    /**
+     * Constructor {@link LocationUplink}.
+     *
+     * @param superPeers chooses the SuperPeer every frame is sent to
+     * @param executor   single-threaded executor that runs the pipeline, owned by the caller
+     */
+    public LocationUplink(SuperPeerSelector superPeers, ScheduledExecutorService executor) {
+        this.superPeers = superPeers;
+        this.executor = executor;
+        lanes = new LaneScheduler(LANE_COUNT, this::sendFrame)
+                .setOnFrameSentListener(this::onLaneFrameSent);
+        lanes.setQueue(LANE_URGENT, urgentFrames);
+        lanes.setQueue(LANE_LATEST, latestFrames);
+        lanes.setLimits(LANE_URGENT, 0, 0, 0);
+        lanes.setLimits(LANE_LATEST, DEFAULT_LATEST_WEIGHT, 0, 0);
+        lanes.setLimits(LANE_BACKFILL, DEFAULT_BACKFILL_WEIGHT, 0, 0);
+    }
+
+    /**
+     * Set how many fixes may wait for the executor before the oldest are dropped.
+     *
+     * @param queueCapacity queue capacity
+     * @return this uplink
+     */
+    public LocationUplink setQueueCapacity(int queueCapacity) {
+        this.queueCapacity = queueCapacity;
+        return this;
+    }
+
+    /**
+     * Enable batching. With {@code maxFixes} 1, every fix is sent on its own as the legacy
+     * 16-byte payload.
+     *
+     * @param maxFixes     flush once this many fixes are collected
+     * @param maxAgeMillis flush once the oldest collected fix is this old
+     * @return this uplink
+     */
+    public LocationUplink setBatchLimits(int maxFixes, long maxAgeMillis) {
+        this.batchMaxFixes = maxFixes;
+        this.batchMaxAgeMillis = maxAgeMillis;
+        return this;
+    }
+
+    /**
+     * Drop batched fixes the SuperPeer can predict, see {@link DeadReckoningFilter}.
+     *
+     * @param toleranceMeters  prediction error allowed, 0 to keep every fix
+     * @param maxSilenceMillis a fix is sent at least this often
+     * @return this uplink
+     */
+    public LocationUplink setSimplification(double toleranceMeters, long maxSilenceMillis) {
+        this.simplifyToleranceMeters = toleranceMeters;
+        this.simplifyMaxSilenceMillis = maxSilenceMillis;
+        return this;
+    }
+
+    /**
+     * Hold fixes in the queue until the transport first reports that the link is up, then flush
+     * them in one go. Fixes beyond the queue capacity are dropped, oldest first, as usual.
+     *
+     * @param maxHoldMillis stop holding after this long even if the link is still down, 0 to
+     *                      send right away
+     * @return this uplink
+     */
+    public LocationUplink setWarmStart(long maxHoldMillis) {
+        this.warmStartMaxHoldMillis = maxHoldMillis;
+        return this;
+    }
+
+    /**
+     * Compress batches with DEFLATE and the {@link FrameCompressor#TRACK_DICTIONARY}. The
+     * SuperPeer must understand {@link FrameCompressor} frames.
+     *
+     * @param level DEFLATE level from 1, fastest, to 9, smallest, or 0 to send batches as they
+     *              are
+     * @return this uplink
+     */
+    public LocationUplink setCompression(int level) {
+        this.compressionLevel = level;
+        return this;
+    }
+
+    /**
+     * Relay the frames neighbours send to this device: acknowledge them like a SuperPeer would,
+     * and forward them merged with this device's next batch. Neighbours list this device among
+     * their SuperPeers and must use delivery tracking, whose sequence numbers let duplicates be
+     * dropped.
+     *
+     * @param maxFrames    relayed frames forwarded at once without waiting for a batch, 0 to
+     *                     ignore frames from neighbours
+     * @param maxAgeMillis time a relayed frame may wait for a batch to join
+     * @return this uplink
+     */
+    public LocationUplink setRelayAggregation(int maxFrames, long maxAgeMillis) {
+        this.relayMaxFrames = maxFrames;
+        this.relayMaxAgeMillis = maxAgeMillis;
+        return this;
+    }
+
+    /**
+     * Number every frame and wait for the SuperPeer to acknowledge it, see
+     * {@link InFlightTable}. The SuperPeer must understand {@link DeliveryCodec} frames.
+     *
+     * @param window        most frames waiting for an acknowledgement, 0 to send frames
+     *                      without tracking them
+     * @param timeoutMillis time to wait for an acknowledgement before sending a frame again
+     * @param maxAttempts   times a frame is sent before it moves to the journal
+     * @return this uplink
+     */
+    public LocationUplink setDeliveryTracking(int window, long timeoutMillis, int maxAttempts) {
+        this.ackWindow = window;
+        this.ackTimeoutMillis = timeoutMillis;
+        this.ackMaxAttempts = maxAttempts;
+        return this;
+    }
+
+    /**
+     * Set how a lane shares the mesh with the others, see
+     * {@link LaneScheduler#setLimits(int, int, double, int)}. By default geofence events have
+     * strict priority and the newest batches get four times the bytes of the backlog, none of
+     * them rate limited. Call before {@link #start()}.
+     *
+     * @param lane               {@link #LANE_URGENT}, {@link #LANE_LATEST} or
+     *                           {@link #LANE_BACKFILL}
+     * @param weight             share of the lane, 0 for strict priority
+     * @param maxFramesPerSecond long-term rate of the lane, 0 for no limit
+     * @param burst              frames the lane may send at once after being idle
+     * @return this uplink
+     */
+    public LocationUplink setLaneLimits(int lane, int weight, double maxFramesPerSecond,
+                                        int burst) {
+        lanes.setLimits(lane, weight, maxFramesPerSecond, burst);
+        return this;
+    }
+
+    /**
+     * Report the uplink metrics to a shared registry instead of a private one. Call before
+     * {@link #start()}.
+     *
+     * @param metrics registry the metrics are added to
+     * @return this uplink
+     */
+    public LocationUplink setMetrics(MetricsRegistry metrics) {
+        this.metrics = metrics;
+        return this;
+    }
+
+    /**
+     * Set listener for frame outcomes.
+     *
+     * @param listener a callback
+     * @return this uplink
+     */
+    public LocationUplink setOnUplinkListener(OnUplinkListener listener) {
+        this.listener = listener;
+        return this;
+    }
+
+    /**
+     * Send through another transport, e.g. once connected. The uplink listens to its events.
+     *
+     * @param transport transport to the SuperPeer
+     */
+    public void setTransport(MeshTransport transport) {
+        this.transport = transport;
+        transport.setOnTransportEventListener(this);
+    }
+
+    /**
+     * Keep frames that cannot be sent in a journal and replay them later through
+     * {@link #LANE_BACKFILL}. Without a journal, frames pushed out of a full lane or not
+     * acknowledged after the last attempt are dropped.
+     * Call on the uplink executor; the caller keeps ownership of the journal and closes it after
+     * {@link #stop()}.
+     *
+     * @param journal opened journal, or null to stop journaling
+     */
+    public void setJournal(FrameJournal journal) {
+        this.journal = journal;
+        lanes.setQueue(LANE_BACKFILL, journal);
+    }
+
+    /**
+     * Send geofence transitions instead of fixes. Call on the uplink executor.
+     *
+     * @param engine geofences to evaluate every fix against, or null to send fixes again
+     */
+    public void setGeofences(GeofenceEngine engine) {
+        geofences = engine;
+        if (engine != null) {
+            eventBuffer = ByteBuffer.allocate(GeofenceEventCodec.maxEncodedSize(engine.size()));
+            eventFenceIds = new int[engine.size()];
+            eventTransitions = new int[engine.size()];
+        }
+    }
+
+    /**
+     * Build the pipeline and start polling the batch age limit.
+     */
+    public void start() {
+        startupTrace.markStarted(System.nanoTime());
+        worker = new UplinkWorker(executor, queueCapacity, this::processFix, queueTimer);
+        registerMetrics();
+        if (simplifyToleranceMeters > 0) {
+            trajectoryFilter = new DeadReckoningFilter(simplifyToleranceMeters,
+                    simplifyMaxSilenceMillis);
+        }
+        if (batchMaxFixes > 1) {
+            // The batcher only runs on the executor, so frames are sent inline.
+            if (compressionLevel > 0) {
+                compressor = new FrameCompressor(compressionLevel,
+                        FrameCompressor.TRACK_DICTIONARY);
+            }
+            batcher = new LocationBatcher(batchMaxFixes, batchMaxAgeMillis, this::sendBatch);
+            batcher.setEncodeTimer(encodeTimer);
+            long checkPeriod = Math.max(1, batchMaxAgeMillis / BATCH_AGE_CHECKS);
+            executor.scheduleAtFixedRate(() -> batcher.flushIfExpired(nowMillis()),
+                    checkPeriod, checkPeriod, TimeUnit.MILLISECONDS);
+        }
+        if (relayMaxFrames > 0) {
+            relay = new RelayAggregator(relayMaxFrames, relayMaxAgeMillis);
+            long checkPeriod = Math.max(1, relayMaxAgeMillis / BATCH_AGE_CHECKS);
+            executor.scheduleAtFixedRate(this::flushRelayIfExpired, checkPeriod, checkPeriod,
+                    TimeUnit.MILLISECONDS);
+        }
+        if (ackWindow > 0) {
+            inFlight = new InFlightTable(ackWindow, ackTimeoutMillis, ackMaxAttempts);
+            // Keeps growing across restarts, so receivers never take a new frame for a copy.
+            nextSequence = System.currentTimeMillis();
+            long checkPeriod = Math.max(1, ackTimeoutMillis / BATCH_AGE_CHECKS);
+            executor.scheduleAtFixedRate(this::expireDeliveries, checkPeriod, checkPeriod,
+                    TimeUnit.MILLISECONDS);
+        }
+        if (warmStartMaxHoldMillis > 0) {
+            warmStarting.set(true);
+            worker.pause();
+            warmStartTimeout = executor.schedule(this::endWarmStart, warmStartMaxHoldMillis,
+                    TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Adds the stage timings, the queue gauges and the send counters to the registry.
+     */
+    private void registerMetrics() {
+        final UplinkWorker registered = worker;
+        metrics.register(METRIC_QUEUE_NANOS, queueTimer.getHistogram());
+        metrics.register(METRIC_ENCODE_NANOS, encodeTimer.getHistogram());
+        metrics.register(METRIC_COMPRESS_NANOS, compressTimer.getHistogram());
+        metrics.register(METRIC_SEND_NANOS, sendTimer.getHistogram());
+        metrics.register(METRIC_DELIVERY_NANOS, deliveryTimer.getHistogram());
+        metrics.gauge(METRIC_QUEUE_DEPTH, registered::size);
+        metrics.gauge(METRIC_DROPPED_FIXES, registered::getDroppedCount);
+        sentFramesMetric = metrics.counter(METRIC_SENT_FRAMES);
+        sentBytesMetric = metrics.counter(METRIC_SENT_BYTES);
+        ackedFramesMetric = metrics.counter(METRIC_ACKED_FRAMES);
+        retransmittedFramesMetric = metrics.counter(METRIC_RETRANSMITTED_FRAMES);
+        lostFramesMetric = metrics.counter(METRIC_LOST_FRAMES);
+        droppedFramesMetric = metrics.counter(METRIC_DROPPED_FRAMES);
+        relayedFramesMetric = metrics.counter(METRIC_RELAYED_FRAMES);
+        failoversMetric = metrics.counter(METRIC_FAILOVERS);
+        noTransportMetric = metrics.counter(METRIC_NO_TRANSPORT);
+        relayDuplicatesMetric = metrics.counter(METRIC_RELAY_DUPLICATES);
+    }
+
+    /**
+     * Queue a fix for the executor. Never blocks.
+     *
+     * @param fix fix to copy
+     * @return false if an older fix was dropped because the executor fell behind
+     */
+    public boolean offer(LocationFix fix) {
+        return worker.offer(fix);
+    }
+
+    /**
+     * Flush the pending batch and the relayed frames once the fixes already queued, including
+     * those held for a warm start, are processed, then move the frames still waiting in memory
+     * or for an acknowledgement to the journal and release the compressor. The executor must
+     * still accept tasks.
+     */
+    public void stop() {
+        if (warmStartTimeout != null) {
+            warmStartTimeout.cancel(false);
+        }
+        endWarmStart();
+        if (batcher != null) {
+            executor.execute(batcher::flush);
+        }
+        if (relay != null) {
+            executor.execute(this::flushRelay);
+        }
+        executor.execute(this::storePending);
+        if (compressor != null) {
+            executor.execute(compressor::close);
+        }
+    }
+
+    /**
+     * Send the frames waiting in every lane on the executor, unless that is already pending.
+     */
+    public void replay() {
+        if (replayScheduled.compareAndSet(false, true)) {
+            executor.execute(this::pumpLanes);
+        }
+    }
+
+    public long getDroppedCount() {
+        return worker.getDroppedCount();
+    }
+
+    /**
+     * Snapshot of the frames sent and the fixes and frames still waiting. Call on the uplink
+     * executor, e.g. through {@link UplinkStatusPublisher}.
+     *
+     * @return current totals
+     */
+    public UplinkStatus getStatus() {
+        int queuedFixes = worker.size() + (batcher != null ? batcher.size() : 0);
+        int backlogFrames = lanes.size();
+        return new UplinkStatus(sentFixCount, sentFrameCount, failedFrameCount,
+                replayedFrameCount, queuedFixes, backlogFrames, worker.getDroppedCount(),
+                sendTimer.getLastNanos());
+    }
+
+    public SuperPeerSelector getSuperPeers() {
+        return superPeers;
+    }
+
+    public MetricsRegistry getMetrics() {
+        return metrics;
+    }
+
+    public StartupTrace getStartupTrace() {
+        return startupTrace;
+    }
+
+    public StageTimer getQueueTimer() {
+        return queueTimer;
+    }
+
+    public StageTimer getEncodeTimer() {
+        return encodeTimer;
+    }
+
+    public StageTimer getCompressTimer() {
+        return compressTimer;
+    }
+
+    public StageTimer getSendTimer() {
+        return sendTimer;
+    }
+
+    public StageTimer getDeliveryTimer() {
+        return deliveryTimer;
+    }
+
+    @Override
+    public void onStateChanged(String localId, boolean connected) {
+        meshDown = !connected;
+        if (connected) {
+            if (localId != null) {
+                superPeers.setDeviceId(localId);
+            }
+            startupTrace.markConnected(System.nanoTime());
+            endWarmStart();
+            replay();
+        }
+    }
+
+    @Override
+    public void onPeerChanged(String peerId, int state) {
+        // A new route may lead to a SuperPeer, and a SuperPeer that left may have a successor:
+        // retry the backlog.
+        if (superPeers.onPeerChanged(peerId, state) || state != MeshTransport.PEER_REMOVED) {
+            replay();
+        }
+    }
+
+    @Override
+    public void onDataReceived(String peerId, byte[] data) {
+        if (DeliveryCodec.isAck(data)) {
+            executor.execute(() -> acknowledge(peerId, data));
+        } else if (relayMaxFrames > 0 && DeliveryCodec.isSequenced(data)) {
+            executor.execute(() -> relayFrame(peerId, data));
+        }
+    }
+
+    /**
+     * Stop holding fixes: queue the held fixes for processing, then flush the batch they end up
+     * in. Does nothing after the first call.
+     */
+    private void endWarmStart() {
+        if (!warmStarting.compareAndSet(true, false)) {
+            return;
+        }
+        worker.resume();
+        if (batcher != null) {
+            // Runs after the drain scheduled by resume().
+            executor.execute(batcher::flush);
+        }
+    }
+
+    /**
+     * Filters a fix and adds it to the batch, or sends it on its own if batching is disabled.
+     * With geofences, only sends the transitions the fix causes. Runs on the executor.
+     *
+     * @param fix fix taken from the queue
+     */
+    private void processFix(LocationFix fix) {
+        if (geofences != null) {
+            eventCount = 0;
+            if (geofences.evaluate(fix, transitionCollector) > 0) {
+                final long start = System.nanoTime();
+                eventBuffer.clear();
+                GeofenceEventCodec.encode(fix, eventFenceIds, eventTransitions, eventCount,
+                        eventBuffer);
+                eventBuffer.flip();
+                encodeTimer.record(System.nanoTime() - start);
+                enqueue(LANE_URGENT, eventBuffer, 1);
+            }
+        } else if (batcher == null) {
+            long start = System.nanoTime();
+            legacyBuffer.clear();
+            legacyBuffer.putDouble(fix.getLatitude()).putDouble(fix.getLongitude()).flip();
+            encodeTimer.record(System.nanoTime() - start);
+            sendOrStore(legacyBuffer, 1);
+        } else if (trajectoryFilter == null || trajectoryFilter.accept(fix)) {
+            batcher.add(fix, nowMillis());
+        }
+    }
+
+    private void collectEvent(Geofence fence, int transition, LocationFix fix) {
+        eventFenceIds[eventCount] = fence.getId();
+        eventTransitions[eventCount] = transition;
+        eventCount++;
+    }
+
+    /**
+     * Compresses a batch if enabled, then queues it like any other frame. Runs on the executor.
+     *
+     * @param frame    buffer holding the encoded batch between position and limit
+     * @param fixCount number of fixes in the batch
+     */
+    private void sendBatch(ByteBuffer frame, int fixCount) {
+        ByteBuffer batch = frame;
+        if (compressor != null) {
+            long start = System.nanoTime();
+            batch = compressor.compress(frame);
+            compressTimer.record(System.nanoTime() - start);
+        }
+        if (relay != null && relay.size() > 0) {
+            sendOrStore(ByteBuffer.wrap(relay.drain(toArray(batch))), fixCount);
+        } else {
+            sendOrStore(batch, fixCount);
+        }
+    }
+
+    /**
+     * Holds a frame a neighbour sent to this device for the next batch, unless it is a
+     * duplicate. A duplicate of a frame the SuperPeer already acknowledged is acknowledged
+     * again. Runs on the executor.
+     *
+     * @param peerId neighbour that sent the frame
+     * @param data   sequenced frame
+     */
+    private void relayFrame(String peerId, byte[] data) {
+        long sequence;
+        byte[] frame;
+        try {
+            sequence = DeliveryCodec.getSequence(data);
+            frame = DeliveryCodec.unwrap(data);
+        } catch (IllegalArgumentException e) {
+            return;
+        }
+        if (relay.offer(peerId, sequence, frame, nowMillis())) {
+            relayedFramesMetric.increment();
+        } else {
+            relayDuplicatesMetric.increment();
+            if (relay.isDelivered(peerId, sequence)) {
+                // Its acknowledgement was lost.
+                acknowledgeRelayed(peerId, sequence);
+            }
+        }
+        if (relay.isFull()) {
+            flushRelay();
+        }
+    }
+
+    /**
+     * Acknowledges the neighbours' frames in an aggregate that reached the SuperPeer. Runs on
+     * the executor.
+     *
+     * @param frame frame that was delivered, without its {@link DeliveryCodec} envelope
+     */
+    private void onRelayDelivered(byte[] frame) {
+        if (!AggregateCodec.isAggregate(frame)) {
+            return;
+        }
+        List<RelayedFrame> entries = AggregateCodec.decode(frame);
+        for (int i = 0; i < entries.size(); i++) {
+            RelayedFrame entry = entries.get(i);
+            // This device's own batch has no sender id.
+            if (!entry.getSenderId().isEmpty()) {
+                relay.onDelivered(entry.getSenderId(), entry.getSequence());
+                acknowledgeRelayed(entry.getSenderId(), entry.getSequence());
+            }
+        }
+    }
+
+    private void acknowledgeRelayed(String peerId, long sequence) {
+        MeshTransport current = transport;
+        if (current == null) {
+            return;
+        }
+        try {
+            current.send(peerId, DeliveryCodec.encodeAck(new long[]{sequence}, 1));
+        } catch (TransportException e) {
+            // The neighbour times out and sends the frame again.
+        }
+    }
+
+    /**
+     * Forwards the relayed frames on their own once they waited long enough for a batch. Runs
+     * on the executor.
+     */
+    private void flushRelayIfExpired() {
+        if (relay.isExpired(nowMillis())) {
+            flushRelay();
+        }
+    }
+
+    /**
+     * Forwards the relayed frames held, if any, without a batch of this device. Runs on the
+     * executor.
+     */
+    private void flushRelay() {
+        byte[] aggregate = relay.drain(null);
+        if (aggregate != null) {
+            sendOrStore(ByteBuffer.wrap(aggregate), 0);
+        }
+    }
+
+    /**
+     * Queues a batch or a legacy frame in {@link #LANE_LATEST} and sends what the lanes allow.
+     * Runs on the executor.
+     *
+     * @param frame    buffer holding the encoded frame between position and limit
+     * @param fixCount number of fixes in the frame
+     */
+    private void sendOrStore(ByteBuffer frame, int fixCount) {
+        enqueue(LANE_LATEST, frame, fixCount);
+    }
+
+    /**
+     * Queues a frame in a memory lane, moving the oldest frame of a full lane to the journal,
+     * and sends what the lanes allow. Runs on the executor.
+     *
+     * @param lane     {@link #LANE_URGENT} or {@link #LANE_LATEST}
+     * @param frame    buffer holding the encoded frame between position and limit
+     * @param fixCount number of fixes in the frame
+     */
+    private void enqueue(int lane, ByteBuffer frame, int fixCount) {
+        PendingFrameQueue queue = memoryLane(lane);
+        if (queue.isFull()) {
+            store(queue.peekBuffer());
+            queue.remove();
+        }
+        queue.offer(frame, fixCount);
+        freshLane = lane;
+        freshFrameSent = false;
+        sendFailed = false;
+        sendPending();
+        freshLane = -1;
+        if (freshFrameSent) {
+            sentFixCount += fixCount;
+            sentFrameCount++;
+        } else if (sendFailed) {
+            failedFrameCount++;
+        } else {
+            // Held back by the in-flight window or a lane limit, not failed: it goes out later.
+            return;
+        }
+        if (listener == null) {
+            return;
+        }
+        if (freshFrameSent) {
+            listener.onFrameSent(fixCount);
+        } else {
+            listener.onFrameNotSent(fixCount, lanes.size());
+        }
+    }
+
+    /**
+     * Moves a frame out of memory into the journal, or drops it without one, letting the
+     * neighbours' frames it carries be relayed again. Runs on the executor.
+     *
+     * @param frame buffer holding the frame between position and limit
+     */
+    private void store(ByteBuffer frame) {
+        if (journal != null) {
+            journal.append(frame);
+        } else {
+            droppedFramesMetric.increment();
+            if (relay != null) {
+                relay.onLost(toArray(frame));
+            }
+        }
+    }
+
+    /**
+     * Moves a frame the SuperPeer did not acknowledge to the journal without its
+     * {@link DeliveryCodec} envelope, so it is numbered again when it is replayed. Without a
+     * journal, counts it as lost and lets the neighbours' frames it carries be relayed again.
+     * Runs on the executor.
+     *
+     * @param payload sequenced frame as sent
+     */
+    private void requeue(byte[] payload) {
+        if (journal != null) {
+            journal.append(DeliveryCodec.unwrap(payload));
+        } else {
+            lostFramesMetric.increment();
+            if (relay != null) {
+                relay.onLost(DeliveryCodec.unwrap(payload));
+            }
+        }
+    }
+
+    /**
+     * Moves the frames waiting in memory and those not acknowledged yet to the journal, urgent
+     * ones first, then in the order they were sent. Runs on the executor.
+     */
+    private void storePending() {
+        if (journal == null) {
+            return;
+        }
+        for (ByteBuffer frame = urgentFrames.peekBuffer(); frame != null;
+                frame = urgentFrames.peekBuffer()) {
+            journal.append(frame);
+            urgentFrames.remove();
+        }
+        if (inFlight != null) {
+            inFlight.dropAll(retransmitter);
+        }
+        for (ByteBuffer frame = latestFrames.peekBuffer(); frame != null;
+                frame = latestFrames.peekBuffer()) {
+            journal.append(frame);
+            latestFrames.remove();
+        }
+    }
+
+    /**
+     * Counts a frame the scheduler sent: as sent if it is the frame being offered, as replayed
+     * otherwise. Without delivery tracking, the relayed frames it carries count as delivered.
+     * Runs on the executor.
+     *
+     * @param lane  lane the frame was taken from
+     * @param frame frame as sent
+     */
+    private void onLaneFrameSent(int lane, byte[] frame) {
+        startupTrace.markFirstDelivery(System.nanoTime());
+        if (relay != null && inFlight == null) {
+            onRelayDelivered(frame);
+        }
+        // The frame being offered is the last of its lane, and the lane cannot grow meanwhile.
+        if (lane == freshLane && memoryLane(lane).size() == 1) {
+            freshFrameSent = true;
+        } else {
+            replayedFrameCount++;
+        }
+    }
+
+    /**
+     * Sends a frame to the SuperPeer. Runs on the executor.
+     *
+     * @param frame encoded frame
+     * @return true if the transport accepted the frame
+     */
+    private boolean sendFrame(byte[] frame) {
+        MeshTransport current = transport;
+        if (current == null) {
+            noTransportMetric.increment();
+            sendFailed = true;
+            return false;
+        }
+        if (inFlight != null && !inFlight.hasCapacity()) {
+            // Back-pressure, not a failure: waits in its lane until acknowledgements open the
+            // window.
+            return false;
+        }
+        byte[] payload = inFlight != null ? DeliveryCodec.wrap(nextSequence, frame) : frame;
+        String targetId = selectTarget();
+        long start = System.nanoTime();
+        try {
+            int dataId = current.send(targetId, payload);
+            superPeers.onSent(targetId);
+            if (inFlight != null) {
+                inFlight.add(nextSequence++, dataId, payload, System.nanoTime());
+            }
+            sentFramesMetric.increment();
+            sentBytesMetric.add(payload.length);
+            return true;
+        } catch (TransportException e) {
+            sendFailed = true;
+            onSendFailed(targetId, e);
+            return false;
+        } finally {
+            sendTimer.record(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Sends a frame that was not acknowledged in time once more. Runs on the executor.
+     *
+     * @param payload sequenced frame as sent before
+     * @return id the mesh assigned, or {@link InFlightTable#NO_DATA_ID} if it was not accepted
+     */
+    private int resendFrame(byte[] payload) {
+        MeshTransport current = transport;
+        if (current == null) {
+            noTransportMetric.increment();
+            return InFlightTable.NO_DATA_ID;
+        }
+        String targetId = selectTarget();
+        try {
+            final int dataId = current.send(targetId, payload);
+            superPeers.onSent(targetId);
+            retransmittedFramesMetric.increment();
+            sentBytesMetric.add(payload.length);
+            return dataId;
+        } catch (TransportException e) {
+            onSendFailed(targetId, e);
+            return InFlightTable.NO_DATA_ID;
+        }
+    }
+
+    /**
+     * Chooses the SuperPeer for the next frame and counts changes of SuperPeer. Runs on the
+     * executor.
+     *
+     * @return SuperPeer id
+     */
+    private String selectTarget() {
+        String targetId = superPeers.select();
+        if (lastTargetId != null && !lastTargetId.equals(targetId)) {
+            failoversMetric.increment();
+        }
+        lastTargetId = targetId;
+        return targetId;
+    }
+
+    /**
+     * Counts a failed send by cause, and replays the backlog to another SuperPeer if this
+     * failure made the uplink give up on the current one. Runs on the executor.
+     *
+     * @param targetId SuperPeer the frame was sent to
+     * @param e        error reported by the transport
+     */
+    private void onSendFailed(String targetId, TransportException e) {
+        Class<?> cause = e.getCause() != null ? e.getCause().getClass() : e.getClass();
+        Counter failures = sendFailureMetrics.get(cause);
+        if (failures == null) {
+            failures = metrics.counter(METRIC_SEND_FAILURES_PREFIX + cause.getSimpleName());
+            sendFailureMetrics.put(cause, failures);
+        }
+        failures.increment();
+        superPeers.onSendFailed(targetId);
+        String next = superPeers.select();
+        if (!next.equals(targetId) && superPeers.isReachable(next)) {
+            replay();
+        }
+    }
+
+    /**
+     * Matches an acknowledgement from the SuperPeer against the frames in flight, passes it on
+     * to the neighbours whose frames an acknowledged aggregate carried, and replays the backlog
+     * if that opened the window. Runs on the executor.
+     *
+     * @param peerId SuperPeer that sent the acknowledgement
+     * @param ack    acknowledgement frame
+     */
+    private void acknowledge(String peerId, byte[] ack) {
+        if (inFlight == null) {
+            return;
+        }
+        long[] sequences;
+        try {
+            sequences = DeliveryCodec.decodeAck(ack);
+        } catch (IllegalArgumentException e) {
+            return;
+        }
+        long now = System.nanoTime();
+        for (long sequence : sequences) {
+            byte[] payload = relay != null ? inFlight.getFrame(sequence) : null;
+            long latency = inFlight.acknowledge(sequence, now);
+            if (latency >= 0) {
+                deliveryTimer.record(latency);
+                superPeers.onRtt(peerId, latency);
+                ackedFramesMetric.increment();
+            }
+            if (payload != null) {
+                onRelayDelivered(DeliveryCodec.unwrap(payload));
+            }
+        }
+        replayIfWindowOpen();
+    }
+
+    /**
+     * Retransmits the frames whose acknowledgement is overdue, or moves them to the journal
+     * after their last attempt. Runs on the executor.
+     */
+    private void expireDeliveries() {
+        if (meshDown) {
+            // No acknowledgement can arrive, so attempts are not used up; once the mesh is back,
+            // overdue frames are sent again.
+            return;
+        }
+        if (inFlight.expire(System.nanoTime(), retransmitter) > 0) {
+            replayIfWindowOpen();
+        }
+    }
+
+    private void replayIfWindowOpen() {
+        if (lanes.size() > 0 && inFlight.hasCapacity()) {
+            replay();
+        }
+    }
+
+    private void pumpLanes() {
+        replayScheduled.set(false);
+        sendPending();
+    }
+
+    /**
+     * Sends what the lanes allow. Continues in a later task once a batch of frames was sent, and
+     * once the next rate limited frame may go. Runs on the executor.
+     */
+    private void sendPending() {
+        if (lanes.size() == 0) {
+            return;
+        }
+        if (meshDown) {
+            // Nothing can go out; onStateChanged() replays once the mesh is back.
+            sendFailed = true;
+            return;
+        }
+        long now = System.nanoTime();
+        if (lanes.pump(now, MAX_FRAMES_PER_PUMP) == MAX_FRAMES_PER_PUMP) {
+            replay();
+        } else if (!lanes.isBlocked() && (pumpTimer == null || pumpTimer.isDone())) {
+            long delay = lanes.getDelayNanos(now);
+            if (delay > 0) {
+                pumpTimer = executor.schedule(this::replay, delay, TimeUnit.NANOSECONDS);
+            }
+        }
+    }
+
+    private PendingFrameQueue memoryLane(int lane) {
+        return lane == LANE_URGENT ? urgentFrames : latestFrames;
+    }
+
+    /**
+     * Copy the bytes between position and limit of a buffer, leaving its position unchanged.
+     *
+     * @param buffer source buffer
+     * @return copied bytes
+     */
+    private static byte[] toArray(ByteBuffer buffer) {
+        byte[] array = new byte[buffer.remaining()];
+        int position = buffer.position();
+        buffer.get(array);
+        buffer.position(position);
+        return array;
+    }
+
+    /**
+     * Monotonic clock used for batch ages.
+     *
+     * @return current time in milliseconds
+     */
+    private static long nowMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime());
+    }
+}
@@ -0,0 +1,124 @@
+package rightmesh.left.io.gpstracker.core.uplink;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Bounded in-memory {@link FrameQueue} that remembers how many fixes each frame holds.
+ *
+ * <p>Frames are copied into one buffer per slot, reused once it is large enough, so queueing a
+ * frame does not allocate in the steady state; the array returned by {@link #peek()} is only
+ * created for a frame that is about to be sent. Once the queue is full the caller moves the
+ * oldest frame elsewhere through {@link #peekBuffer()} before offering the next one.
+ *
+ * <p>Not thread-safe.
+ */
+public class PendingFrameQueue implements FrameQueue {
+    private final ByteBuffer[] buffers;
+    // Array of each frame once peeked, so repeated peeks return the same one; null until then.
+    private final byte[][] frames;
+    private final int[] fixCounts;
+    private int head;
+    private int size;
+
+    /**
+     * Constructor {@link PendingFrameQueue}.
+     *
+     * @param capacity most frames held at once
+     */
+    public PendingFrameQueue(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be positive: " + capacity);
+        }
+        buffers = new ByteBuffer[capacity];
+        frames = new byte[capacity][];
+        fixCounts = new int[capacity];
+    }
+
+    /**
+     * Append a copy of a frame at the tail.
+     *
+     * @param frame    buffer holding the frame between position and limit; its position is left
+     *                 unchanged
+     * @param fixCount number of fixes in the frame
+     * @throws IllegalStateException the queue is full
+     */
+    public void offer(ByteBuffer frame, int fixCount) {
+        if (isFull()) {
+            throw new IllegalStateException("Queue is full");
+        }
+        int tail = (head + size) % buffers.length;
+        ByteBuffer buffer = buffers[tail];
+        if (buffer == null || buffer.capacity() < frame.remaining()) {
+            buffer = ByteBuffer.allocate(frame.remaining());
+            buffers[tail] = buffer;
+        }
+        int position = frame.position();
+        buffer.clear();
+        buffer.put(frame).flip();
+        frame.position(position);
+        frames[tail] = null;
+        fixCounts[tail] = fixCount;
+        size++;
+    }
+
+    @Override
+    public byte[] peek() {
+        if (size == 0) {
+            return null;
+        }
+        if (frames[head] == null) {
+            ByteBuffer buffer = buffers[head];
+            frames[head] = Arrays.copyOf(buffer.array(), buffer.limit());
+        }
+        return frames[head];
+    }
+
+    /**
+     * Oldest frame in place, without copying it, e.g. to store it before {@link #remove()}. The
+     * caller must not modify the buffer, which is reused once the frame is removed.
+     *
+     * @return buffer holding the oldest frame between position and limit, or null if the queue
+     *         is empty
+     */
+    public ByteBuffer peekBuffer() {
+        return size == 0 ? null : buffers[head];
+    }
+
+    /**
+     * Number of fixes in the oldest frame.
+     *
+     * @return fix count, 0 if the queue is empty
+     */
+    public int peekFixCount() {
+        return size == 0 ? 0 : fixCounts[head];
+    }
+
+    @Override
+    public void remove() {
+        if (size == 0) {
+            return;
+        }
+        frames[head] = null;
+        head = (head + 1) % buffers.length;
+        size--;
+    }
+
+    /**
+     * Remove every frame.
+     */
+    public void clear() {
+        Arrays.fill(frames, null);
+        head = 0;
+        size = 0;
+    }
+
+    public boolean isFull() {
+        return size == buffers.length;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+}
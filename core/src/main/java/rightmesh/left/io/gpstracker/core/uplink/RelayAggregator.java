@@ -0,0 +1,164 @@
+package rightmesh.left.io.gpstracker.core.uplink;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import rightmesh.left.io.gpstracker.core.codec.AggregateCodec;
+import rightmesh.left.io.gpstracker.core.codec.DeliveryCodec;
+import rightmesh.left.io.gpstracker.core.codec.RelayedFrame;
+
+/**
+ * Collects the frames neighbouring devices send through this one, so they travel to the
+ * SuperPeer merged with this device's own next batch in one {@link AggregateCodec} frame.
+ *
+ * <p>Neighbours number their frames with {@link DeliveryCodec} and send a frame again until it
+ * is acknowledged, so the same frame may arrive several times. A frame is dropped if its sender
+ * already had it accepted, judged by a {@link DuplicateFilter}. A relayed frame is only
+ * acknowledged to its sender once the SuperPeer acknowledged the aggregate holding it; the
+ * aggregator remembers which frames got that far, so a copy that arrives later can be
+ * acknowledged again. An aggregate that is dropped instead must be passed to
+ * {@link #onLost(byte[])}, so the copies its senders send again are relayed.
+ *
+ * <p>Not thread-safe.
+ */
+public class RelayAggregator {
+    // Neighbours whose sequence numbers are kept.
+    private static final int MAX_SENDERS = 256;
+
+    private final int maxFrames;
+    private final long maxAgeMillis;
+    private final List<RelayedFrame> pending = new ArrayList<>();
+    private final DuplicateFilter accepted = new DuplicateFilter(MAX_SENDERS);
+    private final DuplicateFilter delivered = new DuplicateFilter(MAX_SENDERS);
+
+    private long oldestMillis;
+    private long duplicateCount;
+
+    /**
+     * Constructor {@link RelayAggregator}.
+     *
+     * @param maxFrames    relayed frames held before they must be sent
+     * @param maxAgeMillis time the oldest relayed frame may wait for a batch to join
+     */
+    public RelayAggregator(int maxFrames, long maxAgeMillis) {
+        if (maxFrames < 1) {
+            throw new IllegalArgumentException("Invalid frame limit: " + maxFrames);
+        }
+        this.maxFrames = maxFrames;
+        this.maxAgeMillis = maxAgeMillis;
+    }
+
+    /**
+     * Hold a frame a neighbour sent, unless it is a duplicate.
+     *
+     * @param senderId  neighbour that sent the frame
+     * @param sequence  sequence number the neighbour gave the frame
+     * @param frame     frame without its {@link DeliveryCodec} envelope
+     * @param nowMillis current time in milliseconds
+     * @return false if the frame was accepted before and is dropped
+     */
+    public boolean offer(String senderId, long sequence, byte[] frame, long nowMillis) {
+        if (!accepted.accept(senderId, sequence)) {
+            duplicateCount++;
+            return false;
+        }
+        if (pending.isEmpty()) {
+            oldestMillis = nowMillis;
+        }
+        pending.add(new RelayedFrame(senderId, sequence, frame));
+        return true;
+    }
+
+    /**
+     * Whether enough frames are held to send them without waiting for a batch.
+     *
+     * @return true once {@code maxFrames} frames are held
+     */
+    public boolean isFull() {
+        return pending.size() >= maxFrames;
+    }
+
+    /**
+     * Whether the oldest frame held waited long enough for a batch to join.
+     *
+     * @param nowMillis current time in milliseconds
+     * @return true if frames are held and the oldest is {@code maxAgeMillis} old
+     */
+    public boolean isExpired(long nowMillis) {
+        return !pending.isEmpty() && nowMillis - oldestMillis >= maxAgeMillis;
+    }
+
+    /**
+     * Merge a frame of this device with the frames held, and forget them.
+     *
+     * @param ownFrame frame of this device, or null to send the relayed frames alone
+     * @return aggregate frame, or null if there is nothing to merge
+     */
+    public byte[] drain(byte[] ownFrame) {
+        if (pending.isEmpty()) {
+            return null;
+        }
+        List<RelayedFrame> entries = new ArrayList<>(pending.size() + 1);
+        if (ownFrame != null) {
+            entries.add(new RelayedFrame("", 0, ownFrame));
+        }
+        entries.addAll(pending);
+        pending.clear();
+        return AggregateCodec.encode(entries);
+    }
+
+    /**
+     * Number of relayed frames held.
+     *
+     * @return frame count
+     */
+    public int size() {
+        return pending.size();
+    }
+
+    /**
+     * Remember that the SuperPeer acknowledged a relayed frame.
+     *
+     * @param senderId neighbour that sent the frame
+     * @param sequence sequence number the neighbour gave the frame
+     */
+    public void onDelivered(String senderId, long sequence) {
+        delivered.accept(senderId, sequence);
+    }
+
+    /**
+     * Forget the relayed frames of an aggregate that will never reach the SuperPeer, so the
+     * copies their senders send again are not dropped as duplicates.
+     *
+     * @param aggregate frame without its {@link DeliveryCodec} envelope; other frames are
+     *                  ignored
+     */
+    public void onLost(byte[] aggregate) {
+        if (!AggregateCodec.isAggregate(aggregate)) {
+            return;
+        }
+        List<RelayedFrame> entries = AggregateCodec.decode(aggregate);
+        for (int i = 0; i < entries.size(); i++) {
+            RelayedFrame entry = entries.get(i);
+            // This device's own batch has no sender id.
+            if (!entry.getSenderId().isEmpty()) {
+                accepted.remove(entry.getSenderId(), entry.getSequence());
+            }
+        }
+    }
+
+    /**
+     * Whether the SuperPeer acknowledged a relayed frame, e.g. to acknowledge a copy of it again.
+     *
+     * @param senderId neighbour that sent the frame
+     * @param sequence sequence number the neighbour gave the frame
+     * @return true if {@link #onDelivered(String, long)} recorded the frame
+     */
+    public boolean isDelivered(String senderId, long sequence) {
+        return delivered.contains(senderId, sequence);
+    }
+
+    public long getDuplicateCount() {
+        return duplicateCount;
+    }
+}
@@ -0,0 +1,217 @@
+package rightmesh.left.io.gpstracker.core.uplink;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import rightmesh.left.io.gpstracker.core.transport.MeshTransport;
+
+/**
+ * Chooses which of several SuperPeers a device sends to.
+ *
+ * <p>Every device ranks the SuperPeers by a hash of its own id and theirs (rendezvous hashing)
+ * and sends to the first one that is reachable, so its track stays on one SuperPeer while the
+ * fleet spreads evenly over all of them, and losing a SuperPeer only moves the devices that
+ * were on it. A SuperPeer is unreachable once the mesh reports it removed or after
+ * {@link #MAX_CONSECUTIVE_FAILURES} failed sends in a row, and reachable again once it is seen
+ * or accepts a frame. Among the reachable ones, a SuperPeer whose smoothed round-trip time is
+ * more than {@link #SLOW_FACTOR} times that of the fastest is skipped.
+ *
+ * <p>Thread-safe.
+ */
+public class SuperPeerSelector {
+    static final int MAX_CONSECUTIVE_FAILURES = 3;
+    static final long SLOW_FACTOR = 3;
+
+    // Weight of a new round-trip time sample, as for TCP's smoothed RTT.
+    private static final int RTT_SMOOTHING_SHIFT = 3;
+
+    private final List<Target> targets;
+
+    /**
+     * State of one SuperPeer.
+     */
+    private static final class Target {
+        final String id;
+        long rank;
+        boolean reachable = true;
+        int consecutiveFailures;
+        long smoothedRttNanos = -1;
+
+        Target(String id) {
+            this.id = id;
+        }
+    }
+
+    /**
+     * Constructor {@link SuperPeerSelector}, ranking the SuperPeers for an unknown device id
+     * until {@link #setDeviceId(String)} is called.
+     *
+     * @param targetIds ids of the SuperPeers on the transport, at least one
+     */
+    public SuperPeerSelector(List<String> targetIds) {
+        if (targetIds.isEmpty()) {
+            throw new IllegalArgumentException("No SuperPeer");
+        }
+        List<Target> list = new ArrayList<>(targetIds.size());
+        for (String id : targetIds) {
+            list.add(new Target(id));
+        }
+        targets = Collections.unmodifiableList(list);
+        setDeviceId("");
+    }
+
+    /**
+     * Rank the SuperPeers for this device.
+     *
+     * @param deviceId id of this device on the transport
+     */
+    public synchronized void setDeviceId(String deviceId) {
+        for (Target target : targets) {
+            target.rank = rank(deviceId, target.id);
+        }
+    }
+
+    /**
+     * SuperPeer to send the next frame to.
+     *
+     * @return the highest ranked reachable SuperPeer that is not much slower than the fastest,
+     *         or the highest ranked one if none is reachable
+     */
+    public synchronized String select() {
+        long fastest = Long.MAX_VALUE;
+        for (Target target : targets) {
+            if (target.reachable && target.smoothedRttNanos >= 0) {
+                fastest = Math.min(fastest, target.smoothedRttNanos);
+            }
+        }
+        Target best = null;
+        Target bestUnreachable = null;
+        for (Target target : targets) {
+            if (!target.reachable || isSlow(target, fastest)) {
+                if (bestUnreachable == null || target.rank > bestUnreachable.rank) {
+                    bestUnreachable = target;
+                }
+            } else if (best == null || target.rank > best.rank) {
+                best = target;
+            }
+        }
+        return best != null ? best.id : bestUnreachable.id;
+    }
+
+    /**
+     * A SuperPeer accepted a frame.
+     *
+     * @param targetId SuperPeer id
+     */
+    public synchronized void onSent(String targetId) {
+        Target target = find(targetId);
+        if (target != null) {
+            target.reachable = true;
+            target.consecutiveFailures = 0;
+        }
+    }
+
+    /**
+     * A frame could not be sent to a SuperPeer.
+     *
+     * @param targetId SuperPeer id
+     */
+    public synchronized void onSendFailed(String targetId) {
+        Target target = find(targetId);
+        if (target != null && ++target.consecutiveFailures >= MAX_CONSECUTIVE_FAILURES) {
+            target.reachable = false;
+        }
+    }
+
+    /**
+     * A SuperPeer acknowledged a frame.
+     *
+     * @param targetId SuperPeer id, ignored if not one of the SuperPeers
+     * @param rttNanos time from sending the frame to its acknowledgement
+     */
+    public synchronized void onRtt(String targetId, long rttNanos) {
+        Target target = find(targetId);
+        if (target == null) {
+            return;
+        }
+        if (target.smoothedRttNanos < 0) {
+            target.smoothedRttNanos = rttNanos;
+        } else {
+            target.smoothedRttNanos += (rttNanos - target.smoothedRttNanos) >> RTT_SMOOTHING_SHIFT;
+        }
+    }
+
+    /**
+     * The mesh reported a peer change.
+     *
+     * @param peerId peer id, ignored if not one of the SuperPeers
+     * @param state  {@link MeshTransport#PEER_ADDED}, {@link MeshTransport#PEER_REMOVED} or
+     *               {@link MeshTransport#PEER_UPDATED}
+     * @return true if the peer is one of the SuperPeers
+     */
+    public synchronized boolean onPeerChanged(String peerId, int state) {
+        Target target = find(peerId);
+        if (target == null) {
+            return false;
+        }
+        target.reachable = state != MeshTransport.PEER_REMOVED;
+        target.consecutiveFailures = 0;
+        return true;
+    }
+
+    /**
+     * Check whether a SuperPeer is considered reachable.
+     *
+     * @param targetId SuperPeer id
+     * @return false if it is unknown, or was removed or failed too often
+     */
+    public synchronized boolean isReachable(String targetId) {
+        Target target = find(targetId);
+        return target != null && target.reachable;
+    }
+
+    /**
+     * Smoothed round-trip time of a SuperPeer.
+     *
+     * @param targetId SuperPeer id
+     * @return round-trip time in nanoseconds, -1 if unknown
+     */
+    public synchronized long getRttNanos(String targetId) {
+        Target target = find(targetId);
+        return target == null ? -1 : target.smoothedRttNanos;
+    }
+
+    private static boolean isSlow(Target target, long fastestRttNanos) {
+        return target.smoothedRttNanos >= 0 && fastestRttNanos != Long.MAX_VALUE
+                && target.smoothedRttNanos / SLOW_FACTOR > fastestRttNanos;
+    }
+
+    private Target find(String targetId) {
+        for (int i = 0; i < targets.size(); i++) {
+            if (targets.get(i).id.equals(targetId)) {
+                return targets.get(i);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Rendezvous hash of a device and a SuperPeer.
+     *
+     * @param deviceId device id
+     * @param targetId SuperPeer id
+     * @return rank, higher is preferred
+     */
+    static long rank(String deviceId, String targetId) {
+        long hash = ((long) deviceId.hashCode() << Integer.SIZE)
+                ^ (targetId.hashCode() & 0xFFFFFFFFL);
+        // MurmurHash3 finalizer, so similar ids get unrelated ranks.
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
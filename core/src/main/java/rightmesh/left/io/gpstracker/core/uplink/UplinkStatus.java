@@ -0,0 +1,89 @@
+package rightmesh.left.io.gpstracker.core.uplink;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Immutable snapshot of the uplink totals, taken by {@link LocationUplink#getStatus()}.
+ */
+public final class UplinkStatus {
+    private final long sentFixes;
+    private final long sentFrames;
+    private final long failedFrames;
+    private final long replayedFrames;
+    private final int queuedFixes;
+    private final int backlogFrames;
+    private final long droppedFixes;
+    private final long lastSendNanos;
+
+    /**
+     * Constructor {@link UplinkStatus}.
+     *
+     * @param sentFixes      fixes in frames the transport accepted right away
+     * @param sentFrames     frames the transport accepted right away
+     * @param failedFrames   frames not sent right away, either journaled or dropped
+     * @param replayedFrames journaled frames sent later
+     * @param queuedFixes    fixes waiting for the executor or in the pending batch
+     * @param backlogFrames  frames waiting in the journal
+     * @param droppedFixes   fixes dropped because the executor fell behind
+     * @param lastSendNanos  duration of the last send, 0 if nothing was sent yet
+     */
+    public UplinkStatus(long sentFixes, long sentFrames, long failedFrames, long replayedFrames,
+                        int queuedFixes, int backlogFrames, long droppedFixes,
+                        long lastSendNanos) {
+        this.sentFixes = sentFixes;
+        this.sentFrames = sentFrames;
+        this.failedFrames = failedFrames;
+        this.replayedFrames = replayedFrames;
+        this.queuedFixes = queuedFixes;
+        this.backlogFrames = backlogFrames;
+        this.droppedFixes = droppedFixes;
+        this.lastSendNanos = lastSendNanos;
+    }
+
+    public long getSentFixes() {
+        return sentFixes;
+    }
+
+    public long getSentFrames() {
+        return sentFrames;
+    }
+
+    public long getFailedFrames() {
+        return failedFrames;
+    }
+
+    public long getReplayedFrames() {
+        return replayedFrames;
+    }
+
+    public int getQueuedFixes() {
+        return queuedFixes;
+    }
+
+    public int getBacklogFrames() {
+        return backlogFrames;
+    }
+
+    public long getDroppedFixes() {
+        return droppedFixes;
+    }
+
+    /**
+     * How long the transport took to accept or refuse the last frame.
+     *
+     * @return duration in milliseconds
+     */
+    public double getLastSendMillis() {
+        return lastSendNanos / (double) TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    @Override
+    public String toString() {
+        return "sent=" + sentFixes + "/" + sentFrames
+                + " failed=" + failedFrames
+                + " replayed=" + replayedFrames
+                + " queued=" + queuedFixes + "/" + backlogFrames
+                + " dropped=" + droppedFixes
+                + " lastSend=" + TimeUnit.NANOSECONDS.toMicros(lastSendNanos) + "us";
+    }
+}
@@ -0,0 +1,77 @@
+package rightmesh.left.io.gpstracker.core.uplink;
+
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Coalesces uplink changes into at most one {@link UplinkStatus} per interval.
+ *
+ * <p>{@link #requestPublish()} may be called for every fix and frame from any thread: it only
+ * schedules a snapshot on the uplink executor unless one is already pending, no earlier than one
+ * interval after the previous one. The listener therefore runs at a bounded rate however fast
+ * fixes arrive, and always ends up seeing the latest totals.
+ */
+public class UplinkStatusPublisher {
+    private final LocationUplink uplink;
+    private final ScheduledExecutorService executor;
+    private final long intervalNanos;
+    private final OnStatusListener listener;
+
+    private final AtomicBoolean publishScheduled = new AtomicBoolean();
+    private final Runnable publishTask = this::publish;
+    private volatile long lastPublishNanos;
+
+    /**
+     * Receives status snapshots on the uplink executor.
+     */
+    public interface OnStatusListener {
+        /**
+         * Handle a snapshot.
+         *
+         * @param status latest totals
+         */
+        void onStatus(UplinkStatus status);
+    }
+
+    /**
+     * Constructor {@link UplinkStatusPublisher}.
+     *
+     * @param uplink         uplink to take snapshots of
+     * @param executor       executor of the uplink
+     * @param intervalMillis minimum time between two snapshots
+     * @param listener       a callback
+     */
+    public UplinkStatusPublisher(LocationUplink uplink, ScheduledExecutorService executor,
+                                 long intervalMillis, OnStatusListener listener) {
+        this.uplink = uplink;
+        this.executor = executor;
+        this.intervalNanos = TimeUnit.MILLISECONDS.toNanos(intervalMillis);
+        this.listener = listener;
+        lastPublishNanos = System.nanoTime() - intervalNanos;
+    }
+
+    /**
+     * Publish a snapshot once the interval since the previous one is over, unless one is already
+     * scheduled. Never blocks.
+     */
+    public void requestPublish() {
+        if (!publishScheduled.compareAndSet(false, true)) {
+            return;
+        }
+        long delayNanos = lastPublishNanos + intervalNanos - System.nanoTime();
+        try {
+            executor.schedule(publishTask, Math.max(0, delayNanos), TimeUnit.NANOSECONDS);
+        } catch (RejectedExecutionException e) {
+            // The uplink is shutting down; nobody is left to show the status to.
+        }
+    }
+
+    private void publish() {
+        // Cleared first so a change made while publishing schedules another snapshot.
+        publishScheduled.set(false);
+        lastPublishNanos = System.nanoTime();
+        listener.onStatus(uplink.getStatus());
+    }
+}
@@ -0,0 +1,121 @@
+package rightmesh.left.io.gpstracker.core.uplink;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import rightmesh.left.io.gpstracker.core.codec.LocationFix;
+import rightmesh.left.io.gpstracker.core.metrics.StageTimer;
+
+/**
+ * Hands fixes from the location callback thread to a single consumer on an executor.
+ *
+ * <p>{@link #offer(LocationFix)} only copies the fix into a bounded {@link FixQueue} and makes
+ * sure one drain task is scheduled, so the producer never blocks on encoding or the mesh, and a
+ * stalled consumer costs at most the queue capacity: the oldest fixes are dropped beyond it.
+ * The executor must run tasks one at a time for the consumer to see fixes in order. While
+ * paused, fixes only accumulate in the queue.
+ */
+public class UplinkWorker {
+    private final Executor executor;
+    private final FixQueue queue;
+    private final FixConsumer consumer;
+    private final StageTimer queueTimer;
+
+    private final AtomicBoolean drainScheduled = new AtomicBoolean();
+    private final LocationFix current = new LocationFix();
+    private final Runnable drainTask = this::drain;
+
+    private volatile boolean paused;
+
+    /**
+     * Receives queued fixes on the executor.
+     */
+    public interface FixConsumer {
+        /**
+         * Process a fix.
+         *
+         * @param fix queued fix, only valid until this method returns
+         */
+        void onFix(LocationFix fix);
+    }
+
+    /**
+     * Constructor {@link UplinkWorker}.
+     *
+     * @param executor   single-threaded executor the consumer runs on
+     * @param capacity   maximum number of fixes waiting for the consumer
+     * @param consumer   processes fixes in order
+     * @param queueTimer records how long fixes wait in the queue
+     */
+    public UplinkWorker(Executor executor, int capacity, FixConsumer consumer,
+                        StageTimer queueTimer) {
+        this.executor = executor;
+        this.queue = new FixQueue(capacity);
+        this.consumer = consumer;
+        this.queueTimer = queueTimer;
+    }
+
+    /**
+     * Queue a fix for the consumer. Never blocks.
+     *
+     * @param fix fix to copy into the queue
+     * @return false if an older fix was dropped to make room
+     */
+    public boolean offer(LocationFix fix) {
+        boolean accepted = queue.offer(fix, System.nanoTime());
+        if (drainScheduled.compareAndSet(false, true)) {
+            executor.execute(drainTask);
+        }
+        return accepted;
+    }
+
+    /**
+     * Keep fixes in the queue instead of handing them to the consumer.
+     */
+    public void pause() {
+        paused = true;
+    }
+
+    /**
+     * Hand the fixes queued while paused, and any later ones, to the consumer again.
+     */
+    public void resume() {
+        paused = false;
+        if (drainScheduled.compareAndSet(false, true)) {
+            executor.execute(drainTask);
+        }
+    }
+
+    /**
+     * Number of fixes waiting for the consumer.
+     *
+     * @return queued fix count
+     */
+    public int size() {
+        return queue.size();
+    }
+
+    /**
+     * Number of fixes dropped because the consumer fell behind.
+     *
+     * @return dropped fix count
+     */
+    public long getDroppedCount() {
+        return queue.getDroppedCount();
+    }
+
+    private void drain() {
+        // Cleared first so a fix offered while draining schedules another pass.
+        drainScheduled.set(false);
+        if (paused) {
+            // resume() schedules another pass.
+            return;
+        }
+        long enqueueNanos = queue.poll(current);
+        while (enqueueNanos != FixQueue.EMPTY) {
+            queueTimer.record(System.nanoTime() - enqueueNanos);
+            consumer.onFix(current);
+            enqueueNanos = queue.poll(current);
+        }
+    }
+}
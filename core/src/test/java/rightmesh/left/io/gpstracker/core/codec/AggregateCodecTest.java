@@ -0,0 +1,42 @@
+package rightmesh.left.io.gpstracker.core.codec;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+public class AggregateCodecTest {
+
+    @Test
+    public void encode_roundTripsEntries() {
+        byte[] own = LocationCodec.encode(new LocationFix[]{new LocationFix().set(49, -123)}, 1);
+        byte[] relayed = LocationCodec.encode(new LocationFix[]{new LocationFix().set(50, -120)},
+                1);
+
+        byte[] frame = AggregateCodec.encode(Arrays.asList(new RelayedFrame("", 0, own),
+                new RelayedFrame("0xabc", 300, relayed)));
+
+        assertTrue(AggregateCodec.isAggregate(frame));
+        assertFalse(DeliveryCodec.isSequenced(frame));
+        List<RelayedFrame> entries = AggregateCodec.decode(frame);
+        assertEquals(2, entries.size());
+        assertEquals("", entries.get(0).getSenderId());
+        assertArrayEquals(own, entries.get(0).getFrame());
+        assertEquals("0xabc", entries.get(1).getSenderId());
+        assertEquals(300, entries.get(1).getSequence());
+        assertArrayEquals(relayed, entries.get(1).getFrame());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void decode_rejectsTruncatedEntry() {
+        byte[] frame = AggregateCodec.encode(Arrays.asList(new RelayedFrame("peer", 1,
+                new byte[]{1, 2, 3})));
+
+        AggregateCodec.decode(Arrays.copyOf(frame, frame.length - 1));
+    }
+}
@@ -0,0 +1,48 @@
+package rightmesh.left.io.gpstracker.core.codec;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class DeliveryCodecTest {
+
+    @Test
+    public void wrap_keepsFrameAndSequence() {
+        byte[] frame = LocationCodec.encode(new LocationFix[]{new LocationFix().set(49, -123)}, 1);
+
+        byte[] sequenced = DeliveryCodec.wrap(300, frame);
+
+        assertTrue(DeliveryCodec.isSequenced(sequenced));
+        assertFalse(DeliveryCodec.isAck(sequenced));
+        assertEquals(300, DeliveryCodec.getSequence(sequenced));
+        assertArrayEquals(frame, DeliveryCodec.unwrap(sequenced));
+        assertEquals(frame.length + 4, sequenced.length);
+    }
+
+    @Test
+    public void encodeAck_roundTripsSequences() {
+        long[] sequences = {0, 127, 128, Long.MAX_VALUE};
+
+        byte[] ack = DeliveryCodec.encodeAck(sequences, 3);
+
+        assertTrue(DeliveryCodec.isAck(ack));
+        assertArrayEquals(new long[]{0, 127, 128}, DeliveryCodec.decodeAck(ack));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void decodeAck_rejectsTrailingBytes() {
+        byte[] ack = DeliveryCodec.encodeAck(new long[]{1}, 1);
+        byte[] longer = new byte[ack.length + 1];
+        System.arraycopy(ack, 0, longer, 0, ack.length);
+
+        DeliveryCodec.decodeAck(longer);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unwrap_rejectsUnsequencedFrame() {
+        DeliveryCodec.unwrap(new byte[16]);
+    }
+}
@@ -0,0 +1,82 @@
+package rightmesh.left.io.gpstracker.core.codec;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Test;
+
+public class FrameCompressorTest {
+    private static final int FIXES = 10;
+
+    private final FrameCompressor underTest = new FrameCompressor(6,
+            FrameCompressor.TRACK_DICTIONARY);
+
+    @After
+    public void tearDown() {
+        underTest.close();
+    }
+
+    @Test
+    public void compress_shrinksBatchAndRoundTrips() {
+        byte[] frame = LocationCodec.encode(walk(), FIXES);
+
+        ByteBuffer compressed = underTest.compress(ByteBuffer.wrap(frame));
+        byte[] payload = new byte[compressed.remaining()];
+        compressed.get(payload);
+
+        assertTrue(FrameCompressor.isCompressed(payload));
+        assertTrue(payload.length + " of " + frame.length + " bytes",
+                payload.length < frame.length * 2 / 3);
+        assertArrayEquals(frame, FrameCompressor.decompress(payload));
+    }
+
+    @Test
+    public void compress_dictionarySavesBytesOnSmallBatch() {
+        byte[] frame = LocationCodec.encode(walk(), 3);
+        FrameCompressor plain = new FrameCompressor(6, FrameCompressor.NO_DICTIONARY);
+
+        int withDictionary = underTest.compress(ByteBuffer.wrap(frame)).remaining();
+        ByteBuffer withoutDictionary = plain.compress(ByteBuffer.wrap(frame));
+        plain.close();
+
+        assertTrue(withDictionary < withoutDictionary.remaining());
+    }
+
+    @Test
+    public void compress_keepsFrameThatDoesNotShrink() {
+        byte[] noise = new byte[64];
+        new Random(1).nextBytes(noise);
+        ByteBuffer frame = ByteBuffer.wrap(noise);
+
+        assertSame(frame, underTest.compress(frame));
+        assertFalse(FrameCompressor.isCompressed(noise));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void decompress_rejectsTruncatedFrame() {
+        ByteBuffer compressed = underTest.compress(
+                ByteBuffer.wrap(LocationCodec.encode(walk(), FIXES)));
+        byte[] truncated = new byte[compressed.remaining() - 4];
+        compressed.get(truncated);
+
+        FrameCompressor.decompress(truncated);
+    }
+
+    private static LocationFix[] walk() {
+        LocationFix[] fixes = new LocationFix[FIXES];
+        for (int i = 0; i < FIXES; i++) {
+            fixes[i] = new LocationFix().set(49.282729 + i * 0.00001, -123.120738 + i * 0.000012)
+                    .setTime(1546300800000L + i * 1000L)
+                    .setAccuracy(4.5f)
+                    .setSpeed(1.4f)
+                    .setBearing(45f);
+        }
+        return fixes;
+    }
+}
@@ -0,0 +1,65 @@
+package rightmesh.left.io.gpstracker.core.codec;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+public class GeofenceEventCodecTest {
+    private final LocationFix fix = new LocationFix().set(49.2827, -123.1207)
+            .setTime(1546300800000L).setAccuracy(4.5f);
+
+    @Test
+    public void encode_roundTrips() {
+        byte[] frame = encode(new int[]{3, 1000000}, new int[]{GeofenceEvent.EXIT,
+                GeofenceEvent.ENTER});
+
+        List<GeofenceEvent> events = GeofenceEventCodec.decode(frame);
+
+        assertEquals(2, events.size());
+        assertEquals(3, events.get(0).getFenceId());
+        assertEquals(GeofenceEvent.EXIT, events.get(0).getTransition());
+        assertEquals(1000000, events.get(1).getFenceId());
+        assertEquals(GeofenceEvent.ENTER, events.get(1).getTransition());
+        assertEquals(fix, events.get(1).getFix());
+    }
+
+    @Test
+    public void isEventFrame_tellsEventsFromLocations() {
+        byte[] events = encode(new int[]{1}, new int[]{GeofenceEvent.ENTER});
+        byte[] locations = LocationCodec.encode(new LocationFix[]{fix}, 1);
+
+        assertTrue(GeofenceEventCodec.isEventFrame(events));
+        assertFalse(GeofenceEventCodec.isEventFrame(locations));
+        assertFalse(GeofenceEventCodec.isEventFrame(new byte[BatchFrame.LEGACY_FRAME_SIZE]));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void decode_rejectsTruncatedFrame() {
+        byte[] frame = encode(new int[]{1}, new int[]{GeofenceEvent.ENTER});
+
+        GeofenceEventCodec.decode(Arrays.copyOf(frame, frame.length - 1));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void decode_rejectsUnknownTransition() {
+        GeofenceEventCodec.decode(encode(new int[]{1}, new int[]{9}));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void locationCodecDecode_rejectsEventFrame() {
+        LocationCodec.decode(encode(new int[]{1}, new int[]{GeofenceEvent.ENTER}));
+    }
+
+    private byte[] encode(int[] fenceIds, int[] transitions) {
+        ByteBuffer buffer = ByteBuffer.allocate(GeofenceEventCodec.maxEncodedSize(
+                fenceIds.length));
+        GeofenceEventCodec.encode(fix, fenceIds, transitions, fenceIds.length, buffer);
+        return Arrays.copyOf(buffer.array(), buffer.position());
+    }
+}
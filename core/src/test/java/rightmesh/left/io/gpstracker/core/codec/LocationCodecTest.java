@@ -0,0 +1,93 @@
+package rightmesh.left.io.gpstracker.core.codec;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import org.junit.Test;
+
+public class LocationCodecTest {
+    private static final int TRACK_LENGTH = 50;
+
+    @Test
+    public void encode_roundTripsAllFields() {
+        LocationFix[] fixes = {
+                new LocationFix().set(49.282729, -123.120738).setTime(1546300800000L)
+                        .setAccuracy(4.5f).setSpeed(1.25f).setBearing(359.9f),
+                new LocationFix().set(-33.856784, 151.215297),
+                new LocationFix().set(0, 0).setTime(1546300801000L).setBearing(90f)
+        };
+
+        List<LocationFix> decoded = LocationCodec.decode(LocationCodec.encode(fixes, 3));
+
+        assertEquals(3, decoded.size());
+        for (int i = 0; i < fixes.length; i++) {
+            assertEquals(fixes[i], decoded.get(i));
+        }
+        assertFalse(decoded.get(1).hasTime());
+    }
+
+    @Test
+    public void encode_deltasCostFewBytesPerFix() {
+        LocationFix[] fixes = new LocationFix[TRACK_LENGTH];
+        for (int i = 0; i < TRACK_LENGTH; i++) {
+            // Walking pace: about 1.5 m north-east every second.
+            fixes[i] = new LocationFix()
+                    .set(49.282729 + i * 0.00001, -123.120738 + i * 0.00001)
+                    .setTime(1546300800000L + i * 1000L)
+                    .setAccuracy(5f);
+        }
+
+        byte[] frame = LocationCodec.encode(fixes, TRACK_LENGTH);
+
+        assertTrue("frame of " + frame.length + " bytes", frame.length < TRACK_LENGTH * 8);
+        assertEquals(TRACK_LENGTH, LocationCodec.decode(frame).size());
+    }
+
+    @Test
+    public void decode_acceptsLegacyPayload() {
+        byte[] legacy = ByteBuffer.allocate(BatchFrame.LEGACY_FRAME_SIZE)
+                .putDouble(49.1).putDouble(-123.1).array();
+
+        List<LocationFix> decoded = LocationCodec.decode(legacy);
+
+        assertEquals(1, decoded.size());
+        assertEquals(-123.1, decoded.get(0).getLongitude(), 0);
+    }
+
+    @Test
+    public void decode_acceptsRawDoublesFrame() {
+        byte[] frame = BatchFrame.encode(new double[]{49.1, 49.2}, new double[]{-123.1, -123.2}, 2);
+
+        List<LocationFix> decoded = LocationCodec.decode(frame);
+
+        assertEquals(2, decoded.size());
+        assertEquals(49.2, decoded.get(1).getLatitude(), 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void decode_rejectsTruncatedFrame() {
+        LocationFix[] fixes = {new LocationFix().set(49.1, -123.1).setTime(1546300800000L)};
+        byte[] frame = LocationCodec.encode(fixes, 1);
+        byte[] truncated = new byte[frame.length - 1];
+        System.arraycopy(frame, 0, truncated, 0, truncated.length);
+
+        LocationCodec.decode(truncated);
+    }
+
+    @Test
+    public void zigZag_roundTrips() {
+        long[] values = {0, -1, 1, Integer.MIN_VALUE, Integer.MAX_VALUE, Long.MIN_VALUE};
+        ByteBuffer buffer = ByteBuffer.allocate(values.length * VarInts.MAX_VARINT_SIZE);
+        for (long value : values) {
+            VarInts.writeSigned(buffer, value);
+        }
+        buffer.flip();
+        for (long value : values) {
+            assertEquals(value, VarInts.readSigned(buffer));
+        }
+    }
+}
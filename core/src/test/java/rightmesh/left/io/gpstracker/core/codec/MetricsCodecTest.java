@@ -0,0 +1,51 @@
+package rightmesh.left.io.gpstracker.core.codec;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import rightmesh.left.io.gpstracker.core.metrics.MetricsRegistry;
+import rightmesh.left.io.gpstracker.core.metrics.MetricsSnapshot;
+
+public class MetricsCodecTest {
+
+    @Test
+    public void encode_roundTripsSnapshot() {
+        MetricsRegistry registry = new MetricsRegistry();
+        registry.counter("uplink.sent.bytes").add(123456);
+        registry.gauge("clock.skew.ms", () -> -42);
+        for (int i = 1; i <= 100; i++) {
+            registry.histogram("uplink.send.ns").record(i * 1000);
+        }
+        MetricsSnapshot snapshot = registry.snapshot(1546300800000L);
+
+        byte[] frame = MetricsCodec.encode(snapshot);
+        MetricsSnapshot decoded = MetricsCodec.decode(frame);
+
+        assertTrue(MetricsCodec.isMetricsFrame(frame));
+        assertFalse(GeofenceEventCodec.isEventFrame(frame));
+        assertEquals(snapshot.getTimeMillis(), decoded.getTimeMillis());
+        assertEquals(snapshot.getValues(), decoded.getValues());
+        assertEquals(snapshot.getDistributions().toString(),
+                decoded.getDistributions().toString());
+        assertTrue(frame.length < 100);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void decode_rejectsTruncatedFrame() {
+        MetricsRegistry registry = new MetricsRegistry();
+        registry.counter("uplink.sent.frames").increment();
+        byte[] frame = MetricsCodec.encode(registry.snapshot(1));
+
+        MetricsCodec.decode(Arrays.copyOf(frame, frame.length - 1));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void decode_rejectsLocationFrame() {
+        MetricsCodec.decode(LocationCodec.encode(new LocationFix[]{new LocationFix()}, 1));
+    }
+}
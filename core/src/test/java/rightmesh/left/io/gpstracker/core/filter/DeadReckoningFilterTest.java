@@ -0,0 +1,70 @@
+package rightmesh.left.io.gpstracker.core.filter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import rightmesh.left.io.gpstracker.core.codec.LocationFix;
+
+public class DeadReckoningFilterTest {
+    private static final double LATITUDE = 49.282729;
+    private static final double LONGITUDE = -123.120738;
+    // Roughly one metre of latitude.
+    private static final double ONE_METRE = 1 / 111195.0;
+    private static final long MAX_SILENCE_MILLIS = 60000;
+
+    private final LocationFix fix = new LocationFix();
+
+    private DeadReckoningFilter underTest;
+
+    /**
+     * Set underTest before each test case.
+     */
+    @Before
+    public void setUp() {
+        underTest = new DeadReckoningFilter(10, MAX_SILENCE_MILLIS);
+    }
+
+    @Test
+    public void accept_suppressesStraightConstantSpeedTrack() {
+        int forwarded = 0;
+        for (int i = 0; i < 50; i++) {
+            // Due north at 10 m/s.
+            fix.set(LATITUDE + i * 10 * ONE_METRE, LONGITUDE)
+                    .setTime(i * 1000L).setSpeed(10).setBearing(0);
+            if (underTest.accept(fix)) {
+                forwarded++;
+            }
+        }
+
+        assertEquals(1, forwarded);
+        assertEquals(49, underTest.getSuppressedCount());
+    }
+
+    @Test
+    public void accept_forwardsTurn() {
+        underTest.accept(fix.set(LATITUDE, LONGITUDE).setTime(0).setSpeed(10).setBearing(0));
+
+        // Went east instead of north.
+        assertTrue(underTest.accept(fix.set(LATITUDE, LONGITUDE + 0.00014)
+                .setTime(1000).setSpeed(10).setBearing(90)));
+    }
+
+    @Test
+    public void accept_holdsStillWithoutVelocity() {
+        underTest.accept(fix.set(LATITUDE, LONGITUDE).setTime(0));
+
+        assertFalse(underTest.accept(fix.set(LATITUDE + 5 * ONE_METRE, LONGITUDE).setTime(1000)));
+        assertTrue(underTest.accept(fix.set(LATITUDE + 15 * ONE_METRE, LONGITUDE).setTime(2000)));
+    }
+
+    @Test
+    public void accept_forwardsAfterMaxSilence() {
+        underTest.accept(fix.set(LATITUDE, LONGITUDE).setTime(0));
+
+        assertTrue(underTest.accept(fix.set(LATITUDE, LONGITUDE).setTime(MAX_SILENCE_MILLIS)));
+    }
+}
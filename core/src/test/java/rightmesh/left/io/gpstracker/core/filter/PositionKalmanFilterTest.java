@@ -0,0 +1,106 @@
+package rightmesh.left.io.gpstracker.core.filter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import rightmesh.left.io.gpstracker.core.geo.GeoMath;
+
+public class PositionKalmanFilterTest {
+    private static final double LATITUDE = 49.282729;
+    private static final double LONGITUDE = -123.120738;
+    // Roughly one metre of latitude.
+    private static final double ONE_METRE = 1 / 111195.0;
+    private static final float ACCURACY = 5;
+    private static final int MAX_REJECTIONS = 5;
+
+    private PositionKalmanFilter underTest;
+
+    /**
+     * Set underTest before each test case.
+     */
+    @Before
+    public void setUp() {
+        underTest = new PositionKalmanFilter(50, 3, 2, MAX_REJECTIONS);
+    }
+
+    @Test
+    public void update_rejectsInaccurateFixes() {
+        assertFalse(underTest.update(LATITUDE, LONGITUDE, 51, 0));
+        assertFalse(underTest.update(LATITUDE, LONGITUDE, 0, 0));
+        assertTrue(underTest.update(LATITUDE, LONGITUDE, ACCURACY, 0));
+
+        assertEquals(2, underTest.getRejectedCount());
+    }
+
+    @Test
+    public void update_rejectsJumpOffTrack() {
+        walkNorth(0, 20);
+
+        assertFalse(underTest.update(LATITUDE + 200 * ONE_METRE, LONGITUDE, ACCURACY, 20000));
+        assertTrue(underTest.update(LATITUDE + 28 * ONE_METRE, LONGITUDE, ACCURACY, 21000));
+    }
+
+    @Test
+    public void update_restartsAfterTooManyRejections() {
+        walkNorth(0, 20);
+        double jumped = LATITUDE + 1000 * ONE_METRE;
+        for (int i = 0; i < MAX_REJECTIONS; i++) {
+            assertFalse(underTest.update(jumped, LONGITUDE, ACCURACY, 20000 + i * 1000L));
+        }
+
+        assertTrue(underTest.update(jumped, LONGITUDE, ACCURACY, 30000));
+        assertEquals(jumped, underTest.getLatitude(), 0);
+    }
+
+    @Test
+    public void update_estimatesVelocity() {
+        for (int i = 0; i < 60; i++) {
+            // Due east at 1.4 m/s.
+            double longitude = LONGITUDE + i * 1.4 * ONE_METRE / Math.cos(Math.toRadians(LATITUDE));
+            underTest.update(LATITUDE, longitude, ACCURACY, i * 1000L);
+        }
+
+        assertEquals(1.4, underTest.getSpeed(), 0.05);
+        assertEquals(90, underTest.getBearing(), 2);
+    }
+
+    @Test
+    public void update_reducesNoise() {
+        Random random = new Random(5);
+        double rawSquares = 0;
+        double smoothedSquares = 0;
+        for (int i = 0; i < 300; i++) {
+            double latitude = LATITUDE + i * ONE_METRE;
+            double noisyLatitude = latitude + random.nextGaussian() * ACCURACY * ONE_METRE;
+            double noisyLongitude = LONGITUDE + random.nextGaussian() * ACCURACY * ONE_METRE;
+            assertTrue(underTest.update(noisyLatitude, noisyLongitude, ACCURACY, i * 1000L));
+            if (i >= 20) {
+                rawSquares += square(GeoMath.distanceMeters(latitude, LONGITUDE,
+                        noisyLatitude, noisyLongitude));
+                smoothedSquares += square(GeoMath.distanceMeters(latitude, LONGITUDE,
+                        underTest.getLatitude(), underTest.getLongitude()));
+            }
+        }
+
+        assertTrue(smoothedSquares + " vs " + rawSquares, smoothedSquares < rawSquares / 2);
+        assertTrue(underTest.getAccuracy() < ACCURACY);
+    }
+
+    private void walkNorth(int from, int to) {
+        for (int i = from; i < to; i++) {
+            // Due north at 1 m/s.
+            assertTrue(underTest.update(LATITUDE + i * ONE_METRE, LONGITUDE, ACCURACY,
+                    i * 1000L));
+        }
+    }
+
+    private static double square(double value) {
+        return value * value;
+    }
+}
@@ -0,0 +1,18 @@
+package rightmesh.left.io.gpstracker.core.geo;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class GeoMathTest {
+    @Test
+    public void distanceMeters_oneDegreeOfLatitude() {
+        assertEquals(111195, GeoMath.distanceMeters(49, -123, 50, -123), 1);
+    }
+
+    @Test
+    public void distanceMeters_acrossAntimeridian() {
+        assertEquals(GeoMath.distanceMeters(0, 179.5, 0, 180),
+                GeoMath.distanceMeters(0, 179.5, 0, -179.5) / 2, 1);
+    }
+}
@@ -0,0 +1,130 @@
+package rightmesh.left.io.gpstracker.core.geofence;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import rightmesh.left.io.gpstracker.core.codec.GeofenceEvent;
+import rightmesh.left.io.gpstracker.core.codec.LocationFix;
+
+public class GeofenceEngineTest {
+    private final List<String> transitions = new ArrayList<>();
+
+    private final GeofenceEngine.OnTransitionListener listener = (fence, transition, fix) ->
+            transitions.add((transition == GeofenceEvent.ENTER ? "enter " : "exit ")
+                    + fence.getId());
+
+    private final LocationFix fix = new LocationFix();
+
+    private GeofenceEngine underTest;
+
+    /**
+     * Set underTest before each test case.
+     */
+    @Before
+    public void setUp() {
+        List<Geofence> fences = new ArrayList<>();
+        fences.add(new CircleGeofence(1, 49, -123, 100));
+        // An L shape, so its bounding box holds points outside it.
+        fences.add(new PolygonGeofence(2, new double[]{49.1, 49.1, 49.11, 49.11, 49.12, 49.12},
+                new double[]{-123.1, -123.08, -123.08, -123.09, -123.09, -123.1}));
+        // Larger than the prefilter grid handles, tested for every fix.
+        fences.add(new CircleGeofence(3, 49, -123, 100000));
+        underTest = new GeofenceEngine(fences);
+    }
+
+    @Test
+    public void evaluate_reportsEnterAndExitOnce() {
+        underTest.evaluate(fix.set(49.01, -123), listener);
+        underTest.evaluate(fix.set(49, -123), listener);
+        underTest.evaluate(fix.set(49.0001, -123), listener);
+        underTest.evaluate(fix.set(49.01, -123), listener);
+
+        assertEquals(asList("enter 3", "enter 1", "exit 1"), transitions);
+    }
+
+    @Test
+    public void evaluate_testsPolygonShape() {
+        underTest.evaluate(fix.set(49.105, -123.09), listener);
+        underTest.evaluate(fix.set(49.115, -123.085), listener);
+        underTest.evaluate(fix.set(49.115, -123.095), listener);
+
+        assertEquals(asList("enter 2", "enter 3", "exit 2", "enter 2"), transitions);
+    }
+
+    @Test
+    public void evaluate_reportsExitFromFarAwayFence() {
+        underTest.evaluate(fix.set(49, -123), listener);
+        transitions.clear();
+
+        assertEquals(2, underTest.evaluate(fix.set(-33.9, 151.2), listener));
+        assertEquals(asList("exit 1", "exit 3"), transitions);
+    }
+
+    @Test
+    public void reset_reportsEnterAgain() {
+        underTest.evaluate(fix.set(49, -123), listener);
+        underTest.reset();
+        transitions.clear();
+
+        underTest.evaluate(fix.set(49, -123), listener);
+
+        assertEquals(2, transitions.size());
+    }
+
+    @Test
+    public void evaluate_matchesTestingEveryFence() {
+        Random random = new Random(3);
+        List<Geofence> fences = new ArrayList<>();
+        for (int id = 0; id < 500; id++) {
+            double latitude = 49 + random.nextDouble() * 0.2;
+            double longitude = -123 + random.nextDouble() * 0.2;
+            if (id % 2 == 0) {
+                fences.add(new CircleGeofence(id, latitude, longitude,
+                        50 + random.nextDouble() * 500));
+            } else {
+                double size = 0.001 + random.nextDouble() * 0.01;
+                fences.add(new PolygonGeofence(id,
+                        new double[]{latitude, latitude, latitude + size},
+                        new double[]{longitude, longitude + size, longitude}));
+            }
+        }
+        GeofenceEngine engine = new GeofenceEngine(fences);
+        boolean[] expected = new boolean[fences.size()];
+        int[] count = new int[1];
+
+        double latitude = 49.1;
+        double longitude = -122.9;
+        for (int i = 0; i < 5000; i++) {
+            latitude += (random.nextDouble() - 0.5) * 0.002;
+            longitude += (random.nextDouble() - 0.5) * 0.002;
+            fix.set(latitude, longitude);
+            count[0] = 0;
+            int reported = engine.evaluate(fix, (fence, transition, f) -> count[0]++);
+            int changed = 0;
+            for (int f = 0; f < fences.size(); f++) {
+                boolean inside = fences.get(f).contains(fix);
+                if (inside != expected[f]) {
+                    changed++;
+                    expected[f] = inside;
+                }
+                assertEquals(inside, engine.isInside(f));
+            }
+            assertEquals(changed, reported);
+            assertEquals(changed, count[0]);
+        }
+        assertEquals(fences.size(), engine.size());
+    }
+
+    private static List<String> asList(String... values) {
+        List<String> list = new ArrayList<>();
+        Collections.addAll(list, values);
+        return list;
+    }
+}
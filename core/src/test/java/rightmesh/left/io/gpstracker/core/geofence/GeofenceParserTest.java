@@ -0,0 +1,42 @@
+package rightmesh.left.io.gpstracker.core.geofence;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.List;
+
+import org.junit.Test;
+
+import rightmesh.left.io.gpstracker.core.codec.LocationFix;
+
+public class GeofenceParserTest {
+    @Test
+    public void parse_readsCirclesAndPolygons() throws IOException {
+        List<Geofence> fences = GeofenceParser.parse(new StringReader(
+                "# depot and yard\n"
+                        + "circle 1 49.0 -123.0 100\n"
+                        + "\n"
+                        + "  polygon 2  49.1,-123.1 49.1,-123.0 49.2,-123.0  \n"));
+
+        assertEquals(2, fences.size());
+        assertTrue(fences.get(0) instanceof CircleGeofence);
+        assertEquals(1, fences.get(0).getId());
+        assertTrue(fences.get(1) instanceof PolygonGeofence);
+        assertTrue(fences.get(1).contains(new LocationFix().set(49.12, -123.01)));
+        assertFalse(fences.get(1).contains(new LocationFix().set(49.12, -123.09)));
+    }
+
+    @Test
+    public void parse_reportsLineOfMalformedFence() throws IOException {
+        try {
+            GeofenceParser.parse(new StringReader("circle 1 49 -123 100\npolygon 2 49,-123\n"));
+            fail();
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage(), e.getMessage().startsWith("Line 2: "));
+        }
+    }
+}
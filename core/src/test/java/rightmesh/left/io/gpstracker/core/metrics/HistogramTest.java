@@ -0,0 +1,77 @@
+package rightmesh.left.io.gpstracker.core.metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class HistogramTest {
+    private final Histogram underTest = new Histogram();
+
+    @Test
+    public void bucketIndex_coversLongRangeInOrder() {
+        int previous = -1;
+        for (long value = 0; value < 1 << 12; value++) {
+            int index = Histogram.bucketIndex(value);
+            assertTrue(index == previous || index == previous + 1);
+            assertTrue(value <= Histogram.bucketUpperBound(index));
+            previous = index;
+        }
+        assertEquals(Histogram.BUCKET_COUNT - 1, Histogram.bucketIndex(Long.MAX_VALUE));
+        assertEquals(Long.MAX_VALUE, Histogram.bucketUpperBound(Histogram.BUCKET_COUNT - 1));
+    }
+
+    @Test
+    public void getValueAtPercentile_isWithinBucketPrecision() {
+        for (long value = 1; value <= 1000; value++) {
+            underTest.record(value * 1000);
+        }
+
+        assertEquals(1000, underTest.getCount());
+        assertEquals(500500, underTest.getMean());
+        assertEquals(1000000, underTest.getMax());
+        assertWithinPrecision(500000, underTest.getValueAtPercentile(50));
+        assertWithinPrecision(990000, underTest.getValueAtPercentile(99));
+        assertEquals(1000000, underTest.getValueAtPercentile(100));
+    }
+
+    @Test
+    public void getValueAtPercentile_isZeroWhenEmpty() {
+        assertEquals(0, underTest.getValueAtPercentile(99));
+        assertEquals(0, underTest.getMean());
+    }
+
+    @Test
+    public void record_clampsNegativeValues() {
+        underTest.record(-5);
+
+        assertEquals(1, underTest.getCount());
+        assertEquals(0, underTest.getMax());
+        assertEquals(0, underTest.getValueAtPercentile(50));
+    }
+
+    @Test
+    public void record_countsEveryValueFromConcurrentThreads() throws InterruptedException {
+        final int perThread = 10000;
+        Thread[] threads = new Thread[4];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread(() -> {
+                for (int j = 0; j < perThread; j++) {
+                    underTest.record(j);
+                }
+            });
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(threads.length * perThread, underTest.getCount());
+        assertEquals(perThread - 1, underTest.getMax());
+    }
+
+    private static void assertWithinPrecision(long expected, long actual) {
+        assertTrue(actual + " not within bucket precision of " + expected,
+                actual >= expected && actual <= expected + expected / Histogram.SUB_BUCKETS);
+    }
+}
@@ -0,0 +1,62 @@
+package rightmesh.left.io.gpstracker.core.metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+public class MetricsRegistryTest {
+    private final MetricsRegistry underTest = new MetricsRegistry();
+
+    @Test
+    public void counter_returnsSameCounterForName() {
+        underTest.counter("sent.bytes").add(10);
+        underTest.counter("sent.bytes").add(5);
+
+        assertSame(underTest.counter("sent.bytes"), underTest.counter("sent.bytes"));
+        assertEquals(15, underTest.counter("sent.bytes").get());
+    }
+
+    @Test
+    public void snapshot_readsEveryMetricSortedByName() {
+        AtomicLong depth = new AtomicLong(3);
+        underTest.gauge("queue.fixes", depth::get);
+        underTest.counter("b.count").increment();
+        underTest.counter("a.count").add(2);
+        StageTimer timer = new StageTimer("send");
+        timer.record(100);
+        underTest.register("send.ns", timer.getHistogram());
+
+        depth.set(7);
+        MetricsSnapshot snapshot = underTest.snapshot(1234);
+
+        assertEquals(1234, snapshot.getTimeMillis());
+        assertEquals(Arrays.asList("a.count", "b.count", "queue.fixes"),
+                Arrays.asList(snapshot.getValues().keySet().toArray()));
+        assertEquals(Long.valueOf(7), snapshot.getValues().get("queue.fixes"));
+        MetricsSnapshot.Distribution send = snapshot.getDistributions().get("send.ns");
+        assertEquals(1, send.getCount());
+        assertEquals(100, send.getMax());
+    }
+
+    @Test
+    public void writeTo_writesOneLinePerMetric() throws IOException {
+        underTest.counter("sent.bytes").add(42);
+        underTest.histogram("age.ms").record(5);
+        StringWriter writer = new StringWriter();
+
+        underTest.snapshot(1).writeTo(writer);
+
+        String[] lines = writer.toString().split("\n");
+        assertEquals(3, lines.length);
+        assertEquals("time 1", lines[0]);
+        assertEquals("sent.bytes 42", lines[1]);
+        assertTrue(lines[2], lines[2].startsWith("age.ms n=1 mean=5"));
+    }
+}
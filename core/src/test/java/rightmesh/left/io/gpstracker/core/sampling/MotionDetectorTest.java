@@ -0,0 +1,60 @@
+package rightmesh.left.io.gpstracker.core.sampling;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import rightmesh.left.io.gpstracker.core.sampling.MotionDetector.Motion;
+
+public class MotionDetectorTest {
+    private static final double LATITUDE = 49.282729;
+    private static final double LONGITUDE = -123.120738;
+    // Roughly one metre of latitude.
+    private static final double ONE_METRE = 1 / 111195.0;
+
+    private MotionDetector underTest;
+
+    /**
+     * Set underTest before each test case.
+     */
+    @Before
+    public void setUp() {
+        underTest = new MotionDetector(20, 1.5f, 60000);
+    }
+
+    @Test
+    public void onFix_staysMovingUntilDwellElapsed() {
+        underTest.onFix(LATITUDE, LONGITUDE, 5, 0, 0);
+
+        assertEquals(Motion.MOVING, underTest.onFix(LATITUDE + 3 * ONE_METRE, LONGITUDE, 5, 0,
+                59999));
+        assertEquals(Motion.STATIONARY, underTest.onFix(LATITUDE, LONGITUDE, 5, 0, 60000));
+    }
+
+    @Test
+    public void onFix_jitterWithinAccuracyKeepsStationary() {
+        underTest.onFix(LATITUDE, LONGITUDE, 5, 0, 0);
+        underTest.onFix(LATITUDE, LONGITUDE, 5, 0, 60000);
+
+        assertEquals(Motion.STATIONARY, underTest.onFix(LATITUDE + 40 * ONE_METRE, LONGITUDE,
+                30, 0, 61000));
+    }
+
+    @Test
+    public void onFix_displacementResumesMoving() {
+        underTest.onFix(LATITUDE, LONGITUDE, 5, 0, 0);
+        underTest.onFix(LATITUDE, LONGITUDE, 5, 0, 60000);
+
+        assertEquals(Motion.MOVING, underTest.onFix(LATITUDE + 40 * ONE_METRE, LONGITUDE, 5, 0,
+                61000));
+    }
+
+    @Test
+    public void onFix_speedResumesMoving() {
+        underTest.onFix(LATITUDE, LONGITUDE, 5, 0, 0);
+        underTest.onFix(LATITUDE, LONGITUDE, 5, 0, 60000);
+
+        assertEquals(Motion.MOVING, underTest.onFix(LATITUDE, LONGITUDE, 5, 2f, 61000));
+    }
+}
@@ -0,0 +1,54 @@
+package rightmesh.left.io.gpstracker.core.transport;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+public class BackoffTest {
+    private static final long INITIAL_MS = 1000;
+    private static final long MAX_MS = 60000;
+
+    private final Backoff underTest = new Backoff(INITIAL_MS, MAX_MS, new Random(7));
+
+    @Test
+    public void nextDelayMillis_doublesWithinUpperHalf() {
+        long ceiling = INITIAL_MS;
+        for (int i = 0; i < 5; i++) {
+            long delay = underTest.nextDelayMillis();
+            assertTrue(delay >= ceiling / 2);
+            assertTrue(delay <= ceiling);
+            ceiling *= 2;
+        }
+        assertEquals(5, underTest.getAttempts());
+    }
+
+    @Test
+    public void nextDelayMillis_isCappedAfterManyAttempts() {
+        for (int i = 0; i < 100; i++) {
+            long delay = underTest.nextDelayMillis();
+            assertTrue(delay > 0);
+            assertTrue(delay <= MAX_MS);
+        }
+        assertTrue(underTest.nextDelayMillis() >= MAX_MS / 2);
+    }
+
+    @Test
+    public void reset_startsOverFromInitialDelay() {
+        for (int i = 0; i < 10; i++) {
+            underTest.nextDelayMillis();
+        }
+
+        underTest.reset();
+
+        assertTrue(underTest.nextDelayMillis() <= INITIAL_MS);
+        assertEquals(1, underTest.getAttempts());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructor_rejectsMaxBelowInitial() {
+        new Backoff(INITIAL_MS, INITIAL_MS - 1);
+    }
+}
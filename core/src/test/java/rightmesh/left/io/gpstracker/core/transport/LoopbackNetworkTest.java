@@ -0,0 +1,101 @@
+package rightmesh.left.io.gpstracker.core.transport;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class LoopbackNetworkTest {
+    private static final long TIMEOUT_MS = 1000;
+
+    private final BlockingQueue<byte[]> received = new LinkedBlockingQueue<>();
+
+    private final List<String> peerEvents = new ArrayList<>();
+
+    private ScheduledExecutorService executor;
+
+    private LoopbackNetwork underTest;
+
+    private LoopbackTransport device;
+
+    /**
+     * Set underTest before each test case.
+     */
+    @Before
+    public void setUp() {
+        executor = Executors.newSingleThreadScheduledExecutor();
+        underTest = new LoopbackNetwork(executor, 1);
+        device = underTest.join("device");
+        LoopbackTransport superPeer = underTest.join("superpeer");
+        superPeer.setOnTransportEventListener(new MeshTransport.OnTransportEventListener() {
+            @Override
+            public void onStateChanged(String localId, boolean connected) {
+            }
+
+            @Override
+            public void onPeerChanged(String peerId, int state) {
+                peerEvents.add(peerId + ":" + state);
+            }
+
+            @Override
+            public void onDataReceived(String peerId, byte[] data) {
+                received.add(data);
+            }
+        });
+        underTest.connect("superpeer");
+        underTest.connect("device");
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void send_deliversAfterLatency() throws Exception {
+        underTest.setLatency(5, 10);
+
+        device.send("superpeer", new byte[]{1, 2});
+
+        assertArrayEquals(new byte[]{1, 2}, received.poll(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+        assertEquals(1, underTest.getDeliveredCount());
+    }
+
+    @Test(expected = TransportException.class)
+    public void send_failsWhileTargetDisconnected() throws TransportException {
+        underTest.disconnect("superpeer");
+
+        device.send("superpeer", new byte[1]);
+    }
+
+    @Test
+    public void send_lostPayloadIsAcceptedButNeverArrives() throws Exception {
+        underTest.setLossRate(1);
+
+        device.send("superpeer", new byte[1]);
+
+        assertEquals(1, underTest.getLostCount());
+        executor.submit(() -> { }).get();
+        assertTrue(received.isEmpty());
+    }
+
+    @Test
+    public void connect_notifiesPeers() {
+        underTest.disconnect("device");
+
+        assertEquals(2, peerEvents.size());
+        assertEquals("device:" + MeshTransport.PEER_ADDED, peerEvents.get(0));
+        assertEquals("device:" + MeshTransport.PEER_REMOVED, peerEvents.get(1));
+    }
+}
@@ -0,0 +1,62 @@
+package rightmesh.left.io.gpstracker.core.uplink;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class DuplicateFilterTest {
+    private final DuplicateFilter underTest = new DuplicateFilter(2);
+
+    @Test
+    public void accept_rejectsSequenceSeenBefore() {
+        assertTrue(underTest.accept("a", 5));
+        assertTrue(underTest.accept("a", 7));
+        assertTrue(underTest.accept("b", 5));
+
+        assertFalse(underTest.accept("a", 5));
+        assertFalse(underTest.accept("a", 7));
+        // Behind the highest, but not seen yet.
+        assertTrue(underTest.accept("a", 6));
+        assertTrue(underTest.contains("a", 6));
+        assertFalse(underTest.contains("a", 4));
+        assertFalse(underTest.contains("a", 8));
+    }
+
+    @Test
+    public void accept_takesSenderStartingOverAsNew() {
+        underTest.accept("a", 1000);
+
+        assertTrue(underTest.accept("a", 1000 - DuplicateFilter.SEQUENCE_WINDOW));
+        assertFalse(underTest.contains("a", 1000));
+        assertFalse(underTest.accept("a", 1000 - DuplicateFilter.SEQUENCE_WINDOW));
+    }
+
+    @Test
+    public void accept_forgetsLeastRecentlyHeardSender() {
+        underTest.accept("a", 1);
+        underTest.accept("b", 1);
+        underTest.accept("a", 2);
+
+        underTest.accept("c", 1);
+
+        assertTrue(underTest.contains("a", 1));
+        assertFalse(underTest.contains("b", 1));
+    }
+
+    @Test
+    public void remove_letsSequenceBeAcceptedAgain() {
+        underTest.accept("a", 5);
+        underTest.accept("a", 6);
+
+        underTest.remove("a", 5);
+        // Outside the window or unknown: nothing to forget.
+        underTest.remove("a", 7);
+        underTest.remove("b", 5);
+
+        assertFalse(underTest.contains("a", 5));
+        assertTrue(underTest.contains("a", 6));
+        assertTrue(underTest.accept("a", 5));
+        assertFalse(underTest.accept("a", 5));
+    }
+}
@@ -0,0 +1,53 @@
+package rightmesh.left.io.gpstracker.core.uplink;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import rightmesh.left.io.gpstracker.core.codec.LocationFix;
+
+public class FixQueueTest {
+    private static final int CAPACITY = 2;
+
+    private final LocationFix fix = new LocationFix();
+
+    private FixQueue underTest;
+
+    /**
+     * Set underTest before each test case.
+     */
+    @Before
+    public void setUp() {
+        underTest = new FixQueue(CAPACITY);
+    }
+
+    @Test
+    public void poll_returnsFixesInOrder() {
+        underTest.offer(fix.set(49.1, -123.1), 10);
+        underTest.offer(fix.set(49.2, -123.2), 20);
+
+        assertEquals(10, underTest.poll(fix));
+        assertEquals(49.1, fix.getLatitude(), 0);
+        assertEquals(20, underTest.poll(fix));
+        assertEquals(49.2, fix.getLatitude(), 0);
+        assertEquals(FixQueue.EMPTY, underTest.poll(fix));
+    }
+
+    @Test
+    public void offer_dropsOldestWhenFull() {
+        assertTrue(underTest.offer(fix.set(49.1, -123.1), 10));
+        assertTrue(underTest.offer(fix.set(49.2, -123.2), 20));
+
+        assertFalse(underTest.offer(fix.set(49.3, -123.3), 30));
+
+        assertEquals(CAPACITY, underTest.size());
+        assertEquals(1, underTest.getDroppedCount());
+        assertEquals(20, underTest.poll(fix));
+        assertEquals(49.2, fix.getLatitude(), 0);
+        assertEquals(30, underTest.poll(fix));
+        assertEquals(49.3, fix.getLatitude(), 0);
+    }
+}
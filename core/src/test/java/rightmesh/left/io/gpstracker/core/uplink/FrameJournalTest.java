@@ -0,0 +1,159 @@
+package rightmesh.left.io.gpstracker.core.uplink;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class FrameJournalTest {
+    // Room for exactly four 12-byte frames.
+    private static final int CAPACITY = 4 * (FrameJournal.RECORD_HEADER_SIZE + 12);
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File file;
+
+    private FrameJournal underTest;
+
+    /**
+     * Open underTest on a fresh file before each test case.
+     *
+     * @throws IOException the journal cannot be opened
+     */
+    @Before
+    public void setUp() throws IOException {
+        file = new File(folder.getRoot(), "uplink.journal");
+        underTest = FrameJournal.open(file, CAPACITY);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        underTest.close();
+    }
+
+    @Test
+    public void append_peekAndRemoveInOrder() {
+        underTest.append(frame(1));
+        underTest.append(frame(2));
+
+        assertArrayEquals(frame(1), underTest.peek());
+        underTest.remove();
+        assertArrayEquals(frame(2), underTest.peek());
+        underTest.remove();
+        assertNull(underTest.peek());
+        assertTrue(underTest.isEmpty());
+    }
+
+    @Test
+    public void append_compactsWhenTailReachesEnd() {
+        for (int i = 0; i < 4; i++) {
+            underTest.append(frame(i));
+        }
+        underTest.remove();
+        underTest.remove();
+
+        underTest.append(frame(4));
+
+        assertEquals(3, underTest.size());
+        assertEquals(0, underTest.getDroppedCount());
+        assertArrayEquals(frame(2), underTest.peek());
+    }
+
+    @Test
+    public void append_dropsOldestWhenFull() {
+        for (int i = 0; i < 6; i++) {
+            underTest.append(frame(i));
+        }
+
+        assertEquals(4, underTest.size());
+        assertEquals(2, underTest.getDroppedCount());
+        assertArrayEquals(frame(2), underTest.peek());
+    }
+
+    @Test
+    public void append_rejectsFrameLargerThanJournal() {
+        assertFalse(underTest.append(new byte[CAPACITY]));
+        assertTrue(underTest.isEmpty());
+    }
+
+    @Test
+    public void open_recoversBacklog() throws IOException {
+        underTest.append(frame(1));
+        underTest.append(frame(2));
+        underTest.remove();
+        underTest.close();
+
+        underTest = FrameJournal.open(file, CAPACITY);
+
+        assertEquals(1, underTest.size());
+        assertArrayEquals(frame(2), underTest.peek());
+    }
+
+    @Test
+    public void open_finishesInterruptedCompaction() throws IOException {
+        for (int i = 0; i < 4; i++) {
+            underTest.append(frame(i));
+        }
+        underTest.remove();
+        // One record of gap before the three live ones: the move takes three chunks.
+        assertFalse(underTest.compact(1));
+        underTest.close();
+
+        underTest = FrameJournal.open(file, CAPACITY);
+
+        assertEquals(3, underTest.size());
+        underTest.append(frame(4));
+        for (int i = 1; i <= 4; i++) {
+            assertArrayEquals(frame(i), underTest.peek());
+            underTest.remove();
+        }
+        assertTrue(underTest.isEmpty());
+    }
+
+    @Test
+    public void open_finishesCompactionInterruptedAfterDrop() throws IOException {
+        for (int i = 0; i < 4; i++) {
+            underTest.append(frame(i));
+        }
+        // Full: the next frame drops the oldest, then the three left move in three chunks.
+        assertFalse(underTest.makeRoom(FrameJournal.RECORD_HEADER_SIZE + 12, 1));
+        underTest.close();
+
+        underTest = FrameJournal.open(file, CAPACITY);
+
+        assertEquals(3, underTest.size());
+        for (int i = 1; i <= 3; i++) {
+            assertArrayEquals(frame(i), underTest.peek());
+            underTest.remove();
+        }
+        assertTrue(underTest.isEmpty());
+    }
+
+    @Test
+    public void open_resetsJournalOfOtherCapacity() throws IOException {
+        underTest.append(frame(1));
+        underTest.close();
+
+        underTest = FrameJournal.open(file, 2 * CAPACITY);
+
+        assertTrue(underTest.isEmpty());
+    }
+
+    private static byte[] frame(int id) {
+        byte[] frame = new byte[12];
+        frame[0] = (byte) id;
+        frame[11] = (byte) id;
+        return frame;
+    }
+}
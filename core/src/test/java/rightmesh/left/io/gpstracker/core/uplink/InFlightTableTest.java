@@ -0,0 +1,97 @@
+package rightmesh.left.io.gpstracker.core.uplink;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class InFlightTableTest {
+    private static final long TIMEOUT_MS = 100;
+    private static final long TIMEOUT_NANOS = TimeUnit.MILLISECONDS.toNanos(TIMEOUT_MS);
+
+    private final InFlightTable underTest = new InFlightTable(2, TIMEOUT_MS, 2);
+
+    private final List<Long> retransmitted = new ArrayList<>();
+
+    private final List<Long> dropped = new ArrayList<>();
+
+    private final InFlightTable.Retransmitter retransmitter = new InFlightTable.Retransmitter() {
+        @Override
+        public int retransmit(long sequence, byte[] frame) {
+            retransmitted.add(sequence);
+            return 100 + (int) sequence;
+        }
+
+        @Override
+        public void onDropped(long sequence, byte[] frame) {
+            dropped.add(sequence);
+        }
+    };
+
+    @Test
+    public void hasCapacity_isFalseOnceWindowIsFull() {
+        underTest.add(0, 10, new byte[1], 0);
+        assertTrue(underTest.hasCapacity());
+
+        underTest.add(1, 11, new byte[1], 0);
+
+        assertFalse(underTest.hasCapacity());
+        assertEquals(11, underTest.getDataId(1));
+    }
+
+    @Test
+    public void acknowledge_returnsTimeSinceFirstSendOnce() {
+        underTest.add(0, 10, new byte[1], 1000);
+
+        assertEquals(500, underTest.acknowledge(0, 1500));
+        assertEquals(-1, underTest.acknowledge(0, 1600));
+        assertEquals(0, underTest.size());
+        assertEquals(InFlightTable.NO_DATA_ID, underTest.getDataId(0));
+    }
+
+    @Test
+    public void expire_retransmitsThenDropsOverdueFrames() {
+        underTest.add(0, 10, new byte[1], 0);
+        underTest.add(1, 11, new byte[1], TIMEOUT_NANOS / 2);
+
+        assertEquals(1, underTest.expire(TIMEOUT_NANOS, retransmitter));
+        assertEquals(1, retransmitted.size());
+        assertEquals(100, underTest.getDataId(0));
+
+        // Frame 1 times out before the retransmitted frame 0.
+        assertEquals(1, underTest.expire(TIMEOUT_NANOS * 3 / 2, retransmitter));
+        assertEquals(Long.valueOf(1), retransmitted.get(1));
+
+        assertEquals(2, underTest.expire(TIMEOUT_NANOS * 3, retransmitter));
+        assertEquals(2, dropped.size());
+        assertEquals(0, underTest.size());
+    }
+
+    @Test
+    public void acknowledge_measuresFromFirstSendAfterRetransmission() {
+        underTest.add(0, 10, new byte[1], 0);
+        underTest.expire(TIMEOUT_NANOS, retransmitter);
+
+        assertEquals(TIMEOUT_NANOS + 1, underTest.acknowledge(0, TIMEOUT_NANOS + 1));
+    }
+
+    @Test
+    public void dropAll_handsBackFramesInSendOrder() {
+        underTest.add(0, 10, new byte[1], 0);
+        underTest.add(1, 11, new byte[1], TIMEOUT_NANOS / 2);
+        // Retransmitted, so now sent after frame 1.
+        underTest.expire(TIMEOUT_NANOS, retransmitter);
+
+        assertEquals(2, underTest.dropAll(retransmitter));
+
+        assertEquals(Long.valueOf(1), dropped.get(0));
+        assertEquals(Long.valueOf(0), dropped.get(1));
+        assertEquals(0, underTest.size());
+        assertTrue(underTest.hasCapacity());
+    }
+}
@@ -0,0 +1,125 @@
+package rightmesh.left.io.gpstracker.core.uplink;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class LaneSchedulerTest {
+    private static final int FRAME_SIZE = 128;
+    private static final int FRAMES = 40;
+
+    private final List<Byte> sent = new ArrayList<>();
+
+    private final PendingFrameQueue first = new PendingFrameQueue(FRAMES);
+
+    private final PendingFrameQueue second = new PendingFrameQueue(FRAMES);
+
+    private boolean meshUp;
+
+    private LaneScheduler underTest;
+
+    /**
+     * Set underTest before each test case: two unlimited lanes sharing a mesh that is up, with a
+     * quantum of one frame.
+     */
+    @Before
+    public void setUp() {
+        meshUp = true;
+        underTest = new LaneScheduler(2, frame -> {
+            if (meshUp) {
+                sent.add(frame[0]);
+            }
+            return meshUp;
+        }, FRAME_SIZE);
+        underTest.setQueue(0, first);
+        underTest.setQueue(1, second);
+    }
+
+    @Test
+    public void pump_sendsStrictPriorityLaneFirst() {
+        underTest.setLimits(0, 0, 0, 0);
+        underTest.setLimits(1, 1, 0, 0);
+        fill(second, 1, 2);
+        fill(first, 0, 2);
+
+        assertEquals(4, underTest.pump(0, FRAMES));
+
+        assertEquals(0, (byte) sent.get(0));
+        assertEquals(0, (byte) sent.get(1));
+        assertEquals(1, (byte) sent.get(2));
+        assertEquals(0, underTest.size());
+    }
+
+    @Test
+    public void pump_sharesBytesByWeight() {
+        underTest.setLimits(0, 3, 0, 0);
+        underTest.setLimits(1, 1, 0, 0);
+        fill(first, 0, FRAMES);
+        fill(second, 1, FRAMES);
+
+        assertEquals(8, underTest.pump(0, 8));
+
+        int fromFirst = 0;
+        for (byte lane : sent) {
+            fromFirst += lane == 0 ? 1 : 0;
+        }
+        assertEquals(6, fromFirst);
+        // The weighted lane alone gets everything.
+        first.clear();
+        sent.clear();
+        assertEquals(FRAMES - 2, underTest.pump(0, FRAMES));
+    }
+
+    @Test
+    public void pump_holdsRateLimitedLaneUntilItEarnsToken() {
+        underTest.setLimits(0, 1, 0, 0);
+        underTest.setLimits(1, 1, 10, 2);
+        fill(second, 1, 5);
+
+        assertEquals(2, underTest.pump(0, FRAMES));
+        long delay = underTest.getDelayNanos(0);
+        assertTrue(delay >= TimeUnit.MILLISECONDS.toNanos(99)
+                && delay <= TimeUnit.MILLISECONDS.toNanos(101));
+
+        // Other lanes are not held back.
+        fill(first, 0, 1);
+        assertEquals(1, underTest.pump(TimeUnit.MILLISECONDS.toNanos(50), FRAMES));
+        assertEquals(1, underTest.pump(TimeUnit.MILLISECONDS.toNanos(150), FRAMES));
+        assertEquals(2, underTest.size());
+        assertFalse(underTest.isBlocked());
+    }
+
+    @Test
+    public void pump_keepsFrameWhenSendFails() {
+        underTest.setLimits(0, 0, 0, 0);
+        underTest.setLimits(1, 1, 0, 0);
+        fill(first, 0, 1);
+        fill(second, 1, 1);
+        meshUp = false;
+
+        assertEquals(0, underTest.pump(0, FRAMES));
+        assertTrue(underTest.isBlocked());
+        assertEquals(2, underTest.size());
+
+        meshUp = true;
+        assertEquals(2, underTest.pump(0, FRAMES));
+        assertFalse(underTest.isBlocked());
+        assertEquals(-1, underTest.getDelayNanos(0));
+    }
+
+    private static void fill(PendingFrameQueue queue, int lane, int count) {
+        for (int i = 0; i < count; i++) {
+            byte[] frame = new byte[FRAME_SIZE];
+            frame[0] = (byte) lane;
+            queue.offer(ByteBuffer.wrap(frame), 1);
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package rightmesh.left.io.gpstracker.core.uplink;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import rightmesh.left.io.gpstracker.core.codec.LocationCodec;
+import rightmesh.left.io.gpstracker.core.codec.LocationFix;
+
+public class LocationBatcherTest {
+    private static final int MAX_FIXES = 3;
+    private static final long MAX_AGE_MILLIS = 10000;
+
+    private final List<byte[]> frames = new ArrayList<>();
+
+    private final LocationFix fix = new LocationFix();
+
+    private LocationBatcher underTest;
+
+    /**
+     * Set underTest before each test case.
+     */
+    @Before
+    public void setUp() {
+        frames.clear();
+        underTest = new LocationBatcher(MAX_FIXES, MAX_AGE_MILLIS,
+                (frame, fixCount) -> frames.add(
+                        Arrays.copyOfRange(frame.array(), frame.position(), frame.limit())));
+    }
+
+    @Test
+    public void add_flushesWhenFull() {
+        underTest.add(fix.set(49.1, -123.1), 0);
+        underTest.add(fix.set(49.2, -123.2), 1);
+        assertTrue(frames.isEmpty());
+
+        underTest.add(fix.set(49.3, -123.3), 2);
+
+        assertEquals(1, frames.size());
+        assertEquals(0, underTest.size());
+
+        List<LocationFix> decoded = LocationCodec.decode(frames.get(0));
+        assertEquals(3, decoded.size());
+        assertEquals(49.1, decoded.get(0).getLatitude(), 0);
+        assertEquals(-123.3, decoded.get(2).getLongitude(), 0);
+    }
+
+    @Test
+    public void add_flushesWhenOldestFixExpired() {
+        underTest.add(fix.set(49.1, -123.1), 0);
+        underTest.add(fix.set(49.2, -123.2), MAX_AGE_MILLIS);
+
+        assertEquals(1, frames.size());
+        assertEquals(2, LocationCodec.decode(frames.get(0)).size());
+    }
+
+    @Test
+    public void flushIfExpired_onlyFlushesStaleBatch() {
+        assertFalse(underTest.flushIfExpired(MAX_AGE_MILLIS));
+
+        underTest.add(fix.set(49.1, -123.1), 100);
+        assertFalse(underTest.flushIfExpired(MAX_AGE_MILLIS));
+        assertTrue(underTest.flushIfExpired(100 + MAX_AGE_MILLIS));
+
+        assertEquals(1, frames.size());
+    }
+
+    @Test
+    public void add_copiesReusedFix() {
+        underTest.add(fix.set(49.1, -123.1), 0);
+        fix.set(0, 0);
+        underTest.flush();
+
+        assertEquals(49.1, LocationCodec.decode(frames.get(0)).get(0).getLatitude(), 0);
+    }
+}
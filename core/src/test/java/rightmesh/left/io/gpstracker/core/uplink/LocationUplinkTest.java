@@ -0,0 +1,570 @@
+package rightmesh.left.io.gpstracker.core.uplink;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import rightmesh.left.io.gpstracker.core.codec.AggregateCodec;
+import rightmesh.left.io.gpstracker.core.codec.DeliveryCodec;
+import rightmesh.left.io.gpstracker.core.codec.FrameCompressor;
+import rightmesh.left.io.gpstracker.core.codec.GeofenceEvent;
+import rightmesh.left.io.gpstracker.core.codec.GeofenceEventCodec;
+import rightmesh.left.io.gpstracker.core.codec.LocationCodec;
+import rightmesh.left.io.gpstracker.core.codec.LocationFix;
+import rightmesh.left.io.gpstracker.core.codec.RelayedFrame;
+import rightmesh.left.io.gpstracker.core.geofence.CircleGeofence;
+import rightmesh.left.io.gpstracker.core.geofence.GeofenceEngine;
+import rightmesh.left.io.gpstracker.core.metrics.MetricsRegistry;
+import rightmesh.left.io.gpstracker.core.metrics.MetricsSnapshot;
+import rightmesh.left.io.gpstracker.core.transport.LoopbackNetwork;
+import rightmesh.left.io.gpstracker.core.transport.LoopbackTransport;
+import rightmesh.left.io.gpstracker.core.transport.MeshTransport;
+
+public class LocationUplinkTest {
+    private static final int MAX_FIXES = 2;
+    private static final long MAX_AGE_MILLIS = 60000;
+    private static final long TIMEOUT_MS = 1000;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final BlockingQueue<byte[]> received = new LinkedBlockingQueue<>();
+
+    private final LocationFix fix = new LocationFix();
+
+    private ScheduledExecutorService executor;
+
+    private LoopbackNetwork network;
+
+    private LoopbackTransport superPeer;
+
+    private FrameJournal journal;
+
+    private LocationUplink underTest;
+
+    /**
+     * Set underTest before each test case.
+     *
+     * @throws IOException the journal cannot be opened
+     */
+    @Before
+    public void setUp() throws IOException {
+        executor = Executors.newSingleThreadScheduledExecutor();
+        network = new LoopbackNetwork(executor, 1);
+        superPeer = network.join("superpeer");
+        superPeer.setOnTransportEventListener(new MeshTransport.OnTransportEventListener() {
+            @Override
+            public void onStateChanged(String localId, boolean connected) {
+            }
+
+            @Override
+            public void onPeerChanged(String peerId, int state) {
+            }
+
+            @Override
+            public void onDataReceived(String peerId, byte[] data) {
+                received.add(data);
+            }
+        });
+        network.connect("superpeer");
+
+        journal = FrameJournal.open(new File(folder.getRoot(), "uplink.journal"), 1024);
+        underTest = new LocationUplink("superpeer", executor)
+                .setBatchLimits(MAX_FIXES, MAX_AGE_MILLIS);
+        underTest.setTransport(network.join("device"));
+        underTest.start();
+        executor.execute(() -> underTest.setJournal(journal));
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        executor.shutdownNow();
+        journal.close();
+    }
+
+    @Test
+    public void offer_sendsFullBatch() throws InterruptedException {
+        network.connect("device");
+
+        underTest.offer(fix.set(49.1, -123.1));
+        underTest.offer(fix.set(49.2, -123.2));
+
+        byte[] frame = received.poll(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        assertNotNull(frame);
+        List<LocationFix> fixes = LocationCodec.decode(frame);
+        assertEquals(MAX_FIXES, fixes.size());
+        assertEquals(49.2, fixes.get(1).getLatitude(), 0);
+    }
+
+    @Test
+    public void offer_sendsCompressedBatch() throws Exception {
+        LocationUplink compressing = new LocationUplink("superpeer", executor)
+                .setBatchLimits(2 * MAX_FIXES, MAX_AGE_MILLIS)
+                .setCompression(6);
+        compressing.setTransport(network.join("compressing"));
+        compressing.start();
+        network.connect("compressing");
+
+        for (int i = 0; i < 2 * MAX_FIXES; i++) {
+            compressing.offer(fix.set(49, -123).setTime(i * 1000L));
+        }
+
+        byte[] frame = received.poll(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        assertTrue(FrameCompressor.isCompressed(frame));
+        List<LocationFix> fixes = LocationCodec.decode(FrameCompressor.decompress(frame));
+        assertEquals(2 * MAX_FIXES, fixes.size());
+        assertEquals(3000, fixes.get(3).getTimeMillis());
+        executor.submit(() -> { }).get(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        assertEquals(1, compressing.getCompressTimer().getCount());
+    }
+
+    @Test
+    public void offer_replaysBacklogWhenLinkComesUp() throws Exception {
+        for (int i = 0; i < 2 * MAX_FIXES; i++) {
+            underTest.offer(fix.set(i, 0));
+        }
+        underTest.stop();
+        executor.submit(() -> { }).get(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        assertNull(received.poll());
+
+        network.connect("device");
+
+        byte[] first = received.poll(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        byte[] second = received.poll(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        assertEquals(0, LocationCodec.decode(first).get(0).getLatitude(), 0);
+        assertEquals(MAX_FIXES, LocationCodec.decode(second).get(0).getLatitude(), 0);
+        assertEquals(0, journal.size());
+    }
+
+    @Test
+    public void offer_onlySendsGeofenceTransitions() throws Exception {
+        network.connect("device");
+        executor.execute(() -> underTest.setGeofences(new GeofenceEngine(
+                Collections.singletonList(new CircleGeofence(7, 49, -123, 100)))));
+
+        underTest.offer(fix.set(49.01, -123));
+        underTest.offer(fix.set(49, -123));
+        underTest.offer(fix.set(49.0001, -123));
+        underTest.offer(fix.set(49.01, -123));
+
+        List<GeofenceEvent> enter = GeofenceEventCodec.decode(
+                received.poll(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+        assertEquals(GeofenceEvent.ENTER, enter.get(0).getTransition());
+        assertEquals(7, enter.get(0).getFenceId());
+        assertEquals(49, enter.get(0).getFix().getLatitude(), 0);
+        List<GeofenceEvent> exit = GeofenceEventCodec.decode(
+                received.poll(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+        assertEquals(GeofenceEvent.EXIT, exit.get(0).getTransition());
+        executor.submit(() -> { }).get(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        assertNull(received.poll());
+    }
+
+    @Test
+    public void offer_warmStartHoldsFixesUntilLinkIsUp() throws Exception {
+        LocationUplink warmStarting = new LocationUplink("superpeer", executor)
+                .setBatchLimits(MAX_FIXES, MAX_AGE_MILLIS)
+                .setWarmStart(MAX_AGE_MILLIS);
+        warmStarting.setTransport(network.join("warm"));
+        warmStarting.start();
+
+        warmStarting.offer(fix.set(49.1, -123.1));
+        executor.submit(() -> { }).get(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        assertNull(received.poll());
+        assertEquals(1, warmStarting.getStatus().getQueuedFixes());
+        assertEquals(0, warmStarting.getStatus().getFailedFrames());
+
+        network.connect("warm");
+
+        // The batch is not full, but goes out as soon as the link is up.
+        byte[] frame = received.poll(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        assertNotNull(frame);
+        assertEquals(49.1, LocationCodec.decode(frame).get(0).getLatitude(), 0);
+        executor.submit(() -> { }).get(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        long connectedMillis = warmStarting.getStartupTrace().getTimeToConnectedMillis();
+        assertTrue(connectedMillis >= 0);
+        assertTrue(warmStarting.getStartupTrace().getTimeToFirstDeliveryMillis()
+                >= connectedMillis);
+    }
+
+    @Test
+    public void offer_countsBytesSentAndFailuresByType() throws Exception {
+        for (int i = 0; i < MAX_FIXES; i++) {
+            underTest.offer(fix.set(i, 0));
+        }
+        executor.submit(() -> { }).get(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+
+        network.connect("device");
+
+        byte[] frame = received.poll(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        assertNotNull(frame);
+        executor.submit(() -> { }).get(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        MetricsRegistry metrics = underTest.getMetrics();
+        assertEquals(1, metrics.counter(LocationUplink.METRIC_SEND_FAILURES_PREFIX
+                + "TransportException").get());
+        assertEquals(1, metrics.counter(LocationUplink.METRIC_SENT_FRAMES).get());
+        assertEquals(frame.length, metrics.counter(LocationUplink.METRIC_SENT_BYTES).get());
+        MetricsSnapshot snapshot = metrics.snapshot(0);
+        assertEquals(Long.valueOf(0), snapshot.getValues().get(LocationUplink.METRIC_QUEUE_DEPTH));
+        assertEquals(2, snapshot.getDistributions().get(LocationUplink.METRIC_SEND_NANOS)
+                .getCount());
+    }
+
+    @Test
+    public void offer_waitsForAcknowledgementsAndResendsUnacknowledgedFrame() throws Exception {
+        LocationUplink tracked = new LocationUplink("superpeer", executor)
+                .setBatchLimits(MAX_FIXES, MAX_AGE_MILLIS)
+                .setDeliveryTracking(1, 50, 2);
+        tracked.setTransport(network.join("tracked"));
+        tracked.start();
+        FrameJournal trackedJournal = FrameJournal.open(
+                new File(folder.getRoot(), "tracked.journal"), 1024);
+        executor.execute(() -> tracked.setJournal(trackedJournal));
+        network.connect("tracked");
+
+        for (int i = 0; i < 2 * MAX_FIXES; i++) {
+            tracked.offer(fix.set(i, 0));
+        }
+
+        // Only one frame may be in flight.
+        byte[] first = received.poll(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        long sequence = DeliveryCodec.getSequence(first);
+        // Numbered from the clock, so a restarted device does not reuse numbers.
+        assertTrue(sequence > 0);
+        assertEquals(0, LocationCodec.decode(DeliveryCodec.unwrap(first)).get(0).getLatitude(),
+                0);
+        assertNull(received.poll(20, TimeUnit.MILLISECONDS));
+
+        superPeer.send("tracked", DeliveryCodec.encodeAck(new long[]{sequence}, 1));
+
+        byte[] second = received.poll(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        assertEquals(sequence + 1, DeliveryCodec.getSequence(second));
+        // Not acknowledged: sent once more, then journaled and replayed under a new number.
+        byte[] resent = received.poll(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        assertEquals(sequence + 1, DeliveryCodec.getSequence(resent));
+        byte[] replayed = received.poll(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        assertEquals(sequence + 2, DeliveryCodec.getSequence(replayed));
+        assertArrayEquals(DeliveryCodec.unwrap(second), DeliveryCodec.unwrap(replayed));
+
+        superPeer.send("tracked", DeliveryCodec.encodeAck(new long[]{sequence + 2}, 1));
+        assertNull(received.poll(200, TimeUnit.MILLISECONDS));
+        executor.submit(() -> { }).get(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+
+        MetricsRegistry metrics = tracked.getMetrics();
+        assertEquals(2, metrics.counter(LocationUplink.METRIC_ACKED_FRAMES).get());
+        assertEquals(1, metrics.counter(LocationUplink.METRIC_RETRANSMITTED_FRAMES).get());
+        assertEquals(0, metrics.counter(LocationUplink.METRIC_LOST_FRAMES).get());
+        assertEquals(2, tracked.getDeliveryTimer().getCount());
+        assertEquals(0, trackedJournal.size());
+        // Waiting for the window is not a failed send.
+        assertEquals(0, tracked.getStatus().getFailedFrames());
+        assertEquals(0, metrics.counter(LocationUplink.METRIC_NO_TRANSPORT).get());
+        trackedJournal.close();
+    }
+
+    @Test
+    public void offer_keepsFramesInFlightWhileMeshIsDown() throws Exception {
+        LocationUplink tracked = new LocationUplink("superpeer", executor)
+                .setBatchLimits(MAX_FIXES, MAX_AGE_MILLIS)
+                .setDeliveryTracking(1, 50, 2);
+        tracked.setTransport(network.join("tracked"));
+        tracked.start();
+        FrameJournal trackedJournal = FrameJournal.open(
+                new File(folder.getRoot(), "tracked.journal"), 1024);
+        executor.execute(() -> tracked.setJournal(trackedJournal));
+        network.connect("tracked");
+
+        for (int i = 0; i < MAX_FIXES; i++) {
+            tracked.offer(fix.set(i, 0));
+        }
+        final byte[] first = received.poll(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        network.disconnect("tracked");
+
+        // Far past both attempts: the frame neither times out nor moves to the journal.
+        assertNull(received.poll(300, TimeUnit.MILLISECONDS));
+        executor.submit(() -> { }).get(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        assertEquals(0, trackedJournal.size());
+
+        network.connect("tracked");
+        byte[] resent = received.poll(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        assertArrayEquals(first, resent);
+        superPeer.send("tracked", DeliveryCodec.encodeAck(
+                new long[]{DeliveryCodec.getSequence(first)}, 1));
+        assertNull(received.poll(200, TimeUnit.MILLISECONDS));
+        executor.submit(() -> { }).get(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+
+        assertEquals(1, tracked.getMetrics().counter(LocationUplink.METRIC_ACKED_FRAMES).get());
+        assertEquals(0, trackedJournal.size());
+        trackedJournal.close();
+    }
+
+    @Test
+    public void stop_journalsFramesInFlightWithoutEnvelope() throws Exception {
+        LocationUplink tracked = new LocationUplink("superpeer", executor)
+                .setBatchLimits(MAX_FIXES, MAX_AGE_MILLIS)
+                .setDeliveryTracking(2, 60000, 3);
+        tracked.setTransport(network.join("tracked"));
+        tracked.start();
+        FrameJournal trackedJournal = FrameJournal.open(
+                new File(folder.getRoot(), "tracked.journal"), 1024);
+        executor.execute(() -> tracked.setJournal(trackedJournal));
+        network.connect("tracked");
+
+        for (int i = 0; i < 3 * MAX_FIXES; i++) {
+            tracked.offer(fix.set(i, 0));
+        }
+        final byte[] first = received.poll(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        final byte[] second = received.poll(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        assertNull(received.poll(20, TimeUnit.MILLISECONDS));
+
+        tracked.stop();
+        executor.submit(() -> { }).get(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+
+        // Both unacknowledged frames, in order, then the one waiting for the window.
+        assertEquals(3, trackedJournal.size());
+        assertArrayEquals(DeliveryCodec.unwrap(first), trackedJournal.peek());
+        trackedJournal.remove();
+        assertArrayEquals(DeliveryCodec.unwrap(second), trackedJournal.peek());
+        trackedJournal.remove();
+        assertEquals(4, LocationCodec.decode(trackedJournal.peek()).get(0).getLatitude(), 0);
+        trackedJournal.close();
+    }
+
+    @Test
+    public void offer_sendsFreshBatchAheadOfRateLimitedBacklog() throws Exception {
+        FrameJournal backlog = FrameJournal.open(new File(folder.getRoot(), "lanes.journal"),
+                1024);
+        for (int i = 0; i < 5; i++) {
+            backlog.append(new byte[]{(byte) i});
+        }
+        LocationUplink laned = new LocationUplink("superpeer", executor)
+                .setBatchLimits(MAX_FIXES, MAX_AGE_MILLIS)
+                .setLaneLimits(LocationUplink.LANE_BACKFILL, 1, 1, 1);
+        laned.setTransport(network.join("laned"));
+        laned.start();
+        executor.execute(() -> laned.setJournal(backlog));
+        network.connect("laned");
+
+        // One stored frame goes out right away, the next only a second later.
+        assertEquals(0, received.poll(TIMEOUT_MS, TimeUnit.MILLISECONDS)[0]);
+        laned.offer(fix.set(49.1, -123.1));
+        laned.offer(fix.set(49.2, -123.2));
+
+        byte[] fresh = received.poll(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        assertNotNull(fresh);
+        assertEquals(49.2, LocationCodec.decode(fresh).get(1).getLatitude(), 1e-6);
+        assertEquals(1, received.poll(2 * TIMEOUT_MS, TimeUnit.MILLISECONDS)[0]);
+        executor.submit(() -> { }).get(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        UplinkStatus status = laned.getStatus();
+        assertEquals(1, status.getSentFrames());
+        assertEquals(2, status.getReplayedFrames());
+        assertEquals(3, status.getBacklogFrames());
+        backlog.close();
+    }
+
+    @Test
+    public void offer_relaysNeighbourFramesWithOwnBatch() throws Exception {
+        LocationUplink relaying = new LocationUplink("superpeer", executor)
+                .setBatchLimits(MAX_FIXES, MAX_AGE_MILLIS)
+                .setRelayAggregation(4, MAX_AGE_MILLIS);
+        relaying.setTransport(network.join("relay"));
+        relaying.start();
+        network.connect("relay");
+        BlockingQueue<byte[]> acks = new LinkedBlockingQueue<>();
+        LoopbackTransport neighbour = network.join("neighbour");
+        neighbour.setOnTransportEventListener(new MeshTransport.OnTransportEventListener() {
+            @Override
+            public void onStateChanged(String localId, boolean connected) {
+            }
+
+            @Override
+            public void onPeerChanged(String peerId, int state) {
+            }
+
+            @Override
+            public void onDataReceived(String peerId, byte[] data) {
+                acks.add(data);
+            }
+        });
+        network.connect("neighbour");
+        byte[] neighbourFrame = LocationCodec.encode(
+                new LocationFix[]{new LocationFix().set(50, -120)}, 1);
+
+        // Sent again as if the relay was too slow to acknowledge.
+        neighbour.send("relay", DeliveryCodec.wrap(7, neighbourFrame));
+        neighbour.send("relay", DeliveryCodec.wrap(7, neighbourFrame));
+        // Not acknowledged while it is only held by the relay.
+        assertNull(acks.poll(50, TimeUnit.MILLISECONDS));
+        relaying.offer(fix.set(49.1, -123.1));
+        relaying.offer(fix.set(49.2, -123.2));
+
+        List<RelayedFrame> entries = AggregateCodec.decode(
+                received.poll(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+        assertEquals(2, entries.size());
+        assertEquals(MAX_FIXES, LocationCodec.decode(entries.get(0).getFrame()).size());
+        assertEquals("neighbour", entries.get(1).getSenderId());
+        assertEquals(7, entries.get(1).getSequence());
+        assertEquals(50, LocationCodec.decode(entries.get(1).getFrame()).get(0).getLatitude(),
+                0);
+        assertEquals(7, DeliveryCodec.decodeAck(acks.poll(TIMEOUT_MS, TimeUnit.MILLISECONDS))[0]);
+        // A copy of a delivered frame is acknowledged again, its acknowledgement was lost.
+        neighbour.send("relay", DeliveryCodec.wrap(7, neighbourFrame));
+        assertEquals(7, DeliveryCodec.decodeAck(acks.poll(TIMEOUT_MS, TimeUnit.MILLISECONDS))[0]);
+        assertNull(received.poll(50, TimeUnit.MILLISECONDS));
+        assertEquals(2, relaying.getMetrics().counter(LocationUplink.METRIC_RELAY_DUPLICATES)
+                .get());
+    }
+
+    @Test
+    public void offer_acknowledgesRelayedFrameOnceSuperPeerDid() throws Exception {
+        LocationUplink relaying = new LocationUplink("superpeer", executor)
+                .setRelayAggregation(1, MAX_AGE_MILLIS)
+                .setDeliveryTracking(4, MAX_AGE_MILLIS, 2);
+        relaying.setTransport(network.join("relay"));
+        relaying.start();
+        network.connect("relay");
+        BlockingQueue<byte[]> acks = new LinkedBlockingQueue<>();
+        LoopbackTransport neighbour = network.join("neighbour");
+        neighbour.setOnTransportEventListener(new MeshTransport.OnTransportEventListener() {
+            @Override
+            public void onStateChanged(String localId, boolean connected) {
+            }
+
+            @Override
+            public void onPeerChanged(String peerId, int state) {
+            }
+
+            @Override
+            public void onDataReceived(String peerId, byte[] data) {
+                acks.add(data);
+            }
+        });
+        network.connect("neighbour");
+
+        neighbour.send("relay", DeliveryCodec.wrap(7, LocationCodec.encode(
+                new LocationFix[]{new LocationFix().set(50, -120)}, 1)));
+
+        // Forwarded alone once the relay holds one frame.
+        byte[] aggregate = received.poll(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        assertEquals("neighbour",
+                AggregateCodec.decode(DeliveryCodec.unwrap(aggregate)).get(0).getSenderId());
+        assertNull(acks.poll(50, TimeUnit.MILLISECONDS));
+
+        superPeer.send("relay", DeliveryCodec.encodeAck(
+                new long[]{DeliveryCodec.getSequence(aggregate)}, 1));
+
+        assertEquals(7, DeliveryCodec.decodeAck(acks.poll(TIMEOUT_MS, TimeUnit.MILLISECONDS))[0]);
+        assertEquals(1, relaying.getMetrics().counter(LocationUplink.METRIC_RELAYED_FRAMES)
+                .get());
+    }
+
+    @Test
+    public void offer_relaysFrameAgainOnceAggregateWasDropped() throws Exception {
+        // No journal: an aggregate not acknowledged after one attempt is dropped.
+        LocationUplink relaying = new LocationUplink("superpeer", executor)
+                .setRelayAggregation(1, MAX_AGE_MILLIS)
+                .setDeliveryTracking(4, 50, 1);
+        relaying.setTransport(network.join("relay"));
+        relaying.start();
+        network.connect("relay");
+        BlockingQueue<byte[]> acks = new LinkedBlockingQueue<>();
+        LoopbackTransport neighbour = network.join("neighbour");
+        neighbour.setOnTransportEventListener(new MeshTransport.OnTransportEventListener() {
+            @Override
+            public void onStateChanged(String localId, boolean connected) {
+            }
+
+            @Override
+            public void onPeerChanged(String peerId, int state) {
+            }
+
+            @Override
+            public void onDataReceived(String peerId, byte[] data) {
+                acks.add(data);
+            }
+        });
+        network.connect("neighbour");
+        byte[] neighbourFrame = DeliveryCodec.wrap(7, LocationCodec.encode(
+                new LocationFix[]{new LocationFix().set(50, -120)}, 1));
+
+        neighbour.send("relay", neighbourFrame);
+        assertNotNull(received.poll(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+        assertNull(received.poll(200, TimeUnit.MILLISECONDS));
+        executor.submit(() -> { }).get(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        MetricsRegistry metrics = relaying.getMetrics();
+        assertEquals(1, metrics.counter(LocationUplink.METRIC_LOST_FRAMES).get());
+
+        // The neighbour times out and sends its frame again.
+        neighbour.send("relay", neighbourFrame);
+        byte[] aggregate = received.poll(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        assertEquals(7,
+                AggregateCodec.decode(DeliveryCodec.unwrap(aggregate)).get(0).getSequence());
+        superPeer.send("relay", DeliveryCodec.encodeAck(
+                new long[]{DeliveryCodec.getSequence(aggregate)}, 1));
+
+        assertEquals(7, DeliveryCodec.decodeAck(acks.poll(TIMEOUT_MS, TimeUnit.MILLISECONDS))[0]);
+        assertEquals(2, metrics.counter(LocationUplink.METRIC_RELAYED_FRAMES).get());
+        assertEquals(0, metrics.counter(LocationUplink.METRIC_RELAY_DUPLICATES).get());
+    }
+
+    @Test
+    public void offer_failsOverWhenSuperPeerLeaves() throws Exception {
+        BlockingQueue<byte[]> backupReceived = new LinkedBlockingQueue<>();
+        network.join("backup").setOnTransportEventListener(
+                new MeshTransport.OnTransportEventListener() {
+                    @Override
+                    public void onStateChanged(String localId, boolean connected) {
+                    }
+
+                    @Override
+                    public void onPeerChanged(String peerId, int state) {
+                    }
+
+                    @Override
+                    public void onDataReceived(String peerId, byte[] data) {
+                        backupReceived.add(data);
+                    }
+                });
+        network.connect("backup");
+        SuperPeerSelector superPeers = new SuperPeerSelector(Arrays.asList("superpeer", "backup"));
+        LocationUplink failingOver = new LocationUplink(superPeers, executor);
+        failingOver.setTransport(network.join("roaming"));
+        failingOver.start();
+        network.connect("roaming");
+        String preferred = superPeers.select();
+        BlockingQueue<byte[]> preferredReceived =
+                preferred.equals("superpeer") ? received : backupReceived;
+        final BlockingQueue<byte[]> otherReceived =
+                preferred.equals("superpeer") ? backupReceived : received;
+
+        failingOver.offer(fix.set(49.1, -123.1));
+        assertNotNull(preferredReceived.poll(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+
+        network.disconnect(preferred);
+        failingOver.offer(fix.set(49.2, -123.2));
+
+        byte[] frame = otherReceived.poll(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        assertNotNull(frame);
+        assertEquals(49.2, LocationCodec.decode(frame).get(0).getLatitude(), 1e-6);
+        executor.submit(() -> { }).get(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        assertEquals(1, failingOver.getMetrics().counter(LocationUplink.METRIC_FAILOVERS).get());
+    }
+}
@@ -0,0 +1,77 @@
+package rightmesh.left.io.gpstracker.core.uplink;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+
+public class PendingFrameQueueTest {
+    private final PendingFrameQueue underTest = new PendingFrameQueue(2);
+
+    @Test
+    public void offer_copiesFrameUntilFull() {
+        ByteBuffer frame = ByteBuffer.wrap(new byte[]{0, 1, 2});
+        frame.position(1);
+
+        underTest.offer(frame, 1);
+        frame.put(1, (byte) 9);
+        underTest.offer(ByteBuffer.wrap(new byte[]{3}), 2);
+
+        assertEquals(1, frame.position());
+        assertTrue(underTest.isFull());
+        byte[] oldest = underTest.peek();
+        assertEquals(2, oldest.length);
+        assertEquals(1, oldest[0]);
+        assertSame(oldest, underTest.peek());
+        assertEquals(1, underTest.peekFixCount());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void offer_rejectsFrameOnceFull() {
+        underTest.offer(ByteBuffer.wrap(new byte[]{1}), 1);
+        underTest.offer(ByteBuffer.wrap(new byte[]{2}), 1);
+
+        underTest.offer(ByteBuffer.wrap(new byte[]{3}), 1);
+    }
+
+    @Test
+    public void peekBuffer_reusesSlotOfRemovedFrame() {
+        underTest.offer(ByteBuffer.wrap(new byte[]{1, 2}), 1);
+        ByteBuffer oldest = underTest.peekBuffer();
+        assertEquals(2, oldest.remaining());
+        assertEquals(1, oldest.get(0));
+        underTest.remove();
+        underTest.offer(ByteBuffer.wrap(new byte[]{3}), 1);
+        underTest.remove();
+
+        underTest.offer(ByteBuffer.wrap(new byte[]{4}), 1);
+
+        assertSame(oldest, underTest.peekBuffer());
+        assertEquals(1, oldest.remaining());
+        assertEquals(4, underTest.peek()[0]);
+    }
+
+    @Test
+    public void remove_keepsOrderAcrossWrapAround() {
+        for (int i = 0; i < 5; i++) {
+            if (underTest.isFull()) {
+                underTest.remove();
+            }
+            underTest.offer(ByteBuffer.wrap(new byte[]{(byte) i}), 1);
+        }
+
+        assertEquals(3, underTest.peek()[0]);
+        underTest.remove();
+        assertEquals(4, underTest.peek()[0]);
+        underTest.remove();
+        assertNull(underTest.peek());
+        assertNull(underTest.peekBuffer());
+        assertEquals(0, underTest.peekFixCount());
+        assertFalse(underTest.isFull());
+    }
+}
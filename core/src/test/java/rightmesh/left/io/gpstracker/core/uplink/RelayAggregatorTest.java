@@ -0,0 +1,99 @@
+package rightmesh.left.io.gpstracker.core.uplink;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.junit.Test;
+
+import rightmesh.left.io.gpstracker.core.codec.AggregateCodec;
+import rightmesh.left.io.gpstracker.core.codec.RelayedFrame;
+
+public class RelayAggregatorTest {
+    private static final long MAX_AGE_MS = 1000;
+
+    private final RelayAggregator underTest = new RelayAggregator(3, MAX_AGE_MS);
+
+    @Test
+    public void offer_dropsDuplicatesBySenderAndSequence() {
+        assertTrue(underTest.offer("a", 5, new byte[]{5}, 0));
+        assertTrue(underTest.offer("a", 7, new byte[]{7}, 0));
+        assertTrue(underTest.offer("b", 5, new byte[]{5}, 0));
+
+        assertFalse(underTest.offer("a", 5, new byte[]{5}, 0));
+        assertFalse(underTest.offer("a", 7, new byte[]{7}, 0));
+        // Behind the highest, but not seen yet.
+        assertTrue(underTest.offer("a", 6, new byte[]{6}, 0));
+        assertEquals(2, underTest.getDuplicateCount());
+        assertEquals(4, underTest.size());
+    }
+
+    @Test
+    public void offer_acceptsSenderStartingOver() {
+        underTest.offer("a", 1000, new byte[]{1}, 0);
+
+        assertTrue(underTest.offer("a", 0, new byte[]{0}, 0));
+        assertFalse(underTest.offer("a", 0, new byte[]{0}, 0));
+    }
+
+    @Test
+    public void isDelivered_onlyOnceRecorded() {
+        underTest.offer("a", 1, new byte[]{1}, 0);
+        assertFalse(underTest.isDelivered("a", 1));
+
+        underTest.onDelivered("a", 1);
+
+        assertTrue(underTest.isDelivered("a", 1));
+        assertFalse(underTest.isDelivered("b", 1));
+    }
+
+    @Test
+    public void drain_mergesOwnFrameFirst() {
+        assertNull(underTest.drain(new byte[]{9}));
+        underTest.offer("a", 1, new byte[]{1}, 0);
+        underTest.offer("b", 2, new byte[]{2}, 0);
+
+        List<RelayedFrame> entries = AggregateCodec.decode(underTest.drain(new byte[]{9}));
+
+        assertEquals(3, entries.size());
+        assertEquals("", entries.get(0).getSenderId());
+        assertArrayEquals(new byte[]{9}, entries.get(0).getFrame());
+        assertEquals("b", entries.get(2).getSenderId());
+        assertEquals(2, entries.get(2).getSequence());
+        assertEquals(0, underTest.size());
+    }
+
+    @Test
+    public void isExpired_countsFromOldestFrame() {
+        assertFalse(underTest.isExpired(MAX_AGE_MS));
+        underTest.offer("a", 1, new byte[]{1}, 100);
+        underTest.offer("a", 2, new byte[]{2}, 500);
+
+        assertFalse(underTest.isExpired(MAX_AGE_MS));
+        assertTrue(underTest.isExpired(100 + MAX_AGE_MS));
+        assertFalse(underTest.isFull());
+        underTest.offer("a", 3, new byte[]{3}, 600);
+        assertTrue(underTest.isFull());
+    }
+
+    @Test
+    public void onLost_acceptsCopiesOfLostFramesAgain() {
+        underTest.offer("a", 5, new byte[]{5}, 0);
+        underTest.offer("b", 5, new byte[]{5}, 0);
+        byte[] aggregate = underTest.drain(new byte[]{1});
+        underTest.offer("a", 6, new byte[]{6}, 0);
+        underTest.drain(null);
+
+        underTest.onLost(aggregate);
+        // Not an aggregate: ignored.
+        underTest.onLost(new byte[]{1});
+
+        assertTrue(underTest.offer("a", 5, new byte[]{5}, 0));
+        assertTrue(underTest.offer("b", 5, new byte[]{5}, 0));
+        assertFalse(underTest.offer("a", 6, new byte[]{6}, 0));
+    }
+}
@@ -0,0 +1,131 @@
+package rightmesh.left.io.gpstracker.core.uplink;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import rightmesh.left.io.gpstracker.core.transport.MeshTransport;
+
+public class SuperPeerSelectorTest {
+    private static final List<String> SUPER_PEERS = Arrays.asList("sp-a", "sp-b", "sp-c");
+    private static final int DEVICES = 3000;
+
+    private SuperPeerSelector underTest;
+
+    /**
+     * Set underTest before each test case.
+     */
+    @Before
+    public void setUp() {
+        underTest = new SuperPeerSelector(SUPER_PEERS);
+        underTest.setDeviceId("device-1");
+    }
+
+    @Test
+    public void select_spreadsDevicesEvenlyAndStably() {
+        Map<String, Integer> counts = new HashMap<>();
+        for (int i = 0; i < DEVICES; i++) {
+            String target = selectFor("device-" + i);
+            assertEquals(target, selectFor("device-" + i));
+            Integer count = counts.get(target);
+            counts.put(target, count == null ? 1 : count + 1);
+        }
+
+        assertEquals(SUPER_PEERS.size(), counts.size());
+        for (int count : counts.values()) {
+            assertTrue("Uneven share: " + counts, count > DEVICES / SUPER_PEERS.size() * 0.8);
+        }
+    }
+
+    @Test
+    public void onPeerChanged_onlyMovesDevicesOfRemovedSuperPeer() {
+        for (int i = 0; i < DEVICES / 10; i++) {
+            SuperPeerSelector selector = new SuperPeerSelector(SUPER_PEERS);
+            selector.setDeviceId("device-" + i);
+            String before = selector.select();
+
+            selector.onPeerChanged("sp-b", MeshTransport.PEER_REMOVED);
+
+            String after = selector.select();
+            if (before.equals("sp-b")) {
+                assertNotEquals("sp-b", after);
+            } else {
+                assertEquals(before, after);
+            }
+        }
+    }
+
+    @Test
+    public void onPeerChanged_failsOverAndBack() {
+        String preferred = underTest.select();
+
+        assertTrue(underTest.onPeerChanged(preferred, MeshTransport.PEER_REMOVED));
+        String fallback = underTest.select();
+        assertNotEquals(preferred, fallback);
+
+        underTest.onPeerChanged(preferred, MeshTransport.PEER_ADDED);
+        assertEquals(preferred, underTest.select());
+        assertFalse(underTest.onPeerChanged("relay", MeshTransport.PEER_REMOVED));
+    }
+
+    @Test
+    public void onSendFailed_givesUpAfterConsecutiveFailures() {
+        String preferred = underTest.select();
+
+        for (int i = 1; i < SuperPeerSelector.MAX_CONSECUTIVE_FAILURES; i++) {
+            underTest.onSendFailed(preferred);
+        }
+        underTest.onSent(preferred);
+        for (int i = 1; i < SuperPeerSelector.MAX_CONSECUTIVE_FAILURES; i++) {
+            underTest.onSendFailed(preferred);
+        }
+        assertTrue(underTest.isReachable(preferred));
+
+        underTest.onSendFailed(preferred);
+
+        assertFalse(underTest.isReachable(preferred));
+        assertNotEquals(preferred, underTest.select());
+    }
+
+    @Test
+    public void select_skipsMuchSlowerSuperPeer() {
+        String preferred = underTest.select();
+        for (String superPeer : SUPER_PEERS) {
+            underTest.onRtt(superPeer, 100);
+        }
+        assertEquals(preferred, underTest.select());
+
+        for (int i = 0; i < 50; i++) {
+            underTest.onRtt(preferred, 1000);
+        }
+
+        assertTrue(underTest.getRttNanos(preferred) > 3 * 100);
+        assertNotEquals(preferred, underTest.select());
+    }
+
+    @Test
+    public void select_keepsPreferredSuperPeerWhenNoneIsReachable() {
+        String preferred = underTest.select();
+
+        for (String superPeer : SUPER_PEERS) {
+            underTest.onPeerChanged(superPeer, MeshTransport.PEER_REMOVED);
+        }
+
+        assertEquals(preferred, underTest.select());
+    }
+
+    private static String selectFor(String deviceId) {
+        SuperPeerSelector selector = new SuperPeerSelector(SUPER_PEERS);
+        selector.setDeviceId(deviceId);
+        return selector.select();
+    }
+}
@@ -0,0 +1,107 @@
+package rightmesh.left.io.gpstracker.core.uplink;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import rightmesh.left.io.gpstracker.core.codec.LocationFix;
+import rightmesh.left.io.gpstracker.core.transport.LoopbackNetwork;
+
+/**
+ * Counts the bytes the steady-state uplink allocates on the calling thread.
+ */
+public class UplinkAllocationTest {
+    private static final int MAX_FIXES = 10;
+    // Long enough that the batch age check never runs during the test.
+    private static final long MAX_AGE_MILLIS = TimeUnit.HOURS.toMillis(1);
+    private static final int FIXES = 100000;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final LocationFix fix = new LocationFix();
+
+    private ScheduledThreadPoolExecutor executor;
+
+    private FrameJournal journal;
+
+    private LocationUplink underTest;
+
+    private long nowMillis;
+
+    /**
+     * Set underTest before each test case: the uplink running on the calling thread with the
+     * mesh down, so every batch goes through its lane to the journal.
+     *
+     * @throws IOException the journal cannot be opened
+     */
+    @Before
+    public void setUp() throws IOException {
+        executor = new ScheduledThreadPoolExecutor(1) {
+            @Override
+            public void execute(Runnable command) {
+                command.run();
+            }
+        };
+        journal = FrameJournal.open(new File(folder.getRoot(), "uplink.journal"), 4096);
+        underTest = new LocationUplink("superpeer", executor)
+                .setBatchLimits(MAX_FIXES, MAX_AGE_MILLIS)
+                .setSimplification(1, 60000);
+        underTest.setTransport(new LoopbackNetwork(executor, 1).join("device"));
+        underTest.start();
+        underTest.setJournal(journal);
+        underTest.onStateChanged("device", false);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        executor.shutdownNow();
+        journal.close();
+    }
+
+    @Test
+    public void offer_doesNotAllocateInSteadyState() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        assumeTrue(threads instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean allocations = (com.sun.management.ThreadMXBean) threads;
+        assumeTrue(allocations.isThreadAllocatedMemorySupported());
+        allocations.setThreadAllocatedMemoryEnabled(true);
+        long threadId = Thread.currentThread().getId();
+
+        // Warm up so class loading and JIT compilation are not counted.
+        walk(FIXES);
+        long before = allocations.getThreadAllocatedBytes(threadId);
+        walk(FIXES);
+        long allocated = allocations.getThreadAllocatedBytes(threadId) - before;
+
+        // Any allocation per fix or per batch would cost at least 16 bytes each time; what is left
+        // is the measurement itself.
+        assertTrue(allocated + " bytes allocated for " + FIXES + " fixes",
+                allocated < FIXES / MAX_FIXES);
+        assertEquals(2 * FIXES / MAX_FIXES, underTest.getStatus().getFailedFrames());
+        assertTrue(journal.size() > 0);
+    }
+
+    private void walk(int count) {
+        for (int i = 0; i < count; i++) {
+            nowMillis += 1000;
+            // 20 m north every second: no fix is predictable, so all of them are encoded.
+            underTest.offer(fix.set(49 + (nowMillis / 1000 % 1000) * 0.0002, -123)
+                    .setTime(nowMillis)
+                    .setAccuracy(5));
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package rightmesh.left.io.gpstracker.core.uplink;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import rightmesh.left.io.gpstracker.core.codec.LocationFix;
+import rightmesh.left.io.gpstracker.core.transport.LoopbackNetwork;
+
+public class UplinkStatusPublisherTest {
+    private static final long INTERVAL_MS = 200;
+    private static final long TIMEOUT_MS = 1000;
+
+    private final BlockingQueue<UplinkStatus> published = new LinkedBlockingQueue<>();
+
+    private final BlockingQueue<Long> publishNanos = new LinkedBlockingQueue<>();
+
+    private ScheduledExecutorService executor;
+
+    private LocationUplink uplink;
+
+    private UplinkStatusPublisher underTest;
+
+    /**
+     * Set underTest before each test case, on an uplink sending every fix on its own.
+     */
+    @Before
+    public void setUp() {
+        executor = Executors.newSingleThreadScheduledExecutor();
+        LoopbackNetwork network = new LoopbackNetwork(executor, 1);
+        network.join("superpeer");
+        network.connect("superpeer");
+        uplink = new LocationUplink("superpeer", executor);
+        uplink.setTransport(network.join("device"));
+        network.connect("device");
+        uplink.start();
+        underTest = new UplinkStatusPublisher(uplink, executor, INTERVAL_MS, status -> {
+            publishNanos.add(System.nanoTime());
+            published.add(status);
+        });
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void requestPublish_publishesFirstRequestRightAway() throws InterruptedException {
+        underTest.requestPublish();
+
+        UplinkStatus status = published.poll(INTERVAL_MS / 2, TimeUnit.MILLISECONDS);
+        assertNotNull(status);
+        assertEquals(0, status.getSentFixes());
+        assertEquals(0, status.getQueuedFixes());
+    }
+
+    @Test
+    public void requestPublish_coalescesBurstAndEndsWithLatestTotals() throws Exception {
+        // Fewer than the queue holds, so none is dropped.
+        final int fixes = LocationUplink.DEFAULT_QUEUE_CAPACITY - 1;
+        LocationFix fix = new LocationFix();
+        for (int i = 0; i < fixes; i++) {
+            uplink.offer(fix.set(49 + i * 0.001, -123));
+            underTest.requestPublish();
+        }
+        // Published after the burst, once the fixes queued before it are sent.
+        executor.submit(underTest::requestPublish).get(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+
+        UplinkStatus last = null;
+        UplinkStatus status = published.poll(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        while (status != null) {
+            last = status;
+            status = published.poll(2 * INTERVAL_MS, TimeUnit.MILLISECONDS);
+        }
+        assertNotNull(last);
+        assertEquals(fixes, last.getSentFixes());
+        assertEquals(fixes, last.getSentFrames());
+        assertEquals(0, last.getFailedFrames());
+        assertEquals(0, last.getDroppedFixes());
+        assertTrue(last.getLastSendMillis() > 0);
+
+        // At most two snapshots for the whole burst, one interval apart.
+        assertTrue(publishNanos.size() <= 2);
+        if (publishNanos.size() == 2) {
+            long first = publishNanos.poll();
+            assertTrue(publishNanos.poll() - first >= TimeUnit.MILLISECONDS.toNanos(INTERVAL_MS));
+        }
+        assertNull(published.poll());
+    }
+
+    @Test
+    public void getStatus_countsFramesNotSent() throws Exception {
+        uplink.setTransport(new LoopbackNetwork(executor, 1).join("offline"));
+
+        uplink.offer(new LocationFix().set(49, -123));
+        executor.submit(underTest::requestPublish).get(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+
+        UplinkStatus status = published.poll(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        assertNotNull(status);
+        assertEquals(0, status.getSentFrames());
+        assertEquals(1, status.getFailedFrames());
+    }
+}
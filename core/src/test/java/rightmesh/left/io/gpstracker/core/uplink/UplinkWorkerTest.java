@@ -0,0 +1,89 @@
+package rightmesh.left.io.gpstracker.core.uplink;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import rightmesh.left.io.gpstracker.core.codec.LocationFix;
+import rightmesh.left.io.gpstracker.core.metrics.StageTimer;
+
+public class UplinkWorkerTest {
+    private static final int CAPACITY = 3;
+
+    private final List<Runnable> tasks = new ArrayList<>();
+
+    private final List<Double> consumed = new ArrayList<>();
+
+    private final StageTimer queueTimer = new StageTimer("queue");
+
+    private final LocationFix fix = new LocationFix();
+
+    private UplinkWorker underTest;
+
+    /**
+     * Set underTest before each test case.
+     */
+    @Before
+    public void setUp() {
+        underTest = new UplinkWorker(tasks::add, CAPACITY,
+                queued -> consumed.add(queued.getLatitude()), queueTimer);
+    }
+
+    @Test
+    public void offer_schedulesSingleDrain() {
+        underTest.offer(fix.set(49.1, -123.1));
+        underTest.offer(fix.set(49.2, -123.2));
+
+        assertEquals(1, tasks.size());
+        tasks.remove(0).run();
+
+        assertEquals(2, consumed.size());
+        assertEquals(49.1, consumed.get(0), 0);
+        assertEquals(49.2, consumed.get(1), 0);
+        assertEquals(2, queueTimer.getCount());
+    }
+
+    @Test
+    public void offer_afterDrainSchedulesAgain() {
+        underTest.offer(fix.set(49.1, -123.1));
+        tasks.remove(0).run();
+
+        underTest.offer(fix.set(49.2, -123.2));
+
+        assertEquals(1, tasks.size());
+    }
+
+    @Test
+    public void offer_dropsOldestWhileConsumerIsBehind() {
+        for (int i = 0; i < CAPACITY + 2; i++) {
+            underTest.offer(fix.set(i, 0));
+        }
+        tasks.remove(0).run();
+
+        assertEquals(CAPACITY, consumed.size());
+        assertEquals(2, consumed.get(0), 0);
+        assertEquals(2, underTest.getDroppedCount());
+    }
+
+    @Test
+    public void pause_keepsFixesQueuedUntilResumed() {
+        underTest.pause();
+        underTest.offer(fix.set(49.1, -123.1));
+        tasks.remove(0).run();
+        underTest.offer(fix.set(49.2, -123.2));
+        tasks.remove(0).run();
+
+        assertEquals(0, consumed.size());
+        assertEquals(2, underTest.size());
+
+        underTest.resume();
+        tasks.remove(0).run();
+
+        assertEquals(2, consumed.size());
+        assertEquals(49.1, consumed.get(0), 0);
+    }
+}
@@ -0,0 +1,480 @@
+package rightmesh.left.io.gpstracker.superpeer;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import rightmesh.left.io.gpstracker.core.codec.AggregateCodec;
+import rightmesh.left.io.gpstracker.core.codec.DeliveryCodec;
+import rightmesh.left.io.gpstracker.core.codec.FrameCompressor;
+import rightmesh.left.io.gpstracker.core.codec.GeofenceEvent;
+import rightmesh.left.io.gpstracker.core.codec.GeofenceEventCodec;
+import rightmesh.left.io.gpstracker.core.codec.LocationCodec;
+import rightmesh.left.io.gpstracker.core.codec.LocationFix;
+import rightmesh.left.io.gpstracker.core.codec.MetricsCodec;
+import rightmesh.left.io.gpstracker.core.codec.RelayedFrame;
+import rightmesh.left.io.gpstracker.core.metrics.MetricsSnapshot;
+import rightmesh.left.io.gpstracker.core.transport.MeshTransport;
+import rightmesh.left.io.gpstracker.core.transport.TransportException;
+import rightmesh.left.io.gpstracker.core.uplink.DuplicateFilter;
+
+/**
+ * Receives location payloads on the SuperPeer, decodes them and fans the fixes out to listeners.
+ *
+ * <p>Payloads are accepted from any number of transport threads. Each sender is assigned to one
+ * of a fixed set of workers by its peer id; every worker drains its own lock-free queue on its
+ * own thread. Every frame of an {@link AggregateCodec} frame is handed on to the worker of its
+ * original sender and handled there as if that device had sent it. The fixes of one device,
+ * whether sent directly or through relays, are therefore handled by one thread, one at a time,
+ * in the order they reached its worker, while different devices are decoded in parallel. Legacy
+ * 16-byte payloads and every {@link LocationCodec} frame version are accepted.
+ * {@link GeofenceEventCodec} frames go to the geofence listeners, and their fix to the location
+ * listeners as well. {@link MetricsCodec} frames go to the metrics listeners.
+ * {@link FrameCompressor} frames are inflated first.
+ *
+ * <p>{@link DeliveryCodec} sequenced frames are unwrapped and acknowledged to their sender once
+ * handled, an aggregate once its frames are queued for their workers, through the transport set
+ * with {@link #setAckTransport(MeshTransport)}. A frame whose acknowledgement is lost is sent
+ * again, maybe through another relay. A {@link DuplicateFilter} keyed by the device that
+ * numbered the frame, also inside an aggregate, keeps such a copy from the listeners; only a
+ * copy that outlives the filter, e.g. after a restart, reaches them, and a
+ * {@link rightmesh.left.io.gpstracker.superpeer.store.TrackStore} skips its fixes.
+ */
+public class LocationIngest implements MeshTransport.OnTransportEventListener {
+    // Devices whose recent sequence numbers are kept.
+    private static final int MAX_TRACKED_SENDERS = 65536;
+
+    private final Worker[] workers;
+    private final List<OnLocationListener> listeners = new CopyOnWriteArrayList<>();
+    private final List<OnGeofenceEventListener> geofenceListeners =
+            new CopyOnWriteArrayList<>();
+    private final List<OnMetricsListener> metricsListeners = new CopyOnWriteArrayList<>();
+
+    private final AtomicLong frameCount = new AtomicLong();
+    private final AtomicLong fixCount = new AtomicLong();
+    private final AtomicLong geofenceEventCount = new AtomicLong();
+    private final AtomicLong failedFrameCount = new AtomicLong();
+    private final AtomicLong ackedFrameCount = new AtomicLong();
+    private final AtomicLong duplicateFrameCount = new AtomicLong();
+    // Shared by the workers: a device's frames may also come through relays on other workers.
+    private final DuplicateFilter duplicates = new DuplicateFilter(MAX_TRACKED_SENDERS);
+
+    private volatile MeshTransport ackTransport;
+
+    /**
+     * Receives every decoded fix on a worker thread.
+     */
+    public interface OnLocationListener {
+        /**
+         * Handle a fix.
+         *
+         * @param senderId peer that sent the fix
+         * @param fix      decoded fix
+         */
+        void onLocation(String senderId, LocationFix fix);
+    }
+
+    /**
+     * Receives every geofence transition reported by a device, on a worker thread.
+     */
+    public interface OnGeofenceEventListener {
+        /**
+         * Handle a transition.
+         *
+         * @param senderId peer that sent the event
+         * @param event    decoded event
+         */
+        void onGeofenceEvent(String senderId, GeofenceEvent event);
+    }
+
+    /**
+     * Receives the metrics snapshots devices report, on a worker thread.
+     */
+    public interface OnMetricsListener {
+        /**
+         * Handle a snapshot.
+         *
+         * @param senderId peer that sent the snapshot
+         * @param snapshot decoded snapshot
+         */
+        void onMetrics(String senderId, MetricsSnapshot snapshot);
+    }
+
+    /**
+     * Constructor {@link LocationIngest} with one worker per available processor.
+     */
+    public LocationIngest() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Constructor {@link LocationIngest}.
+     *
+     * @param workerCount number of decoding threads
+     */
+    public LocationIngest(int workerCount) {
+        if (workerCount < 1) {
+            throw new IllegalArgumentException("workerCount must be positive: " + workerCount);
+        }
+        workers = new Worker[workerCount];
+        for (int i = 0; i < workerCount; i++) {
+            workers[i] = new Worker("location-ingest-" + i);
+        }
+    }
+
+    /**
+     * Add a listener for decoded fixes.
+     *
+     * @param listener a callback, called concurrently for different senders
+     */
+    public void addOnLocationListener(OnLocationListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Add a listener for geofence transitions.
+     *
+     * @param listener a callback, called concurrently for different senders
+     */
+    public void addOnGeofenceEventListener(OnGeofenceEventListener listener) {
+        geofenceListeners.add(listener);
+    }
+
+    /**
+     * Add a listener for device metrics.
+     *
+     * @param listener a callback, called concurrently for different senders
+     */
+    public void addOnMetricsListener(OnMetricsListener listener) {
+        metricsListeners.add(listener);
+    }
+
+    /**
+     * Acknowledge sequenced frames through a transport, usually the one this ingest listens to.
+     *
+     * @param transport transport to the devices, or null to stop acknowledging
+     */
+    public void setAckTransport(MeshTransport transport) {
+        this.ackTransport = transport;
+    }
+
+    /**
+     * Start the worker threads.
+     */
+    public void start() {
+        for (Worker worker : workers) {
+            worker.start();
+        }
+    }
+
+    /**
+     * Stop the worker threads once they drained their queues.
+     *
+     * @throws InterruptedException interrupted while waiting for a worker
+     */
+    public void stop() throws InterruptedException {
+        for (Worker worker : workers) {
+            worker.running = false;
+            LockSupport.unpark(worker.thread);
+        }
+        for (Worker worker : workers) {
+            worker.thread.join();
+        }
+    }
+
+    @Override
+    public void onStateChanged(String localId, boolean connected) {
+        // Payloads simply stop arriving while the link is down.
+    }
+
+    @Override
+    public void onPeerChanged(String peerId, int state) {
+        // Devices are tracked by their payloads only.
+    }
+
+    /**
+     * Queue a payload for the worker of its sender. Never blocks.
+     *
+     * @param peerId sender
+     * @param data   payload
+     */
+    @Override
+    public void onDataReceived(String peerId, byte[] data) {
+        workerOf(peerId).offer(new Payload(peerId, data));
+    }
+
+    /**
+     * Number of payloads decoded.
+     *
+     * @return decoded payload count
+     */
+    public long getFrameCount() {
+        return frameCount.get();
+    }
+
+    /**
+     * Number of fixes handed to the listeners.
+     *
+     * @return fix count
+     */
+    public long getFixCount() {
+        return fixCount.get();
+    }
+
+    /**
+     * Number of geofence transitions handed to the listeners.
+     *
+     * @return event count
+     */
+    public long getGeofenceEventCount() {
+        return geofenceEventCount.get();
+    }
+
+    /**
+     * Number of payloads that were malformed or made a listener fail.
+     *
+     * @return failed payload count
+     */
+    public long getFailedFrameCount() {
+        return failedFrameCount.get();
+    }
+
+    /**
+     * Number of sequenced frames acknowledged to their sender.
+     *
+     * @return acknowledged frame count
+     */
+    public long getAckedFrameCount() {
+        return ackedFrameCount.get();
+    }
+
+    /**
+     * Number of sequenced frames dropped because they were handled before.
+     *
+     * @return duplicate frame count
+     */
+    public long getDuplicateFrameCount() {
+        return duplicateFrameCount.get();
+    }
+
+    /**
+     * Number of payloads waiting for a worker.
+     *
+     * @return queued payload count
+     */
+    public long getPendingCount() {
+        long pending = 0;
+        for (Worker worker : workers) {
+            pending += worker.pending.get();
+        }
+        return pending;
+    }
+
+    private void process(String senderId, byte[] data) {
+        if (!DeliveryCodec.isSequenced(data)) {
+            processFrame(senderId, data);
+            return;
+        }
+        long sequence;
+        byte[] frame;
+        try {
+            sequence = DeliveryCodec.getSequence(data);
+            frame = DeliveryCodec.unwrap(data);
+        } catch (IllegalArgumentException e) {
+            failedFrameCount.incrementAndGet();
+            return;
+        }
+        if (isNew(senderId, sequence)) {
+            processFrame(senderId, frame);
+        }
+        // Also if the frame failed or is a copy: sending it again would not help.
+        acknowledge(senderId, sequence);
+    }
+
+    private void processFrame(String senderId, byte[] payload) {
+        try {
+            byte[] data = FrameCompressor.isCompressed(payload)
+                    ? FrameCompressor.decompress(payload) : payload;
+            if (AggregateCodec.isAggregate(data)) {
+                processAggregate(senderId, data);
+                return;
+            }
+            if (GeofenceEventCodec.isEventFrame(data)) {
+                processEvents(senderId, data);
+                return;
+            }
+            if (MetricsCodec.isMetricsFrame(data)) {
+                processMetrics(senderId, data);
+                return;
+            }
+            List<LocationFix> fixes = LocationCodec.decode(data);
+            for (int i = 0; i < fixes.size(); i++) {
+                for (OnLocationListener listener : listeners) {
+                    listener.onLocation(senderId, fixes.get(i));
+                }
+            }
+            frameCount.incrementAndGet();
+            fixCount.addAndGet(fixes.size());
+        } catch (RuntimeException e) {
+            failedFrameCount.incrementAndGet();
+        }
+    }
+
+    private void processAggregate(String relayId, byte[] data) {
+        List<RelayedFrame> entries = AggregateCodec.decode(data);
+        for (int i = 0; i < entries.size(); i++) {
+            RelayedFrame entry = entries.get(i);
+            // The relay's own batch has no sender id of its own, and is numbered by the
+            // aggregate.
+            if (entry.getSenderId().isEmpty()) {
+                processFrame(relayId, entry.getFrame());
+            } else {
+                // On the sender's own worker, so its fixes never race those it sends directly.
+                workerOf(entry.getSenderId()).offer(new Payload(entry.getSenderId(),
+                        entry.getSequence(), entry.getFrame()));
+            }
+        }
+    }
+
+    private void processRelayed(String senderId, long sequence, byte[] frame) {
+        if (isNew(senderId, sequence)) {
+            processFrame(senderId, frame);
+        }
+    }
+
+    private Worker workerOf(String peerId) {
+        return workers[(peerId.hashCode() & Integer.MAX_VALUE) % workers.length];
+    }
+
+    private void processEvents(String senderId, byte[] data) {
+        List<GeofenceEvent> events = GeofenceEventCodec.decode(data);
+        for (int i = 0; i < events.size(); i++) {
+            for (OnGeofenceEventListener listener : geofenceListeners) {
+                listener.onGeofenceEvent(senderId, events.get(i));
+            }
+        }
+        if (!events.isEmpty()) {
+            // The fix is the only position such a device sends.
+            for (OnLocationListener listener : listeners) {
+                listener.onLocation(senderId, events.get(0).getFix());
+            }
+            fixCount.incrementAndGet();
+        }
+        frameCount.incrementAndGet();
+        geofenceEventCount.addAndGet(events.size());
+    }
+
+    private boolean isNew(String senderId, long sequence) {
+        boolean accepted;
+        synchronized (duplicates) {
+            accepted = duplicates.accept(senderId, sequence);
+        }
+        if (!accepted) {
+            duplicateFrameCount.incrementAndGet();
+        }
+        return accepted;
+    }
+
+    private void acknowledge(String senderId, long sequence) {
+        MeshTransport transport = ackTransport;
+        if (transport == null) {
+            return;
+        }
+        try {
+            transport.send(senderId, DeliveryCodec.encodeAck(new long[]{sequence}, 1));
+            ackedFrameCount.incrementAndGet();
+        } catch (TransportException e) {
+            // The sender times out and sends the frame again.
+        }
+    }
+
+    private void processMetrics(String senderId, byte[] data) {
+        MetricsSnapshot snapshot = MetricsCodec.decode(data);
+        for (OnMetricsListener listener : metricsListeners) {
+            listener.onMetrics(senderId, snapshot);
+        }
+        frameCount.incrementAndGet();
+    }
+
+    /**
+     * Payload waiting in a worker queue: as received, or a frame taken out of an aggregate.
+     */
+    private static final class Payload {
+        final String senderId;
+        final byte[] data;
+        final boolean relayed;
+        // Sequence number the sender gave a relayed frame.
+        final long sequence;
+
+        Payload(String senderId, byte[] data) {
+            this.senderId = senderId;
+            this.data = data;
+            this.relayed = false;
+            this.sequence = 0;
+        }
+
+        Payload(String senderId, long sequence, byte[] frame) {
+            this.senderId = senderId;
+            this.data = frame;
+            this.relayed = true;
+            this.sequence = sequence;
+        }
+    }
+
+    /**
+     * Single consumer of a multi-producer queue, parked while the queue is empty.
+     */
+    private final class Worker implements Runnable {
+        final ConcurrentLinkedQueue<Payload> queue = new ConcurrentLinkedQueue<>();
+        final AtomicLong pending = new AtomicLong();
+        final Thread thread;
+
+        volatile boolean running = true;
+        volatile boolean parked;
+
+        Worker(String name) {
+            thread = new Thread(this, name);
+            thread.setDaemon(true);
+        }
+
+        void start() {
+            thread.start();
+        }
+
+        void offer(Payload payload) {
+            pending.incrementAndGet();
+            queue.offer(payload);
+            if (parked) {
+                LockSupport.unpark(thread);
+            }
+        }
+
+        @Override
+        public void run() {
+            while (true) {
+                Payload payload = queue.poll();
+                if (payload != null) {
+                    if (payload.relayed) {
+                        processRelayed(payload.senderId, payload.sequence, payload.data);
+                    } else {
+                        process(payload.senderId, payload.data);
+                    }
+                    pending.decrementAndGet();
+                    continue;
+                }
+                if (!running) {
+                    return;
+                }
+                // Flag first, then re-check: a producer either sees the flag or its payload is
+                // seen here.
+                parked = true;
+                if (queue.isEmpty() && running) {
+                    LockSupport.park(this);
+                }
+                parked = false;
+            }
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package rightmesh.left.io.gpstracker.superpeer.index;
+
+import rightmesh.left.io.gpstracker.core.codec.LocationFix;
+
+/**
+ * Latest known position of one device. Immutable; replaced as a whole on every update.
+ */
+public final class DevicePosition {
+    private final String deviceId;
+    private final LocationFix fix;
+    private final long cell;
+
+    /**
+     * Constructor {@link DevicePosition}.
+     *
+     * @param deviceId sender of the fix
+     * @param fix      fix to copy
+     * @param cell     grid cell holding the fix
+     */
+    DevicePosition(String deviceId, LocationFix fix, long cell) {
+        this.deviceId = deviceId;
+        this.fix = new LocationFix().copyFrom(fix);
+        this.cell = cell;
+    }
+
+    public String getDeviceId() {
+        return deviceId;
+    }
+
+    public int getLatitudeE6() {
+        return fix.getLatitudeE6();
+    }
+
+    public int getLongitudeE6() {
+        return fix.getLongitudeE6();
+    }
+
+    public double getLatitude() {
+        return fix.getLatitude();
+    }
+
+    public double getLongitude() {
+        return fix.getLongitude();
+    }
+
+    public boolean hasTime() {
+        return fix.hasTime();
+    }
+
+    public long getTimeMillis() {
+        return fix.getTimeMillis();
+    }
+
+    public boolean hasAccuracy() {
+        return fix.hasAccuracy();
+    }
+
+    public float getAccuracy() {
+        return fix.getAccuracy();
+    }
+
+    long getCell() {
+        return cell;
+    }
+
+    @Override
+    public String toString() {
+        return "DevicePosition{" + deviceId + ", " + fix + '}';
+    }
+}
@@ -0,0 +1,254 @@
+package rightmesh.left.io.gpstracker.superpeer.index;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import rightmesh.left.io.gpstracker.core.codec.LocationFix;
+import rightmesh.left.io.gpstracker.core.geo.GeoMath;
+import rightmesh.left.io.gpstracker.superpeer.LocationIngest;
+
+/**
+ * Latest position of every device, indexed on a fixed latitude/longitude grid.
+ *
+ * <p>Each device is listed in the one grid cell holding its latest fix. Bounding-box and radius
+ * queries only visit the cells they overlap, or every occupied cell if that is fewer, so their
+ * cost follows the number of devices nearby rather than the number of devices known.
+ *
+ * <p>Updates for one device must come from one thread at a time; {@link LocationIngest} handles
+ * every fix of a device on that device's worker, also the fixes relayed in other devices'
+ * aggregates. Updates for different devices and queries may run concurrently. A query sees every
+ * device exactly once, at its previous or its new position while it is being moved. Fixes older
+ * than the stored one, e.g. replayed from a device journal, do not replace it.
+ */
+public class DevicePositionIndex implements LocationIngest.OnLocationListener {
+    /** About 1.1 km of latitude. */
+    public static final double DEFAULT_CELL_SIZE_DEGREES = 0.01;
+
+    private static final int MAX_LATITUDE_E6 = 90000000;
+    private static final int MAX_LONGITUDE_E6 = 180000000;
+
+    private final int cellSizeE6;
+
+    private final Map<String, DevicePosition> positions = new ConcurrentHashMap<>();
+    // Cells are kept once occupied: dropping an empty one could race with a device moving in.
+    private final ConcurrentHashMap<Long, Set<String>> cells = new ConcurrentHashMap<>();
+
+    /**
+     * Constructor {@link DevicePositionIndex} with {@link #DEFAULT_CELL_SIZE_DEGREES} cells.
+     */
+    public DevicePositionIndex() {
+        this(DEFAULT_CELL_SIZE_DEGREES);
+    }
+
+    /**
+     * Constructor {@link DevicePositionIndex}. Cells around the typical query size work best.
+     *
+     * @param cellSizeDegrees side of a grid cell in degrees
+     */
+    public DevicePositionIndex(double cellSizeDegrees) {
+        cellSizeE6 = LocationFix.toMicrodegrees(cellSizeDegrees);
+        if (cellSizeE6 < 1) {
+            throw new IllegalArgumentException("cellSizeDegrees too small: " + cellSizeDegrees);
+        }
+    }
+
+    @Override
+    public void onLocation(String senderId, LocationFix fix) {
+        update(senderId, fix);
+    }
+
+    /**
+     * Record the latest fix of a device.
+     *
+     * @param deviceId sender of the fix
+     * @param fix      fix to copy
+     * @return false if the fix is older than the stored one and was ignored
+     */
+    public boolean update(String deviceId, LocationFix fix) {
+        DevicePosition previous = positions.get(deviceId);
+        if (previous != null && previous.hasTime() && fix.hasTime()
+                && fix.getTimeMillis() < previous.getTimeMillis()) {
+            return false;
+        }
+        long cell = cellOf(fix.getLatitudeE6(), fix.getLongitudeE6());
+        // Listed in the new cell before the position moves and unlisted from the old one after,
+        // so concurrent queries always find the device in the cell its position points to.
+        if (previous == null || previous.getCell() != cell) {
+            cellMembers(cell).add(deviceId);
+        }
+        positions.put(deviceId, new DevicePosition(deviceId, fix, cell));
+        if (previous != null && previous.getCell() != cell) {
+            unlist(deviceId, previous.getCell());
+        }
+        return true;
+    }
+
+    /**
+     * Forget a device. Same threading rules as {@link #update(String, LocationFix)}.
+     *
+     * @param deviceId device to forget
+     */
+    public void remove(String deviceId) {
+        DevicePosition previous = positions.remove(deviceId);
+        if (previous != null) {
+            unlist(deviceId, previous.getCell());
+        }
+    }
+
+    /**
+     * Latest position of a device.
+     *
+     * @param deviceId device to look up
+     * @return position, or null if the device never sent one
+     */
+    public DevicePosition getPosition(String deviceId) {
+        return positions.get(deviceId);
+    }
+
+    public int size() {
+        return positions.size();
+    }
+
+    /**
+     * Devices whose latest position lies inside a box, edges included. A box with
+     * {@code west > east} crosses the antimeridian.
+     *
+     * @param south southern edge in degrees
+     * @param west  western edge in degrees
+     * @param north northern edge in degrees
+     * @param east  eastern edge in degrees
+     * @return matching positions in no particular order
+     */
+    public List<DevicePosition> findInBoundingBox(double south, double west,
+                                                  double north, double east) {
+        List<DevicePosition> result = new ArrayList<>();
+        int southE6 = LocationFix.toMicrodegrees(south);
+        int northE6 = LocationFix.toMicrodegrees(north);
+        int westE6 = LocationFix.toMicrodegrees(west);
+        int eastE6 = LocationFix.toMicrodegrees(east);
+        if (westE6 <= eastE6) {
+            collect(southE6, westE6, northE6, eastE6, result);
+        } else {
+            collect(southE6, westE6, northE6, MAX_LONGITUDE_E6, result);
+            collect(southE6, -MAX_LONGITUDE_E6, northE6, eastE6, result);
+        }
+        return result;
+    }
+
+    /**
+     * Devices whose latest position lies within a distance of a point.
+     *
+     * @param latitude     latitude of the centre in degrees
+     * @param longitude    longitude of the centre in degrees
+     * @param radiusMeters great-circle distance in metres
+     * @return matching positions in no particular order
+     */
+    public List<DevicePosition> findWithinRadius(double latitude, double longitude,
+                                                 double radiusMeters) {
+        double deltaLatitude = Math.toDegrees(radiusMeters / GeoMath.EARTH_RADIUS_METERS);
+        double south = latitude - deltaLatitude;
+        double north = latitude + deltaLatitude;
+        List<DevicePosition> candidates;
+        double cosLatitude = Math.cos(Math.toRadians(Math.max(Math.abs(south), Math.abs(north))));
+        double deltaLongitude = deltaLatitude / cosLatitude;
+        if (north >= 90 || south <= -90 || deltaLongitude >= 180) {
+            // Around a pole every longitude is close.
+            candidates = findInBoundingBox(Math.max(south, -90), -180, Math.min(north, 90), 180);
+        } else {
+            double west = normalizeLongitude(longitude - deltaLongitude);
+            double east = normalizeLongitude(longitude + deltaLongitude);
+            candidates = findInBoundingBox(south, west, north, east);
+        }
+        List<DevicePosition> result = new ArrayList<>(candidates.size());
+        for (DevicePosition position : candidates) {
+            if (GeoMath.distanceMeters(latitude, longitude,
+                    position.getLatitude(), position.getLongitude()) <= radiusMeters) {
+                result.add(position);
+            }
+        }
+        return result;
+    }
+
+    private void collect(int southE6, int westE6, int northE6, int eastE6,
+                         List<DevicePosition> result) {
+        int fromRow = Math.floorDiv(Math.max(southE6, -MAX_LATITUDE_E6), cellSizeE6);
+        int toRow = Math.floorDiv(Math.min(northE6, MAX_LATITUDE_E6), cellSizeE6);
+        int fromColumn = Math.floorDiv(westE6, cellSizeE6);
+        int toColumn = Math.floorDiv(eastE6, cellSizeE6);
+        long boxCells = (long) (toRow - fromRow + 1) * (toColumn - fromColumn + 1);
+        if (boxCells > cells.size()) {
+            for (Map.Entry<Long, Set<String>> entry : cells.entrySet()) {
+                long cell = entry.getKey();
+                int row = (int) (cell >> 32);
+                int column = (int) cell;
+                if (row >= fromRow && row <= toRow && column >= fromColumn && column <= toColumn) {
+                    collectCell(cell, entry.getValue(),
+                            southE6, westE6, northE6, eastE6, result);
+                }
+            }
+            return;
+        }
+        for (int row = fromRow; row <= toRow; row++) {
+            for (int column = fromColumn; column <= toColumn; column++) {
+                long cell = cellKey(row, column);
+                Set<String> members = cells.get(cell);
+                if (members != null) {
+                    collectCell(cell, members, southE6, westE6, northE6, eastE6, result);
+                }
+            }
+        }
+    }
+
+    private void collectCell(long cell, Set<String> members, int southE6, int westE6,
+                             int northE6, int eastE6, List<DevicePosition> result) {
+        for (String deviceId : members) {
+            DevicePosition position = positions.get(deviceId);
+            // Skip devices still listed here while moving to another cell.
+            if (position != null && position.getCell() == cell
+                    && position.getLatitudeE6() >= southE6
+                    && position.getLatitudeE6() <= northE6
+                    && position.getLongitudeE6() >= westE6
+                    && position.getLongitudeE6() <= eastE6) {
+                result.add(position);
+            }
+        }
+    }
+
+    private Set<String> cellMembers(long cell) {
+        Set<String> members = cells.get(cell);
+        if (members == null) {
+            Set<String> created = ConcurrentHashMap.newKeySet();
+            members = cells.putIfAbsent(cell, created);
+            if (members == null) {
+                members = created;
+            }
+        }
+        return members;
+    }
+
+    private void unlist(String deviceId, long cell) {
+        Set<String> members = cells.get(cell);
+        if (members != null) {
+            members.remove(deviceId);
+        }
+    }
+
+    private long cellOf(int latitudeE6, int longitudeE6) {
+        return cellKey(Math.floorDiv(latitudeE6, cellSizeE6),
+                Math.floorDiv(longitudeE6, cellSizeE6));
+    }
+
+    private static long cellKey(int row, int column) {
+        return ((long) row << 32) | (column & 0xffffffffL);
+    }
+
+    private static double normalizeLongitude(double longitude) {
+        if (longitude > 180) {
+            return longitude - 360;
+        }
+        return longitude < -180 ? longitude + 360 : longitude;
+    }
+}
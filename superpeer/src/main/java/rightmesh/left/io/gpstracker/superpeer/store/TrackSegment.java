@@ -0,0 +1,333 @@
+package rightmesh.left.io.gpstracker.superpeer.store;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+import rightmesh.left.io.gpstracker.core.codec.LocationFix;
+
+/**
+ * Memory-mapped, append-only file holding up to a fixed number of fixes of one device and one
+ * time window, column by column.
+ *
+ * <p>Layout: a header, then a time column (long), a sparse index holding the time of every
+ * {@link #INDEX_INTERVAL}th row (long), and latitude, longitude (int microdegrees) and accuracy
+ * (float) columns, each sized for the full capacity. Unused space is never written, so the file
+ * stays sparse on file systems that support it. Rows are kept in time order; the row count in
+ * the header is written after the row itself. A late row is inserted by moving the later rows
+ * up; the count grows before they move, so a crash meanwhile leaves one row twice rather than
+ * losing one.
+ *
+ * <p>Only absolute reads and writes are used on the map, so slices may be read concurrently with
+ * appends; rows inserted in their range shift them. Callers synchronize changes and the count
+ * they read.
+ */
+final class TrackSegment {
+    static final String FILE_SUFFIX = ".seg";
+    static final int INDEX_INTERVAL = 64;
+
+    private static final int MAGIC = 0x47545253;
+    private static final int FORMAT_VERSION = 1;
+
+    private static final int MAGIC_OFFSET = 0;
+    private static final int VERSION_OFFSET = 4;
+    private static final int CAPACITY_OFFSET = 8;
+    private static final int COUNT_OFFSET = 12;
+    private static final int WINDOW_START_OFFSET = 16;
+    private static final int WINDOW_LENGTH_OFFSET = 24;
+    // Keeps the long columns 8-byte aligned.
+    private static final int HEADER_SIZE = 32;
+
+    private final File file;
+    private final MappedByteBuffer map;
+    private final long windowStartMillis;
+    private final long windowEndMillis;
+    private final int capacity;
+
+    private final int timeOffset;
+    private final int indexOffset;
+    private final int latitudeOffset;
+    private final int longitudeOffset;
+    private final int accuracyOffset;
+
+    private int count;
+
+    private TrackSegment(File file, MappedByteBuffer map, long windowStartMillis,
+                         long windowMillis, int capacity) {
+        this.file = file;
+        this.map = map;
+        this.windowStartMillis = windowStartMillis;
+        this.windowEndMillis = windowStartMillis + windowMillis;
+        this.capacity = capacity;
+        timeOffset = HEADER_SIZE;
+        indexOffset = timeOffset + capacity * Long.BYTES;
+        latitudeOffset = indexOffset + indexSize(capacity) * Long.BYTES;
+        longitudeOffset = latitudeOffset + capacity * Integer.BYTES;
+        accuracyOffset = longitudeOffset + capacity * Integer.BYTES;
+    }
+
+    /**
+     * Create an empty segment, replacing any file at that path.
+     *
+     * @param file              backing file
+     * @param windowStartMillis start of the time window the segment belongs to
+     * @param windowMillis      length of the time window
+     * @param capacity          number of rows
+     * @return created segment
+     * @throws IOException the file cannot be created or mapped
+     */
+    static TrackSegment create(File file, long windowStartMillis, long windowMillis,
+                               int capacity) throws IOException {
+        if (capacity < 1 || fileSize(capacity) > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Invalid capacity: " + capacity);
+        }
+        if (file.exists() && !file.delete()) {
+            throw new IOException("Cannot replace " + file);
+        }
+        TrackSegment segment = new TrackSegment(file, map(file, fileSize(capacity)),
+                windowStartMillis, windowMillis, capacity);
+        segment.map.putInt(MAGIC_OFFSET, MAGIC);
+        segment.map.putInt(VERSION_OFFSET, FORMAT_VERSION);
+        segment.map.putInt(CAPACITY_OFFSET, capacity);
+        segment.map.putLong(WINDOW_START_OFFSET, windowStartMillis);
+        segment.map.putLong(WINDOW_LENGTH_OFFSET, windowMillis);
+        segment.map.putInt(COUNT_OFFSET, 0);
+        return segment;
+    }
+
+    /**
+     * Open an existing segment.
+     *
+     * @param file backing file
+     * @return opened segment, or null if the file is not a valid segment
+     * @throws IOException the file cannot be mapped
+     */
+    static TrackSegment open(File file) throws IOException {
+        long length = file.length();
+        if (length < HEADER_SIZE) {
+            return null;
+        }
+        MappedByteBuffer map = map(file, HEADER_SIZE);
+        int capacity = map.getInt(CAPACITY_OFFSET);
+        int count = map.getInt(COUNT_OFFSET);
+        if (map.getInt(MAGIC_OFFSET) != MAGIC || map.getInt(VERSION_OFFSET) != FORMAT_VERSION
+                || map.getLong(WINDOW_LENGTH_OFFSET) < 1
+                || capacity < 1 || count < 0 || count > capacity
+                || length > Integer.MAX_VALUE || fileSize(capacity) != length) {
+            return null;
+        }
+        TrackSegment segment = new TrackSegment(file, map(file, length),
+                map.getLong(WINDOW_START_OFFSET), map.getLong(WINDOW_LENGTH_OFFSET), capacity);
+        segment.count = count;
+        return segment;
+    }
+
+    File getFile() {
+        return file;
+    }
+
+    long getWindowStartMillis() {
+        return windowStartMillis;
+    }
+
+    /**
+     * End of the time window, exclusive.
+     *
+     * @return time in milliseconds
+     */
+    long getWindowEndMillis() {
+        return windowEndMillis;
+    }
+
+    int size() {
+        return count;
+    }
+
+    boolean isFull() {
+        return count == capacity;
+    }
+
+    /**
+     * Time of the first row.
+     *
+     * @return time in milliseconds, or {@link Long#MAX_VALUE} if the segment is empty
+     */
+    long getFirstTimeMillis() {
+        return count == 0 ? Long.MAX_VALUE : getTimeMillis(0);
+    }
+
+    /**
+     * Time of the last row.
+     *
+     * @return time in milliseconds, or {@link Long#MIN_VALUE} if the segment is empty
+     */
+    long getLastTimeMillis() {
+        return count == 0 ? Long.MIN_VALUE : getTimeMillis(count - 1);
+    }
+
+    /**
+     * Append a row. The caller keeps rows in time order and checks {@link #isFull()}.
+     *
+     * @param timeMillis time of the fix
+     * @param fix        fix to store
+     */
+    void append(long timeMillis, LocationFix fix) {
+        int row = count;
+        writeRow(row, timeMillis, fix.getLatitudeE6(), fix.getLongitudeE6(),
+                fix.hasAccuracy() ? fix.getAccuracy() : Float.NaN);
+        count = row + 1;
+        map.putInt(COUNT_OFFSET, count);
+    }
+
+    /**
+     * Insert a row in time order, after the rows of the same time. The caller checks
+     * {@link #isFull()}.
+     *
+     * @param timeMillis time of the fix
+     * @param fix        fix to store
+     */
+    void insert(long timeMillis, LocationFix fix) {
+        int row = lowerBound(timeMillis + 1, count);
+        if (row == count) {
+            append(timeMillis, fix);
+            return;
+        }
+        // Duplicates the last row first, so every row is stored at any time.
+        moveRow(count - 1, count);
+        count++;
+        map.putInt(COUNT_OFFSET, count);
+        for (int i = count - 2; i > row; i--) {
+            moveRow(i - 1, i);
+        }
+        writeRow(row, timeMillis, fix.getLatitudeE6(), fix.getLongitudeE6(),
+                fix.hasAccuracy() ? fix.getAccuracy() : Float.NaN);
+    }
+
+    /**
+     * Drop the last row, once it is stored elsewhere.
+     */
+    void removeLast() {
+        count--;
+        map.putInt(COUNT_OFFSET, count);
+    }
+
+    /**
+     * Whether a fix is already stored with the same time and position.
+     *
+     * @param timeMillis time of the fix
+     * @param fix        fix to look for
+     * @return true if a row matches
+     */
+    boolean contains(long timeMillis, LocationFix fix) {
+        for (int row = lowerBound(timeMillis, count);
+                row < count && getTimeMillis(row) == timeMillis; row++) {
+            if (map.getInt(latitudeOffset + row * Integer.BYTES) == fix.getLatitudeE6()
+                    && map.getInt(longitudeOffset + row * Integer.BYTES)
+                    == fix.getLongitudeE6()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * First row at or after a time, found through the sparse index and a short scan.
+     *
+     * @param timeMillis time to look for
+     * @param rows       number of rows to consider
+     * @return row index, {@code rows} if every row is earlier
+     */
+    int lowerBound(long timeMillis, int rows) {
+        // Last index block starting before the time; the rows searched for follow it.
+        int low = 0;
+        int high = (rows + INDEX_INTERVAL - 1) / INDEX_INTERVAL - 1;
+        while (low < high) {
+            int middle = (low + high + 1) >>> 1;
+            if (map.getLong(indexOffset + middle * Long.BYTES) < timeMillis) {
+                low = middle;
+            } else {
+                high = middle - 1;
+            }
+        }
+        int row = low * INDEX_INTERVAL;
+        while (row < rows && getTimeMillis(row) < timeMillis) {
+            row++;
+        }
+        return row;
+    }
+
+    /**
+     * View of some rows, sharing the mapped memory.
+     *
+     * @param fromRow first row
+     * @param toRow   row after the last one
+     * @return slice of the rows
+     */
+    TrackSlice slice(int fromRow, int toRow) {
+        int rows = toRow - fromRow;
+        return new TrackSlice(
+                column(timeOffset + fromRow * Long.BYTES, rows * Long.BYTES).asLongBuffer(),
+                column(latitudeOffset + fromRow * Integer.BYTES, rows * Integer.BYTES)
+                        .asIntBuffer(),
+                column(longitudeOffset + fromRow * Integer.BYTES, rows * Integer.BYTES)
+                        .asIntBuffer(),
+                column(accuracyOffset + fromRow * Float.BYTES, rows * Float.BYTES)
+                        .asFloatBuffer());
+    }
+
+    /**
+     * Write pending rows to storage.
+     */
+    void force() {
+        map.force();
+    }
+
+    long getTimeMillis(int row) {
+        return map.getLong(timeOffset + row * Long.BYTES);
+    }
+
+    private void moveRow(int from, int to) {
+        writeRow(to, getTimeMillis(from), map.getInt(latitudeOffset + from * Integer.BYTES),
+                map.getInt(longitudeOffset + from * Integer.BYTES),
+                map.getFloat(accuracyOffset + from * Float.BYTES));
+    }
+
+    private void writeRow(int row, long timeMillis, int latitudeE6, int longitudeE6,
+                          float accuracy) {
+        map.putLong(timeOffset + row * Long.BYTES, timeMillis);
+        if (row % INDEX_INTERVAL == 0) {
+            map.putLong(indexOffset + row / INDEX_INTERVAL * Long.BYTES, timeMillis);
+        }
+        map.putInt(latitudeOffset + row * Integer.BYTES, latitudeE6);
+        map.putInt(longitudeOffset + row * Integer.BYTES, longitudeE6);
+        map.putFloat(accuracyOffset + row * Float.BYTES, accuracy);
+    }
+
+    private ByteBuffer column(int offset, int length) {
+        ByteBuffer column = map.duplicate();
+        column.limit(offset + length).position(offset);
+        return column.slice();
+    }
+
+    private static int indexSize(int capacity) {
+        return (capacity + INDEX_INTERVAL - 1) / INDEX_INTERVAL;
+    }
+
+    private static long fileSize(int capacity) {
+        return HEADER_SIZE + (long) (capacity + indexSize(capacity)) * Long.BYTES
+                + (long) capacity * (Integer.BYTES + Integer.BYTES + Float.BYTES);
+    }
+
+    private static MappedByteBuffer map(File file, long size) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            if (raf.length() < size) {
+                raf.setLength(size);
+            }
+            // The mapping stays valid once the file is closed.
+            return raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+        }
+    }
+}
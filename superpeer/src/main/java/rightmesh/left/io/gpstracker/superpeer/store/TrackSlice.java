@@ -0,0 +1,77 @@
+package rightmesh.left.io.gpstracker.superpeer.store;
+
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+
+import rightmesh.left.io.gpstracker.core.codec.LocationFix;
+
+/**
+ * Consecutive rows of one segment, read in place from the mapped file without copying.
+ *
+ * <p>Stays valid until the store is closed, even if its segment is deleted meanwhile.
+ */
+public final class TrackSlice {
+    private final LongBuffer times;
+    private final IntBuffer latitudes;
+    private final IntBuffer longitudes;
+    private final FloatBuffer accuracies;
+
+    /**
+     * Constructor {@link TrackSlice}.
+     *
+     * @param times      time column
+     * @param latitudes  latitude column
+     * @param longitudes longitude column
+     * @param accuracies accuracy column
+     */
+    TrackSlice(LongBuffer times, IntBuffer latitudes, IntBuffer longitudes,
+               FloatBuffer accuracies) {
+        this.times = times;
+        this.latitudes = latitudes;
+        this.longitudes = longitudes;
+        this.accuracies = accuracies;
+    }
+
+    public int size() {
+        return times.limit();
+    }
+
+    public long getTimeMillis(int row) {
+        return times.get(row);
+    }
+
+    public int getLatitudeE6(int row) {
+        return latitudes.get(row);
+    }
+
+    public int getLongitudeE6(int row) {
+        return longitudes.get(row);
+    }
+
+    /**
+     * Accuracy of a row.
+     *
+     * @param row row in this slice
+     * @return accuracy radius in metres, NaN if the fix had none
+     */
+    public float getAccuracy(int row) {
+        return accuracies.get(row);
+    }
+
+    /**
+     * Copy a row into a reusable fix.
+     *
+     * @param row row in this slice
+     * @param out fix to overwrite
+     * @return {@code out}
+     */
+    public LocationFix get(int row, LocationFix out) {
+        out.setE6(latitudes.get(row), longitudes.get(row)).setTime(times.get(row));
+        float accuracy = accuracies.get(row);
+        if (!Float.isNaN(accuracy)) {
+            out.setAccuracy(accuracy);
+        }
+        return out;
+    }
+}
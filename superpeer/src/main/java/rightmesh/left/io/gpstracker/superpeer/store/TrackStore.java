@@ -0,0 +1,407 @@
+package rightmesh.left.io.gpstracker.superpeer.store;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import rightmesh.left.io.gpstracker.core.codec.LocationFix;
+import rightmesh.left.io.gpstracker.superpeer.LocationIngest;
+
+/**
+ * Append-only store of every fix received, partitioned by device and time window.
+ *
+ * <p>Each device has a directory of {@link TrackSegment} files, one or more per time window,
+ * that stay memory-mapped once used. Range reads binary-search a sparse time index and return
+ * {@link TrackSlice} views on the mapped columns; no row is copied. Whole windows are dropped with
+ * {@link #deleteBefore(long)}. A day of 1 Hz fixes takes about 1.7 MB per device.
+ *
+ * <p>Fixes of one device are kept in time order within each window. Devices send their backlog
+ * alongside newer fixes, so a late fix is inserted among the rows already stored, moving the
+ * later ones; a slice read before may see its rows shift. A fix stored before with the same time
+ * and position, e.g. a frame sent again after its acknowledgement was lost, is rejected and
+ * counted, see {@link #getRejectedCount()}. Segments are opened when their device is first
+ * accessed, not when the store is opened. Thread-safe.
+ */
+public class TrackStore implements LocationIngest.OnLocationListener, Closeable {
+    public static final long DEFAULT_WINDOW_MILLIS = TimeUnit.DAYS.toMillis(1);
+    /** A day of 1 Hz fixes. */
+    public static final int DEFAULT_SEGMENT_CAPACITY = 86400;
+
+    private static final char PART_SEPARATOR = '_';
+
+    private final File directory;
+    private final long windowMillis;
+    private final int segmentCapacity;
+
+    private final ConcurrentHashMap<String, DeviceTrack> tracks = new ConcurrentHashMap<>();
+    private final AtomicLong rejectedCount = new AtomicLong();
+
+    private TrackStore(File directory, long windowMillis, int segmentCapacity) {
+        this.directory = directory;
+        this.windowMillis = windowMillis;
+        this.segmentCapacity = segmentCapacity;
+    }
+
+    /**
+     * Open a store with daily windows of {@link #DEFAULT_SEGMENT_CAPACITY} rows.
+     *
+     * @param directory root directory, created if missing
+     * @return opened store
+     * @throws IOException the directory cannot be created
+     */
+    public static TrackStore open(File directory) throws IOException {
+        return open(directory, DEFAULT_WINDOW_MILLIS, DEFAULT_SEGMENT_CAPACITY);
+    }
+
+    /**
+     * Open a store. The window and capacity only apply to segments created from now on.
+     *
+     * @param directory       root directory, created if missing
+     * @param windowMillis    length of a time window
+     * @param segmentCapacity rows per segment; a full segment is followed by another one
+     * @return opened store
+     * @throws IOException the directory cannot be created
+     */
+    public static TrackStore open(File directory, long windowMillis, int segmentCapacity)
+            throws IOException {
+        if (windowMillis < 1 || segmentCapacity < 1) {
+            throw new IllegalArgumentException("Invalid window or capacity: " + windowMillis
+                    + ", " + segmentCapacity);
+        }
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create " + directory);
+        }
+        return new TrackStore(directory, windowMillis, segmentCapacity);
+    }
+
+    /**
+     * Store a received fix, timed by the device or by its arrival if it has no time.
+     *
+     * @param senderId peer that sent the fix
+     * @param fix      decoded fix
+     * @throws UncheckedIOException a segment cannot be created
+     */
+    @Override
+    public void onLocation(String senderId, LocationFix fix) {
+        try {
+            append(senderId, fix.hasTime() ? fix.getTimeMillis() : System.currentTimeMillis(),
+                    fix);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Store a fix, in time order among those of its window.
+     *
+     * @param deviceId   device the fix belongs to
+     * @param timeMillis time of the fix
+     * @param fix        fix to store; its own time is ignored
+     * @return false if the same fix was stored before and this one was rejected
+     * @throws IOException a segment cannot be created
+     */
+    public boolean append(String deviceId, long timeMillis, LocationFix fix) throws IOException {
+        if (track(deviceId).append(timeMillis, fix)) {
+            return true;
+        }
+        rejectedCount.incrementAndGet();
+        return false;
+    }
+
+    /**
+     * Number of fixes rejected because they were stored before.
+     *
+     * @return rejected fix count
+     */
+    public long getRejectedCount() {
+        return rejectedCount.get();
+    }
+
+    /**
+     * Fixes of a device in a time range, in time order.
+     *
+     * @param deviceId   device to read
+     * @param fromMillis start of the range, inclusive
+     * @param toMillis   end of the range, exclusive
+     * @return views on the stored rows, one per segment involved
+     * @throws IOException a segment cannot be mapped
+     */
+    public List<TrackSlice> read(String deviceId, long fromMillis, long toMillis)
+            throws IOException {
+        List<TrackSlice> slices = new ArrayList<>();
+        track(deviceId).read(fromMillis, toMillis, slices);
+        return slices;
+    }
+
+    /**
+     * Delete every window that ended before a time, for all devices.
+     *
+     * @param timeMillis windows ending at or before this time are deleted
+     * @return number of segment files deleted
+     * @throws IOException a segment cannot be deleted
+     */
+    public int deleteBefore(long timeMillis) throws IOException {
+        File[] deviceDirectories = directory.listFiles(File::isDirectory);
+        int deleted = 0;
+        if (deviceDirectories != null) {
+            for (File deviceDirectory : deviceDirectories) {
+                deleted += track(decodeDeviceId(deviceDirectory.getName()))
+                        .deleteBefore(timeMillis);
+            }
+        }
+        return deleted;
+    }
+
+    /**
+     * Write every open segment to storage. The mappings are released once unreachable.
+     */
+    @Override
+    public void close() {
+        for (DeviceTrack track : tracks.values()) {
+            track.force();
+        }
+    }
+
+    private DeviceTrack track(String deviceId) {
+        return tracks.computeIfAbsent(deviceId,
+                id -> new DeviceTrack(new File(directory, encodeDeviceId(id))));
+    }
+
+    /**
+     * Position of a segment among those of its window, from its name "window-part.seg".
+     *
+     * @param file segment file
+     * @return part number, 0 if the name has none
+     */
+    private static int partOf(File file) {
+        String name = file.getName();
+        try {
+            return Integer.parseInt(name.substring(name.lastIndexOf(PART_SEPARATOR) + 1,
+                    name.length() - TrackSegment.FILE_SUFFIX.length()));
+        } catch (NumberFormatException | IndexOutOfBoundsException e) {
+            return 0;
+        }
+    }
+
+    private long windowStart(long timeMillis) {
+        return Math.floorDiv(timeMillis, windowMillis) * windowMillis;
+    }
+
+    /**
+     * Directory name for a device id: letters, digits and '-' are kept, every other byte of its
+     * UTF-8 form becomes '_' and two hex digits. Never "." or "..".
+     *
+     * @param deviceId device id
+     * @return file name
+     */
+    static String encodeDeviceId(String deviceId) {
+        StringBuilder name = new StringBuilder();
+        for (byte b : deviceId.getBytes(StandardCharsets.UTF_8)) {
+            char c = (char) (b & 0xff);
+            if (c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z' || c >= '0' && c <= '9' || c == '-') {
+                name.append(c);
+            } else {
+                name.append('_').append(Character.forDigit(c >> 4, 16))
+                        .append(Character.forDigit(c & 0xf, 16));
+            }
+        }
+        return name.toString();
+    }
+
+    /**
+     * Reverse of {@link #encodeDeviceId(String)}.
+     *
+     * @param name file name
+     * @return device id
+     */
+    static String decodeDeviceId(String name) {
+        byte[] bytes = new byte[name.length()];
+        int length = 0;
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (c == '_' && i + 2 < name.length()) {
+                bytes[length++] = (byte) Integer.parseInt(name.substring(i + 1, i + 3), 16);
+                i += 2;
+            } else {
+                bytes[length++] = (byte) c;
+            }
+        }
+        return new String(bytes, 0, length, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Segments of one device, sorted by window and creation.
+     */
+    private final class DeviceTrack {
+        private final File directory;
+        // Null until the directory was listed.
+        private List<TrackSegment> segments;
+
+        DeviceTrack(File directory) {
+            this.directory = directory;
+        }
+
+        synchronized boolean append(long timeMillis, LocationFix fix) throws IOException {
+            load();
+            long window = windowStart(timeMillis);
+            // The parts of the window are segments first to end - 1.
+            int end = segments.size();
+            while (end > 0 && segments.get(end - 1).getWindowStartMillis() > window) {
+                end--;
+            }
+            int first = end;
+            while (first > 0 && segments.get(first - 1).getWindowStartMillis() == window) {
+                first--;
+            }
+            if (first == end) {
+                createPart(window, first, end).append(timeMillis, fix);
+                return true;
+            }
+            // Last part whose rows start at or before the fix.
+            int part = end - 1;
+            while (part > first && segments.get(part).getFirstTimeMillis() > timeMillis) {
+                part--;
+            }
+            TrackSegment last = segments.get(end - 1);
+            // A fix newer than every one stored, the usual case, cannot be a duplicate.
+            if (timeMillis <= last.getLastTimeMillis()
+                    && segments.get(part).contains(timeMillis, fix)) {
+                return false;
+            }
+            if (timeMillis >= last.getLastTimeMillis()) {
+                (last.isFull() ? createPart(window, first, end) : last).append(timeMillis, fix);
+            } else {
+                insert(part, first, end, timeMillis, fix);
+            }
+            return true;
+        }
+
+        /**
+         * Insert a late fix into a part of its window. A full part makes room by moving its
+         * last row, or passes on the fix if it is later, to the next part or a new one.
+         *
+         * @param part       index of the part the fix belongs in
+         * @param first      index of the first part of the window
+         * @param end        index after the last part of the window
+         * @param timeMillis time of the fix
+         * @param fix        fix to store
+         * @throws IOException a segment cannot be created
+         */
+        private void insert(int part, int first, int end, long timeMillis, LocationFix fix)
+                throws IOException {
+            TrackSegment segment = segments.get(part);
+            if (!segment.isFull()) {
+                segment.insert(timeMillis, fix);
+                return;
+            }
+            // Whichever of the fix and the last row is later goes to the next part.
+            boolean fixIsLast = timeMillis >= segment.getLastTimeMillis();
+            int lastRow = segment.size() - 1;
+            LocationFix moved = fixIsLast ? fix
+                    : segment.slice(lastRow, lastRow + 1).get(0, new LocationFix());
+            long movedMillis = fixIsLast ? timeMillis : segment.getLastTimeMillis();
+            if (part + 1 < end) {
+                insert(part + 1, first, end, movedMillis, moved);
+            } else {
+                createPart(segment.getWindowStartMillis(), first, end)
+                        .append(movedMillis, moved);
+            }
+            if (!fixIsLast) {
+                segment.removeLast();
+                segment.insert(timeMillis, fix);
+            }
+        }
+
+        /**
+         * Add an empty part after the last one of a window.
+         *
+         * @param window start of the window
+         * @param first  index of the first part of the window
+         * @param end    index after the last part of the window
+         * @return new segment
+         * @throws IOException the segment cannot be created
+         */
+        private TrackSegment createPart(long window, int first, int end) throws IOException {
+            if (!directory.isDirectory() && !directory.mkdirs()) {
+                throw new IOException("Cannot create " + directory);
+            }
+            int parts = end - first;
+            TrackSegment segment = TrackSegment.create(new File(directory,
+                    window + PART_SEPARATOR + parts + TrackSegment.FILE_SUFFIX),
+                    window, windowMillis, segmentCapacity);
+            segments.add(end, segment);
+            return segment;
+        }
+
+        synchronized void read(long fromMillis, long toMillis, List<TrackSlice> out)
+                throws IOException {
+            load();
+            for (TrackSegment segment : segments) {
+                if (segment.getWindowStartMillis() >= toMillis
+                        || segment.getWindowEndMillis() <= fromMillis) {
+                    continue;
+                }
+                int rows = segment.size();
+                int from = segment.lowerBound(fromMillis, rows);
+                int to = segment.lowerBound(toMillis, rows);
+                if (from < to) {
+                    out.add(segment.slice(from, to));
+                }
+            }
+        }
+
+        synchronized int deleteBefore(long timeMillis) throws IOException {
+            load();
+            int deleted = 0;
+            while (!segments.isEmpty()
+                    && segments.get(0).getWindowEndMillis() <= timeMillis) {
+                File file = segments.get(0).getFile();
+                if (!file.delete()) {
+                    throw new IOException("Cannot delete " + file);
+                }
+                segments.remove(0);
+                deleted++;
+            }
+            return deleted;
+        }
+
+        synchronized void force() {
+            if (segments != null) {
+                for (TrackSegment segment : segments) {
+                    segment.force();
+                }
+            }
+        }
+
+        private void load() throws IOException {
+            if (segments != null) {
+                return;
+            }
+            List<TrackSegment> loaded = new ArrayList<>();
+            File[] files = directory.listFiles(
+                    (dir, name) -> name.endsWith(TrackSegment.FILE_SUFFIX));
+            if (files != null) {
+                for (File file : files) {
+                    TrackSegment segment = TrackSegment.open(file);
+                    if (segment != null) {
+                        loaded.add(segment);
+                    }
+                }
+            }
+            Collections.sort(loaded, (a, b) -> {
+                int byWindow = Long.compare(a.getWindowStartMillis(), b.getWindowStartMillis());
+                return byWindow != 0 ? byWindow
+                        : Integer.compare(partOf(a.getFile()), partOf(b.getFile()));
+            });
+            segments = loaded;
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package rightmesh.left.io.gpstracker.superpeer;
+
+import static org.junit.Assert.assertEquals;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import rightmesh.left.io.gpstracker.core.codec.BatchFrame;
+import rightmesh.left.io.gpstracker.core.codec.LocationCodec;
+import rightmesh.left.io.gpstracker.core.codec.LocationFix;
+import rightmesh.left.io.gpstracker.core.transport.LoopbackNetwork;
+import rightmesh.left.io.gpstracker.core.transport.LoopbackTransport;
+
+/**
+ * Thousands of simulated devices sending through a {@link LoopbackNetwork} to one ingest.
+ */
+public class LocationIngestLoadTest {
+    private static final String SUPER_PEER_ID = "superpeer";
+    private static final int DEVICES = 2000;
+    private static final int FRAMES_PER_DEVICE = 5;
+    private static final int FIXES_PER_FRAME = 10;
+    private static final int DELIVERY_THREADS = 4;
+    private static final int SENDER_THREADS = 8;
+    private static final long TIMEOUT_MS = 30000;
+
+    private ScheduledExecutorService deliveryExecutor;
+
+    private ExecutorService senders;
+
+    private LoopbackNetwork network;
+
+    private LocationIngest underTest;
+
+    /**
+     * Set underTest before each test case, listening on the SuperPeer end of the network.
+     */
+    @Before
+    public void setUp() {
+        deliveryExecutor = Executors.newScheduledThreadPool(DELIVERY_THREADS);
+        senders = Executors.newFixedThreadPool(SENDER_THREADS);
+        network = new LoopbackNetwork(deliveryExecutor, 1).setLatency(0, 2);
+        underTest = new LocationIngest();
+        network.join(SUPER_PEER_ID).setOnTransportEventListener(underTest);
+        network.connect(SUPER_PEER_ID);
+        underTest.start();
+    }
+
+    /**
+     * Stop the network and the ingest after each test case.
+     *
+     * @throws InterruptedException interrupted while waiting for the workers
+     */
+    @After
+    public void tearDown() throws InterruptedException {
+        senders.shutdownNow();
+        deliveryExecutor.shutdownNow();
+        underTest.stop();
+    }
+
+    @Test
+    public void ingest_receivesEveryFixFromEveryDevice() throws Exception {
+        List<Future<?>> sent = new ArrayList<>();
+        for (int d = 0; d < DEVICES; d++) {
+            LoopbackTransport device = network.join("device-" + d);
+            network.connect(device.getPeerId());
+            int deviceIndex = d;
+            sent.add(senders.submit(() -> {
+                sendTrack(device, deviceIndex);
+                return null;
+            }));
+        }
+        for (Future<?> future : sent) {
+            future.get(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        }
+
+        long expectedFixes = (long) DEVICES * (FRAMES_PER_DEVICE * FIXES_PER_FRAME + 1);
+        long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+        while (underTest.getFixCount() < expectedFixes
+                && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+
+        assertEquals(expectedFixes, underTest.getFixCount());
+        assertEquals(DEVICES * (FRAMES_PER_DEVICE + 1), underTest.getFrameCount());
+        assertEquals(0, underTest.getFailedFrameCount());
+    }
+
+    /**
+     * Send a few batches and one legacy payload, as a mix of old and new devices would.
+     *
+     * @param device   sending transport
+     * @param deviceId index used to spread the devices out
+     * @throws Exception the network refused a payload
+     */
+    private static void sendTrack(LoopbackTransport device, int deviceId) throws Exception {
+        LocationFix[] fixes = new LocationFix[FIXES_PER_FRAME];
+        long time = 1546300800000L;
+        for (int f = 0; f < FRAMES_PER_DEVICE; f++) {
+            for (int i = 0; i < FIXES_PER_FRAME; i++) {
+                time += 1000;
+                fixes[i] = new LocationFix()
+                        .set(49 + deviceId * 0.001 + (f * FIXES_PER_FRAME + i) * 0.00001, -123)
+                        .setTime(time)
+                        .setAccuracy(5);
+            }
+            device.send(SUPER_PEER_ID, LocationCodec.encode(fixes, FIXES_PER_FRAME));
+        }
+        device.send(SUPER_PEER_ID, ByteBuffer.allocate(BatchFrame.LEGACY_FRAME_SIZE)
+                .putDouble(49 + deviceId * 0.001).putDouble(-123).array());
+    }
+}
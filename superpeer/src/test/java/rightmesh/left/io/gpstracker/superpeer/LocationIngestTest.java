@@ -0,0 +1,372 @@
+package rightmesh.left.io.gpstracker.superpeer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import rightmesh.left.io.gpstracker.core.codec.AggregateCodec;
+import rightmesh.left.io.gpstracker.core.codec.BatchFrame;
+import rightmesh.left.io.gpstracker.core.codec.DeliveryCodec;
+import rightmesh.left.io.gpstracker.core.codec.FrameCompressor;
+import rightmesh.left.io.gpstracker.core.codec.GeofenceEvent;
+import rightmesh.left.io.gpstracker.core.codec.GeofenceEventCodec;
+import rightmesh.left.io.gpstracker.core.codec.LocationCodec;
+import rightmesh.left.io.gpstracker.core.codec.LocationFix;
+import rightmesh.left.io.gpstracker.core.codec.MetricsCodec;
+import rightmesh.left.io.gpstracker.core.codec.RelayedFrame;
+import rightmesh.left.io.gpstracker.core.metrics.MetricsRegistry;
+import rightmesh.left.io.gpstracker.core.metrics.MetricsSnapshot;
+import rightmesh.left.io.gpstracker.core.transport.LoopbackNetwork;
+import rightmesh.left.io.gpstracker.core.transport.LoopbackTransport;
+import rightmesh.left.io.gpstracker.core.transport.MeshTransport;
+import rightmesh.left.io.gpstracker.core.uplink.FrameJournal;
+import rightmesh.left.io.gpstracker.core.uplink.LocationUplink;
+import rightmesh.left.io.gpstracker.superpeer.store.TrackSlice;
+import rightmesh.left.io.gpstracker.superpeer.store.TrackStore;
+
+public class LocationIngestTest {
+    private static final int WORKERS = 4;
+    private static final long TIMEOUT_MS = 5000;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final List<String> received = new ArrayList<>();
+
+    private LocationIngest underTest;
+
+    /**
+     * Set underTest before each test case.
+     */
+    @Before
+    public void setUp() {
+        underTest = new LocationIngest(WORKERS);
+        underTest.addOnLocationListener((senderId, fix) -> {
+            synchronized (received) {
+                received.add(senderId + "@" + fix.getLatitudeE6());
+            }
+        });
+        underTest.start();
+    }
+
+    @After
+    public void tearDown() throws InterruptedException {
+        underTest.stop();
+    }
+
+    @Test
+    public void onDataReceived_decodesLegacyAndBatchedPayloads() throws InterruptedException {
+        byte[] legacy = ByteBuffer.allocate(BatchFrame.LEGACY_FRAME_SIZE)
+                .putDouble(49.1).putDouble(-123.1).array();
+        LocationFix[] fixes = {new LocationFix().set(49.2, -123.2),
+                new LocationFix().set(49.3, -123.3)};
+
+        underTest.onDataReceived("old", legacy);
+        underTest.onDataReceived("new", LocationCodec.encode(fixes, fixes.length));
+        awaitIdle();
+
+        assertEquals(2, underTest.getFrameCount());
+        assertEquals(3, underTest.getFixCount());
+        assertTrue(received.contains("old@49100000"));
+        assertTrue(received.contains("new@49300000"));
+    }
+
+    @Test
+    public void onDataReceived_inflatesCompressedBatch() throws InterruptedException {
+        LocationFix[] fixes = new LocationFix[10];
+        for (int i = 0; i < fixes.length; i++) {
+            fixes[i] = new LocationFix().setE6(49000000 + i * 10, -123000000).setTime(i * 1000L);
+        }
+        FrameCompressor compressor = new FrameCompressor(6, FrameCompressor.TRACK_DICTIONARY);
+        ByteBuffer compressed = compressor.compress(
+                ByteBuffer.wrap(LocationCodec.encode(fixes, fixes.length)));
+        compressor.close();
+
+        underTest.onDataReceived("device", DeliveryCodec.wrap(0,
+                Arrays.copyOfRange(compressed.array(), compressed.position(),
+                        compressed.limit())));
+        awaitIdle();
+
+        assertEquals(0, underTest.getFailedFrameCount());
+        assertEquals(fixes.length, underTest.getFixCount());
+        assertTrue(received.contains("device@49000090"));
+    }
+
+    @Test
+    public void onDataReceived_attributesRelayedFramesToTheirSenders()
+            throws InterruptedException {
+        byte[] own = LocationCodec.encode(new LocationFix[]{new LocationFix().set(49, -123)}, 1);
+        byte[] relayed = LocationCodec.encode(new LocationFix[]{new LocationFix().set(50, -120)},
+                1);
+
+        underTest.onDataReceived("relay", DeliveryCodec.wrap(3, AggregateCodec.encode(
+                Arrays.asList(new RelayedFrame("", 0, own),
+                        new RelayedFrame("neighbour", 7, relayed)))));
+        awaitIdle();
+
+        assertEquals(0, underTest.getFailedFrameCount());
+        assertEquals(2, underTest.getFrameCount());
+        assertEquals(Arrays.asList("relay@49000000", "neighbour@50000000"), received);
+    }
+
+    @Test
+    public void onDataReceived_dropsFrameResentThroughAnotherRelay()
+            throws InterruptedException {
+        byte[] relayed = LocationCodec.encode(new LocationFix[]{new LocationFix().set(50, -120)},
+                1);
+
+        underTest.onDataReceived("relay1", DeliveryCodec.wrap(3, AggregateCodec.encode(
+                Collections.singletonList(new RelayedFrame("neighbour", 7, relayed)))));
+        awaitIdle();
+        underTest.onDataReceived("relay2", DeliveryCodec.wrap(3, AggregateCodec.encode(
+                Collections.singletonList(new RelayedFrame("neighbour", 7, relayed)))));
+        underTest.onDataReceived("neighbour", DeliveryCodec.wrap(7, relayed));
+        awaitIdle();
+
+        assertEquals(Collections.singletonList("neighbour@50000000"), received);
+        assertEquals(2, underTest.getDuplicateFrameCount());
+        assertEquals(0, underTest.getFailedFrameCount());
+    }
+
+    @Test
+    public void onDataReceived_handlesRelayedFramesOnWorkerOfTheirSender()
+            throws InterruptedException {
+        Map<String, Set<String>> threads = new ConcurrentHashMap<>();
+        underTest.addOnLocationListener((senderId, fix) -> threads
+                .computeIfAbsent(senderId, id -> ConcurrentHashMap.newKeySet())
+                .add(Thread.currentThread().getName()));
+        byte[] own = LocationCodec.encode(new LocationFix[]{new LocationFix().set(49, -123)}, 1);
+        LocationFix[] fix = {new LocationFix()};
+
+        // On different workers: the neighbour's fixes come both ways at once.
+        for (int i = 0; i < 100; i++) {
+            fix[0].setE6(2 * i, 0);
+            underTest.onDataReceived("neighbour",
+                    DeliveryCodec.wrap(2 * i, LocationCodec.encode(fix, 1)));
+            fix[0].setE6(2 * i + 1, 0);
+            underTest.onDataReceived("relay1", DeliveryCodec.wrap(i, AggregateCodec.encode(
+                    Arrays.asList(new RelayedFrame("", 0, own), new RelayedFrame("neighbour",
+                            2 * i + 1, LocationCodec.encode(fix, 1))))));
+        }
+        awaitIdle();
+
+        assertEquals(300, underTest.getFixCount());
+        assertEquals(1, threads.get("neighbour").size());
+        assertEquals(1, threads.get("relay1").size());
+        assertFalse(threads.get("neighbour").equals(threads.get("relay1")));
+    }
+
+    @Test
+    public void onDataReceived_keepsOrderPerSender() throws InterruptedException {
+        LocationFix[] fix = {new LocationFix()};
+        for (int i = 0; i < 1000; i++) {
+            fix[0].setE6(i, 0);
+            underTest.onDataReceived("device", LocationCodec.encode(fix, 1));
+        }
+        awaitIdle();
+
+        assertEquals(1000, received.size());
+        for (int i = 0; i < received.size(); i++) {
+            assertEquals("device@" + i, received.get(i));
+        }
+    }
+
+    @Test
+    public void onDataReceived_countsMalformedPayload() throws InterruptedException {
+        underTest.onDataReceived("device", new byte[]{BatchFrame.MAGIC, 9, 1});
+        awaitIdle();
+
+        assertEquals(1, underTest.getFailedFrameCount());
+        assertEquals(0, underTest.getFixCount());
+    }
+
+    @Test
+    public void onDataReceived_handsGeofenceEventsToListeners() throws InterruptedException {
+        List<GeofenceEvent> events = new ArrayList<>();
+        underTest.addOnGeofenceEventListener((senderId, event) -> {
+            synchronized (events) {
+                events.add(event);
+            }
+        });
+        ByteBuffer frame = ByteBuffer.allocate(GeofenceEventCodec.maxEncodedSize(1));
+        GeofenceEventCodec.encode(new LocationFix().set(49.5, -123.5), new int[]{4},
+                new int[]{GeofenceEvent.ENTER}, 1, frame);
+
+        underTest.onDataReceived("device", Arrays.copyOf(frame.array(), frame.position()));
+        awaitIdle();
+
+        assertEquals(1, underTest.getGeofenceEventCount());
+        assertEquals(4, events.get(0).getFenceId());
+        // The fix also updates the device position.
+        assertEquals(Collections.singletonList("device@49500000"), received);
+    }
+
+    @Test
+    public void onDataReceived_handsMetricsToListeners() throws InterruptedException {
+        List<MetricsSnapshot> snapshots = new ArrayList<>();
+        underTest.addOnMetricsListener((senderId, snapshot) -> {
+            synchronized (snapshots) {
+                snapshots.add(snapshot);
+            }
+        });
+        MetricsRegistry registry = new MetricsRegistry();
+        registry.counter("uplink.sent.bytes").add(42);
+
+        underTest.onDataReceived("device", MetricsCodec.encode(registry.snapshot(1000)));
+        awaitIdle();
+
+        assertEquals(0, underTest.getFailedFrameCount());
+        assertEquals(Long.valueOf(42), snapshots.get(0).getValues().get("uplink.sent.bytes"));
+        assertTrue(received.isEmpty());
+    }
+
+    @Test
+    public void onDataReceived_acknowledgesSequencedFrame() throws Exception {
+        ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+        try {
+            LoopbackNetwork network = new LoopbackNetwork(executor, 1);
+            underTest.setAckTransport(network.join("superpeer"));
+            BlockingQueue<byte[]> acks = new LinkedBlockingQueue<>();
+            LoopbackTransport device = network.join("device");
+            device.setOnTransportEventListener(new MeshTransport.OnTransportEventListener() {
+                @Override
+                public void onStateChanged(String localId, boolean connected) {
+                }
+
+                @Override
+                public void onPeerChanged(String peerId, int state) {
+                }
+
+                @Override
+                public void onDataReceived(String peerId, byte[] data) {
+                    acks.add(data);
+                }
+            });
+            network.connect("superpeer");
+            network.connect("device");
+            LocationFix[] fixes = {new LocationFix().set(49.5, -123.5)};
+
+            underTest.onDataReceived("device",
+                    DeliveryCodec.wrap(7, LocationCodec.encode(fixes, 1)));
+
+            byte[] ack = acks.poll(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+            assertTrue(ack != null && DeliveryCodec.isAck(ack));
+            assertEquals(7, DeliveryCodec.decodeAck(ack)[0]);
+            assertEquals(Collections.singletonList("device@49500000"), received);
+            assertEquals(1, underTest.getAckedFrameCount());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void onDataReceived_storesBackfillSentAfterNewerFixes() throws Exception {
+        final int backlogFixes = 20;
+        final int liveFixes = 20;
+        TrackStore store = TrackStore.open(folder.newFolder(), 60000, 8);
+        List<Long> late = new ArrayList<>();
+        underTest.addOnLocationListener(new LocationIngest.OnLocationListener() {
+            private long newestMillis = -1;
+
+            @Override
+            public void onLocation(String senderId, LocationFix fix) {
+                if (fix.getTimeMillis() < newestMillis) {
+                    late.add(fix.getTimeMillis());
+                }
+                newestMillis = Math.max(newestMillis, fix.getTimeMillis());
+                try {
+                    store.append(senderId, fix.getTimeMillis(), fix);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        });
+        ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+        FrameJournal journal = FrameJournal.open(new File(folder.getRoot(), "uplink.journal"),
+                64 * 1024);
+        try {
+            LoopbackNetwork network = new LoopbackNetwork(executor, 1);
+            LoopbackTransport superPeer = network.join("superpeer");
+            superPeer.setOnTransportEventListener(underTest);
+            underTest.setAckTransport(superPeer);
+            network.connect("superpeer");
+            LocationUplink uplink = new LocationUplink("superpeer", executor)
+                    .setBatchLimits(2, 60000)
+                    .setDeliveryTracking(4, 1000, 3);
+            uplink.setTransport(network.join("device"));
+            uplink.start();
+            executor.execute(() -> uplink.setJournal(journal));
+            LocationFix fix = new LocationFix();
+
+            // Journaled while the link is down.
+            for (int i = 0; i < backlogFixes; i++) {
+                uplink.offer(fix.setE6(i, 0).setTime(i * 1000L));
+            }
+            executor.submit(() -> { }).get(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+            network.connect("device");
+            for (int i = backlogFixes; i < backlogFixes + liveFixes; i++) {
+                uplink.offer(fix.setE6(i, 0).setTime(i * 1000L));
+            }
+
+            long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+            while (rows(store.read("device", 0, Long.MAX_VALUE)) < backlogFixes + liveFixes
+                    && System.currentTimeMillis() < deadline) {
+                Thread.sleep(1);
+            }
+            List<TrackSlice> slices = store.read("device", 0, Long.MAX_VALUE);
+            assertEquals(backlogFixes + liveFixes, rows(slices));
+            int expected = 0;
+            for (TrackSlice slice : slices) {
+                for (int row = 0; row < slice.size(); row++) {
+                    assertEquals(expected * 1000L, slice.getTimeMillis(row));
+                    assertEquals(expected, slice.getLatitudeE6(row));
+                    expected++;
+                }
+            }
+            // Some of the backlog arrived after newer fixes.
+            assertFalse(late.isEmpty());
+        } finally {
+            executor.shutdownNow();
+            journal.close();
+        }
+    }
+
+    private static int rows(List<TrackSlice> slices) {
+        int rows = 0;
+        for (TrackSlice slice : slices) {
+            rows += slice.size();
+        }
+        return rows;
+    }
+
+    private void awaitIdle() throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+        while (underTest.getPendingCount() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(1);
+        }
+        assertEquals(0, underTest.getPendingCount());
+    }
+}
@@ -0,0 +1,131 @@
+package rightmesh.left.io.gpstracker.superpeer.index;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import rightmesh.left.io.gpstracker.core.codec.LocationFix;
+import rightmesh.left.io.gpstracker.core.geo.GeoMath;
+
+public class DevicePositionIndexTest {
+    private final LocationFix fix = new LocationFix();
+
+    private DevicePositionIndex underTest;
+
+    /**
+     * Set underTest before each test case.
+     */
+    @Before
+    public void setUp() {
+        underTest = new DevicePositionIndex();
+    }
+
+    @Test
+    public void update_keepsLatestFix() {
+        assertTrue(underTest.update("a", fix.set(49.1, -123.1).setTime(2000)));
+        assertFalse(underTest.update("a", fix.set(49.2, -123.2).setTime(1000)));
+
+        DevicePosition position = underTest.getPosition("a");
+        assertEquals(49.1, position.getLatitude(), 0);
+        assertEquals(2000, position.getTimeMillis());
+        assertNull(underTest.getPosition("b"));
+    }
+
+    @Test
+    public void update_movesDeviceToNewCell() {
+        underTest.update("a", fix.set(49.1, -123.1));
+        underTest.update("a", fix.set(45.5, -73.6));
+
+        assertTrue(underTest.findInBoundingBox(49, -124, 50, -123).isEmpty());
+        assertEquals(1, underTest.findInBoundingBox(45, -74, 46, -73).size());
+        assertEquals(1, underTest.size());
+    }
+
+    @Test
+    public void remove_forgetsDevice() {
+        underTest.update("a", fix.set(49.1, -123.1));
+        underTest.remove("a");
+
+        assertNull(underTest.getPosition("a"));
+        assertTrue(underTest.findWithinRadius(49.1, -123.1, 1000).isEmpty());
+    }
+
+    @Test
+    public void queries_matchLinearScan() {
+        Random random = new Random(7);
+        Map<String, LocationFix> latest = new HashMap<>();
+        for (int i = 0; i < 20000; i++) {
+            String deviceId = "device-" + random.nextInt(5000);
+            fix.set(49 + random.nextDouble() * 0.5, -123.5 + random.nextDouble() * 0.5);
+            underTest.update(deviceId, fix);
+            latest.put(deviceId, new LocationFix().copyFrom(fix));
+        }
+
+        for (int q = 0; q < 50; q++) {
+            double latitude = 49 + random.nextDouble() * 0.5;
+            double longitude = -123.5 + random.nextDouble() * 0.5;
+            double radius = random.nextDouble() * 5000;
+            Set<String> expected = new TreeSet<>();
+            for (Map.Entry<String, LocationFix> entry : latest.entrySet()) {
+                LocationFix f = entry.getValue();
+                if (GeoMath.distanceMeters(latitude, longitude,
+                        f.getLatitude(), f.getLongitude()) <= radius) {
+                    expected.add(entry.getKey());
+                }
+            }
+            assertEquals(expected, ids(underTest.findWithinRadius(latitude, longitude, radius)));
+
+            double south = latitude - random.nextDouble() * 0.05;
+            double west = longitude - random.nextDouble() * 0.05;
+            expected.clear();
+            for (Map.Entry<String, LocationFix> entry : latest.entrySet()) {
+                LocationFix f = entry.getValue();
+                if (f.getLatitude() >= south && f.getLatitude() <= latitude
+                        && f.getLongitude() >= west && f.getLongitude() <= longitude) {
+                    expected.add(entry.getKey());
+                }
+            }
+            assertEquals(expected, ids(underTest.findInBoundingBox(south, west, latitude,
+                    longitude)));
+        }
+    }
+
+    @Test
+    public void findInBoundingBox_crossesAntimeridian() {
+        underTest.update("east", fix.set(0, 179.5));
+        underTest.update("west", fix.set(0, -179.5));
+        underTest.update("greenwich", fix.set(0, 0));
+
+        assertEquals(new TreeSet<>(Arrays.asList("east", "west")),
+                ids(underTest.findInBoundingBox(-1, 179, 1, -179)));
+        assertEquals(2, underTest.findWithinRadius(0, 180, 100000).size());
+    }
+
+    @Test
+    public void findWithinRadius_coversPole() {
+        underTest.update("a", fix.set(89.9, 0));
+        underTest.update("b", fix.set(89.9, 180));
+
+        assertEquals(2, underTest.findWithinRadius(89.95, 90, 50000).size());
+    }
+
+    private static Set<String> ids(List<DevicePosition> positions) {
+        Set<String> ids = new TreeSet<>();
+        for (DevicePosition position : positions) {
+            assertTrue("listed twice: " + position, ids.add(position.getDeviceId()));
+        }
+        return ids;
+    }
+}
@@ -0,0 +1,200 @@
+package rightmesh.left.io.gpstracker.superpeer.store;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import rightmesh.left.io.gpstracker.core.codec.LocationFix;
+
+public class TrackStoreTest {
+    private static final long WINDOW_MILLIS = 10000;
+    private static final int SEGMENT_CAPACITY = 100;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final LocationFix fix = new LocationFix();
+
+    private File directory;
+
+    private TrackStore underTest;
+
+    /**
+     * Set underTest before each test case.
+     *
+     * @throws IOException the store cannot be opened
+     */
+    @Before
+    public void setUp() throws IOException {
+        directory = folder.newFolder();
+        underTest = TrackStore.open(directory, WINDOW_MILLIS, SEGMENT_CAPACITY);
+    }
+
+    @After
+    public void tearDown() {
+        underTest.close();
+    }
+
+    @Test
+    public void read_returnsRangeInOrder() throws IOException {
+        for (int i = 0; i < 1000; i++) {
+            underTest.append("a", i * 100L, fix.setE6(i, -i).setAccuracy(i));
+        }
+
+        List<TrackSlice> slices = underTest.read("a", 2550, 50000);
+
+        // 10 windows of 100 rows, each in one full segment; rows 26 to 499.
+        assertEquals(474, rows(slices));
+        assertEquals(2600, slices.get(0).getTimeMillis(0));
+        assertEquals(26, slices.get(0).getLatitudeE6(0));
+        assertEquals(-26, slices.get(0).getLongitudeE6(0));
+        TrackSlice last = slices.get(slices.size() - 1);
+        assertEquals(49900, last.getTimeMillis(last.size() - 1));
+        assertEquals(499, last.getAccuracy(last.size() - 1), 0);
+    }
+
+    @Test
+    public void append_continuesInNewSegmentWhenFull() throws IOException {
+        for (int i = 0; i < SEGMENT_CAPACITY * 3 + 1; i++) {
+            underTest.append("a", 5000, fix.setE6(i, 0));
+        }
+
+        List<TrackSlice> slices = underTest.read("a", 5000, 5001);
+
+        assertEquals(4, slices.size());
+        assertEquals(SEGMENT_CAPACITY * 3 + 1, rows(slices));
+        assertEquals(SEGMENT_CAPACITY * 3, slices.get(3).getLatitudeE6(0));
+    }
+
+    @Test
+    public void append_insertsLateFixInOrder() throws IOException {
+        assertTrue(underTest.append("a", 25000, fix.setE6(1, 1)));
+        assertTrue(underTest.append("a", 26000, fix.setE6(3, 3)));
+        assertTrue(underTest.append("a", 25500, fix.setE6(2, 2)));
+        // An earlier window is still open for late fixes.
+        assertTrue(underTest.append("a", 5000, fix.setE6(0, 0)));
+
+        List<TrackSlice> slices = underTest.read("a", 0, Long.MAX_VALUE);
+        assertEquals(4, rows(slices));
+        assertEquals(5000, slices.get(0).getTimeMillis(0));
+        for (int row = 0; row < 3; row++) {
+            assertEquals(row + 1, slices.get(1).getLatitudeE6(row));
+        }
+        assertEquals(1, rows(underTest.read("a", 25500, 26000)));
+    }
+
+    @Test
+    public void append_insertsLateFixIntoFullSegments() throws IOException {
+        for (int i = 0; i < 2 * SEGMENT_CAPACITY; i++) {
+            underTest.append("a", 2 * i + 1, fix.setE6(2 * i + 1, 0));
+        }
+
+        for (int i = 0; i < 2 * SEGMENT_CAPACITY; i++) {
+            assertTrue(underTest.append("a", 2 * i, fix.setE6(2 * i, 0)));
+        }
+
+        List<TrackSlice> slices = underTest.read("a", 0, Long.MAX_VALUE);
+        assertEquals(4, slices.size());
+        int expected = 0;
+        for (TrackSlice slice : slices) {
+            for (int row = 0; row < slice.size(); row++) {
+                assertEquals(expected, slice.getTimeMillis(row));
+                assertEquals(expected, slice.getLatitudeE6(row));
+                expected++;
+            }
+        }
+        assertEquals(4 * SEGMENT_CAPACITY, expected);
+        // The sparse index follows the rows that moved.
+        assertEquals(1, rows(underTest.read("a", 2 * TrackSegment.INDEX_INTERVAL,
+                2 * TrackSegment.INDEX_INTERVAL + 1)));
+    }
+
+    @Test
+    public void append_rejectsFixStoredBefore() throws IOException {
+        assertTrue(underTest.append("a", 1000, fix.setE6(1, 1)));
+        assertTrue(underTest.append("a", 2000, fix.setE6(2, 2)));
+
+        assertFalse(underTest.append("a", 1000, fix.setE6(1, 1)));
+        assertFalse(underTest.append("a", 2000, fix.setE6(2, 2)));
+        // Same time, other position.
+        assertTrue(underTest.append("a", 1000, fix.setE6(3, 3)));
+
+        assertEquals(3, rows(underTest.read("a", 0, Long.MAX_VALUE)));
+        assertEquals(2, underTest.getRejectedCount());
+    }
+
+    @Test
+    public void read_findsRowsAcrossIndexBlocks() throws IOException {
+        TrackStore store = TrackStore.open(folder.newFolder(), WINDOW_MILLIS, 1000);
+        for (int i = 0; i < 1000; i++) {
+            // Runs of equal times straddle the sparse index entries.
+            store.append("a", i / 10, fix.setE6(i, 0));
+        }
+
+        for (int t = 0; t < 100; t++) {
+            List<TrackSlice> slices = store.read("a", t, t + 1);
+            assertEquals(10, rows(slices));
+            assertEquals(t * 10, slices.get(0).getLatitudeE6(0));
+        }
+        assertEquals(0, rows(store.read("a", 100, 200)));
+    }
+
+    @Test
+    public void open_recoversStoredTracks() throws IOException {
+        underTest.append("a", 1000, fix.set(49.1, -123.1).setAccuracy(5));
+        underTest.append("a", 15000, fix.set(49.2, -123.2));
+        underTest.close();
+
+        underTest = TrackStore.open(directory, WINDOW_MILLIS, SEGMENT_CAPACITY);
+        List<TrackSlice> slices = underTest.read("a", 0, 20000);
+
+        assertEquals(2, slices.size());
+        LocationFix first = slices.get(0).get(0, new LocationFix());
+        assertEquals(new LocationFix().set(49.1, -123.1).setTime(1000).setAccuracy(5), first);
+        assertFalse(slices.get(1).get(0, new LocationFix()).hasAccuracy());
+        assertTrue(underTest.append("a", 14000, fix.set(49.3, -123.3)));
+        assertEquals(14000, underTest.read("a", 10000, 20000).get(0).getTimeMillis(0));
+    }
+
+    @Test
+    public void deleteBefore_dropsEndedWindows() throws IOException {
+        underTest.append("a", 1000, fix);
+        underTest.append("a", 11000, fix);
+        underTest.append("b", 1000, fix);
+        underTest.close();
+
+        underTest = TrackStore.open(directory, WINDOW_MILLIS, SEGMENT_CAPACITY);
+
+        assertEquals(2, underTest.deleteBefore(15000));
+        assertEquals(1, rows(underTest.read("a", 0, Long.MAX_VALUE)));
+        assertEquals(0, rows(underTest.read("b", 0, Long.MAX_VALUE)));
+    }
+
+    @Test
+    public void encodeDeviceId_isReversibleAndSafe() {
+        String[] ids = {"0x1a2B", "..", "a/b", "x_y", "g\u00e9o"}; // e acute
+        for (String id : ids) {
+            String name = TrackStore.encodeDeviceId(id);
+            assertTrue(name, name.matches("[A-Za-z0-9_-]+"));
+            assertEquals(id, TrackStore.decodeDeviceId(name));
+        }
+    }
+
+    private static int rows(List<TrackSlice> slices) {
+        int rows = 0;
+        for (TrackSlice slice : slices) {
+            rows += slice.size();
+        }
+        return rows;
+    }
+}